@@ -1,13 +1,24 @@
 package com.aiinpocket.btctrade;
 
+import com.aiinpocket.btctrade.config.AlertProperties;
+import com.aiinpocket.btctrade.config.BacktestQueueProperties;
+import com.aiinpocket.btctrade.config.BacktestSweepProperties;
 import com.aiinpocket.btctrade.config.BinanceApiProperties;
+import com.aiinpocket.btctrade.config.EvaluationProperties;
+import com.aiinpocket.btctrade.config.HotKlineCacheProperties;
+import com.aiinpocket.btctrade.config.KlineWriteBehindProperties;
+import com.aiinpocket.btctrade.config.MonteCarloProperties;
+import com.aiinpocket.btctrade.config.PerformanceComputeProperties;
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
-@EnableConfigurationProperties({BinanceApiProperties.class, TradingStrategyProperties.class})
+@EnableConfigurationProperties({BinanceApiProperties.class, TradingStrategyProperties.class,
+        KlineWriteBehindProperties.class, EvaluationProperties.class, HotKlineCacheProperties.class,
+        BacktestSweepProperties.class, MonteCarloProperties.class,
+        PerformanceComputeProperties.class, BacktestQueueProperties.class, AlertProperties.class})
 public class BtcTradeApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,15 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 用戶價格 / 指標提醒設定。
+ *
+ * @param maxPerUser        每位用戶同時啟用的提醒上限
+ * @param refreshIntervalMs 增量載入其他 Pod 新建提醒的間隔
+ */
+@ConfigurationProperties(prefix = "alerts")
+public record AlertProperties(
+        int maxPerUser,
+        long refreshIntervalMs
+) {}
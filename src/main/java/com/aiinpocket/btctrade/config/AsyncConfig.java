@@ -14,7 +14,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
  * <ul>
  *   <li>{@code historicalSyncExecutor} — 歷史資料同步（每幣對獨立線程，避免互相阻塞）</li>
  *   <li>{@code notificationExecutor} — 通知分發專用（Discord/Gmail/Telegram 外部 API 呼叫獨立於交易邏輯）</li>
- *   <li>{@code backtestExecutor} — 用戶回測專用（CPU 密集計算不影響即時交易）</li>
+ *   <li>{@code backtestExecutor} — 回測相關的非同步協調（績效計算觸發等；用戶回測改由 BacktestJobQueue 的工作執行緒執行）</li>
  * </ul>
  *
  * <p>設計原則：每種 I/O 密集或 CPU 密集的任務使用獨立線程池，
@@ -65,9 +65,9 @@ public class AsyncConfig {
 
     /**
      * 回測執行緒池。
-     * 用戶自訂策略回測 + 績效排程計算為 CPU 密集型操作，使用獨立線程池避免影響即時交易。
-     * 核心 1 線程 / 最大 2 線程：限制並行回測數量，避免多個 540K+ BarSeries 同時載入導致 OOM。
-     * 隊列容量 10：績效計算改為逐一順序執行，不再大量排入。
+     * 績效計算的 @Async 觸發在此執行，使用獨立線程池避免影響即時交易。
+     * 核心 1 線程 / 最大 2 線程：批次績效計算在此只做協調，模板的並行運算在 StrategyPerformanceService 的專用池。
+     * 用戶回測不經過此池：改由 DB 佇列（BacktestJobQueue）排程，佇列滿時不會落到請求執行緒執行。
      */
     @Bean
     public TaskExecutor backtestExecutor() {
@@ -0,0 +1,29 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 用戶回測持久化佇列設定。
+ *
+ * @param workers            每個節點同時執行的回測數（工作執行緒數；每個回測會載入整段 K 線，受記憶體限制）
+ * @param maxQueuedPerUser   每位用戶排隊中 + 執行中的回測上限
+ * @param agingMsPerYear     排隊老化：每等待此毫秒數，排序上視為回測區間短一年（避免長區間永遠排不到）
+ * @param maxAttempts        租約過期（節點當機/重啟）後重新排隊的次數上限，超過即標記失敗
+ * @param pollIntervalMs     佇列輪詢間隔（提交、完成時也會立即排程）
+ * @param progressIntervalMs 進度推送 / 寫回 DB / 檢查取消旗標的最短間隔
+ * @param leaseMs            認領租約長度：持有節點未在期限內續約，任何節點都可收回重新排隊
+ * @param heartbeatIntervalMs 續約間隔（需明顯短於 leaseMs）
+ * @param nodeId             節點識別（空白時以主機名稱 / Pod 名稱加隨機後綴產生）
+ */
+@ConfigurationProperties(prefix = "backtest.queue")
+public record BacktestQueueProperties(
+        int workers,
+        int maxQueuedPerUser,
+        long agingMsPerYear,
+        int maxAttempts,
+        long pollIntervalMs,
+        long progressIntervalMs,
+        long leaseMs,
+        long heartbeatIntervalMs,
+        String nodeId
+) {}
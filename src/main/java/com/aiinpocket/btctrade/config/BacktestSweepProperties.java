@@ -0,0 +1,18 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 參數掃描（同一模板多組參數並行回測）設定。
+ *
+ * @param maxCombinations        單次掃描的組合數上限（硬上限，超過直接拒絕）
+ * @param parallelism            掃描專用 ForkJoinPool 的並行度（0 表示 CPU 核心數 - 1，至少 1）
+ * @param combinationsPerStamina 每 N 組合視為一次回測計費：體力 = 年數 × ceil(組合數 / N)
+ */
+@ConfigurationProperties(prefix = "backtest.sweep")
+public record BacktestSweepProperties(
+        int maxCombinations,
+        int parallelism,
+        int combinationsPerStamina
+) {
+}
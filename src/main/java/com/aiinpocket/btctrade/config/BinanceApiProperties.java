@@ -2,14 +2,24 @@ package com.aiinpocket.btctrade.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+/**
+ * Binance API 設定。
+ *
+ * <p>{@code requestWeightPerMinute} 為 {@code BinanceRateLimiter} 的每分鐘權重上限（依回應標頭校正，可貼近交易所上限）；
+ * {@code backfillParallelism} / {@code backfillChunkBars} 控制歷史回補的並行分段數與每段 K 線數；
+ * {@code wsStreamsPerConnection} 為每條 combined-stream 連線的串流上限（超過即分片到新連線）。
+ */
 @ConfigurationProperties(prefix = "binance.api")
 public record BinanceApiProperties(
         String baseUrl,
         String klinesPath,
         String defaultSymbol,
-        long rateLimitMs,
         String wsBaseUrl,
         String defaultInterval,
         String exchangeInfoPath,
-        int delistErrorThreshold
+        int delistErrorThreshold,
+        int requestWeightPerMinute,
+        int backfillParallelism,
+        int backfillChunkBars,
+        int wsStreamsPerConnection
 ) {}
@@ -0,0 +1,13 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 策略評估階段設定（K 線收盤 → 依幣對分條的評估執行緒）。
+ *
+ * @param stripes 評估條數（每條單執行緒；0 表示使用 CPU 核心數）
+ */
+@ConfigurationProperties(prefix = "evaluation")
+public record EvaluationProperties(
+        int stripes
+) {}
@@ -0,0 +1,13 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 熱 K 線環形緩衝設定。
+ *
+ * @param capacity 每個 (幣對, 週期) 保留的最近 K 線數（需涵蓋策略回看長度與 24 小時行情）
+ */
+@ConfigurationProperties(prefix = "kline.hot-cache")
+public record HotKlineCacheProperties(
+        int capacity
+) {}
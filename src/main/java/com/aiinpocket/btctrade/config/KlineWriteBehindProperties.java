@@ -0,0 +1,21 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 收盤 K 線 write-behind 寫入設定。
+ *
+ * @param queueCapacity   記憶體佇列上限（滿了即丟棄並計數）
+ * @param flushIntervalMs 單一 flush 視窗長度（毫秒）
+ * @param maxBatchSize    單次多列 INSERT 的最大筆數
+ * @param retryAttempts   批次寫入失敗時的總嘗試次數（含第一次）
+ * @param retryBackoffMs  第一次重試前的等待時間，之後每次加倍
+ */
+@ConfigurationProperties(prefix = "kline.write-behind")
+public record KlineWriteBehindProperties(
+        int queueCapacity,
+        long flushIntervalMs,
+        int maxBatchSize,
+        int retryAttempts,
+        long retryBackoffMs
+) {}
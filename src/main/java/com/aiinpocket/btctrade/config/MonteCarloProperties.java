@@ -0,0 +1,31 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 回測完成後的 Monte Carlo 交易重排分析設定。
+ *
+ * @param enabled       是否在用戶回測結果中附上分析
+ * @param simulations   模擬路徑數
+ * @param method        重排方式
+ * @param histogramBins 直方圖格數
+ * @param seed          亂數種子（固定種子讓同一份回測結果的分析可重現）
+ * @param parallelism   模擬專用 ForkJoinPool 的並行度（0 表示 CPU 核心數 - 1，至少 1）
+ */
+@ConfigurationProperties(prefix = "backtest.monte-carlo")
+public record MonteCarloProperties(
+        boolean enabled,
+        int simulations,
+        Method method,
+        int histogramBins,
+        long seed,
+        int parallelism
+) {
+
+    public enum Method {
+        /** 打亂交易順序（複利與順序無關，最終資金固定不變，只看路徑風險：回撤與連敗） */
+        PERMUTATION,
+        /** 有放回重抽交易（最終資金與路徑風險都會變動） */
+        BOOTSTRAP
+    }
+}
@@ -0,0 +1,15 @@
+package com.aiinpocket.btctrade.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 策略績效批次計算設定。
+ *
+ * @param parallelism 模板並行計算的執行緒數（0 表示 CPU 核心數）；
+ *                    所有執行緒共用同一份唯讀 K 線，記憶體隨執行緒數而非模板數成長
+ */
+@ConfigurationProperties(prefix = "backtest.performance")
+public record PerformanceComputeProperties(
+        int parallelism
+) {
+}
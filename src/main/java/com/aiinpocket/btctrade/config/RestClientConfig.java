@@ -1,8 +1,10 @@
 package com.aiinpocket.btctrade.config;
 
+import com.aiinpocket.btctrade.service.BinanceRateLimiter;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.RestClient;
 
 /**
@@ -18,12 +20,20 @@ import org.springframework.web.client.RestClient;
 @EnableConfigurationProperties(BinanceApiProperties.class)
 public class RestClientConfig {
 
-    /** Binance API 專用 RestClient，預設 baseUrl 為 Binance REST API */
+    /**
+     * Binance API 專用 RestClient，預設 baseUrl 為 Binance REST API。
+     * 攔截器把每個回應的已用權重與 429/418 回報給 {@link BinanceRateLimiter}。
+     */
     @Bean
-    public RestClient binanceRestClient(BinanceApiProperties props) {
+    public RestClient binanceRestClient(BinanceApiProperties props, BinanceRateLimiter rateLimiter) {
         return RestClient.builder()
                 .baseUrl(props.baseUrl())
                 .defaultHeader("Accept", "application/json")
+                .requestInterceptor((request, body, execution) -> {
+                    ClientHttpResponse response = execution.execute(request, body);
+                    rateLimiter.onResponse(response.getStatusCode().value(), response.getHeaders());
+                    return response;
+                })
                 .build();
     }
 
@@ -0,0 +1,68 @@
+package com.aiinpocket.btctrade.config;
+
+import com.aiinpocket.btctrade.model.enums.BacktestRunStatus;
+import com.aiinpocket.btctrade.model.enums.ExitReason;
+import com.aiinpocket.btctrade.model.enums.PositionStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * 應用啟動時補上 ddl-auto（update）做不到的結構變更。
+ * 每一步都是冪等的，多個 Pod 同時啟動時重複執行也無妨；單步失敗只記錄警告，不阻止啟動。
+ * <ul>
+ *   <li>刪除以模板 ID 為鍵的舊績效表 strategy_performance / performance_checkpoint：
+ *       績效已改存 fingerprint_performance / fingerprint_checkpoint，
+ *       舊表殘留的 strategy_template_id NOT NULL 外鍵會讓刪除模板失敗</li>
+ *   <li>以目前的 {@link BacktestRunStatus} 重建 backtest_run 的狀態檢查約束：
+ *       ddl-auto 只在建表時產生列舉的 CHECK，既有資料庫不會加入新增的 CANCELLED，寫入取消狀態會被拒絕</li>
+ *   <li>同理重建 trade_position 的狀態與出場原因約束（新增的 CLOSED_BY_TRAILING_STOP / TRAILING_STOP）</li>
+ * </ul>
+ *
+ * <p>以最高優先序的 ApplicationRunner 執行，早於其他啟動任務與 ApplicationReadyEvent（例如預設模板遷移）。
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+@Slf4j
+public class SchemaUpgradeRunner implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        execute("刪除舊績效表", "DROP TABLE IF EXISTS performance_checkpoint, strategy_performance");
+        execute("重建回測狀態約束", enumCheck("backtest_run", "status", BacktestRunStatus.values()));
+        execute("重建持倉狀態約束", enumCheck("trade_position", "status", PositionStatus.values()));
+        execute("重建持倉出場原因約束", enumCheck("trade_position", "exit_reason", ExitReason.values()));
+    }
+
+    /** 以列舉目前的值重建 Hibernate 命名的 {table}_{column}_check 約束 */
+    private static String enumCheck(String table, String column, Enum<?>[] values) {
+        String constraint = table + "_" + column + "_check";
+        return "ALTER TABLE " + table
+                + " DROP CONSTRAINT IF EXISTS " + constraint + ","
+                + " ADD CONSTRAINT " + constraint + " CHECK (" + column + " IN ("
+                + Arrays.stream(values)
+                        .map(v -> "'" + v.name() + "'")
+                        .collect(Collectors.joining(", "))
+                + "))";
+    }
+
+    private void execute(String description, String sql) {
+        try {
+            jdbcTemplate.execute(sql);
+            log.debug("[結構升級] {} 完成", description);
+        } catch (Exception e) {
+            log.warn("[結構升級] {} 失敗: {}", description, e.getMessage());
+        }
+    }
+}
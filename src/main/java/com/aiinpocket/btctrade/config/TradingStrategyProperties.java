@@ -4,12 +4,31 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
 @ConfigurationProperties(prefix = "trading")
 public record TradingStrategyProperties(
         StrategyParams strategy,
         RiskParams risk,
         RsiParams rsi
 ) {
+    /**
+     * 參數的正規化指紋：所有欄位依宣告順序（record 的 toString，double 為最短可還原表示）的 SHA-256。
+     * 參數完全相同的模板（例如未修改的預設模板複本）指紋相同，可共用績效與回測結果。
+     */
+    public String fingerprint() {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public record StrategyParams(
             int emaShort,
             int emaLong,
@@ -0,0 +1,71 @@
+package com.aiinpocket.btctrade.controller;
+
+import com.aiinpocket.btctrade.model.entity.UserAlert;
+import com.aiinpocket.btctrade.model.enums.AlertType;
+import com.aiinpocket.btctrade.security.AppUserPrincipal;
+import com.aiinpocket.btctrade.service.AlertService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 使用者價格 / 指標提醒 REST API。
+ * 提醒觸發一次後即解除，透過使用者已啟用的通知管道發送。
+ */
+@RestController
+@RequestMapping("/api/user/alerts")
+@RequiredArgsConstructor
+public class AlertController {
+
+    private final AlertService alertService;
+
+    /** 取得當前使用者的提醒（含已觸發） */
+    @GetMapping
+    public List<UserAlert> getAlerts(@AuthenticationPrincipal AppUserPrincipal principal) {
+        return alertService.getAlerts(principal.getUserId());
+    }
+
+    /**
+     * 建立提醒。
+     * 請求格式：{"symbol": "BTCUSDT", "type": "PRICE_ABOVE", "threshold": "100000"}
+     */
+    @PostMapping
+    public ResponseEntity<?> createAlert(
+            @AuthenticationPrincipal AppUserPrincipal principal,
+            @RequestBody Map<String, String> body) {
+        String symbol = body.get("symbol");
+        String type = body.get("type");
+        String threshold = body.get("threshold");
+        if (symbol == null || symbol.isBlank() || type == null || threshold == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "symbol、type、threshold 為必填欄位"));
+        }
+        AlertType alertType;
+        BigDecimal value;
+        try {
+            alertType = AlertType.valueOf(type.toUpperCase());
+            value = new BigDecimal(threshold);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "無效的 type 或 threshold"));
+        }
+        try {
+            return ResponseEntity.ok(alertService.createAlert(principal.getUserId(), symbol, alertType, value));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /** 刪除提醒 */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteAlert(
+            @AuthenticationPrincipal AppUserPrincipal principal,
+            @PathVariable Long id) {
+        return alertService.deleteAlert(principal.getUserId(), id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
@@ -74,7 +74,9 @@ public class DashboardController {
         Long userId = user.getId();
         model.addAttribute("livePositions", dashboardService.getUserLivePositions(userId, activeSymbol));
         model.addAttribute("openPosition", dashboardService.getUserOpenPosition(userId, activeSymbol).orElse(null));
+        model.addAttribute("ledger", dashboardService.getUserLedger(userId));
         model.addAttribute("klineCount", dashboardService.getKlineCount(activeSymbol, interval));
+        model.addAttribute("lastPrice", dashboardService.getLastPrice(activeSymbol).orElse(null));
         model.addAttribute("recentSignals", dashboardService.getUserRecentSignals(userId, activeSymbol));
 
         // 檢查當前選中的幣對是否已下架
@@ -135,7 +135,7 @@ public class StrategyTemplateController {
         }
     }
 
-    /** 手動觸發所有模板的績效重算（逐一順序執行，避免 OOM） */
+    /** 手動觸發所有模板的績效重算（模板並行、共用同一份 K 線） */
     @PostMapping("/refresh-all-performance")
     public ResponseEntity<?> refreshAllPerformance(
             @AuthenticationPrincipal AppUserPrincipal principal) {
@@ -155,7 +155,7 @@ public class StrategyTemplateController {
         var templateIds = templateService.getTemplatesForUser(principal.getUserId())
                 .stream().map(t -> t.getId()).toList();
         performanceService.computeMultiplePerformancesAsync(templateIds, principal.getUserId());
-        return ResponseEntity.ok(Map.of("message", "已排入 " + templateIds.size() + " 個模板的績效計算（逐一執行）"));
+        return ResponseEntity.ok(Map.of("message", "已排入 " + templateIds.size() + " 個模板的績效計算（並行執行）"));
     }
 
     /** 查詢績效計算進度 */
@@ -170,7 +170,10 @@ public class StrategyTemplateController {
                 "computing", progress.isRunning(),
                 "completed", progress.getCompleted(),
                 "total", progress.getTotal(),
-                "failed", progress.getFailed()));
+                "failed", progress.getFailed(),
+                "parallelism", progress.getParallelism(),
+                "elapsedMs", progress.getElapsedMs(),
+                "templates", progress.getTemplateTimings()));
     }
 
     /** 策略績效排行榜（所有系統預設模板） */
@@ -3,7 +3,9 @@ package com.aiinpocket.btctrade.controller;
 import com.aiinpocket.btctrade.model.entity.BacktestRun;
 import com.aiinpocket.btctrade.security.AppUserPrincipal;
 import com.aiinpocket.btctrade.service.BacktestAdventureService;
+import com.aiinpocket.btctrade.service.BacktestJobQueue;
 import com.aiinpocket.btctrade.service.BattleService;
+import com.aiinpocket.btctrade.service.InsufficientStaminaException;
 import com.aiinpocket.btctrade.service.StaminaService;
 import com.aiinpocket.btctrade.service.UserBacktestService;
 import lombok.RequiredArgsConstructor;
@@ -22,10 +24,16 @@ import java.util.Map;
  *
  * <p>端點一覽：
  * <ul>
- *   <li>POST /api/user/backtest/run — 提交回測任務</li>
+ *   <li>POST /api/user/backtest/run — 提交回測任務（排入佇列）</li>
+ *   <li>POST /api/user/backtest/{id}/cancel — 取消排隊中或執行中的回測</li>
+ *   <li>POST /api/user/backtest/sweep — 參數掃描（排入佇列，結果同樣以 GET /{id} 取得）</li>
+ *   <li>POST /api/user/backtest/walk-forward — 滾動樣本內最佳化 + 樣本外驗證（排入佇列）</li>
  *   <li>GET  /api/user/backtest/history — 查詢回測歷史</li>
  *   <li>GET  /api/user/backtest/{id} — 查詢單筆回測結果</li>
  * </ul>
+ *
+ * <p>回測、參數掃描與 walk-forward 的排隊位置、執行進度與結束狀態會經 {@code /ws/trades} 的用戶頻道推送（type = BACKTEST_JOB），
+ * 前端收到結束狀態後再查詢一次結果即可，不需輪詢。
  */
 @RestController
 @RequestMapping("/api/user/backtest")
@@ -34,6 +42,7 @@ import java.util.Map;
 public class UserBacktestController {
 
     private final UserBacktestService backtestService;
+    private final BacktestJobQueue jobQueue;
     private final BacktestAdventureService adventureService;
     private final BattleService battleService;
     private final StaminaService staminaService;
@@ -47,8 +56,8 @@ public class UserBacktestController {
      *   "years": 5
      * }
      *
-     * <p>回測任務會立即返回，實際計算在背景的 backtestExecutor 執行緒池中非同步執行。
-     * 前端可透過輪詢 GET /api/user/backtest/{id} 查看進度和結果。
+     * <p>回測任務寫入佇列後立即返回，由回測佇列依公平排程在背景執行；
+     * 進度經 WebSocket 推送，完成後以 GET /api/user/backtest/{id} 取得結果。
      */
     @PostMapping("/run")
     public ResponseEntity<?> submitBacktest(
@@ -82,11 +91,11 @@ public class UserBacktestController {
             Map<String, Object> resp = new java.util.HashMap<>();
             resp.put("id", run.getId());
             resp.put("status", run.getStatus().name());
-            resp.put("message", "回測已提交，正在背景執行中");
+            resp.put("message", "回測已排入佇列，將依序在背景執行");
             resp.put("adventureJson", run.getAdventureJson() != null ? run.getAdventureJson() : "{}");
             return ResponseEntity.ok(resp);
         } catch (IllegalStateException e) {
-            // 已有 RUNNING 回測
+            // 排隊中的回測已達上限
             return ResponseEntity.status(429).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("[回測API] 提交回測意外錯誤", e);
@@ -94,6 +103,134 @@ public class UserBacktestController {
         }
     }
 
+    /**
+     * 參數掃描：以模板為基準，對指定參數軸的所有組合回測並依年化報酬排名。
+     * 請求 body 範例：
+     * {
+     *   "templateId": 1,
+     *   "symbol": "BTCUSDT",
+     *   "years": 2,
+     *   "parameters": {
+     *     "emaShort": [8, 12],
+     *     "emaLong": {"from": 20, "to": 30, "step": 5},
+     *     "stopLossPct": [0.03, 0.04, 0.05]
+     *   }
+     * }
+     *
+     * <p>組合數有硬上限；體力依組合數折算（見 backtest.sweep 設定），提交時扣除、執行失敗時退還。
+     * 掃描寫入回測佇列後立即返回 id，進度經 WebSocket 推送（barsProcessed / barsTotal 為已完成 / 全部組合數），
+     * 完成後以 GET /api/user/backtest/{id} 取得排名表（resultJson 為 ParameterSweepResult）。
+     */
+    @SuppressWarnings("unchecked")
+    @PostMapping("/sweep")
+    public ResponseEntity<?> sweep(
+            @AuthenticationPrincipal AppUserPrincipal principal,
+            @RequestBody Map<String, Object> body) {
+        try {
+            if (body.get("templateId") == null || body.get("symbol") == null
+                    || !(body.get("parameters") instanceof Map)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "templateId、symbol 和 parameters 為必填"));
+            }
+            Long templateId = Long.parseLong(body.get("templateId").toString());
+            String symbol = body.get("symbol").toString().trim().toUpperCase();
+            int years = body.containsKey("years") ? Integer.parseInt(body.get("years").toString()) : 1;
+
+            if (symbol.isEmpty() || symbol.length() > 20) {
+                return ResponseEntity.badRequest().body(Map.of("error", "symbol 格式不正確"));
+            }
+            if (years < 1 || years > 10) {
+                return ResponseEntity.badRequest().body(Map.of("error", "回測年數需在 1~10 之間"));
+            }
+
+            Instant endDate = Instant.now();
+            Instant startDate = endDate.minus(java.time.Duration.ofDays(365L * years));
+            BacktestRun run = backtestService.submitSweep(principal.getAppUser(), templateId, symbol,
+                    startDate, endDate, years, (Map<String, Object>) body.get("parameters"));
+
+            log.info("[回測API] 用戶 {} 提交參數掃描: runId={}, symbol={}, years={}",
+                    principal.getUserId(), run.getId(), symbol, years);
+            return ResponseEntity.accepted().body(Map.of(
+                    "id", run.getId(),
+                    "status", run.getStatus().name(),
+                    "staminaCost", run.getStaminaCost(),
+                    "message", "參數掃描已排入佇列，將依序在背景執行"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (InsufficientStaminaException e) {
+            return ResponseEntity.status(429).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            // 排隊中的回測已達上限
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("[回測API] 參數掃描意外錯誤", e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "參數掃描失敗，請稍後重試"));
+        }
+    }
+
+    /**
+     * Walk-forward：每個視窗在樣本內掃描參數取最佳，於接下來的樣本外區間驗證，結果為串接的樣本外報告。
+     * 請求 body 同 /sweep，另加：
+     * {
+     *   "inSampleDays": 90,
+     *   "outOfSampleDays": 30
+     * }
+     *
+     * <p>與參數掃描相同：提交時驗證視窗與參數軸並扣除體力（執行失敗時退還），寫入回測佇列後立即返回 id；
+     * 進度（barsProcessed / barsTotal 為已完成的視窗 × 組合數）經 WebSocket 推送，
+     * 完成後以 GET /api/user/backtest/{id} 取得結果（resultJson 為 WalkForwardResult）。
+     */
+    @SuppressWarnings("unchecked")
+    @PostMapping("/walk-forward")
+    public ResponseEntity<?> walkForward(
+            @AuthenticationPrincipal AppUserPrincipal principal,
+            @RequestBody Map<String, Object> body) {
+        try {
+            if (body.get("templateId") == null || body.get("symbol") == null
+                    || !(body.get("parameters") instanceof Map)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "templateId、symbol 和 parameters 為必填"));
+            }
+            Long templateId = Long.parseLong(body.get("templateId").toString());
+            String symbol = body.get("symbol").toString().trim().toUpperCase();
+            int years = body.containsKey("years") ? Integer.parseInt(body.get("years").toString()) : 2;
+            int inSampleDays = body.containsKey("inSampleDays")
+                    ? Integer.parseInt(body.get("inSampleDays").toString()) : 90;
+            int outOfSampleDays = body.containsKey("outOfSampleDays")
+                    ? Integer.parseInt(body.get("outOfSampleDays").toString()) : 30;
+
+            if (symbol.isEmpty() || symbol.length() > 20) {
+                return ResponseEntity.badRequest().body(Map.of("error", "symbol 格式不正確"));
+            }
+            if (years < 1 || years > 10) {
+                return ResponseEntity.badRequest().body(Map.of("error", "回測年數需在 1~10 之間"));
+            }
+
+            Instant endDate = Instant.now();
+            Instant startDate = endDate.minus(java.time.Duration.ofDays(365L * years));
+            BacktestRun run = backtestService.submitWalkForward(principal.getAppUser(), templateId, symbol,
+                    startDate, endDate, years, inSampleDays, outOfSampleDays,
+                    (Map<String, Object>) body.get("parameters"));
+
+            log.info("[回測API] 用戶 {} 提交 walk-forward: runId={}, symbol={}, years={}, IS/OOS={}/{}",
+                    principal.getUserId(), run.getId(), symbol, years, inSampleDays, outOfSampleDays);
+            return ResponseEntity.accepted().body(Map.of(
+                    "id", run.getId(),
+                    "status", run.getStatus().name(),
+                    "staminaCost", run.getStaminaCost(),
+                    "message", "Walk-forward 已排入佇列，將依序在背景執行"));
+        } catch (IllegalArgumentException e) {
+            // 視窗或參數軸不合法
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (InsufficientStaminaException e) {
+            return ResponseEntity.status(429).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            // 排隊中的回測已達上限
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("[回測API] Walk-forward 意外錯誤", e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "Walk-forward 提交失敗，請稍後重試"));
+        }
+    }
+
     /** 查詢用戶的回測歷史（最近 10 筆） */
     @GetMapping("/history")
     public List<Map<String, Object>> getHistory(@AuthenticationPrincipal AppUserPrincipal principal) {
@@ -101,6 +238,7 @@ public class UserBacktestController {
                 .stream()
                 .map(run -> Map.<String, Object>of(
                         "id", run.getId(),
+                        "kind", run.kind(),
                         "symbol", run.getSymbol(),
                         "status", run.getStatus().name(),
                         "templateName", run.getStrategyTemplate().getName(),
@@ -113,9 +251,10 @@ public class UserBacktestController {
 
     /**
      * 查詢單筆回測結果。
-     * COMPLETED 時 resultJson 包含完整的 BacktestReport JSON。
+     * COMPLETED 時 resultJson 包含完整的 BacktestReport JSON（kind = SWEEP 時為 ParameterSweepResult，
+     * WALK_FORWARD 時為 WalkForwardResult）。
      * FAILED 時 resultJson 包含錯誤訊息。
-     * RUNNING/PENDING 時 resultJson 為 null。
+     * RUNNING/PENDING 時 resultJson 為 null，barsProcessed / barsTotal 為最近寫回的進度。
      */
     @GetMapping("/{id}")
     public ResponseEntity<?> getResult(
@@ -125,10 +264,13 @@ public class UserBacktestController {
             BacktestRun run = backtestService.getRun(id, principal.getUserId());
             Map<String, Object> resp = new java.util.HashMap<>();
             resp.put("id", run.getId());
+            resp.put("kind", run.kind());
             resp.put("status", run.getStatus().name());
             resp.put("symbol", run.getSymbol());
             resp.put("templateName", run.getStrategyTemplate().getName());
             resp.put("resultJson", run.getResultJson() != null ? run.getResultJson() : "");
+            resp.put("barsProcessed", run.getBarsProcessed());
+            resp.put("barsTotal", run.getBarsTotal());
             resp.put("createdAt", run.getCreatedAt().toString());
             resp.put("completedAt", run.getCompletedAt() != null ? run.getCompletedAt().toString() : "");
             resp.put("adventureJson", run.getAdventureJson() != null ? run.getAdventureJson() : "{}");
@@ -139,6 +281,26 @@ public class UserBacktestController {
         }
     }
 
+    /**
+     * 取消回測：排隊中立即取消；執行中則在下個進度點中止（結束狀態經 WebSocket 推送）。
+     */
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<?> cancel(
+            @AuthenticationPrincipal AppUserPrincipal principal,
+            @PathVariable Long id) {
+        try {
+            boolean cancelled = jobQueue.cancel(id, principal.getUserId());
+            return ResponseEntity.ok(Map.of(
+                    "id", id,
+                    "status", cancelled ? "CANCELLED" : "CANCELLING"));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("[回測API] 取消回測失敗: runId={}", id, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "取消失敗，請稍後重試"));
+        }
+    }
+
     /** 查詢體力狀態 */
     @GetMapping("/stamina")
     public ResponseEntity<?> getStamina(@AuthenticationPrincipal AppUserPrincipal principal) {
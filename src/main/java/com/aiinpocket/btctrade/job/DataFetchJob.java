@@ -1,12 +1,14 @@
 package com.aiinpocket.btctrade.job;
 
 import com.aiinpocket.btctrade.config.BinanceApiProperties;
+import com.aiinpocket.btctrade.model.dto.BinanceKlineResponse;
 import com.aiinpocket.btctrade.model.entity.TrackedSymbol;
 import com.aiinpocket.btctrade.service.BinanceApiService;
 import com.aiinpocket.btctrade.service.BinanceExchangeInfoService;
 import com.aiinpocket.btctrade.service.BinanceStreamManager;
 import com.aiinpocket.btctrade.service.BinanceWebSocketClient;
 import com.aiinpocket.btctrade.service.DistributedLockService;
+import com.aiinpocket.btctrade.service.HotKlineCache;
 import com.aiinpocket.btctrade.service.TrackedSymbolService;
 import com.aiinpocket.btctrade.websocket.TradeWebSocketHandler;
 import lombok.RequiredArgsConstructor;
@@ -19,7 +21,7 @@ import java.util.List;
 
 /**
  * 定時資料補充任務（每 5 分鐘）。
- * 遍歷所有 READY 狀態的幣對，補充可能缺失的最新 K 線。
+ * 遍歷所有 READY 狀態的幣對，補充可能缺失的已收盤 K 線（寫入 DB 與熱 K 線快取）。
  * 包含下架偵測：連續錯誤超過閾值時檢查 ExchangeInfo，確認下架則停止更新。
  */
 @Component
@@ -33,6 +35,7 @@ public class DataFetchJob extends QuartzJobBean {
     private final BinanceExchangeInfoService exchangeInfoService;
     private final BinanceStreamManager binanceStreamManager;
     private final BinanceWebSocketClient binanceWebSocketClient;
+    private final HotKlineCache hotKlineCache;
     private final TradeWebSocketHandler wsHandler;
     private final DistributedLockService lockService;
 
@@ -65,16 +68,16 @@ public class DataFetchJob extends QuartzJobBean {
     }
 
     private void fetchForSymbol(String symbol) {
+        String interval = apiProperties.defaultInterval();
         try {
-            var kline = binanceApiService.fetchLatestKline(
-                    symbol, apiProperties.defaultInterval());
-
-            if (kline.isPresent()) {
-                trackedSymbolService.resetErrorCount(symbol);
-                log.debug("DataFetch 成功: {} close={}", symbol, kline.get().getClosePrice());
-            } else {
-                handleFetchFailure(symbol, "fetchLatestKline 返回空值");
-            }
+            // 從熱 K 線緩衝的最後一根之後補起：寫入 DB 的同時追加到緩衝，WS 恢復時緩衝仍連續
+            List<BinanceKlineResponse> closed = binanceApiService.fetchClosedKlinesSince(
+                    symbol, interval, hotKlineCache.lastOpenTime(symbol, interval));
+            hotKlineCache.append(symbol, interval, closed);
+            trackedSymbolService.resetErrorCount(symbol);
+            log.debug("DataFetch 成功: {} 補齊 {} 根已收盤 K 線", symbol, closed.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             handleFetchFailure(symbol, e.getMessage());
         }
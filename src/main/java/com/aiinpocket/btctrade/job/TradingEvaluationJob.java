@@ -4,11 +4,9 @@ import com.aiinpocket.btctrade.config.BinanceApiProperties;
 import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
 import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
-import com.aiinpocket.btctrade.model.entity.Kline;
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
 import com.aiinpocket.btctrade.model.entity.TradePosition;
 import com.aiinpocket.btctrade.model.enums.*;
-import com.aiinpocket.btctrade.repository.KlineRepository;
-import com.aiinpocket.btctrade.repository.TradePositionRepository;
 import com.aiinpocket.btctrade.service.DistributedLockService;
 import com.aiinpocket.btctrade.service.*;
 import com.aiinpocket.btctrade.websocket.TradeWebSocketHandler;
@@ -17,22 +15,20 @@ import lombok.extern.slf4j.Slf4j;
 import org.quartz.JobExecutionContext;
 import org.springframework.scheduling.quartz.QuartzJobBean;
 import org.springframework.stereotype.Component;
-import org.ta4j.core.BarSeries;
 
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class TradingEvaluationJob extends QuartzJobBean {
 
-    private final KlineRepository klineRepo;
-    private final TradePositionRepository positionRepo;
-    private final BarSeriesFactory barSeriesFactory;
-    private final TechnicalIndicatorService indicatorService;
+    private final HotKlineCache hotKlineCache;
+    private final OpenPositionRegistry positionRegistry;
+    private final CapitalLedgerService ledgerService;
+    private final IndicatorStateRegistry indicatorStateRegistry;
     private final StrategyService strategyService;
     private final PositionService positionService;
     private final TradingStrategyProperties props;
@@ -54,21 +50,20 @@ public class TradingEvaluationJob extends QuartzJobBean {
         try {
             String symbol = apiProperties.defaultSymbol();
 
-            List<Kline> klines = klineRepo
-                    .findBySymbolAndIntervalTypeOrderByOpenTimeAsc(symbol, apiProperties.defaultInterval());
+            // 取熱 K 線緩衝的全部內容，不再每小時從 DB 載入整段歷史
+            KlineWindow klines = hotKlineCache.window(
+                    symbol, apiProperties.defaultInterval(), hotKlineCache.capacity());
 
             if (klines.size() < props.strategy().emaLong() + 10) {
                 log.warn("Not enough kline data for evaluation: {} bars", klines.size());
                 return;
             }
 
-            BarSeries series = barSeriesFactory.createFromKlines(klines, "live");
-            int lastIndex = series.getBarCount() - 1;
-            IndicatorSnapshot snapshot = indicatorService.computeAt(series, lastIndex);
+            IndicatorSnapshot snapshot = indicatorStateRegistry.snapshot(klines, props.strategy());
 
-            var openPosition = positionRepo
-                    .findBySymbolAndStatus(symbol, PositionStatus.OPEN)
-                    .orElse(null);
+            // 分散式鎖內同步幣對的持倉索引（其他 Pod 可能在上次執行後開平倉），再取全域持倉
+            positionRegistry.syncSymbol(symbol);
+            var openPosition = positionRegistry.find(null, symbol).orElse(null);
 
             TradeAction action = strategyService.evaluate(
                     snapshot, openPosition, Instant.now());
@@ -118,15 +113,7 @@ public class TradingEvaluationJob extends QuartzJobBean {
     }
 
     private BigDecimal calculateAvailableCapital() {
-        List<TradePosition> closedPositions = positionRepo
-                .findByBacktestOrderByEntryTimeAsc(false);
-
-        BigDecimal totalPnl = closedPositions.stream()
-                .filter(p -> p.getRealizedPnl() != null)
-                .map(TradePosition::getRealizedPnl)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        return BigDecimal.valueOf(props.risk().initialCapital()).add(totalPnl);
+        return BigDecimal.valueOf(props.risk().initialCapital()).add(ledgerService.realizedPnl(null));
     }
 
     private ExitReason determineExitReason(
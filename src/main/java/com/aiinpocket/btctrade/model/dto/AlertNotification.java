@@ -0,0 +1,46 @@
+package com.aiinpocket.btctrade.model.dto;
+
+import com.aiinpocket.btctrade.model.enums.AlertType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * 用戶提醒觸發通知 DTO。
+ *
+ * @param symbol    交易對符號，例如 "BTCUSDT"
+ * @param type      提醒條件類型
+ * @param threshold 用戶設定的門檻
+ * @param value     觸發時的價格或 RSI 值
+ * @param timestamp 觸發時間
+ */
+public record AlertNotification(
+        String symbol,
+        AlertType type,
+        BigDecimal threshold,
+        BigDecimal value,
+        Instant timestamp
+) {
+    /**
+     * 產生適合各通知管道的格式化訊息文字
+     */
+    public String toMessageText() {
+        String condition = switch (type) {
+            case PRICE_ABOVE -> "價格 ≥ $" + threshold.toPlainString();
+            case PRICE_BELOW -> "價格 ≤ $" + threshold.toPlainString();
+            case RSI_ABOVE -> "RSI ≥ " + threshold.toPlainString();
+            case RSI_BELOW -> "RSI ≤ " + threshold.toPlainString();
+        };
+
+        return String.format(
+                "🔔 BtcTrade 提醒\n\n" +
+                "交易對: %s\n" +
+                "條件: %s\n" +
+                "%s: %s\n" +
+                "時間: %s",
+                symbol, condition,
+                type.isPrice() ? "價格" : "RSI", value.toPlainString(),
+                timestamp
+        );
+    }
+}
@@ -0,0 +1,16 @@
+package com.aiinpocket.btctrade.model.dto;
+
+/**
+ * 回測用的 K 線欄位（依時間由舊到新的原始型別陣列，長度相同）。
+ * 只保留回測核心需要的欄位，取代 Kline Entity / BarSeries 的多份複本。
+ */
+public record BacktestBars(
+        long[] openTime,
+        double[] high,
+        double[] low,
+        double[] close
+) {
+    public int size() {
+        return openTime.length;
+    }
+}
@@ -31,8 +31,19 @@ public record BacktestReport(
         List<TradeDetail> trades,
         List<EquityCurvePoint> equityCurve,
 
-        boolean passed
+        boolean passed,
+
+        /** 交易序列的 Monte Carlo 分析（未執行時為 null） */
+        MonteCarloSummary monteCarlo
 ) {
+    public BacktestReport withMonteCarlo(MonteCarloSummary summary) {
+        return new BacktestReport(symbol, startDate, endDate, totalBars,
+                totalTrades, winningTrades, losingTrades, winRate,
+                totalReturn, annualizedReturn, maxDrawdown,
+                sharpeRatio, profitFactor, averageWin, averageLoss, maxConsecutiveLosses,
+                initialCapital, finalCapital, trades, equityCurve, passed, summary);
+    }
+
     public record TradeDetail(
             int tradeNumber,
             String direction,
@@ -0,0 +1,33 @@
+package com.aiinpocket.btctrade.model.dto;
+
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 單次 K 線收盤評估所需的全部用戶狀態（批次載入後唯讀）。
+ * 活躍用戶依策略參數內容分組（保留用戶 ID 順序），每位成員附帶持倉與累計已實現損益，
+ * 評估期間不再逐用戶查詢 DB。
+ *
+ * @param symbol 幣對
+ * @param groups 策略參數 → 使用該參數的用戶
+ */
+public record EvaluationContext(
+        String symbol,
+        Map<TradingStrategyProperties, List<Member>> groups
+) {
+
+    /**
+     * @param userId       用戶 ID
+     * @param openPosition 此幣對的未平倉持倉（無則 null）
+     * @param realizedPnl  實盤累計已實現損益（無已平倉紀錄時為 0）
+     */
+    public record Member(Long userId, TradePosition openPosition, BigDecimal realizedPnl) {}
+
+    public int userCount() {
+        return groups.values().stream().mapToInt(List::size).sum();
+    }
+}
@@ -21,4 +21,11 @@ public record IndicatorSnapshot(
         BigDecimal donchianLow,    // 前一根 K 線的 N 日最低價
         BigDecimal donchianExitHigh, // 前一根 K 線的 M 日最高價（空頭出場用）
         BigDecimal donchianExitLow   // 前一根 K 線的 M 日最低價（多頭出場用）
-) {}
+) {
+
+    /** 只有價格、沒有指標的快照（tick 觸發的停損出場，不在 K 線收盤時） */
+    public static IndicatorSnapshot priceOnly(BigDecimal price) {
+        return new IndicatorSnapshot(null, null, null, null, null, null, price,
+                false, false, false, false, false, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,27 @@
+package com.aiinpocket.btctrade.model.dto;
+
+/**
+ * 熱 K 線緩衝的唯讀快照（依時間由舊到新的原始型別欄位）。
+ * 各陣列長度相同，皆為呼叫端獨有的複本。
+ */
+public record KlineWindow(
+        String symbol,
+        String interval,
+        long[] openTime,
+        long[] closeTime,
+        double[] open,
+        double[] high,
+        double[] low,
+        double[] close,
+        double[] volume,
+        double[] quoteVolume,
+        int[] tradeCount
+) {
+    public int size() {
+        return openTime.length;
+    }
+
+    public double lastClose() {
+        return close[close.length - 1];
+    }
+}
@@ -0,0 +1,38 @@
+package com.aiinpocket.btctrade.model.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * 回測交易的 Monte Carlo 穩健度分析（只回傳分位數與直方圖，不含原始路徑）。
+ *
+ * <p>每條模擬路徑把交易的「資金報酬率」（pnl ÷ 進場前權益）重新排列或重抽後複利，
+ * 以平倉權益計算最終資金、最大回撤與最長連敗。
+ *
+ * <p>PERMUTATION 只改變交易順序，而複利與順序無關，每條路徑的最終資金都等於實際回測結果；
+ * 此模式只回報回撤與連敗分布，{@code finalEquity}、{@code probabilityOfLoss} 與
+ * {@code finalEquityHistogram} 為 null。
+ *
+ * @param method             PERMUTATION（打亂順序）或 BOOTSTRAP（重抽）
+ * @param probabilityOfLoss  最終資金低於初始資金的路徑比例
+ */
+public record MonteCarloSummary(
+        String method,
+        int simulations,
+        long seed,
+        Band finalEquity,
+        Band maxDrawdown,
+        Band maxLosingStreak,
+        BigDecimal probabilityOfLoss,
+        Histogram finalEquityHistogram,
+        Histogram maxDrawdownHistogram,
+        Histogram losingStreakHistogram
+) {
+
+    /** 分位數帶（5 / 25 / 50 / 75 / 95 百分位） */
+    public record Band(BigDecimal p5, BigDecimal p25, BigDecimal p50, BigDecimal p75, BigDecimal p95) {}
+
+    /**
+     * 等寬直方圖：第 i 格涵蓋 [min + i × binWidth, min + (i+1) × binWidth)，最後一格含上界。
+     */
+    public record Histogram(BigDecimal min, BigDecimal binWidth, int[] counts) {}
+}
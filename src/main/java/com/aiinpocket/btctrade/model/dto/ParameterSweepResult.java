@@ -0,0 +1,43 @@
+package com.aiinpocket.btctrade.model.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 參數掃描結果：每組參數一列，依年化報酬（高→低）、Sharpe（高→低）、最大回撤（淺→深）排序。
+ *
+ * @param combinations  實際回測的組合數
+ * @param indicatorSets 不同指標週期的組數（同組共用指標欄，只計算一次）
+ * @param skipped       因參數不合法（如 EMA 短週期 ≥ 長週期）略過的組合數
+ * @param staminaCost   本次掃描消耗的體力
+ */
+public record ParameterSweepResult(
+        String symbol,
+        Instant startDate,
+        Instant endDate,
+        int totalBars,
+        int combinations,
+        int indicatorSets,
+        int skipped,
+        int staminaCost,
+        long elapsedMs,
+        List<Row> rows
+) {
+
+    /**
+     * @param params 本組合覆寫的參數（僅含掃描軸，其餘沿用模板）
+     */
+    public record Row(
+            int rank,
+            Map<String, Number> params,
+            BigDecimal annualizedReturn,
+            BigDecimal maxDrawdown,
+            BigDecimal sharpeRatio,
+            BigDecimal totalReturn,
+            int totalTrades,
+            BigDecimal winRate,
+            BigDecimal profitFactor
+    ) {}
+}
@@ -0,0 +1,20 @@
+package com.aiinpocket.btctrade.model.dto;
+
+/**
+ * 歷史同步進度快照（供 SYNC_PROGRESS 廣播）。
+ *
+ * @param chunksDone    已完成的時間分段數（含續傳略過的分段）
+ * @param totalChunks   總分段數
+ * @param rowsWritten   累計實際新增的 K 線筆數
+ * @param rowsPerSecond 自同步開始以來的平均寫入速率
+ */
+public record SyncProgress(
+        int chunksDone,
+        int totalChunks,
+        long rowsWritten,
+        double rowsPerSecond
+) {
+    public int percent() {
+        return Math.min(99, (int) (100.0 * chunksDone / Math.max(1, totalChunks)));
+    }
+}
@@ -0,0 +1,43 @@
+package com.aiinpocket.btctrade.model.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Walk-forward 結果：每個視窗在樣本內挑出最佳參數，於緊接的樣本外區間驗證；
+ * {@code outOfSample} 為所有樣本外區間依序複利串接的報告（只含樣本外交易與權益）。
+ *
+ * @param walkForwardEfficiency 樣本外年化報酬 ÷ 樣本內平均年化報酬（樣本內平均 ≤ 0 時為 null）
+ */
+public record WalkForwardResult(
+        String symbol,
+        int inSampleDays,
+        int outOfSampleDays,
+        int combinations,
+        int staminaCost,
+        long elapsedMs,
+        List<Window> windows,
+        BigDecimal walkForwardEfficiency,
+        BacktestReport outOfSample
+) {
+
+    /**
+     * @param bestParams               樣本內排名第一的參數（僅含掃描軸）
+     * @param inSampleAnnualizedReturn 最佳參數的樣本內年化報酬
+     * @param outOfSampleReturn        同一參數在樣本外區間的報酬率
+     */
+    public record Window(
+            int index,
+            Instant inSampleStart,
+            Instant inSampleEnd,
+            Instant outOfSampleStart,
+            Instant outOfSampleEnd,
+            Map<String, Number> bestParams,
+            BigDecimal inSampleAnnualizedReturn,
+            BigDecimal inSampleSharpe,
+            BigDecimal outOfSampleReturn,
+            int outOfSampleTrades
+    ) {}
+}
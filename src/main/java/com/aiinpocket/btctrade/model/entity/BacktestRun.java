@@ -14,18 +14,26 @@ import java.time.Instant;
  * 對應 {@link com.aiinpocket.btctrade.model.dto.BacktestReport} 的序列化內容。
  * 選擇 JSON 而非正規化欄位，是因為回測報告結構複雜（含交易明細和權益曲線），
  * 且為唯讀資料，不需要 SQL 查詢其內部欄位。
+ * 參數掃描（{@code sweepAxesJson} 非 null）同樣以一筆紀錄排入佇列，結果為
+ * {@link com.aiinpocket.btctrade.model.dto.ParameterSweepResult} 的序列化內容；
+ * walk-forward 另外帶有樣本內 / 樣本外天數，結果為 {@link com.aiinpocket.btctrade.model.dto.WalkForwardResult}。
  *
- * <p>生命週期：
+ * <p>本表同時是回測的持久化工作佇列（見 {@link com.aiinpocket.btctrade.service.BacktestJobQueue}），生命週期：
  * <ol>
- *   <li>用戶發起回測 → 建立 PENDING 紀錄</li>
- *   <li>分配到 backtestExecutor 執行緒 → 更新為 RUNNING</li>
+ *   <li>用戶發起回測 → 建立 PENDING 紀錄（連同提交當下的策略參數快照）</li>
+ *   <li>任一節點依公平排程認領 → 更新為 RUNNING 並取得租約，執行中定期寫回已處理 K 線數並續約</li>
  *   <li>計算完成 → 更新為 COMPLETED，序列化結果到 resultJson</li>
- *   <li>計算失敗 → 更新為 FAILED，錯誤訊息寫入 resultJson</li>
+ *   <li>計算失敗 → 更新為 FAILED，錯誤訊息寫入 resultJson，並退還提交時扣除的體力</li>
+ *   <li>用戶取消 → 排隊中直接標記 CANCELLED；執行中設定取消旗標，由工作執行緒在下個進度點中止</li>
+ *   <li>節點當機或重啟 → 租約過期的 RUNNING 由任一節點收回重新排隊（超過重試上限才標記 FAILED 並退還體力）</li>
  * </ol>
  */
 @Entity
 @Table(name = "backtest_run", indexes = {
-        @Index(name = "idx_backtest_run_user", columnList = "user_id")
+        @Index(name = "idx_backtest_run_user", columnList = "user_id"),
+        @Index(name = "idx_backtest_run_status", columnList = "status, created_at"),
+        @Index(name = "idx_backtest_run_lease", columnList = "status, lease_expires_at"),
+        @Index(name = "idx_backtest_run_fingerprint", columnList = "params_fingerprint, symbol, start_date, end_date")
 })
 @Getter
 @Setter
@@ -48,6 +56,33 @@ public class BacktestRun {
     @JoinColumn(name = "strategy_template_id", nullable = false)
     private StrategyTemplate strategyTemplate;
 
+    /** 提交時模板的參數指紋（結果快取鍵；舊紀錄為 null） */
+    @Column(name = "params_fingerprint", length = 64)
+    private String paramsFingerprint;
+
+    /**
+     * 提交當下的策略參數快照（TradingStrategyProperties 的 JSON）。
+     * 排隊期間模板被修改或伺服器重啟後重新執行，仍使用提交時的參數。
+     */
+    @Column(name = "params_json", columnDefinition = "TEXT")
+    private String paramsJson;
+
+    /** 參數掃描與 walk-forward 的參數軸 JSON（一般回測為 null） */
+    @Column(name = "sweep_axes_json", columnDefinition = "TEXT")
+    private String sweepAxesJson;
+
+    /** Walk-forward 的樣本內視窗天數（其他種類為 null） */
+    @Column(name = "in_sample_days")
+    private Integer inSampleDays;
+
+    /** Walk-forward 的樣本外視窗天數，也是視窗滾動步長（其他種類為 null） */
+    @Column(name = "out_of_sample_days")
+    private Integer outOfSampleDays;
+
+    /** 提交時扣除的體力（失敗時退還；舊紀錄為 null） */
+    @Column(name = "stamina_cost")
+    private Integer staminaCost;
+
     /** 回測的交易對符號 */
     @Column(nullable = false, length = 20)
     private String symbol;
@@ -73,11 +108,42 @@ public class BacktestRun {
     @Column(columnDefinition = "TEXT")
     private String resultJson;
 
+    /** 已處理的 K 線數（指標計算 + 模擬兩階段累計，執行中定期寫回；參數掃描為已完成的組合數） */
+    @Column(name = "bars_processed", nullable = false, columnDefinition = "bigint default 0")
+    @Builder.Default
+    private long barsProcessed = 0;
+
+    /** 需要處理的 K 線總數（載入 K 線後才知道，之前為 0） */
+    @Column(name = "bars_total", nullable = false, columnDefinition = "bigint default 0")
+    @Builder.Default
+    private long barsTotal = 0;
+
+    /** 用戶要求取消執行中的回測（工作執行緒在下個進度點檢查） */
+    @Column(name = "cancel_requested", nullable = false, columnDefinition = "boolean default false")
+    @Builder.Default
+    private boolean cancelRequested = false;
+
+    /** 被認領執行的次數（重啟後重新排隊會累加） */
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    @Builder.Default
+    private int attempts = 0;
+
     /** 紀錄建立時間 */
     @Column(nullable = false, updatable = false)
     private Instant createdAt;
 
-    /** 回測完成時間（COMPLETED 或 FAILED 時填入） */
+    /** 最近一次開始執行的時間 */
+    private Instant startedAt;
+
+    /** 持有租約（執行中）的節點識別；結果只接受持有者寫回 */
+    @Column(name = "lease_owner", length = 64)
+    private String leaseOwner;
+
+    /** 租約到期時間（持有節點定期續約，過期後可被任一節點收回） */
+    @Column(name = "lease_expires_at")
+    private Instant leaseExpiresAt;
+
+    /** 回測完成時間（COMPLETED、FAILED 或 CANCELLED 時填入） */
     private Instant completedAt;
 
     /** 冒險事件計畫 JSON（回測提交時生成） */
@@ -89,6 +155,20 @@ public class BacktestRun {
     @Builder.Default
     private boolean adventureRewardsClaimed = false;
 
+    /** 參數掃描或 walk-forward（兩者都帶參數軸，結果都不是 BacktestReport） */
+    public boolean isSweep() {
+        return sweepAxesJson != null;
+    }
+
+    public boolean isWalkForward() {
+        return inSampleDays != null;
+    }
+
+    /** API 回應中的種類：BACKTEST / SWEEP / WALK_FORWARD */
+    public String kind() {
+        return isWalkForward() ? "WALK_FORWARD" : isSweep() ? "SWEEP" : "BACKTEST";
+    }
+
     @PrePersist
     void prePersist() {
         createdAt = Instant.now();
@@ -0,0 +1,72 @@
+package com.aiinpocket.btctrade.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+
+/**
+ * 用戶實盤資金帳本。
+ * 每次平倉在同一個交易內累加已實現損益、交易數與獲利次數，
+ * 評估時的可用資金與儀表板統計只需讀取一列，不必加總全部歷史持倉。
+ *
+ * <p>可用資金 = 策略模板的初始資金 + {@link #realizedPnl}（初始資金隨用戶切換模板而變，不存入帳本）。
+ * 舊版全域持倉（userId 為 null）記在 {@link #GLOBAL_USER_ID}。
+ */
+@Entity
+@Table(name = "capital_ledger",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_capital_ledger_user",
+                columnNames = {"user_id"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CapitalLedger {
+
+    /** 舊版全域持倉的帳本用戶 ID */
+    public static final long GLOBAL_USER_ID = 0L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** 帳本所屬用戶（{@link #GLOBAL_USER_ID} 為全域） */
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /** 累計已實現損益 */
+    @Column(name = "realized_pnl", nullable = false, precision = 20, scale = 2)
+    @Builder.Default
+    private BigDecimal realizedPnl = BigDecimal.ZERO;
+
+    /** 已平倉交易數 */
+    @Column(name = "trade_count", nullable = false)
+    private long tradeCount;
+
+    /** 獲利（已實現損益 > 0）的交易數 */
+    @Column(name = "win_count", nullable = false)
+    private long winCount;
+
+    /** 最近一次平倉時間 */
+    @Column(name = "last_closed_at")
+    private Instant lastClosedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    /** 尚無交易紀錄的空帳本（不寫入 DB） */
+    public static CapitalLedger empty(Long userId) {
+        return CapitalLedger.builder().userId(userId).updatedAt(Instant.now()).build();
+    }
+
+    /** 勝率（0 ~ 1，無交易時為 0） */
+    public BigDecimal winRate() {
+        return tradeCount > 0
+                ? BigDecimal.valueOf(winCount).divide(BigDecimal.valueOf(tradeCount), 4, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,49 @@
+package com.aiinpocket.btctrade.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * 歷史同步分段完成紀錄。
+ * 回補區間依固定起點切成等長時間分段並行拉取，每個完整分段寫完即記錄一筆，
+ * 服務中斷後重新同步時直接略過已完成的分段。
+ */
+@Entity
+@Table(name = "historical_sync_chunk",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_sync_chunk_symbol_interval_start",
+                columnNames = {"symbol", "interval_type", "chunk_start"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HistoricalSyncChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 20)
+    private String symbol;
+
+    @Column(name = "interval_type", nullable = false, length = 10)
+    private String intervalType;
+
+    /** 分段起點（含） */
+    @Column(name = "chunk_start", nullable = false)
+    private Instant chunkStart;
+
+    /** 分段終點（不含） */
+    @Column(name = "chunk_end", nullable = false)
+    private Instant chunkEnd;
+
+    /** 此分段實際新增的 K 線筆數 */
+    @Column(name = "rows_loaded", nullable = false)
+    private int rowsLoaded;
+
+    @Column(name = "completed_at", nullable = false)
+    private Instant completedAt;
+}
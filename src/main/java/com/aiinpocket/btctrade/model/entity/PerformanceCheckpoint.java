@@ -0,0 +1,62 @@
+package com.aiinpocket.btctrade.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * 策略績效的模擬檢查點 Entity。
+ * 每組策略參數（參數指紋）× 時段 × 幣對一筆，保存 {@code PerformanceSimulator} 的序列化狀態
+ * （指標引擎、持倉、資金與回撤 / 夏普累加器），排程只需從上次處理到的 K 線接續計算。
+ *
+ * <p>以模板 ID 為鍵的舊表 performance_checkpoint 於啟動時刪除（見 {@link com.aiinpocket.btctrade.config.SchemaUpgradeRunner}）。
+ */
+@Entity
+@Table(name = "fingerprint_checkpoint",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_fp_checkpoint_fingerprint_period_symbol",
+                columnNames = {"params_fingerprint", "period_key", "symbol"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PerformanceCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** 策略參數指紋（{@link StrategyTemplate#fingerprint()}） */
+    @Column(name = "params_fingerprint", length = 64, nullable = false)
+    private String paramsFingerprint;
+
+    /** 基準幣對（預設 BTCUSDT） */
+    @Column(length = 20, nullable = false)
+    private String symbol;
+
+    /** 時段 key（SINCE_2021, RECENT_5Y 等） */
+    @Column(name = "period_key", length = 20, nullable = false)
+    private String periodKey;
+
+    /** 策略參數 + K 線週期 + 檢查點版本的 SHA-256；與目前不同時檢查點作廢、全量重建 */
+    @Column(name = "params_hash", length = 64, nullable = false)
+    private String paramsHash;
+
+    /** 檢查點錨定的時段起點（滾動時段超過容許漂移才重新定錨） */
+    @Column(nullable = false)
+    private Instant periodStart;
+
+    /** 已處理的最後一根 K 線開盤時間 */
+    @Column(nullable = false)
+    private Instant lastOpenTime;
+
+    /** 序列化的模擬狀態 */
+    @Column(nullable = false)
+    private byte[] state;
+
+    /** 最後更新時間 */
+    @Column(nullable = false)
+    private Instant updatedAt;
+}
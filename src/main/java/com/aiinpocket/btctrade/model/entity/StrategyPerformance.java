@@ -8,16 +8,18 @@ import java.time.Instant;
 
 /**
  * 策略績效指標 Entity。
- * 儲存每個策略模板在各時間區段的回測績效數據，
- * 供前端策略對比表使用。
+ * 儲存每組策略參數（以參數指紋為鍵）在各時間區段的回測績效數據，供前端策略對比表使用；
+ * 參數相同的模板（例如未修改的預設模板複本）共用同一組結果。
+ *
+ * <p>以模板 ID 為鍵的舊表 strategy_performance 於啟動時刪除（見 {@link com.aiinpocket.btctrade.config.SchemaUpgradeRunner}）。
  */
 @Entity
-@Table(name = "strategy_performance",
+@Table(name = "fingerprint_performance",
         uniqueConstraints = @UniqueConstraint(
-                name = "uk_perf_template_period_symbol",
-                columnNames = {"strategy_template_id", "period_key", "symbol"}),
+                name = "uk_fp_perf_fingerprint_period_symbol",
+                columnNames = {"params_fingerprint", "period_key", "symbol"}),
         indexes = {
-                @Index(name = "idx_perf_template_symbol", columnList = "strategy_template_id, symbol")
+                @Index(name = "idx_fp_perf_fingerprint_symbol", columnList = "params_fingerprint, symbol")
         })
 @Getter
 @Setter
@@ -30,9 +32,9 @@ public class StrategyPerformance {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "strategy_template_id", nullable = false)
-    private StrategyTemplate strategyTemplate;
+    /** 策略參數指紋（{@link StrategyTemplate#fingerprint()}） */
+    @Column(name = "params_fingerprint", length = 64, nullable = false)
+    private String paramsFingerprint;
 
     /** 基準幣對（預設 BTCUSDT） */
     @Column(length = 20, nullable = false)
@@ -161,6 +161,13 @@ public class StrategyTemplate {
     @Column(nullable = false)
     private double rsiShortExitExtreme;
 
+    /**
+     * 參數指紋（{@link TradingStrategyProperties#fingerprint()}），涵蓋 {@link #toProperties()} 的所有欄位；
+     * 寫入前自動更新，績效結果與回測快取以此為鍵。
+     */
+    @Column(name = "params_fingerprint", length = 64)
+    private String paramsFingerprint;
+
     // ======== 時間戳 ========
 
     @Column(nullable = false, updatable = false)
@@ -172,11 +179,23 @@ public class StrategyTemplate {
     void prePersist() {
         createdAt = Instant.now();
         updatedAt = createdAt;
+        refreshFingerprint();
     }
 
     @PreUpdate
     void preUpdate() {
         updatedAt = Instant.now();
+        refreshFingerprint();
+    }
+
+    /** 依目前參數重算指紋（既有資料補值時也會呼叫） */
+    public void refreshFingerprint() {
+        paramsFingerprint = toProperties().fingerprint();
+    }
+
+    /** 參數指紋；尚未寫入 DB 的實例即時計算 */
+    public String fingerprint() {
+        return paramsFingerprint != null ? paramsFingerprint : toProperties().fingerprint();
     }
 
     /**
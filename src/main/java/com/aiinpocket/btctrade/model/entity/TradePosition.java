@@ -22,7 +22,7 @@ import java.time.Instant;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class TradePosition {
 
     @Id
@@ -65,6 +65,14 @@ public class TradePosition {
     @Column(name = "stop_loss_price", nullable = false, precision = 20, scale = 8)
     private BigDecimal stopLossPrice;
 
+    /** 移動停利啟動門檻（開倉時自策略參數帶入；null = 舊資料，不啟用移動停利） */
+    @Column(name = "trailing_activate_pct")
+    private Double trailingActivatePct;
+
+    /** 移動停利回撤距離（相對進場價的比例） */
+    @Column(name = "trailing_offset_pct")
+    private Double trailingOffsetPct;
+
     @Column(name = "realized_pnl", precision = 20, scale = 2)
     private BigDecimal realizedPnl;
 
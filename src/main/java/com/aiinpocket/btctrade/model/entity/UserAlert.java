@@ -0,0 +1,64 @@
+package com.aiinpocket.btctrade.model.entity;
+
+import com.aiinpocket.btctrade.model.enums.AlertType;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * 用戶自訂的價格 / 指標提醒。
+ * 建立時為啟用（armed）狀態；觸發一次後解除並記錄觸發值，不會重複通知。
+ */
+@Entity
+@Table(name = "user_alert", indexes = {
+        @Index(name = "idx_user_alert_user", columnList = "user_id"),
+        @Index(name = "idx_user_alert_armed", columnList = "armed, created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserAlert {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /** 交易對符號，例如 "BTCUSDT"（必須已存在於 TrackedSymbol） */
+    @Column(nullable = false, length = 20)
+    private String symbol;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private AlertType type;
+
+    /** 門檻（價格或 RSI 值） */
+    @Column(nullable = false, precision = 20, scale = 8)
+    private BigDecimal threshold;
+
+    /** 尚未觸發 */
+    @Column(nullable = false)
+    @Builder.Default
+    private boolean armed = true;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "triggered_at")
+    private Instant triggeredAt;
+
+    /** 觸發時的價格或 RSI 值 */
+    @Column(name = "triggered_value", precision = 20, scale = 8)
+    private BigDecimal triggeredValue;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = Instant.now();
+    }
+}
@@ -0,0 +1,25 @@
+package com.aiinpocket.btctrade.model.enums;
+
+/**
+ * 用戶自訂提醒的條件類型。
+ * 價格提醒逐 tick 以盤中高低點檢查；RSI 提醒在每根 K 線收盤時檢查。
+ */
+public enum AlertType {
+    /** 價格漲至門檻以上 */
+    PRICE_ABOVE,
+    /** 價格跌至門檻以下 */
+    PRICE_BELOW,
+    /** 收盤 RSI 高於等於門檻 */
+    RSI_ABOVE,
+    /** 收盤 RSI 低於等於門檻 */
+    RSI_BELOW;
+
+    public boolean isPrice() {
+        return this == PRICE_ABOVE || this == PRICE_BELOW;
+    }
+
+    /** 門檻以上觸發（否則為門檻以下） */
+    public boolean isAbove() {
+        return this == PRICE_ABOVE || this == RSI_ABOVE;
+    }
+}
@@ -5,15 +5,20 @@ package com.aiinpocket.btctrade.model.enums;
  * 追蹤用戶自訂策略回測的生命週期，從排隊到完成。
  *
  * <ul>
- *   <li>PENDING — 等待執行（已排入隊列，尚未分配執行緒）</li>
- *   <li>RUNNING — 執行中（已分配到 backtestExecutor 執行緒池中運算）</li>
+ *   <li>PENDING — 等待執行（已排入 DB 佇列，尚未分配工作執行緒）</li>
+ *   <li>RUNNING — 執行中（已由回測佇列的工作執行緒認領運算）</li>
  *   <li>COMPLETED — 完成（結果已序列化儲存到 resultJson 欄位）</li>
  *   <li>FAILED — 失敗（執行過程中拋出例外，錯誤訊息記錄在 resultJson）</li>
+ *   <li>CANCELLED — 已取消（用戶在排隊中或執行中取消）</li>
  * </ul>
+ *
+ * <p>資料庫的狀態檢查約束由 {@link com.aiinpocket.btctrade.config.SchemaUpgradeRunner} 於啟動時依本列舉重建，
+ * 新增值不需手動改表。
  */
 public enum BacktestRunStatus {
     PENDING,
     RUNNING,
     COMPLETED,
-    FAILED
+    FAILED,
+    CANCELLED
 }
@@ -3,6 +3,7 @@ package com.aiinpocket.btctrade.model.enums;
 public enum ExitReason {
     SIGNAL_REVERSAL,
     STOP_LOSS,
+    TRAILING_STOP,
     RSI_EXTREME,
     MAX_HOLDING_PERIOD
 }
@@ -1,5 +1,6 @@
 package com.aiinpocket.btctrade.model.enums;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
@@ -42,6 +43,22 @@ public enum PerformancePeriod {
         if (daysBack == null) {
             return ZonedDateTime.of(2021, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).toInstant();
         }
-        return now.minus(java.time.Duration.ofDays(daysBack));
+        return now.minus(Duration.ofDays(daysBack));
+    }
+
+    /**
+     * 滾動時段的重新定錨（rebase）判定：績效檢查點的起點固定在建立時的錨點，
+     * 接續計算時視窗只會向後延長；當錨點比目前應有的起點早超過
+     * max(1 天, 時段長度 2%) 時，以新的起點全量重建。SINCE_2021 起點固定，永不重建。
+     *
+     * @param anchoredStart 檢查點的時段起點
+     */
+    public boolean needsRebase(Instant anchoredStart, Instant now) {
+        if (daysBack == null) {
+            return !anchoredStart.equals(computeStartDate(now));
+        }
+        Duration tolerance = Duration.ofHours(Math.max(24, daysBack * 24L / 50));
+        Duration drift = Duration.between(anchoredStart, computeStartDate(now));
+        return drift.isNegative() || drift.compareTo(tolerance) > 0;
     }
 }
@@ -4,6 +4,7 @@ public enum PositionStatus {
     OPEN,
     CLOSED_BY_SIGNAL,
     CLOSED_BY_STOP_LOSS,
+    CLOSED_BY_TRAILING_STOP,
     CLOSED_BY_RSI_EXTREME,
     CLOSED_BY_MAX_HOLDING
 }
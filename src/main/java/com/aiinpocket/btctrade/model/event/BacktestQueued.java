@@ -0,0 +1,6 @@
+package com.aiinpocket.btctrade.model.event;
+
+/**
+ * 用戶回測已寫入佇列（交易提交後由回測佇列立即排程，不必等下一次輪詢）。
+ */
+public record BacktestQueued(Long runId, Long userId) {}
@@ -1,5 +1,7 @@
 package com.aiinpocket.btctrade.model.event;
 
-import com.aiinpocket.btctrade.model.entity.Kline;
-
-public record KlineTick(String symbol, Kline kline) {}
+/**
+ * 未收盤 K 線的即時價格更新。
+ * 只攜帶原始型別欄位：此事件每幣對每秒多次，不建立 Kline Entity。
+ */
+public record KlineTick(String symbol, double closePrice, double highPrice, double lowPrice, double volume) {}
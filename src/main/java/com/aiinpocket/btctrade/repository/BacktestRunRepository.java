@@ -2,9 +2,14 @@ package com.aiinpocket.btctrade.repository;
 
 import com.aiinpocket.btctrade.model.entity.BacktestRun;
 import com.aiinpocket.btctrade.model.enums.BacktestRunStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,12 +43,155 @@ public interface BacktestRunRepository extends JpaRepository<BacktestRun, Long>
     /** 檢查用戶是否有任何指定狀態的回測（PENDING + RUNNING 雙重檢查，防止 race condition） */
     boolean existsByUserIdAndStatusIn(Long userId, List<BacktestRunStatus> statuses);
 
+    /** 用戶指定狀態的回測數（限制每位用戶排隊中的回測數） */
+    long countByUserIdAndStatusIn(Long userId, List<BacktestRunStatus> statuses);
+
+    /** 排隊中回測的排程欄位（不載入結果與關聯） */
+    interface Queued {
+        Long getId();
+        Long getUserId();
+        Instant getStartDate();
+        Instant getEndDate();
+        Instant getCreatedAt();
+    }
+
+    @Query("SELECT r.id AS id, r.user.id AS userId, r.startDate AS startDate, r.endDate AS endDate, " +
+           "r.createdAt AS createdAt FROM BacktestRun r " +
+           "WHERE r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.PENDING ORDER BY r.createdAt")
+    List<Queued> findQueued(Pageable pageable);
+
+    /** 各用戶在整個叢集中執行中的回測數（公平排程用） */
+    interface UserLoad {
+        Long getUserId();
+        long getRunning();
+    }
+
+    @Query("SELECT r.user.id AS userId, COUNT(r) AS running FROM BacktestRun r " +
+           "WHERE r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING GROUP BY r.user.id")
+    List<UserLoad> countRunningByUser();
+
+    /**
+     * 認領排隊中的回測並取得租約。
+     * 子查詢以 {@code FOR UPDATE SKIP LOCKED} 鎖定該列：其他節點正在認領同一筆時直接略過（回傳 0），
+     * 不會等待對方交易結束；同一筆只會被一個節點認領。
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE backtest_run SET status = 'RUNNING', lease_owner = :owner, " +
+            "lease_expires_at = :leaseUntil, started_at = :now, attempts = attempts + 1 " +
+            "WHERE id = (SELECT id FROM backtest_run WHERE id = :id AND status = 'PENDING' " +
+            "FOR UPDATE SKIP LOCKED)",
+            nativeQuery = true)
+    int claim(@Param("id") Long id, @Param("owner") String owner,
+              @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+    /** 續約（只有仍持有租約的節點會成功） */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.leaseExpiresAt = :leaseUntil " +
+           "WHERE r.id = :id AND r.leaseOwner = :owner " +
+           "AND r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING")
+    int renewLease(Long id, String owner, Instant leaseUntil);
+
+    /** 寫回最終狀態（只有仍持有租約的節點會成功，租約被收回後的結果一律捨棄） */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.status = :status, r.resultJson = :resultJson, " +
+           "r.barsProcessed = :processed, r.barsTotal = :total, r.completedAt = :completedAt, " +
+           "r.leaseExpiresAt = null " +
+           "WHERE r.id = :id AND r.leaseOwner = :owner " +
+           "AND r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING")
+    int finish(Long id, String owner, BacktestRunStatus status, String resultJson,
+               long processed, long total, Instant completedAt);
+
+    /** 收回過期租約：已要求取消的直接標記 CANCELLED */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.CANCELLED, " +
+           "r.resultJson = :resultJson, r.completedAt = :now, r.leaseExpiresAt = null " +
+           "WHERE r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING " +
+           "AND r.cancelRequested = true AND (r.leaseExpiresAt IS NULL OR r.leaseExpiresAt < :now)")
+    int reclaimExpiredCancelled(Instant now, String resultJson);
+
+    /** 已達重試上限、租約過期的回測（標記 FAILED 並退還體力用） */
+    interface Exhausted {
+        Long getId();
+        Long getUserId();
+        Integer getStaminaCost();
+    }
+
+    @Query("SELECT r.id AS id, r.user.id AS userId, r.staminaCost AS staminaCost FROM BacktestRun r " +
+           "WHERE r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING " +
+           "AND r.attempts >= :maxAttempts AND (r.leaseExpiresAt IS NULL OR r.leaseExpiresAt < :now)")
+    List<Exhausted> findExpiredExhausted(Instant now, int maxAttempts);
+
+    /**
+     * 收回過期租約：已達重試上限的標記 FAILED。
+     * 逐筆帶原條件更新，多個節點同時收回同一筆時只有一方成功（回傳 1），由該節點退還體力。
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.FAILED, " +
+           "r.resultJson = :resultJson, r.completedAt = :now, r.leaseExpiresAt = null " +
+           "WHERE r.id = :id AND r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING " +
+           "AND r.attempts >= :maxAttempts AND (r.leaseExpiresAt IS NULL OR r.leaseExpiresAt < :now)")
+    int reclaimExpiredExhausted(Long id, Instant now, int maxAttempts, String resultJson);
+
+    /** 收回過期租約：其餘重新排隊 */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.PENDING, " +
+           "r.leaseOwner = null, r.leaseExpiresAt = null, r.barsProcessed = 0, r.barsTotal = 0 " +
+           "WHERE r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING " +
+           "AND (r.leaseExpiresAt IS NULL OR r.leaseExpiresAt < :now)")
+    int requeueExpired(Instant now);
+
+    /** 正常關機時交回本節點的租約，讓其他節點立即接手（已要求取消的留待過期收回） */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.PENDING, " +
+           "r.leaseOwner = null, r.leaseExpiresAt = null, r.barsProcessed = 0, r.barsTotal = 0 " +
+           "WHERE r.leaseOwner = :owner AND r.cancelRequested = false " +
+           "AND r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING")
+    int releaseLeases(String owner);
+
+    /** 取消排隊中的回測 */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.CANCELLED, " +
+           "r.completedAt = :now " +
+           "WHERE r.id = :id AND r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.PENDING")
+    int cancelPending(Long id, Instant now);
+
+    /** 要求取消執行中的回測 */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.cancelRequested = true " +
+           "WHERE r.id = :id AND r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING")
+    int requestCancel(Long id);
+
+    /** 寫回執行進度（回傳 0 表示租約已被收回） */
+    @Modifying
+    @Transactional
+    @Query("UPDATE BacktestRun r SET r.barsProcessed = :processed, r.barsTotal = :total " +
+           "WHERE r.id = :id AND r.leaseOwner = :owner " +
+           "AND r.status = com.aiinpocket.btctrade.model.enums.BacktestRunStatus.RUNNING")
+    int updateProgress(Long id, String owner, long processed, long total);
+
+    /** 取消旗標（其他節點或請求執行緒設定） */
+    @Query("SELECT r.cancelRequested FROM BacktestRun r WHERE r.id = :id")
+    boolean isCancelRequested(Long id);
+
     /** 查詢所有指定狀態的回測（用於系統監控或清理逾時任務） */
     List<BacktestRun> findByStatus(BacktestRunStatus status);
 
     /** 查詢多種狀態的回測（啟動時清理卡住的 RUNNING/PENDING） */
     List<BacktestRun> findByStatusIn(List<BacktestRunStatus> statuses);
 
+    /** 結果快取：相同參數指紋、幣對與區間的最近一筆已完成回測 */
+    Optional<BacktestRun> findFirstByParamsFingerprintAndSymbolAndStartDateAndEndDateAndStatusOrderByCompletedAtDesc(
+            String fingerprint, String symbol, Instant startDate, Instant endDate, BacktestRunStatus status);
+
     /** 刪除指定策略模板的所有回測紀錄（模板遷移/刪除時用） */
     void deleteByStrategyTemplateId(Long strategyTemplateId);
 }
@@ -0,0 +1,69 @@
+package com.aiinpocket.btctrade.repository;
+
+import com.aiinpocket.btctrade.model.entity.CapitalLedger;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 用戶資金帳本 Repository。
+ * 平倉時以條件更新累加；帳本不存在時改以歷史持倉建立（每位用戶只從歷史建立一次）。
+ */
+public interface CapitalLedgerRepository extends JpaRepository<CapitalLedger, Long> {
+
+    Optional<CapitalLedger> findByUserId(Long userId);
+
+    /** 觀察此幣對的用戶的帳本（收盤評估批次載入） */
+    @Query("SELECT l FROM CapitalLedger l " +
+            "WHERE l.userId IN (SELECT w.user.id FROM UserWatchlist w WHERE w.symbol = :symbol)")
+    List<CapitalLedger> findByWatchersOf(@Param("symbol") String symbol);
+
+    /** 所有帳本的已實現損益總和（舊版全域評估的資金基準） */
+    @Query("SELECT COALESCE(SUM(l.realizedPnl), 0) FROM CapitalLedger l")
+    BigDecimal sumRealizedPnl();
+
+    /** 累加一筆平倉（回傳 0 表示帳本尚未建立） */
+    @Modifying
+    @Transactional
+    @Query("UPDATE CapitalLedger l SET l.realizedPnl = l.realizedPnl + :pnl, l.tradeCount = l.tradeCount + 1, " +
+            "l.winCount = l.winCount + :win, l.lastClosedAt = :closedAt, l.updatedAt = :now " +
+            "WHERE l.userId = :userId")
+    int recordClose(@Param("userId") Long userId, @Param("pnl") BigDecimal pnl, @Param("win") long win,
+                    @Param("closedAt") Instant closedAt, @Param("now") Instant now);
+
+    /**
+     * 以歷史持倉建立帳本並計入本筆平倉（本筆以參數傳入並從歷史排除，不論是否已 flush 都只算一次）。
+     * 同時有其他交易建立同一帳本時不做任何事（回傳 0），呼叫端改走 {@link #recordClose}。
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO capital_ledger (user_id, realized_pnl, trade_count, win_count, last_closed_at, updated_at) " +
+            "SELECT :userId, COALESCE(SUM(realized_pnl), 0) + :pnl, COUNT(*) + 1, " +
+            "COUNT(*) FILTER (WHERE realized_pnl > 0) + :win, GREATEST(MAX(exit_time), :closedAt), NOW() " +
+            "FROM trade_position " +
+            "WHERE COALESCE(user_id, 0) = :userId AND is_backtest = false AND realized_pnl IS NOT NULL " +
+            "AND id <> :positionId " +
+            "ON CONFLICT ON CONSTRAINT uk_capital_ledger_user DO NOTHING",
+            nativeQuery = true)
+    int seedFromHistory(@Param("userId") Long userId, @Param("positionId") Long positionId,
+                        @Param("pnl") BigDecimal pnl, @Param("win") long win, @Param("closedAt") Instant closedAt);
+
+    /** 為所有尚無帳本、但有已平倉實盤持倉的用戶從歷史建立帳本（冪等） */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO capital_ledger (user_id, realized_pnl, trade_count, win_count, last_closed_at, updated_at) " +
+            "SELECT COALESCE(user_id, 0), SUM(realized_pnl), COUNT(*), " +
+            "COUNT(*) FILTER (WHERE realized_pnl > 0), MAX(exit_time), NOW() " +
+            "FROM trade_position WHERE is_backtest = false AND realized_pnl IS NOT NULL " +
+            "GROUP BY COALESCE(user_id, 0) " +
+            "ON CONFLICT ON CONSTRAINT uk_capital_ledger_user DO NOTHING",
+            nativeQuery = true)
+    int backfillFromHistory();
+}
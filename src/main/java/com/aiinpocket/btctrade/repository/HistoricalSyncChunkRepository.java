@@ -0,0 +1,15 @@
+package com.aiinpocket.btctrade.repository;
+
+import com.aiinpocket.btctrade.model.entity.HistoricalSyncChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface HistoricalSyncChunkRepository extends JpaRepository<HistoricalSyncChunk, Long> {
+
+    /** 查詢已完成分段的起點（用於斷點續傳） */
+    @Query("SELECT c.chunkStart FROM HistoricalSyncChunk c WHERE c.symbol = :symbol AND c.intervalType = :intervalType")
+    List<Instant> findCompletedChunkStarts(String symbol, String intervalType);
+}
@@ -21,11 +21,4 @@ public interface KlineRepository extends JpaRepository<Kline, Long> {
 
     @Query("SELECT COUNT(k) FROM Kline k WHERE k.symbol = :symbol AND k.intervalType = :intervalType")
     long countBySymbolAndIntervalType(String symbol, String intervalType);
-
-    boolean existsBySymbolAndIntervalTypeAndOpenTime(
-            String symbol, String intervalType, Instant openTime);
-
-    /** 批次查詢已存在的 openTime（用於減少 N+1 查詢） */
-    @Query("SELECT k.openTime FROM Kline k WHERE k.symbol = :symbol AND k.intervalType = :intervalType AND k.openTime IN :openTimes")
-    List<Instant> findExistingOpenTimes(String symbol, String intervalType, List<Instant> openTimes);
 }
@@ -0,0 +1,40 @@
+package com.aiinpocket.btctrade.repository;
+
+import com.aiinpocket.btctrade.model.entity.PerformanceCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 績效模擬檢查點 Repository。
+ */
+public interface PerformanceCheckpointRepository extends JpaRepository<PerformanceCheckpoint, Long> {
+
+    /** 參數組在指定幣對的所有時段檢查點 */
+    List<PerformanceCheckpoint> findByParamsFingerprintAndSymbol(String fingerprint, String symbol);
+
+    /** 檢查點的定位欄位（不含序列化狀態），批次計算前用來決定要載入的 K 線範圍 */
+    interface Head {
+        String getFingerprint();
+        String getPeriodKey();
+        String getParamsHash();
+        Instant getPeriodStart();
+        Instant getLastOpenTime();
+    }
+
+    @Query("SELECT c.paramsFingerprint AS fingerprint, c.periodKey AS periodKey, c.paramsHash AS paramsHash, " +
+           "c.periodStart AS periodStart, c.lastOpenTime AS lastOpenTime " +
+           "FROM PerformanceCheckpoint c WHERE c.symbol = :symbol")
+    List<Head> findHeadsBySymbol(String symbol);
+
+    /** 清理已無任何模板使用的參數組檢查點 */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PerformanceCheckpoint c WHERE c.paramsFingerprint NOT IN :fingerprints")
+    int deleteByParamsFingerprintNotIn(Collection<String> fingerprints);
+}
@@ -39,6 +39,9 @@ public interface StrategyTemplateRepository extends JpaRepository<StrategyTempla
     /** 計算用戶自建的模板數量（用於限制每位用戶的模板上限） */
     int countByUserId(Long userId);
 
+    /** 尚未計算參數指紋的舊模板（啟動時補值） */
+    List<StrategyTemplate> findByParamsFingerprintIsNull();
+
     /** 按名稱前綴查詢系統預設模板（用於職業→策略映射） */
     Optional<StrategyTemplate> findFirstByNameStartingWithAndSystemDefaultTrue(String namePrefix);
 }
@@ -3,7 +3,12 @@ package com.aiinpocket.btctrade.repository;
 import com.aiinpocket.btctrade.model.entity.TradePosition;
 import com.aiinpocket.btctrade.model.enums.PositionStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,6 +16,10 @@ public interface TradePositionRepository extends JpaRepository<TradePosition, Lo
 
     Optional<TradePosition> findBySymbolAndStatus(String symbol, PositionStatus status);
 
+    List<TradePosition> findByStatusAndBacktest(PositionStatus status, boolean backtest);
+
+    List<TradePosition> findBySymbolAndStatusAndBacktest(String symbol, PositionStatus status, boolean backtest);
+
     List<TradePosition> findByBacktestOrderByEntryTimeAsc(boolean backtest);
 
     List<TradePosition> findBySymbolAndBacktestOrderByEntryTimeAsc(String symbol, boolean backtest);
@@ -22,4 +31,18 @@ public interface TradePositionRepository extends JpaRepository<TradePosition, Lo
     List<TradePosition> findByUserIdAndBacktestOrderByEntryTimeAsc(Long userId, boolean backtest);
 
     List<TradePosition> findByUserIdAndSymbolAndBacktestOrderByEntryTimeAsc(Long userId, String symbol, boolean backtest);
+
+    List<TradePosition> findTop100ByUserIdAndSymbolAndBacktestOrderByEntryTimeDesc(Long userId, String symbol, boolean backtest);
+
+    /**
+     * 上調未平倉持倉的停損價（多頭只能上調、空頭只能下調）。
+     * 多個 Pod 各自依 tick 移動停損時，DB 只保留最有利的一個；回傳 0 表示已平倉或 DB 已有更好的停損。
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TradePosition p SET p.stopLossPrice = :stop " +
+            "WHERE p.id = :id AND p.status = com.aiinpocket.btctrade.model.enums.PositionStatus.OPEN " +
+            "AND ((p.direction = com.aiinpocket.btctrade.model.enums.PositionDirection.LONG AND p.stopLossPrice < :stop) " +
+            "OR (p.direction = com.aiinpocket.btctrade.model.enums.PositionDirection.SHORT AND p.stopLossPrice > :stop))")
+    int tightenStopLoss(@Param("id") Long id, @Param("stop") BigDecimal stop);
 }
@@ -0,0 +1,38 @@
+package com.aiinpocket.btctrade.repository;
+
+import com.aiinpocket.btctrade.model.entity.UserAlert;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 用戶提醒 Repository。
+ * 觸發以條件更新解除（armed = true 才更新），多個 Pod 同時觸發同一筆提醒時只有一個會通知。
+ */
+public interface UserAlertRepository extends JpaRepository<UserAlert, Long> {
+
+    List<UserAlert> findByArmedTrue();
+
+    /** 其他 Pod 新建的提醒（提醒引擎定期增量載入） */
+    List<UserAlert> findByArmedTrueAndCreatedAtAfter(Instant since);
+
+    List<UserAlert> findByUserIdOrderByCreatedAtDesc(Long userId);
+
+    Optional<UserAlert> findByIdAndUserId(Long id, Long userId);
+
+    long countByUserIdAndArmedTrue(Long userId);
+
+    /** 解除並記錄觸發值（回傳 0 表示已被觸發或刪除） */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserAlert a SET a.armed = false, a.triggeredAt = :now, a.triggeredValue = :value " +
+            "WHERE a.id = :id AND a.armed = true")
+    int fire(@Param("id") Long id, @Param("value") BigDecimal value, @Param("now") Instant now);
+}
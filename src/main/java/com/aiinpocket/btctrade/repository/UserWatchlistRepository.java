@@ -25,13 +25,22 @@ public interface UserWatchlistRepository extends JpaRepository<UserWatchlist, Lo
             "AND w.user.lastLoginAt > :cutoff")
     List<Long> findUserIdsBySymbol(@Param("symbol") String symbol, @Param("cutoff") Instant cutoff);
 
-    /** 查詢觀察此幣對且有啟用策略的活躍用戶 ID（排除系統帳號 + 7 天未登入） */
-    @Query("SELECT DISTINCT w.user.id FROM UserWatchlist w " +
+    /** 有啟用策略的用戶與其策略模板 ID */
+    interface ActiveStrategyUser {
+        Long getUserId();
+        Long getTemplateId();
+    }
+
+    /** 查詢觀察此幣對且有啟用策略的活躍用戶與其模板 ID（排除系統帳號 + 7 天未登入），依用戶 ID 排序 */
+    @Query("SELECT DISTINCT w.user.id AS userId, w.user.activeStrategyTemplateId AS templateId " +
+            "FROM UserWatchlist w " +
             "WHERE w.symbol = :symbol " +
             "AND w.user.activeStrategyTemplateId IS NOT NULL " +
             "AND w.user.oauthProvider != 'SYSTEM' " +
-            "AND w.user.lastLoginAt > :cutoff")
-    List<Long> findActiveStrategyUserIdsBySymbol(@Param("symbol") String symbol, @Param("cutoff") Instant cutoff);
+            "AND w.user.lastLoginAt > :cutoff " +
+            "ORDER BY w.user.id")
+    List<ActiveStrategyUser> findActiveStrategyUsersBySymbol(@Param("symbol") String symbol,
+                                                             @Param("cutoff") Instant cutoff);
 
     long countByUserId(Long userId);
 
@@ -0,0 +1,257 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BinanceApiProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.AlertNotification;
+import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
+import com.aiinpocket.btctrade.model.entity.UserAlert;
+import com.aiinpocket.btctrade.model.event.KlineClosed;
+import com.aiinpocket.btctrade.model.event.KlineTick;
+import com.aiinpocket.btctrade.repository.UserAlertRepository;
+import com.aiinpocket.btctrade.service.notification.NotificationDispatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用戶價格 / 指標提醒引擎。
+ *
+ * <p>每個幣對維護兩份 {@link AlertThresholdIndex}：
+ * <ul>
+ *   <li>價格提醒：每個 {@link KlineTick} 以該 tick 期間的價格範圍探測（WS 讀取執行緒上，不查 DB）</li>
+ *   <li>RSI 提醒：收盤時排入該幣對的評估條，從 {@link IndicatorStateRegistry} 取系統預設參數的共用指標狀態，
+ *       以收盤 RSI 探測；幣對沒有 RSI 提醒時不排入</li>
+ * </ul>
+ * 探測成本只與觸發筆數有關，與啟用中的提醒總數無關。觸發的提醒交給單一背景執行緒，
+ * 以條件更新解除後經 {@link NotificationDispatcher} 通知；多個 Pod 同時觸發時只有解除成功者通知。
+ *
+ * <p>啟動時載入全部啟用中的提醒，之後定期增量載入其他 Pod 新建的提醒；
+ * 在其他 Pod 刪除的提醒留在索引中直到觸發，屆時條件更新不成立而不通知。
+ */
+@Service
+@Slf4j
+public class AlertEngine {
+
+    /** 增量載入的重疊時間（涵蓋建立後較晚提交的交易） */
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+
+    private final UserAlertRepository alertRepo;
+    private final NotificationDispatcher notificationDispatcher;
+    private final HotKlineCache hotKlineCache;
+    private final IndicatorStateRegistry indicatorStateRegistry;
+    private final StripedEvaluationExecutor evaluationExecutor;
+    private final TradingStrategyProperties props;
+    private final BinanceApiProperties apiProperties;
+    private final Map<String, SymbolAlerts> symbols = new ConcurrentHashMap<>();
+    /** 已加入索引或觸發後等待解除的提醒 */
+    private final Map<Long, UserAlert> alerts = new ConcurrentHashMap<>();
+    private final ExecutorService firer = Executors.newSingleThreadExecutor(r -> new Thread(r, "alerts"));
+    private final Counter firedCounter;
+    private volatile Instant lastRefresh = Instant.EPOCH;
+
+    public AlertEngine(UserAlertRepository alertRepo, NotificationDispatcher notificationDispatcher,
+                       HotKlineCache hotKlineCache, IndicatorStateRegistry indicatorStateRegistry,
+                       StripedEvaluationExecutor evaluationExecutor, TradingStrategyProperties props,
+                       BinanceApiProperties apiProperties, MeterRegistry meterRegistry) {
+        this.alertRepo = alertRepo;
+        this.notificationDispatcher = notificationDispatcher;
+        this.hotKlineCache = hotKlineCache;
+        this.indicatorStateRegistry = indicatorStateRegistry;
+        this.evaluationExecutor = evaluationExecutor;
+        this.props = props;
+        this.apiProperties = apiProperties;
+        Gauge.builder("alerts.armed", alerts, Map::size)
+                .description("提醒引擎中啟用的提醒數")
+                .register(meterRegistry);
+        this.firedCounter = Counter.builder("alerts.fired")
+                .description("觸發並通知的提醒數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void load() {
+        lastRefresh = Instant.now();
+        List<UserAlert> armed = alertRepo.findByArmedTrue();
+        armed.forEach(this::register);
+        log.info("[提醒] 載入 {} 筆啟用中的提醒", armed.size());
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        firer.shutdown();
+        firer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Scheduled(fixedDelayString = "${alerts.refresh-interval-ms:5000}",
+            initialDelayString = "${alerts.refresh-interval-ms:5000}")
+    public void refresh() {
+        Instant now = Instant.now();
+        try {
+            alertRepo.findByArmedTrueAndCreatedAtAfter(lastRefresh.minus(REFRESH_OVERLAP)).forEach(this::register);
+            lastRefresh = now;
+        } catch (Exception e) {
+            log.warn("[提醒] 增量載入失敗，下次重試: {}", e.getMessage());
+        }
+    }
+
+    /** 加入索引（已存在時忽略）；需在提醒已提交後呼叫 */
+    public void register(UserAlert alert) {
+        if (!alert.isArmed() || alerts.putIfAbsent(alert.getId(), alert) != null) return;
+        symbols.computeIfAbsent(alert.getSymbol(), k -> new SymbolAlerts()).add(alert);
+    }
+
+    public void unregister(UserAlert alert) {
+        if (alerts.remove(alert.getId()) == null) return;
+        SymbolAlerts state = symbols.get(alert.getSymbol());
+        if (state != null) state.remove(alert);
+    }
+
+    public int size() {
+        return alerts.size();
+    }
+
+    // ── 探測 ──
+
+    @EventListener
+    public void onKlineTick(KlineTick tick) {
+        List<Hit> hits = symbols.computeIfAbsent(tick.symbol(), k -> new SymbolAlerts()).probePrice(tick);
+        if (!hits.isEmpty()) {
+            firer.execute(() -> fire(hits));
+        }
+    }
+
+    @EventListener
+    public void onKlineClosed(KlineClosed event) {
+        SymbolAlerts state = symbols.get(event.symbol());
+        if (state == null || !state.hasIndicatorAlerts()
+                || !apiProperties.defaultInterval().equals(event.interval())) {
+            return;
+        }
+        evaluationExecutor.submit(event.symbol(), "alerts", event.kline().getCloseTime(),
+                () -> evaluateRsi(event, state));
+    }
+
+    private void evaluateRsi(KlineClosed event, SymbolAlerts state) {
+        String symbol = event.symbol();
+        KlineWindow window = hotKlineCache.window(symbol, apiProperties.defaultInterval(),
+                hotKlineCache.capacity(), event.kline().getOpenTime().toEpochMilli());
+        if (window.size() < props.strategy().emaLong() + 10) {
+            log.debug("[提醒] {} K 線不足，跳過 RSI 提醒", symbol);
+            return;
+        }
+        // 與收盤評估共用同一份指標狀態：系統預設參數的用戶已讓狀態前進到本根時直接取快照
+        IndicatorSnapshot snapshot = indicatorStateRegistry.snapshot(window, props.strategy());
+        if (snapshot.rsi() == null) return;
+        List<Hit> hits = state.probeRsi(snapshot.rsi().doubleValue());
+        if (!hits.isEmpty()) {
+            firer.execute(() -> fire(hits));
+        }
+    }
+
+    // ── 觸發 ──
+
+    private record Hit(UserAlert alert, double value) {}
+
+    private void fire(List<Hit> hits) {
+        Instant now = Instant.now();
+        for (Hit hit : hits) {
+            UserAlert alert = hit.alert();
+            BigDecimal value = BigDecimal.valueOf(hit.value()).setScale(8, RoundingMode.HALF_UP);
+            try {
+                if (alertRepo.fire(alert.getId(), value, now) == 1) {
+                    firedCounter.increment();
+                    log.info("[提醒] userId={} {} {} {} 觸發 @ {}", alert.getUserId(), alert.getSymbol(),
+                            alert.getType(), alert.getThreshold().toPlainString(), value.toPlainString());
+                    notificationDispatcher.notifyAlert(alert.getUserId(), new AlertNotification(
+                            alert.getSymbol(), alert.getType(), alert.getThreshold(), value, now));
+                }
+                alerts.remove(alert.getId());
+            } catch (Exception e) {
+                // 仍為啟用狀態：放回索引，由下一次探測重新觸發
+                log.error("[提醒] alertId={} 解除失敗: {}", alert.getId(), e.getMessage(), e);
+                SymbolAlerts state = symbols.get(alert.getSymbol());
+                if (state != null && alerts.containsKey(alert.getId())) state.add(alert);
+            }
+        }
+    }
+
+    /** 單一幣對的提醒索引與 tick 狀態（以本物件為鎖） */
+    private final class SymbolAlerts {
+
+        private final AlertThresholdIndex prices = new AlertThresholdIndex();
+        private final AlertThresholdIndex rsi = new AlertThresholdIndex();
+        private final TickRange range = new TickRange();
+        private List<Hit> hits;
+        private double rsiValue;
+        private final AlertThresholdIndex.HitSink priceSink = this::onPriceHit;
+        private final AlertThresholdIndex.HitSink rsiSink = this::onRsiHit;
+
+        synchronized void add(UserAlert alert) {
+            (alert.getType().isPrice() ? prices : rsi).add(alert.getId(), alert.getType().isAbove(),
+                    alert.getThreshold().doubleValue());
+        }
+
+        synchronized void remove(UserAlert alert) {
+            (alert.getType().isPrice() ? prices : rsi).remove(alert.getId());
+        }
+
+        synchronized boolean hasIndicatorAlerts() {
+            return rsi.size() > 0;
+        }
+
+        synchronized List<Hit> probePrice(KlineTick tick) {
+            range.update(tick);
+            if (prices.size() == 0) return List.of();
+            prices.probe(range.high(), range.low(), priceSink);
+            return takeHits();
+        }
+
+        synchronized List<Hit> probeRsi(double value) {
+            rsiValue = value;
+            rsi.probe(value, value, rsiSink);
+            return takeHits();
+        }
+
+        private void onPriceHit(long alertId, double threshold) {
+            UserAlert alert = alerts.get(alertId);
+            if (alert == null) return;
+            // 回報觸發方向的極值（向上穿越取高點、向下取低點）
+            collect(alert, alert.getType().isAbove() ? range.high() : range.low());
+        }
+
+        private void onRsiHit(long alertId, double threshold) {
+            UserAlert alert = alerts.get(alertId);
+            if (alert != null) collect(alert, rsiValue);
+        }
+
+        private void collect(UserAlert alert, double value) {
+            if (hits == null) hits = new ArrayList<>();
+            hits.add(new Hit(alert, value));
+        }
+
+        private List<Hit> takeHits() {
+            List<Hit> result = hits;
+            hits = null;
+            return result == null ? List.of() : result;
+        }
+    }
+}
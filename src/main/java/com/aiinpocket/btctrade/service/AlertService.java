@@ -0,0 +1,77 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.AlertProperties;
+import com.aiinpocket.btctrade.model.entity.UserAlert;
+import com.aiinpocket.btctrade.model.enums.AlertType;
+import com.aiinpocket.btctrade.repository.TrackedSymbolRepository;
+import com.aiinpocket.btctrade.repository.UserAlertRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 用戶提醒的建立、查詢與刪除，並同步 {@link AlertEngine} 的索引。
+ * 建立時先提交再加入索引：尚未提交的提醒若被觸發，條件更新找不到資料列而不會通知。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AlertService {
+
+    private static final BigDecimal RSI_MAX = BigDecimal.valueOf(100);
+
+    private final UserAlertRepository alertRepo;
+    private final TrackedSymbolRepository trackedSymbolRepo;
+    private final AlertEngine alertEngine;
+    private final AlertProperties alertProps;
+
+    public List<UserAlert> getAlerts(Long userId) {
+        return alertRepo.findByUserIdOrderByCreatedAtDesc(userId);
+    }
+
+    /**
+     * 建立提醒。
+     * 會檢查：1) 幣對是否已在全域追蹤 2) 門檻是否有效 3) 啟用中的提醒是否已達上限
+     */
+    public UserAlert createAlert(Long userId, String symbol, AlertType type, BigDecimal threshold) {
+        String upperSymbol = symbol.toUpperCase();
+        if (!trackedSymbolRepo.existsBySymbol(upperSymbol)) {
+            throw new IllegalArgumentException("幣對 " + upperSymbol + " 尚未在全域追蹤中");
+        }
+        if (threshold.signum() <= 0 || (!type.isPrice() && threshold.compareTo(RSI_MAX) >= 0)) {
+            throw new IllegalArgumentException(type.isPrice() ? "價格門檻必須大於 0" : "RSI 門檻必須介於 0 與 100 之間");
+        }
+        if (alertRepo.countByUserIdAndArmedTrue(userId) >= alertProps.maxPerUser()) {
+            throw new IllegalArgumentException("啟用中的提醒已達上限 " + alertProps.maxPerUser() + " 筆");
+        }
+
+        UserAlert alert = alertRepo.save(UserAlert.builder()
+                .userId(userId)
+                .symbol(upperSymbol)
+                .type(type)
+                .threshold(threshold)
+                .build());
+        alertEngine.register(alert);
+        log.info("[提醒] 使用者 {} 建立提醒: {} {} {}", userId, upperSymbol, type, threshold.toPlainString());
+        return alert;
+    }
+
+    /**
+     * 刪除提醒（已觸發的提醒也可刪除）。
+     *
+     * @return false 如果提醒不存在或不屬於此使用者
+     */
+    public boolean deleteAlert(Long userId, Long alertId) {
+        return alertRepo.findByIdAndUserId(alertId, userId)
+                .map(alert -> {
+                    alertRepo.delete(alert);
+                    alertEngine.unregister(alert);
+                    log.info("[提醒] 使用者 {} 刪除提醒 {}", userId, alertId);
+                    return true;
+                })
+                .orElse(false);
+    }
+}
@@ -0,0 +1,129 @@
+package com.aiinpocket.btctrade.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 單一幣對（或單一指標）的提醒門檻索引。
+ *
+ * <p>每筆提醒佔一個 slot，以兩個索引堆（{@link IndexedMinHeap}）依門檻排序：
+ * <ul>
+ *   <li>門檻以上觸發（最小堆）：範圍高點 ≥ 堆頂即觸發</li>
+ *   <li>門檻以下觸發（最大堆）：範圍低點 ≤ 堆頂即觸發</li>
+ * </ul>
+ * 每次探測只比對兩個堆頂：沒有觸發時 O(1)，每筆觸發 O(log n)，與啟用中的提醒總數無關。
+ * 觸發者自索引移除（提醒只觸發一次）。非執行緒安全，由呼叫端同步。
+ */
+public final class AlertThresholdIndex {
+
+    /** 觸發的提醒 */
+    @FunctionalInterface
+    public interface HitSink {
+        void hit(long alertId, double threshold);
+    }
+
+    private final IndexedMinHeap above = new IndexedMinHeap();
+    /** 最大堆以負值存入最小堆 */
+    private final IndexedMinHeap below = new IndexedMinHeap();
+
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private long[] ids;
+    private double[] threshold;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount;
+    private int size;
+
+    public AlertThresholdIndex() {
+        this(16);
+    }
+
+    public AlertThresholdIndex(int expectedSize) {
+        allocate(Math.max(16, expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long alertId) {
+        return slotById.containsKey(alertId);
+    }
+
+    /**
+     * 加入提醒（同 ID 已存在時取代）。
+     *
+     * @param isAbove 門檻以上觸發；false 為門檻以下觸發
+     */
+    public void add(long alertId, boolean isAbove, double threshold) {
+        remove(alertId);
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot();
+        slotById.put(alertId, slot);
+        this.ids[slot] = alertId;
+        this.threshold[slot] = threshold;
+        if (isAbove) {
+            above.add(slot, threshold);
+        } else {
+            below.add(slot, -threshold);
+        }
+        size++;
+    }
+
+    public boolean remove(long alertId) {
+        Integer slot = slotById.get(alertId);
+        if (slot == null) return false;
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * 以一段期間的數值範圍探測，取出所有觸發的提醒（觸發者自索引移除）。
+     * 單一數值（例如收盤 RSI）以 high = low 探測。
+     *
+     * @return 觸發筆數
+     */
+    public int probe(double high, double low, HitSink sink) {
+        int hits = 0;
+        while (!above.isEmpty() && above.topKey() <= high) {
+            int slot = above.top();
+            sink.hit(ids[slot], threshold[slot]);
+            removeSlot(slot);
+            hits++;
+        }
+        while (!below.isEmpty() && -below.topKey() >= low) {
+            int slot = below.top();
+            sink.hit(ids[slot], threshold[slot]);
+            removeSlot(slot);
+            hits++;
+        }
+        return hits;
+    }
+
+    // ── slot 管理 ──
+
+    private void removeSlot(int slot) {
+        above.remove(slot);
+        below.remove(slot);
+        slotById.remove(ids[slot]);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    private int nextSlot() {
+        if (slotCount == ids.length) {
+            allocate(ids.length * 2);
+        }
+        return slotCount++;
+    }
+
+    private void allocate(int capacity) {
+        ids = ids == null ? new long[capacity] : Arrays.copyOf(ids, capacity);
+        threshold = threshold == null ? new double[capacity] : Arrays.copyOf(threshold, capacity);
+        above.ensureSlots(capacity);
+        below.ensureSlots(capacity);
+    }
+}
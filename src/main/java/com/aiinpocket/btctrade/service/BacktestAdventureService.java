@@ -132,6 +132,9 @@ public class BacktestAdventureService {
         if (run.getStatus() != BacktestRunStatus.COMPLETED) {
             throw new IllegalStateException("回測尚未完成");
         }
+        if (run.isSweep()) {
+            throw new IllegalStateException("參數掃描與 walk-forward 沒有冒險獎勵");
+        }
         if (run.isAdventureRewardsClaimed()) {
             throw new IllegalStateException("獎勵已領取");
         }
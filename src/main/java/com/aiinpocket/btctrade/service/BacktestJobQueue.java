@@ -0,0 +1,355 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BacktestQueueProperties;
+import com.aiinpocket.btctrade.model.enums.BacktestRunStatus;
+import com.aiinpocket.btctrade.model.event.BacktestQueued;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository.Exhausted;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository.Queued;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository.UserLoad;
+import com.aiinpocket.btctrade.websocket.TradeWebSocketHandler;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用戶回測的持久化工作佇列。
+ *
+ * <p>佇列就是 {@code backtest_run} 中的 PENDING 紀錄，提交的請求執行緒只負責寫入，
+ * 運算一律在本類別的固定工作執行緒上進行（不會因為佇列滿而落到 Tomcat 請求執行緒）。
+ * 每個 Pod 都是工作節點，共用同一張表，回測自然分散到各副本：
+ * <ul>
+ *   <li>公平排程：整個叢集中執行中回測較少的用戶優先；同等時區間越短越優先，
+ *       排隊時間依 {@code aging-ms-per-year} 折抵區間長度，長區間不會永遠排不到</li>
+ *   <li>認領以 {@code FOR UPDATE SKIP LOCKED} 條件更新（PENDING → RUNNING）完成並取得租約：
+ *       多個節點同時排程時互相略過已被鎖定的列，取消與認領同時發生時只有一方成功</li>
+ *   <li>租約：持有節點每 {@code heartbeat-interval-ms} 續約；節點當機時租約過期，
+ *       任一節點在排程時收回並重新排隊。進度與最終結果都只接受租約持有者寫回</li>
+ *   <li>協作式取消：排隊中直接標記 CANCELLED；執行中由 {@link BacktestProgress} 回呼在下個進度點中止</li>
+ *   <li>進度（已處理 K 線數）定期寫回 DB，並經 {@code /ws/trades} 的用戶頻道推送 {@code BACKTEST_JOB} 訊息</li>
+ *   <li>正常關機時交回本節點的租約立即重新排隊；超過重試上限的過期回測才標記 FAILED，並與一般失敗一樣退還體力</li>
+ * </ul>
+ */
+@Service
+@Slf4j
+public class BacktestJobQueue {
+
+    /** 每次排程最多掃描的排隊紀錄數 */
+    private static final int SCAN_LIMIT = 500;
+    private static final double MS_PER_YEAR = Duration.ofDays(365).toMillis();
+
+    private final BacktestRunRepository runRepo;
+    private final UserBacktestService userBacktestService;
+    private final TradeWebSocketHandler wsHandler;
+    private final BacktestQueueProperties props;
+    /** 本節點識別（寫入 lease_owner） */
+    private final String nodeId;
+    /** 回測運算執行緒 */
+    private final ExecutorService workers;
+    /** 排程執行緒：所有排程都在此序列化執行（也避免在交易提交回呼中存取 DB） */
+    private final ExecutorService dispatcher;
+
+    /** 本節點執行中的回測 */
+    private final Map<Long, Job> active = new ConcurrentHashMap<>();
+    /** 已推送給用戶的排隊位置（只在變動時推送） */
+    private final Map<Long, Integer> announcedPositions = new ConcurrentHashMap<>();
+
+    public BacktestJobQueue(BacktestRunRepository runRepo,
+                            UserBacktestService userBacktestService,
+                            TradeWebSocketHandler wsHandler,
+                            BacktestQueueProperties props) {
+        this.runRepo = runRepo;
+        this.userBacktestService = userBacktestService;
+        this.wsHandler = wsHandler;
+        this.props = props;
+        this.nodeId = props.nodeId() != null && !props.nodeId().isBlank() ? props.nodeId() : defaultNodeId();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, props.workers()),
+                Thread.ofPlatform().name("backtest-worker-", 0).daemon(true).factory());
+        this.dispatcher = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("backtest-dispatch").daemon(true).factory());
+        log.info("[回測佇列] 節點 {} 啟動，工作執行緒 {} 條，租約 {}ms", nodeId, props.workers(), props.leaseMs());
+    }
+
+    /** 主機名稱（K8s 中即 Pod 名稱）加隨機後綴：同名容器重啟後不會誤認先前的租約 */
+    private static String defaultNodeId() {
+        String host = System.getenv("HOSTNAME");
+        if (host == null || host.isBlank()) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (Exception e) {
+                host = "node";
+            }
+        }
+        String suffix = HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextInt());
+        return (host.length() > 55 ? host.substring(0, 55) : host) + "-" + suffix;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dispatcher.shutdownNow();
+        workers.shutdownNow();
+        // 交回租約讓其他節點立即接手；之後本節點工作執行緒的寫回都會因非持有者而被忽略
+        try {
+            int released = runRepo.releaseLeases(nodeId);
+            if (released > 0) {
+                log.info("[回測佇列] 節點 {} 關機，交回 {} 筆執行中的回測", nodeId, released);
+            }
+        } catch (Exception e) {
+            log.warn("[回測佇列] 交回租約失敗，待租約過期後由其他節點收回: {}", e.getMessage());
+        }
+    }
+
+    /** 新回測提交後立即排程（交易提交後才看得到 PENDING 紀錄） */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQueued(BacktestQueued event) {
+        wake();
+    }
+
+    /** 定期輪詢：補上其他途徑寫入的排隊紀錄，並更新排隊位置 */
+    @Scheduled(fixedDelayString = "${backtest.queue.poll-interval-ms:2000}")
+    public void poll() {
+        wake();
+    }
+
+    private void wake() {
+        try {
+            dispatcher.execute(this::dispatch);
+        } catch (Exception e) {
+            log.debug("[回測佇列] 排程器已關閉: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 取消回測。
+     *
+     * @return true 表示已直接取消（排隊中）；false 表示已要求執行中的回測在下個進度點中止
+     * @throws IllegalArgumentException 紀錄不存在或不屬於該用戶
+     * @throws IllegalStateException    回測已結束
+     */
+    public boolean cancel(Long runId, Long userId) {
+        userBacktestService.getRun(runId, userId);
+        if (runRepo.cancelPending(runId, Instant.now()) == 1) {
+            announcedPositions.remove(runId);
+            push(userId, runId, BacktestRunStatus.CANCELLED, 0, 0, null);
+            log.info("[回測佇列] 用戶 {} 取消排隊中的回測: runId={}", userId, runId);
+            wake();
+            return true;
+        }
+        if (runRepo.requestCancel(runId) == 1) {
+            Job job = active.get(runId);
+            if (job != null) {
+                job.cancelled = true;
+            }
+            log.info("[回測佇列] 用戶 {} 要求取消執行中的回測: runId={}", userId, runId);
+            return false;
+        }
+        throw new IllegalStateException("回測已結束，無法取消");
+    }
+
+    /** 定期續約本節點執行中的回測；續約失敗表示租約已被收回，該回測在下個進度點中止 */
+    @Scheduled(fixedDelayString = "${backtest.queue.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        if (active.isEmpty()) {
+            return;
+        }
+        Instant leaseUntil = Instant.now().plusMillis(props.leaseMs());
+        for (Job job : active.values()) {
+            try {
+                if (runRepo.renewLease(job.runId, nodeId, leaseUntil) == 0) {
+                    log.warn("[回測佇列] 租約已被收回，中止本節點的執行: runId={}", job.runId);
+                    job.leaseLost = true;
+                }
+            } catch (Exception e) {
+                log.warn("[回測佇列] 續約失敗: runId={}, error={}", job.runId, e.getMessage());
+            }
+        }
+    }
+
+    /** 收回過期租約（持有節點當機、網路中斷或舊版本遺留的 RUNNING） */
+    void reclaimExpiredLeases(Instant now) {
+        int cancelled = runRepo.reclaimExpiredCancelled(now, "{\"error\":\"回測已取消\"}");
+        int failed = 0;
+        for (Exhausted run : runRepo.findExpiredExhausted(now, props.maxAttempts())) {
+            if (runRepo.reclaimExpiredExhausted(run.getId(), now, props.maxAttempts(),
+                    "{\"error\":\"回測多次因伺服器重啟中斷，請重新提交\"}") == 1) {
+                failed++;
+                userBacktestService.refundStamina(run.getId(), run.getUserId(), run.getStaminaCost());
+                push(run.getUserId(), run.getId(), BacktestRunStatus.FAILED, 0, 0, null);
+            }
+        }
+        int requeued = runRepo.requeueExpired(now);
+        if (cancelled + failed + requeued > 0) {
+            log.info("[回測佇列] 收回過期租約：{} 筆重新排隊，{} 筆失敗，{} 筆取消", requeued, failed, cancelled);
+        }
+    }
+
+    /** 認領可執行的回測交給工作執行緒，並推送其餘回測的排隊位置 */
+    private void dispatch() {
+        try {
+            Instant now = Instant.now();
+            reclaimExpiredLeases(now);
+            List<Queued> queued = runRepo.findQueued(PageRequest.of(0, SCAN_LIMIT));
+            Map<Long, Integer> running = new HashMap<>();
+            for (UserLoad load : runRepo.countRunningByUser()) {
+                running.put(load.getUserId(), (int) load.getRunning());
+            }
+
+            int free = Math.max(1, props.workers()) - active.size();
+            int position = 0;
+            Set<Long> waiting = new HashSet<>();
+            for (Queued q : order(queued, running, now, props.agingMsPerYear())) {
+                if (free > 0) {
+                    if (runRepo.claim(q.getId(), nodeId, now, now.plusMillis(props.leaseMs())) == 1) {
+                        free--;
+                        start(q);
+                    }
+                    continue;
+                }
+                position++;
+                waiting.add(q.getId());
+                Integer previous = announcedPositions.put(q.getId(), position);
+                if (previous == null || previous != position) {
+                    push(q.getUserId(), q.getId(), BacktestRunStatus.PENDING, 0, 0, position);
+                }
+            }
+            announcedPositions.keySet().retainAll(waiting);
+        } catch (Exception e) {
+            log.error("[回測佇列] 排程失敗: {}", e.getMessage(), e);
+        }
+    }
+
+    private void start(Queued q) {
+        Job job = new Job(q.getId(), q.getUserId());
+        active.put(job.runId, job);
+        announcedPositions.remove(job.runId);
+        push(job.userId, job.runId, BacktestRunStatus.RUNNING, 0, 0, null);
+        workers.execute(() -> {
+            try {
+                BacktestRunStatus status = userBacktestService.executeBacktest(job.runId, nodeId, job);
+                if (status != null) {
+                    push(job.userId, job.runId, status,
+                            status == BacktestRunStatus.COMPLETED ? job.total : job.processed, job.total, null);
+                }
+            } catch (Exception e) {
+                log.error("[回測佇列] 回測執行異常: runId={}", job.runId, e);
+            } finally {
+                active.remove(job.runId);
+                wake();
+            }
+        });
+    }
+
+    /**
+     * 公平排程順序：逐一挑出「目前執行中回測最少的用戶」中分數最低的回測，
+     * 挑出後該用戶的執行數加一，讓其他用戶的回測插入其後。
+     * 分數 = 區間年數 − 等待時間 ÷ {@code agingMsPerYear}；同分時先提交者優先。
+     *
+     * @param running 各用戶目前執行中的回測數
+     */
+    static List<Queued> order(List<Queued> queued, Map<Long, Integer> running, Instant now, long agingMsPerYear) {
+        Map<Long, Integer> load = new HashMap<>(running);
+        Comparator<Queued> byPriority = Comparator
+                .<Queued>comparingInt(q -> load.getOrDefault(q.getUserId(), 0))
+                .thenComparingDouble(q -> score(q, now, agingMsPerYear))
+                .thenComparing(Queued::getCreatedAt);
+        List<Queued> remaining = new ArrayList<>(queued);
+        List<Queued> order = new ArrayList<>(queued.size());
+        while (!remaining.isEmpty()) {
+            Queued next = remaining.getFirst();
+            for (Queued q : remaining) {
+                if (byPriority.compare(q, next) < 0) next = q;
+            }
+            remaining.remove(next);
+            order.add(next);
+            load.merge(next.getUserId(), 1, Integer::sum);
+        }
+        return order;
+    }
+
+    private static double score(Queued q, Instant now, long agingMsPerYear) {
+        double years = Duration.between(q.getStartDate(), q.getEndDate()).toMillis() / MS_PER_YEAR;
+        long waitedMs = Math.max(0, Duration.between(q.getCreatedAt(), now).toMillis());
+        return agingMsPerYear > 0 ? years - (double) waitedMs / agingMsPerYear : years;
+    }
+
+    private void push(Long userId, Long runId, BacktestRunStatus status, long processed, long total,
+                      Integer position) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "BACKTEST_JOB");
+        payload.put("runId", runId);
+        payload.put("status", status.name());
+        payload.put("barsProcessed", processed);
+        payload.put("barsTotal", total);
+        payload.put("percent", total > 0 ? (int) (processed * 100 / total) : 0);
+        if (position != null) {
+            payload.put("queuePosition", position);
+        }
+        payload.put("timestamp", System.currentTimeMillis());
+        wsHandler.sendToUser(userId, payload);
+    }
+
+    /** 執行中的回測：進度回報、寫回與取消檢查（節流） */
+    private final class Job implements BacktestProgress {
+        private final long runId;
+        private final long userId;
+        private final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(props.progressIntervalMs());
+        private volatile boolean cancelled;
+        private volatile boolean leaseLost;
+        private long lastReport = System.nanoTime();
+        private long processed;
+        private long total;
+
+        private Job(long runId, long userId) {
+            this.runId = runId;
+            this.userId = userId;
+        }
+
+        @Override
+        public void onBars(long processed, long total) {
+            this.processed = processed;
+            this.total = total;
+            if (cancelled) {
+                throw new CancellationException("回測已取消");
+            }
+            if (leaseLost) {
+                throw new CancellationException("租約已失效");
+            }
+            long now = System.nanoTime();
+            if (now - lastReport < intervalNanos) {
+                return;
+            }
+            lastReport = now;
+            if (runRepo.updateProgress(runId, nodeId, processed, total) == 0) {
+                leaseLost = true;
+                throw new CancellationException("租約已失效");
+            }
+            // 取消旗標也可能由其他節點的請求設定
+            if (runRepo.isCancelRequested(runId)) {
+                cancelled = true;
+                throw new CancellationException("回測已取消");
+            }
+            push(userId, runId, BacktestRunStatus.RUNNING, processed, total, null);
+        }
+    }
+}
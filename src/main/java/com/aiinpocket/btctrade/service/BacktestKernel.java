@@ -0,0 +1,353 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.enums.PositionDirection;
+import com.aiinpocket.btctrade.model.enums.TradeAction;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 回測核心：在原始型別欄位上逐根模擬，迴圈內不配置物件（交易紀錄除外，每筆一個）。
+ *
+ * <p>進出場規則與 BigDecimal 版本完全相同；金額的捨入點（倉位資金取到 0.01、數量與停損價取到 1e-8）
+ * 以 double 重現，BigDecimal 只在 {@link BacktestService} 組報告時才建立。
+ * 步驟順序：
+ * <ol>
+ *   <li>持倉中：更新移動停利，以最高/最低價檢查日內停損</li>
+ *   <li>讀取本根的指標欄（{@link IndicatorColumns}，可由多組風控參數共用）</li>
+ *   <li>持倉中：最長持倉 / RSI 極值 / 時間止損出場（以收盤價）</li>
+ *   <li>無持倉：進場判斷</li>
+ * </ol>
+ * 核心本身無狀態（模擬狀態在 {@link Cursor}），可跨執行緒重複使用；
+ * 逐根的 {@link #step} 也供檢查點式的績效模擬（{@link PerformanceSimulator}）接續使用。
+ */
+public final class BacktestKernel {
+
+    private static final int LONG = 1;
+    private static final int SHORT = -1;
+
+    private final StrategyService strategy;
+    private final double stopLossPct;
+    private final double activatePct;
+    private final double offsetPct;
+    private final double posPct;
+    private final int maxHoldingBars;
+    private final int timeStopBars;
+    private final double longExitExtreme;
+    private final double shortExitExtreme;
+    private final double initialCapital;
+    private final int warmupBars;
+
+    public BacktestKernel(TradingStrategyProperties props, IntervalParams intervalParams,
+                          StrategyService strategy) {
+        this.strategy = strategy;
+        var risk = props.risk();
+        this.stopLossPct = risk.stopLossPct();
+        this.activatePct = risk.trailingActivatePct();
+        this.offsetPct = risk.trailingOffsetPct();
+        this.posPct = Math.max(0.01, Math.min(1.0, risk.positionSizePct()));
+        this.maxHoldingBars = risk.maxHoldingDays() * intervalParams.barsPerDay();
+        this.timeStopBars = risk.timeStopDays() * intervalParams.barsPerDay();
+        this.longExitExtreme = props.rsi().longExitExtreme();
+        this.shortExitExtreme = props.rsi().shortExitExtreme();
+        this.initialCapital = risk.initialCapital();
+        this.warmupBars = Math.max(props.strategy().emaLong(), 35);
+    }
+
+    /** 單筆已平倉交易（價格與金額皆為 double，尚未捨入為報告精度） */
+    public record Trade(PositionDirection direction, int entryBar, int exitBar,
+                       double entryPrice, double exitPrice, double pnl, double capitalUsed,
+                       String exitReason) {}
+
+    /**
+     * 回測結果。
+     *
+     * @param equityBars   權益曲線取樣點的 bar index
+     * @param equity       對應的權益
+     * @param openPosition 結束時未平倉部位（僅在不強制平倉時，否則為 null）
+     */
+    public record Result(int warmup, List<Trade> trades, int[] equityBars, double[] equity,
+                         double initialCapital, double finalCapital, Trade openPosition) {}
+
+    /**
+     * 逐根模擬的可變狀態：可用資金與持倉（dir == 0 表示無持倉）。
+     * 只有原始型別欄位，可序列化為檢查點後由 {@link #readFrom} 還原並接續 {@link #step}。
+     */
+    public static final class Cursor {
+        private double capital;
+        private int dir;
+        private double entryPrice;
+        private double quantity;
+        private double capitalUsed;
+        private double stopPrice;
+        private double peakPnlPct;
+        private int entryBar;
+
+        private Cursor(double capital) {
+            this.capital = capital;
+        }
+
+        public boolean flat() {
+            return dir == 0;
+        }
+
+        /** 可用資金（不含持倉中已投入的資金） */
+        public double capital() {
+            return capital;
+        }
+
+        /** 以收盤價計算的權益（含持倉浮動損益） */
+        public double equity(double close) {
+            return dir == 0 ? capital : capital + capitalUsed + pnl(dir, entryPrice, close, quantity);
+        }
+
+        /** 以 {@code close} 計價的未平倉部位（無持倉時為 null） */
+        public Trade openPosition(int bar, double close) {
+            if (dir == 0) return null;
+            return new Trade(direction(dir), entryBar, bar, entryPrice, close,
+                    pnl(dir, entryPrice, close, quantity), capitalUsed, null);
+        }
+
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeDouble(capital);
+            out.writeByte(dir);
+            out.writeDouble(entryPrice);
+            out.writeDouble(quantity);
+            out.writeDouble(capitalUsed);
+            out.writeDouble(stopPrice);
+            out.writeDouble(peakPnlPct);
+            out.writeInt(entryBar);
+        }
+
+        public static Cursor readFrom(DataInput in) throws IOException {
+            Cursor c = new Cursor(in.readDouble());
+            c.dir = in.readByte();
+            c.entryPrice = in.readDouble();
+            c.quantity = in.readDouble();
+            c.capitalUsed = in.readDouble();
+            c.stopPrice = in.readDouble();
+            c.peakPnlPct = in.readDouble();
+            c.entryBar = in.readInt();
+            return c;
+        }
+    }
+
+    /** 以初始資金、無持倉開始的狀態 */
+    public Cursor newCursor() {
+        return new Cursor(initialCapital);
+    }
+
+    public double initialCapital() {
+        return initialCapital;
+    }
+
+    /** 指標穩定前不交易的 K 線數（自序列第一根起算） */
+    public int warmupBars() {
+        return warmupBars;
+    }
+
+    /**
+     * @param columns 以 {@code props.strategy()} 的指標週期在同一段 {@code bars} 上計算的指標欄
+     */
+    public Result run(BacktestBars bars, IndicatorColumns columns, boolean forceCloseAtEnd) {
+        return run(bars, columns, 0, bars.size(), forceCloseAtEnd);
+    }
+
+    /**
+     * 只在 {@code [fromBar, toBar)} 區間內交易（walk-forward 的樣本內/樣本外視窗）。
+     * 指標欄涵蓋整段 K 線，視窗前的歷史即為指標暖機；交易紀錄與權益曲線的 bar index 皆為整段的絕對位置。
+     */
+    public Result run(BacktestBars bars, IndicatorColumns columns, int fromBar, int toBar, boolean forceCloseAtEnd) {
+        return run(bars, columns, fromBar, toBar, forceCloseAtEnd, BacktestProgress.NONE);
+    }
+
+    /**
+     * 同上，每 {@link BacktestProgress#STRIDE} 根回報一次進度（接在指標計算之後，為整體進度的後半段）。
+     */
+    public Result run(BacktestBars bars, IndicatorColumns columns, int fromBar, int toBar, boolean forceCloseAtEnd,
+                      BacktestProgress progress) {
+        if (columns.size() != bars.size()) {
+            throw new IllegalArgumentException("指標欄長度與 K 線數不符");
+        }
+        if (fromBar < 0 || toBar > bars.size() || fromBar >= toBar) {
+            throw new IllegalArgumentException("回測區間不合法: [" + fromBar + ", " + toBar + ")");
+        }
+        final double[] highs = bars.high();
+        final double[] lows = bars.low();
+        final double[] closes = bars.close();
+
+        final int warmup = Math.max(fromBar, warmupBars);
+
+        // 權益曲線降採樣：超過 2000 點時只取樣
+        int equitySampleStep = Math.max(1, (toBar - warmup) / 2000);
+        int[] equityBars = new int[Math.max(16, (toBar - warmup) / equitySampleStep + 16)];
+        double[] equity = new double[equityBars.length];
+        int equityCount = 0;
+
+        List<Trade> trades = new ArrayList<>();
+        Cursor c = newCursor();
+
+        final long total = 2L * bars.size();
+        for (int i = warmup; i < toBar; i++) {
+            if ((i & (BacktestProgress.STRIDE - 1)) == 0) {
+                progress.onBars(bars.size() + i, total);
+            }
+            double close = closes[i];
+            Trade closed = step(c, i, highs[i], lows[i], close, columns.rsi(i), columns.adx(i),
+                    columns.longTrigger(i), columns.trendBullish(i), columns.shortTrigger(i));
+            if (closed != null) {
+                trades.add(closed);
+            }
+
+            // ====== 權益曲線（降採樣）======
+            // 始終保存交易發生的 bar + 按步長取樣 + 最後一根
+            int barOffset = i - warmup;
+            boolean isTradeBoundary = (c.dir == 0 && barOffset > 0) || barOffset == 0;
+            if (barOffset % equitySampleStep == 0 || isTradeBoundary || i == toBar - 1) {
+                if (equityCount == equityBars.length) {
+                    equityBars = Arrays.copyOf(equityBars, equityCount * 2);
+                    equity = Arrays.copyOf(equity, equityCount * 2);
+                }
+                equityBars[equityCount] = i;
+                equity[equityCount] = c.equity(close);
+                equityCount++;
+            }
+        }
+
+        // 結束時處理未平倉部位
+        Trade openPosition = null;
+        if (c.dir != 0) {
+            int last = toBar - 1;
+            Trade open = c.openPosition(last, closes[last]);
+            if (forceCloseAtEnd) {
+                c.capital += open.capitalUsed() + open.pnl();
+                trades.add(new Trade(open.direction(), open.entryBar(), last, open.entryPrice(), open.exitPrice(),
+                        open.pnl(), open.capitalUsed(), "END_OF_BACKTEST"));
+            } else {
+                // 績效計算模式：回報未平倉部位，finalCapital 含已投入資金但不含未實現損益
+                openPosition = open;
+                c.capital += open.capitalUsed();
+            }
+        }
+
+        return new Result(warmup, trades, Arrays.copyOf(equityBars, equityCount),
+                Arrays.copyOf(equity, equityCount), initialCapital, c.capital, openPosition);
+    }
+
+    /**
+     * 模擬第 {@code i} 根 K 線（步驟 1~4），回傳本根平倉的交易（每根至多一筆），無則為 null。
+     * 呼叫端負責只在暖機結束後呼叫。
+     */
+    public Trade step(Cursor c, int i, double high, double low, double close, double rsi, double adx,
+                      boolean longTrigger, boolean trendBullish, boolean shortTrigger) {
+        Trade closed = null;
+
+        // ====== 步驟 1：更新移動停利 + 日內停損檢查 ======
+        if (c.dir != 0) {
+            int dir = c.dir;
+            double entryPrice = c.entryPrice;
+            double best = dir == LONG ? high : low;
+            double pnlPct = dir == LONG ? (best - entryPrice) / entryPrice : (entryPrice - best) / entryPrice;
+            if (pnlPct > c.peakPnlPct) {
+                c.peakPnlPct = pnlPct;
+            }
+            if (c.peakPnlPct >= activatePct) {
+                // 新停損 = 進場價 × (1 ± (峰值浮盈 - offset))，至少保本
+                double trailLevel = Math.max(0, c.peakPnlPct - offsetPct);
+                double newStop = roundHalfUp(dir == LONG
+                        ? entryPrice * (1 + trailLevel)
+                        : entryPrice * (1 - trailLevel), 8);
+                // 只允許停損單方向移動（多頭只能上調，空頭只能下調）
+                if (dir == LONG ? newStop > c.stopPrice : newStop < c.stopPrice) {
+                    c.stopPrice = newStop;
+                }
+            }
+
+            if (dir == LONG ? low <= c.stopPrice : high >= c.stopPrice) {
+                double pnl = pnl(dir, entryPrice, c.stopPrice, c.quantity);
+                c.capital += c.capitalUsed + pnl;
+                closed = new Trade(direction(dir), c.entryBar, i, entryPrice, c.stopPrice, pnl, c.capitalUsed,
+                        pnl >= 0 ? "TRAILING_STOP" : "STOP_LOSS");
+                c.dir = 0;
+            }
+        }
+
+        // ====== 步驟 2：本根指標由呼叫端傳入 ======
+
+        // ====== 步驟 3：持倉中 → 檢查其他出場條件 ======
+        if (c.dir != 0) {
+            int dir = c.dir;
+            int barsHeld = i - c.entryBar;
+            String exitReason = null;
+            if (barsHeld >= maxHoldingBars) {
+                exitReason = "MAX_HOLDING";
+            } else if (dir == LONG ? rsi > longExitExtreme : rsi < shortExitExtreme) {
+                exitReason = "RSI_EXTREME";
+            } else if (timeStopBars > 0 && barsHeld >= timeStopBars
+                    && pnl(dir, c.entryPrice, close, c.quantity) < 0) {
+                // 時間止損：持倉超過 N bars 仍虧損 → 出場
+                exitReason = "TIME_STOP";
+            }
+            if (exitReason != null) {
+                double pnl = pnl(dir, c.entryPrice, close, c.quantity);
+                c.capital += c.capitalUsed + pnl;
+                closed = new Trade(direction(dir), c.entryBar, i, c.entryPrice, close, pnl, c.capitalUsed,
+                        exitReason);
+                c.dir = 0;
+            }
+        }
+
+        // ====== 步驟 4：無持倉 → 檢查進場 ======
+        if (c.dir == 0 && c.capital > 0) {
+            TradeAction action = strategy.evaluateEntry(rsi, adx, longTrigger, trendBullish, shortTrigger);
+            if (action == TradeAction.LONG_ENTRY || action == TradeAction.SHORT_ENTRY) {
+                int dir = action == TradeAction.LONG_ENTRY ? LONG : SHORT;
+                c.dir = dir;
+                c.entryPrice = close;
+                // 按倉位比例計算進場資金（positionSizePct=1.0 為全倉，0.5 為半倉）
+                c.capitalUsed = roundHalfDown(c.capital * posPct, 2);
+                c.quantity = roundHalfDown(c.capitalUsed / close, 8);
+                c.stopPrice = roundHalfUp(dir == LONG
+                        ? close * (1 - stopLossPct)
+                        : close * (1 + stopLossPct), 8);
+                c.peakPnlPct = 0;
+                c.entryBar = i;
+                c.capital -= c.capitalUsed;
+            }
+        }
+        return closed;
+    }
+
+    private static double pnl(int dir, double entryPrice, double exitPrice, double quantity) {
+        return dir == LONG ? (exitPrice - entryPrice) * quantity : (entryPrice - exitPrice) * quantity;
+    }
+
+    private static PositionDirection direction(int dir) {
+        return dir == LONG ? PositionDirection.LONG : PositionDirection.SHORT;
+    }
+
+    private static final double[] POW10 = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+    /** 超過此量級的 double 已無小數位可捨入 */
+    private static final double EXACT_LIMIT = 0x1p52;
+
+    /** 等同 {@code BigDecimal.setScale(scale, HALF_UP)}（正值） */
+    static double roundHalfUp(double value, int scale) {
+        double scaled = value * POW10[scale];
+        if (Math.abs(scaled) >= EXACT_LIMIT) return value;
+        return Math.floor(scaled + 0.5) / POW10[scale];
+    }
+
+    /** 等同 {@code BigDecimal.setScale(scale, HALF_DOWN)}（正值） */
+    static double roundHalfDown(double value, int scale) {
+        double scaled = value * POW10[scale];
+        if (Math.abs(scaled) >= EXACT_LIMIT) return value;
+        return Math.ceil(scaled - 0.5) / POW10[scale];
+    }
+}
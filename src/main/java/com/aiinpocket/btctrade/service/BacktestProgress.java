@@ -0,0 +1,27 @@
+package com.aiinpocket.btctrade.service;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 回測逐根運算的進度回報與協作式取消點。
+ *
+ * <p>指標計算與核心模擬各走一次整段 K 線，每 {@link #STRIDE} 根呼叫一次 {@link #onBars}，
+ * 因此 {@code total} 為 K 線數的兩倍。實作可在回呼中拋出 {@link CancellationException} 中止回測；
+ * 回呼頻率低，不影響核心迴圈的效能。
+ */
+@FunctionalInterface
+public interface BacktestProgress {
+
+    /** 回報間隔（K 線根數，2 的次方） */
+    int STRIDE = 1 << 14;
+
+    /** 不回報、不取消 */
+    BacktestProgress NONE = (processed, total) -> {};
+
+    /**
+     * @param processed 已處理的 K 線數（兩個階段累計）
+     * @param total     全部需要處理的 K 線數
+     * @throws CancellationException 要求中止回測
+     */
+    void onBars(long processed, long total);
+}
@@ -2,25 +2,25 @@ package com.aiinpocket.btctrade.service;
 
 import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
 import com.aiinpocket.btctrade.model.dto.BacktestReport;
 import com.aiinpocket.btctrade.model.dto.BacktestReport.EquityCurvePoint;
 import com.aiinpocket.btctrade.model.dto.BacktestReport.TradeDetail;
 import com.aiinpocket.btctrade.model.dto.BacktestResultWithUnrealized;
-import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
-import com.aiinpocket.btctrade.model.entity.Kline;
-import com.aiinpocket.btctrade.model.enums.PositionDirection;
-import com.aiinpocket.btctrade.model.enums.TradeAction;
-import com.aiinpocket.btctrade.repository.KlineRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
-import org.ta4j.core.BarSeries;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -31,42 +31,24 @@ import java.util.List;
  * 2. 移動停利：當浮盈超過啟動門檻時，自動上調停損至鎖定利潤的位置
  * 3. 移除 SIGNAL_REVERSAL 出場（EMA 交叉太頻繁，不適合做出場訊號）
  * 4. 時間單位泛化：支援任意 K 線間隔（5m, 1h, 1d 等）
+ * 5. 逐根模擬在原始型別欄位上執行（{@link BacktestKernel}），BigDecimal 只用於組報告
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class BacktestService {
 
-    private final KlineRepository klineRepo;
-    private final BarSeriesFactory barSeriesFactory;
+    private final JdbcTemplate jdbcTemplate;
     private final TechnicalIndicatorService indicatorService;
     private final StrategyService strategyService;
     private final TradingStrategyProperties props;
     private final IntervalParams intervalParams;
 
-    // ======== 回測內部記憶體結構 ========
-    private static final class OpenPos {
-        final PositionDirection direction;
-        final BigDecimal entryPrice;
-        final Instant entryTime;
-        final BigDecimal quantity;
-        final BigDecimal capitalUsed;
-        final int entryBarIndex;
-        BigDecimal stopLossPrice;
-        BigDecimal peakPnlPct; // 追蹤最高浮盈百分比
-
-        OpenPos(PositionDirection direction, BigDecimal entryPrice, Instant entryTime,
-                BigDecimal quantity, BigDecimal capitalUsed, BigDecimal stopLossPrice, int entryBarIndex) {
-            this.direction = direction;
-            this.entryPrice = entryPrice;
-            this.entryTime = entryTime;
-            this.quantity = quantity;
-            this.capitalUsed = capitalUsed;
-            this.stopLossPrice = stopLossPrice;
-            this.entryBarIndex = entryBarIndex;
-            this.peakPnlPct = BigDecimal.ZERO;
-        }
-    }
+    private static final String BARS_SQL = """
+            SELECT open_time, high_price, low_price, close_price
+            FROM kline
+            WHERE symbol = ? AND interval_type = ? AND open_time BETWEEN ? AND ?
+            ORDER BY open_time""";
 
     /**
      * 使用系統全域配置執行回測（原有方法，向下相容）。
@@ -81,7 +63,7 @@ public class BacktestService {
      * 建立臨時的 TechnicalIndicatorService 和 StrategyService 實例，
      * 以用戶指定的 {@code customProps} 取代全域注入的參數。
      *
-     * <p>此方法是用戶回測的核心入口，由 UserBacktestService 在 backtestExecutor 執行緒池中呼叫。
+     * <p>此方法是用戶回測的核心入口，由 UserBacktestService 在回測佇列（BacktestJobQueue）的工作執行緒中呼叫。
      * TechnicalIndicatorService 和 StrategyService 都是無狀態的，
      * 可以安全地以 new 建立臨時實例而不影響系統正常運作的全域服務。
      *
@@ -94,12 +76,23 @@ public class BacktestService {
     public BacktestReport runBacktestWithParams(
             String symbol, Instant startDate, Instant endDate,
             TradingStrategyProperties customProps) {
+        return runBacktestWithParams(symbol, startDate, endDate, customProps, BacktestProgress.NONE);
+    }
+
+    /**
+     * 同 {@link #runBacktestWithParams(String, Instant, Instant, TradingStrategyProperties)}，
+     * 運算中透過 {@code progress} 回報已處理的 K 線數，並可由其拋出 {@link java.util.concurrent.CancellationException} 中止。
+     */
+    public BacktestReport runBacktestWithParams(
+            String symbol, Instant startDate, Instant endDate,
+            TradingStrategyProperties customProps, BacktestProgress progress) {
 
         // 建立使用自訂參數的臨時服務實例（無狀態，線程安全）
         TechnicalIndicatorService customIndicator = new TechnicalIndicatorService(customProps);
         StrategyService customStrategy = new StrategyService(customProps, intervalParams);
 
-        return executeBacktest(symbol, startDate, endDate, customProps, customIndicator, customStrategy, true).report();
+        return executeBacktest(symbol, startDate, endDate, customProps, customIndicator, customStrategy, true,
+                progress).report();
     }
 
     /**
@@ -119,12 +112,13 @@ public class BacktestService {
         TechnicalIndicatorService customIndicator = new TechnicalIndicatorService(customProps);
         StrategyService customStrategy = new StrategyService(customProps, intervalParams);
 
-        return executeBacktest(symbol, startDate, endDate, customProps, customIndicator, customStrategy, false);
+        return executeBacktest(symbol, startDate, endDate, customProps, customIndicator, customStrategy, false,
+                BacktestProgress.NONE);
     }
 
     /**
      * 回測引擎核心邏輯。
-     * 從資料庫載入 K 線資料，逐根模擬交易策略的進出場決策。
+     * 以單一查詢載入回測所需的 K 線欄位，交由 {@link BacktestKernel} 在原始型別上逐根模擬。
      * 純記憶體運算，零 DB 寫入，無前瞻偏差。
      *
      * @param forceCloseAtEnd true=結束時強制平倉（標準回測），false=保留未平倉部位（績效計算用）
@@ -134,261 +128,170 @@ public class BacktestService {
             TradingStrategyProperties backtestProps,
             TechnicalIndicatorService backtestIndicator,
             StrategyService backtestStrategy,
-            boolean forceCloseAtEnd) {
+            boolean forceCloseAtEnd,
+            BacktestProgress progress) {
 
-        List<Kline> klines = klineRepo
-                .findBySymbolAndIntervalTypeAndOpenTimeBetweenOrderByOpenTimeAsc(
-                        symbol, intervalParams.interval(), startDate, endDate);
+        BacktestBars bars = loadBars(symbol, startDate, endDate);
+        log.info("[回測] {} 載入 {} 根 K 線 ({} → {})", symbol, bars.size(), startDate, endDate);
 
-        log.info("[回測] {} 載入 {} 根 K 線 ({} → {})", symbol, klines.size(), startDate, endDate);
-
-        int minBars = backtestProps.strategy().emaLong() + 10;
-        if (klines.size() < minBars) {
-            throw new IllegalStateException("需要至少 " + minBars + " 根 K 線，目前只有 " + klines.size());
-        }
-
-        // 提取回測所需的輕量資料，釋放 Kline entity 佔用的記憶體
-        record BarData(Instant openTime, BigDecimal open, BigDecimal high,
-                       BigDecimal low, BigDecimal close, BigDecimal volume) {}
-        List<BarData> bars = klines.stream()
-                .map(k -> new BarData(k.getOpenTime(), k.getOpenPrice(), k.getHighPrice(),
-                        k.getLowPrice(), k.getClosePrice(), k.getVolume()))
-                .toList();
-
-        BarSeries series = barSeriesFactory.createFromKlines(klines, "backtest");
-        klines = null; // 允許 GC 回收原始 Kline entities
-
-        // ---- 預建立指標集合（迴圈外一次性建立，讓 ta4j 內部快取生效）----
-        TechnicalIndicatorService.IndicatorSet indicatorSet = backtestIndicator.createIndicators(series);
-
-        // ---- 模擬狀態（純記憶體）----
-        BigDecimal capital = BigDecimal.valueOf(backtestProps.risk().initialCapital());
-        final BigDecimal initialCapital = capital;
-        OpenPos openPos = null;
-        List<TradeDetail> trades = new ArrayList<>();
-        List<EquityCurvePoint> equityCurve = new ArrayList<>();
-        int tradeNumber = 0;
-
-        // 權益曲線降採樣：超過 2000 點時只取樣
-        int totalBarsToProcess = series.getBarCount() - Math.max(backtestProps.strategy().emaLong(), 35);
-        int equitySampleStep = Math.max(1, totalBarsToProcess / 2000);
-
-        int warmup = Math.max(backtestProps.strategy().emaLong(), 35);
-
-        for (int i = warmup; i < series.getBarCount(); i++) {
-            BarData bar = bars.get(i);
-            Instant barTime = bar.openTime();
-
-            // ====== 步驟 1：更新移動停利 + 日內停損檢查 ======
-            if (openPos != null) {
-                updateTrailingStop(openPos, bar.high(), bar.low(), backtestProps);
-
-                BigDecimal worstPrice = intrabarStopCheck(openPos, bar.high(), bar.low());
-                if (worstPrice != null) {
-                    BigDecimal exitPrice = openPos.stopLossPrice;
-                    BigDecimal pnl = calcPnl(openPos, exitPrice);
-                    capital = capital.add(openPos.capitalUsed).add(pnl);
-                    tradeNumber++;
-                    String reason = pnl.compareTo(BigDecimal.ZERO) >= 0 ? "TRAILING_STOP" : "STOP_LOSS";
-                    trades.add(buildTradeDetail(tradeNumber, openPos, exitPrice, barTime, pnl, reason, i));
-                    openPos = null;
-                }
-            }
+        checkMinBars(bars, backtestProps);
+        IndicatorColumns columns = IndicatorColumns.compute(bars, backtestIndicator.createEngine(), progress);
+        return runOnColumns(symbol, startDate, endDate, bars, columns,
+                backtestProps, backtestStrategy, forceCloseAtEnd, true, progress);
+    }
 
-            // ====== 步驟 2：計算指標（使用預建立的指標集合，O(1) 查詢）======
-            IndicatorSnapshot snap = backtestIndicator.computeFromSet(indicatorSet, series, i);
-
-            // ====== 步驟 3：持倉中 → 檢查其他出場條件 ======
-            if (openPos != null) {
-                String exitReason = checkExitConditions(snap, openPos, barTime, i, backtestProps);
-                if (exitReason != null) {
-                    BigDecimal exitPrice = snap.closePrice();
-                    BigDecimal pnl = calcPnl(openPos, exitPrice);
-                    capital = capital.add(openPos.capitalUsed).add(pnl);
-                    tradeNumber++;
-                    trades.add(buildTradeDetail(tradeNumber, openPos, exitPrice, barTime, pnl, exitReason, i));
-                    openPos = null;
-                }
-            }
+    /**
+     * 在已載入的 K 線欄位上執行回測（不存取 DB）。
+     */
+    public BacktestResultWithUnrealized runOnBars(
+            String symbol, Instant startDate, Instant endDate, BacktestBars bars,
+            TradingStrategyProperties backtestProps, boolean forceCloseAtEnd) {
+        checkMinBars(bars, backtestProps);
+        IndicatorColumns columns = IndicatorColumns.compute(bars,
+                new TechnicalIndicatorService(backtestProps).createEngine());
+        return runOnColumns(symbol, startDate, endDate, bars, columns,
+                backtestProps, new StrategyService(backtestProps, intervalParams), forceCloseAtEnd, true,
+                BacktestProgress.NONE);
+    }
 
-            // ====== 步驟 4：無持倉 → 檢查進場（使用自訂策略服務）======
-            if (openPos == null && capital.compareTo(BigDecimal.ZERO) > 0) {
-                TradeAction action = backtestStrategy.evaluate(snap, null, barTime);
-                if (action == TradeAction.LONG_ENTRY || action == TradeAction.SHORT_ENTRY) {
-                    PositionDirection dir = action == TradeAction.LONG_ENTRY
-                            ? PositionDirection.LONG : PositionDirection.SHORT;
-                    BigDecimal price = snap.closePrice();
-                    // 按倉位比例計算進場資金（positionSizePct=1.0 為全倉，0.5 為半倉）
-                    double posPct = Math.max(0.01, Math.min(1.0, backtestProps.risk().positionSizePct()));
-                    BigDecimal positionCapital = capital.multiply(BigDecimal.valueOf(posPct))
-                            .setScale(2, RoundingMode.HALF_DOWN);
-                    BigDecimal qty = positionCapital.divide(price, 8, RoundingMode.HALF_DOWN);
-                    double slPct = backtestProps.risk().stopLossPct();
-                    BigDecimal slPrice = dir == PositionDirection.LONG
-                            ? price.multiply(BigDecimal.ONE.subtract(BigDecimal.valueOf(slPct)))
-                            : price.multiply(BigDecimal.ONE.add(BigDecimal.valueOf(slPct)));
-
-                    openPos = new OpenPos(dir, price, barTime, qty, positionCapital,
-                            slPrice.setScale(8, RoundingMode.HALF_UP), i);
-                    capital = capital.subtract(positionCapital);
-                }
-            }
+    /**
+     * 在已載入的 K 線與已計算的指標欄上執行回測（參數掃描用：同指標週期的組合共用 {@code columns}）。
+     * 不輸出報告日誌；可由多執行緒並行呼叫。
+     *
+     * @param columns 以 {@code backtestProps.strategy()} 在 {@code bars} 上計算的指標欄
+     */
+    public BacktestResultWithUnrealized runOnColumns(
+            String symbol, Instant startDate, Instant endDate, BacktestBars bars,
+            IndicatorColumns columns, TradingStrategyProperties backtestProps, boolean forceCloseAtEnd) {
+        checkMinBars(bars, backtestProps);
+        return runOnColumns(symbol, startDate, endDate, bars, columns, backtestProps,
+                new StrategyService(backtestProps, intervalParams), forceCloseAtEnd, false, BacktestProgress.NONE);
+    }
 
-            // ====== 權益曲線（降採樣）======
-            // equity = 保留資金 + 持倉資金 + 浮動損益
-            BigDecimal equity = capital;
-            if (openPos != null) {
-                equity = equity.add(openPos.capitalUsed).add(calcPnl(openPos, bar.close()));
-            }
-            int barOffset = i - warmup;
-            // 始終保存交易發生的 bar + 按步長取樣 + 最後一根
-            boolean isTradeBoundary = (openPos == null && barOffset > 0) || barOffset == 0;
-            if (barOffset % equitySampleStep == 0 || isTradeBoundary || i == series.getBarCount() - 1) {
-                equityCurve.add(new EquityCurvePoint(barTime, equity));
-            }
+    private void checkMinBars(BacktestBars bars, TradingStrategyProperties backtestProps) {
+        int minBars = backtestProps.strategy().emaLong() + 10;
+        if (bars.size() < minBars) {
+            throw new IllegalStateException("需要至少 " + minBars + " 根 K 線，目前只有 " + bars.size());
         }
+    }
 
-        // 結束時處理未平倉部位
-        BigDecimal unrealizedPnlPct = null;
-        String unrealizedDirection = null;
+    private BacktestResultWithUnrealized runOnColumns(
+            String symbol, Instant startDate, Instant endDate, BacktestBars bars,
+            IndicatorColumns columns,
+            TradingStrategyProperties backtestProps,
+            StrategyService backtestStrategy,
+            boolean forceCloseAtEnd,
+            boolean logReport,
+            BacktestProgress progress) {
 
-        BarData lastBar = bars.getLast();
-        if (openPos != null && forceCloseAtEnd) {
-            // 標準回測：強制平倉
-            BigDecimal lastClose = lastBar.close();
-            BigDecimal pnl = calcPnl(openPos, lastClose);
-            capital = capital.add(openPos.capitalUsed).add(pnl);
-            tradeNumber++;
-            trades.add(buildTradeDetail(tradeNumber, openPos, lastClose,
-                    lastBar.openTime(), pnl, "END_OF_BACKTEST", series.getBarCount() - 1));
-        } else if (openPos != null) {
-            // 績效計算模式：計算未實現損益，不加入 trades
-            BigDecimal lastClose = lastBar.close();
-            BigDecimal pnl = calcPnl(openPos, lastClose);
-            unrealizedPnlPct = pnl.divide(openPos.capitalUsed, 6, RoundingMode.HALF_UP);
-            unrealizedDirection = openPos.direction.name();
-            // finalCapital = 保留資金 + 已投入資金（不含未平倉 PnL）
-            capital = capital.add(openPos.capitalUsed);
-        }
+        BacktestKernel kernel = new BacktestKernel(backtestProps, intervalParams, backtestStrategy);
+        BacktestKernel.Result result = kernel.run(bars, columns, 0, bars.size(), forceCloseAtEnd, progress);
+        return toReport(symbol, startDate, endDate, bars, bars.size(), result, logReport);
+    }
 
-        BacktestReport report = buildReport(symbol, startDate, endDate, series.getBarCount(),
-                trades, equityCurve, initialCapital, capital);
-        return new BacktestResultWithUnrealized(report, unrealizedPnlPct, unrealizedDirection);
+    /**
+     * 只在 {@code [fromBar, toBar)} 區間交易的核心回測（結束時強制平倉），回傳原始型別結果。
+     * Walk-forward 用：整段 K 線與指標欄共用，各視窗只指定區間。
+     */
+    public BacktestKernel.Result runKernel(BacktestBars bars, IndicatorColumns columns,
+                                           TradingStrategyProperties backtestProps, int fromBar, int toBar) {
+        return new BacktestKernel(backtestProps, intervalParams, new StrategyService(backtestProps, intervalParams))
+                .run(bars, columns, fromBar, toBar, true);
     }
 
     /**
-     * 移動停利邏輯：
-     * 當浮盈百分比超過啟動門檻（trailingActivatePct）時，
-     * 將停損價上調至 (entryPrice + offset)，鎖定部分利潤。
-     * 持續追蹤最高浮盈，動態上調停損。
+     * 將核心結果轉為報告（不輸出報告日誌）。
+     *
+     * @param totalBars 報告中的 K 線數（區間回測時為區間長度）
      */
-    private void updateTrailingStop(OpenPos pos, BigDecimal highPrice, BigDecimal lowPrice,
-                                    TradingStrategyProperties backtestProps) {
-        var risk = backtestProps.risk();
-        double activatePct = risk.trailingActivatePct();
-        double offsetPct = risk.trailingOffsetPct();
-
-        // 計算當根 K 線中的最有利價格
-        BigDecimal bestPrice = pos.direction == PositionDirection.LONG
-                ? highPrice : lowPrice;
-
-        // 計算當前浮盈百分比
-        double pnlPct = pos.direction == PositionDirection.LONG
-                ? bestPrice.subtract(pos.entryPrice).doubleValue() / pos.entryPrice.doubleValue()
-                : pos.entryPrice.subtract(bestPrice).doubleValue() / pos.entryPrice.doubleValue();
-
-        // 更新峰值浮盈
-        if (pnlPct > pos.peakPnlPct.doubleValue()) {
-            pos.peakPnlPct = BigDecimal.valueOf(pnlPct);
-        }
+    public BacktestReport report(String symbol, Instant startDate, Instant endDate, BacktestBars bars,
+                                 int totalBars, BacktestKernel.Result result) {
+        return toReport(symbol, startDate, endDate, bars, totalBars, result, false).report();
+    }
 
-        // 當浮盈超過啟動門檻時，上調停損
-        if (pos.peakPnlPct.doubleValue() >= activatePct) {
-            // 新停損 = 進場價 × (1 + (峰值浮盈 - offset))
-            double trailLevel = pos.peakPnlPct.doubleValue() - offsetPct;
-            if (trailLevel < 0) trailLevel = 0; // 至少保本
-
-            BigDecimal newStopPrice;
-            if (pos.direction == PositionDirection.LONG) {
-                newStopPrice = pos.entryPrice.multiply(BigDecimal.ONE.add(BigDecimal.valueOf(trailLevel)));
-            } else {
-                newStopPrice = pos.entryPrice.multiply(BigDecimal.ONE.subtract(BigDecimal.valueOf(trailLevel)));
-            }
-            newStopPrice = newStopPrice.setScale(8, RoundingMode.HALF_UP);
+    private BacktestResultWithUnrealized toReport(
+            String symbol, Instant startDate, Instant endDate, BacktestBars bars, int totalBars,
+            BacktestKernel.Result result, boolean logReport) {
 
-            // 只允許停損單方向移動（多頭只能上調，空頭只能下調）
-            if (pos.direction == PositionDirection.LONG && newStopPrice.compareTo(pos.stopLossPrice) > 0) {
-                pos.stopLossPrice = newStopPrice;
-            } else if (pos.direction == PositionDirection.SHORT && newStopPrice.compareTo(pos.stopLossPrice) < 0) {
-                pos.stopLossPrice = newStopPrice;
-            }
+        // ---- 報告邊界：此處才轉為 BigDecimal ----
+        long[] openTime = bars.openTime();
+        List<TradeDetail> trades = new ArrayList<>(result.trades().size());
+        int tradeNumber = 0;
+        for (BacktestKernel.Trade t : result.trades()) {
+            trades.add(buildTradeDetail(++tradeNumber, t, openTime));
         }
-    }
 
-    // ---- 日內停損檢查：用最高/最低價判斷是否觸及停損 ----
-    private BigDecimal intrabarStopCheck(OpenPos pos, BigDecimal highPrice, BigDecimal lowPrice) {
-        if (pos.direction == PositionDirection.LONG) {
-            if (lowPrice.compareTo(pos.stopLossPrice) <= 0) {
-                return pos.stopLossPrice;
-            }
-        } else {
-            if (highPrice.compareTo(pos.stopLossPrice) >= 0) {
-                return pos.stopLossPrice;
-            }
+        List<EquityCurvePoint> equityCurve = new ArrayList<>(result.equity().length);
+        for (int k = 0; k < result.equity().length; k++) {
+            equityCurve.add(new EquityCurvePoint(
+                    Instant.ofEpochMilli(openTime[result.equityBars()[k]]),
+                    BigDecimal.valueOf(result.equity()[k])));
         }
-        return null;
-    }
 
-    // ---- 其他出場條件（停損/停利已在步驟 1 處理）----
-    private String checkExitConditions(IndicatorSnapshot snap, OpenPos pos, Instant barTime, int currentBarIndex,
-                                       TradingStrategyProperties backtestProps) {
-        var riskParams = backtestProps.risk();
-        var rsiParams = backtestProps.rsi();
-        boolean isLong = pos.direction == PositionDirection.LONG;
-        double rsi = snap.rsi().doubleValue();
-
-        int barsHeld = currentBarIndex - pos.entryBarIndex;
-
-        // 最長持倉（以 bar 為單位）
-        int maxHoldingBars = riskParams.maxHoldingDays() * intervalParams.barsPerDay();
-        if (barsHeld >= maxHoldingBars) return "MAX_HOLDING";
-
-        // RSI 極端
-        if (isLong && rsi > rsiParams.longExitExtreme()) return "RSI_EXTREME";
-        if (!isLong && rsi < rsiParams.shortExitExtreme()) return "RSI_EXTREME";
-
-        // 時間止損：持倉超過 N bars 仍虧損 → 出場
-        int timeStopBars = riskParams.timeStopDays() * intervalParams.barsPerDay();
-        if (timeStopBars > 0 && barsHeld >= timeStopBars) {
-            BigDecimal unrealizedPnl = calcPnl(pos, snap.closePrice());
-            if (unrealizedPnl.compareTo(BigDecimal.ZERO) < 0) {
-                return "TIME_STOP";
-            }
+        BigDecimal unrealizedPnlPct = null;
+        String unrealizedDirection = null;
+        BacktestKernel.Trade open = result.openPosition();
+        if (open != null) {
+            unrealizedPnlPct = BigDecimal.valueOf(open.pnl())
+                    .divide(BigDecimal.valueOf(open.capitalUsed()), 6, RoundingMode.HALF_UP);
+            unrealizedDirection = open.direction().name();
         }
 
-        return null;
+        BacktestReport report = buildReport(symbol, startDate, endDate, totalBars,
+                trades, equityCurve,
+                BigDecimal.valueOf(result.initialCapital()), BigDecimal.valueOf(result.finalCapital()), logReport);
+        return new BacktestResultWithUnrealized(report, unrealizedPnlPct, unrealizedDirection);
     }
 
-    private BigDecimal calcPnl(OpenPos pos, BigDecimal exitPrice) {
-        return pos.direction == PositionDirection.LONG
-                ? exitPrice.subtract(pos.entryPrice).multiply(pos.quantity)
-                : pos.entryPrice.subtract(exitPrice).multiply(pos.quantity);
+    /**
+     * 單一查詢將回測區間的 K 線直接讀入原始型別陣列（不建立 Entity）。
+     */
+    public BacktestBars loadBars(String symbol, Instant startDate, Instant endDate) {
+        long[][] time = {new long[4096]};
+        double[][] hlc = {new double[4096 * 3]};
+        int[] count = {0};
+        jdbcTemplate.query(BARS_SQL, (RowCallbackHandler) rs -> {
+            int i = count[0]++;
+            if (i == time[0].length) {
+                time[0] = Arrays.copyOf(time[0], i * 2);
+                hlc[0] = Arrays.copyOf(hlc[0], i * 2 * 3);
+            }
+            time[0][i] = rs.getTimestamp(1).getTime();
+            hlc[0][i * 3] = rs.getDouble(2);
+            hlc[0][i * 3 + 1] = rs.getDouble(3);
+            hlc[0][i * 3 + 2] = rs.getDouble(4);
+        }, symbol, intervalParams.interval(),
+                OffsetDateTime.ofInstant(startDate, ZoneOffset.UTC),
+                OffsetDateTime.ofInstant(endDate, ZoneOffset.UTC));
+
+        int n = count[0];
+        double[] high = new double[n];
+        double[] low = new double[n];
+        double[] close = new double[n];
+        for (int i = 0; i < n; i++) {
+            high[i] = hlc[0][i * 3];
+            low[i] = hlc[0][i * 3 + 1];
+            close[i] = hlc[0][i * 3 + 2];
+        }
+        return new BacktestBars(Arrays.copyOf(time[0], n), high, low, close);
     }
 
-    private TradeDetail buildTradeDetail(int num, OpenPos pos, BigDecimal exitPrice,
-                                         Instant exitTime, BigDecimal pnl, String reason, int exitBarIndex) {
-        BigDecimal returnPct = pnl.divide(pos.capitalUsed, 6, RoundingMode.HALF_UP);
-        int holdBars = exitBarIndex - pos.entryBarIndex;
-        return new TradeDetail(num, pos.direction.name(), pos.entryTime, exitTime,
-                pos.entryPrice, exitPrice, pnl.setScale(2, RoundingMode.HALF_UP),
-                returnPct, reason, holdBars);
+    private TradeDetail buildTradeDetail(int num, BacktestKernel.Trade t, long[] openTime) {
+        BigDecimal pnl = BigDecimal.valueOf(t.pnl());
+        BigDecimal returnPct = pnl.divide(BigDecimal.valueOf(t.capitalUsed()), 6, RoundingMode.HALF_UP);
+        return new TradeDetail(num, t.direction().name(),
+                Instant.ofEpochMilli(openTime[t.entryBar()]), Instant.ofEpochMilli(openTime[t.exitBar()]),
+                BigDecimal.valueOf(t.entryPrice()).setScale(8, RoundingMode.HALF_UP),
+                BigDecimal.valueOf(t.exitPrice()).setScale(8, RoundingMode.HALF_UP),
+                pnl.setScale(2, RoundingMode.HALF_UP),
+                returnPct, t.exitReason(), t.exitBar() - t.entryBar());
     }
 
     // ======== 績效報告 ========
     private BacktestReport buildReport(
             String symbol, Instant startDate, Instant endDate, int totalBars,
             List<TradeDetail> trades, List<EquityCurvePoint> equityCurve,
-            BigDecimal initialCapital, BigDecimal finalCapital) {
+            BigDecimal initialCapital, BigDecimal finalCapital, boolean logReport) {
 
         int total = trades.size();
         int wins = (int) trades.stream().filter(t -> t.pnl().compareTo(BigDecimal.ZERO) > 0).count();
@@ -434,23 +337,25 @@ public class BacktestService {
         boolean passed = annualizedReturn.doubleValue() > 0
                 && maxDrawdown.abs().doubleValue() <= 0.50;
 
-        log.info("══════════════ Backtest Report ══════════════");
-        log.info("Period:      {} → {}", startDate, endDate);
-        log.info("Interval:    {}", intervalParams.interval());
-        log.info("Trades:      {} (W:{} L:{}), WinRate: {}%", total, wins, losses, winRate.multiply(BigDecimal.valueOf(100)));
-        log.info("Return:      Total {}%, Annualized {}%", totalReturn.multiply(BigDecimal.valueOf(100)), annualizedReturn.multiply(BigDecimal.valueOf(100)));
-        log.info("Risk:        MaxDD {}%, MaxSingleLoss {}%, Sharpe {}", maxDrawdown.multiply(BigDecimal.valueOf(100)), maxSingleLossPct.multiply(BigDecimal.valueOf(100)), sharpeRatio);
-        log.info("Capital:     {} → {}", initialCapital, finalCapital.setScale(2, RoundingMode.HALF_UP));
-        log.info("ProfitFactor:{}, AvgWin: {}, AvgLoss: {}", profitFactor, avgWin, avgLoss);
-        log.info("PASSED:      {}", passed);
-        log.info("══════════════════════════════════════════════");
+        if (logReport) {
+            log.info("══════════════ Backtest Report ══════════════");
+            log.info("Period:      {} → {}", startDate, endDate);
+            log.info("Interval:    {}", intervalParams.interval());
+            log.info("Trades:      {} (W:{} L:{}), WinRate: {}%", total, wins, losses, winRate.multiply(BigDecimal.valueOf(100)));
+            log.info("Return:      Total {}%, Annualized {}%", totalReturn.multiply(BigDecimal.valueOf(100)), annualizedReturn.multiply(BigDecimal.valueOf(100)));
+            log.info("Risk:        MaxDD {}%, MaxSingleLoss {}%, Sharpe {}", maxDrawdown.multiply(BigDecimal.valueOf(100)), maxSingleLossPct.multiply(BigDecimal.valueOf(100)), sharpeRatio);
+            log.info("Capital:     {} → {}", initialCapital, finalCapital.setScale(2, RoundingMode.HALF_UP));
+            log.info("ProfitFactor:{}, AvgWin: {}, AvgLoss: {}", profitFactor, avgWin, avgLoss);
+            log.info("PASSED:      {}", passed);
+            log.info("══════════════════════════════════════════════");
+        }
 
         return new BacktestReport(symbol, startDate, endDate, totalBars,
                 total, wins, losses, winRate,
                 totalReturn, annualizedReturn, maxDrawdown,
                 sharpeRatio, profitFactor, avgWin, avgLoss, maxConsecLoss,
                 initialCapital, finalCapital.setScale(2, RoundingMode.HALF_UP),
-                trades, equityCurve, passed);
+                trades, equityCurve, passed, null);
     }
 
     private BigDecimal calcMaxDrawdown(List<EquityCurvePoint> curve) {
@@ -1,12 +1,15 @@
 package com.aiinpocket.btctrade.service;
 
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
 import com.aiinpocket.btctrade.model.entity.Kline;
 import org.springframework.stereotype.Component;
 import org.ta4j.core.BarSeries;
 import org.ta4j.core.BaseBarSeriesBuilder;
 import org.ta4j.core.num.DecimalNumFactory;
 
+import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 @Component
@@ -31,4 +34,29 @@ public class BarSeriesFactory {
         }
         return series;
     }
+
+    /**
+     * 由熱 K 線快照建立 BarSeries（價格由 double 以最短十進位表示還原）。
+     */
+    public BarSeries createFromWindow(KlineWindow window, String name) {
+        BarSeries series = new BaseBarSeriesBuilder()
+                .withName(name)
+                .withNumFactory(DecimalNumFactory.getInstance())
+                .build();
+
+        for (int i = 0; i < window.size(); i++) {
+            Instant openTime = Instant.ofEpochMilli(window.openTime()[i]);
+            Instant closeTime = Instant.ofEpochMilli(window.closeTime()[i]);
+            series.barBuilder()
+                    .timePeriod(Duration.between(openTime, closeTime))
+                    .endTime(closeTime)
+                    .openPrice(BigDecimal.valueOf(window.open()[i]))
+                    .highPrice(BigDecimal.valueOf(window.high()[i]))
+                    .lowPrice(BigDecimal.valueOf(window.low()[i]))
+                    .closePrice(BigDecimal.valueOf(window.close()[i]))
+                    .volume(BigDecimal.valueOf(window.volume()[i]))
+                    .add();
+        }
+        return series;
+    }
 }
@@ -2,8 +2,11 @@ package com.aiinpocket.btctrade.service;
 
 import com.aiinpocket.btctrade.config.BinanceApiProperties;
 import com.aiinpocket.btctrade.model.dto.BinanceKlineResponse;
-import com.aiinpocket.btctrade.model.entity.Kline;
+import com.aiinpocket.btctrade.model.dto.SyncProgress;
+import com.aiinpocket.btctrade.model.entity.HistoricalSyncChunk;
+import com.aiinpocket.btctrade.repository.HistoricalSyncChunkRepository;
 import com.aiinpocket.btctrade.repository.KlineRepository;
+import com.aiinpocket.btctrade.service.BinanceRateLimiter.Priority;
 import tools.jackson.core.type.TypeReference;
 import tools.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -15,18 +18,33 @@ import org.springframework.dao.DataIntegrityViolationException;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class BinanceApiService {
 
+    /** DataFetchJob 每次補齊最多拉取的頁數（每頁 1000 根） */
+    private static final int GAP_FILL_MAX_PAGES = 5;
+
     private final RestClient binanceRestClient;
     private final BinanceApiProperties props;
     private final KlineRepository klineRepository;
     private final ObjectMapper objectMapper;
+    private final KlineBulkLoader bulkLoader;
+    private final BinanceRateLimiter rateLimiter;
+    private final HistoricalSyncChunkRepository chunkRepository;
+
 
     public void fetchAndStoreHistoricalData(
             String symbol, String interval,
@@ -40,180 +58,221 @@ public class BinanceApiService {
                     symbol, interval,
                     currentStart.toEpochMilli(),
                     endTime.toEpochMilli(),
-                    1000);
+                    1000, Priority.BACKFILL);
 
             if (batch.isEmpty()) break;
 
-            List<Kline> entities = batch.stream()
-                    .map(r -> mapToEntity(r, symbol, interval))
-                    .toList();
-
-            totalSaved += saveNewKlines(entities).size();
+            totalSaved += bulkLoader.load(symbol, interval, batch);
 
             long lastCloseTime = batch.getLast().closeTime();
             currentStart = Instant.ofEpochMilli(lastCloseTime + 1);
-
-            sleep(props.rateLimitMs());
         }
 
         log.info("Fetched and stored {} klines for {} [{}]",
                 totalSaved, symbol, interval);
     }
 
-    public Optional<Kline> fetchLatestKline(String symbol, String interval) {
-        List<BinanceKlineResponse> result = fetchKlines(
-                symbol, interval, null, null, 1);
-        if (result.isEmpty()) return Optional.empty();
-
-        Kline entity = mapToEntity(result.getFirst(), symbol, interval);
-        // 冪等寫入：已存在則跳過
-        if (klineRepository.existsBySymbolAndIntervalTypeAndOpenTime(
-                entity.getSymbol(), entity.getIntervalType(), entity.getOpenTime())) {
-            return Optional.of(entity);
+    /**
+     * 補齊開盤時間晚於 {@code afterOpenTime} 的已收盤 K 線（WebSocket 中斷期間由 DataFetchJob 呼叫）。
+     * 逐頁拉取直到最新（每次最多 {@value #GAP_FILL_MAX_PAGES} 頁，其餘下次再補），
+     * 冪等寫入 DB（已由 WebSocket 寫入的自動略過）；尚未收盤的最新一根不寫入也不回傳。
+     *
+     * @param afterOpenTime 已有的最後一根開盤時間（毫秒）；{@link Long#MIN_VALUE} 表示只取最近一頁
+     * @return 由舊到新的已收盤 K 線
+     * @throws RuntimeException 請求失敗（呼叫端據此累計錯誤次數、偵測下架）
+     */
+    public List<BinanceKlineResponse> fetchClosedKlinesSince(String symbol, String interval, long afterOpenTime)
+            throws InterruptedException {
+        long now = System.currentTimeMillis();
+        Long start = afterOpenTime == Long.MIN_VALUE ? null : afterOpenTime + 1;
+        List<BinanceKlineResponse> closed = new ArrayList<>();
+        for (int page = 0; page < GAP_FILL_MAX_PAGES; page++) {
+            List<BinanceKlineResponse> batch = requestKlines(symbol, interval, start, null, 1000, Priority.GAP_FILL);
+            for (BinanceKlineResponse r : batch) {
+                if (r.closeTime() < now) closed.add(r);
+            }
+            if (start == null || batch.size() < 1000) break;
+            start = batch.getLast().openTime() + 1;
         }
-        try {
-            return Optional.of(klineRepository.save(entity));
-        } catch (DataIntegrityViolationException e) {
-            // WebSocket 搶先寫入導致競態衝突，安全忽略
-            log.debug("Kline 已由 WebSocket 寫入，跳過: {} {} {}", entity.getSymbol(),
-                    entity.getIntervalType(), entity.getOpenTime());
-            return Optional.of(entity);
+        if (!closed.isEmpty()) {
+            int saved = bulkLoader.load(symbol, interval, closed);
+            log.debug("Gap fill {} [{}]: {} closed klines, {} new", symbol, interval, closed.size(), saved);
         }
+        return closed;
     }
 
     private List<BinanceKlineResponse> fetchKlines(
             String symbol, String interval,
-            Long startTime, Long endTime, int limit) {
+            Long startTime, Long endTime, int limit, Priority priority) {
         try {
-            String json = binanceRestClient.get()
-                    .uri(uriBuilder -> {
-                        var builder = uriBuilder
-                                .path(props.klinesPath())
-                                .queryParam("symbol", symbol)
-                                .queryParam("interval", interval)
-                                .queryParam("limit", limit);
-                        if (startTime != null) builder.queryParam("startTime", startTime);
-                        if (endTime != null) builder.queryParam("endTime", endTime);
-                        return builder.build();
-                    })
-                    .retrieve()
-                    .body(String.class);
-
-            List<List<Object>> raw = objectMapper.readValue(json, new TypeReference<>() {});
-            if (raw == null) return List.of();
-
-            return raw.stream().map(arr -> new BinanceKlineResponse(
-                    ((Number) arr.get(0)).longValue(),
-                    new BigDecimal(arr.get(1).toString()),
-                    new BigDecimal(arr.get(2).toString()),
-                    new BigDecimal(arr.get(3).toString()),
-                    new BigDecimal(arr.get(4).toString()),
-                    new BigDecimal(arr.get(5).toString()),
-                    ((Number) arr.get(6)).longValue(),
-                    new BigDecimal(arr.get(7).toString()),
-                    ((Number) arr.get(8)).intValue(),
-                    new BigDecimal(arr.get(9).toString()),
-                    new BigDecimal(arr.get(10).toString())
-            )).toList();
-
+            return requestKlines(symbol, interval, startTime, endTime, limit, priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
         } catch (Exception e) {
             log.error("Failed to fetch klines from Binance: {}", e.getMessage(), e);
             return List.of();
         }
     }
 
-    private Kline mapToEntity(BinanceKlineResponse r, String symbol, String interval) {
-        return Kline.builder()
-                .symbol(symbol)
-                .intervalType(interval)
-                .openTime(Instant.ofEpochMilli(r.openTime()))
-                .closeTime(Instant.ofEpochMilli(r.closeTime()))
-                .openPrice(r.open())
-                .highPrice(r.high())
-                .lowPrice(r.low())
-                .closePrice(r.close())
-                .volume(r.volume())
-                .quoteVolume(r.quoteVolume())
-                .tradeCount(r.tradeCount())
-                .takerBuyBaseVolume(r.takerBuyBaseVolume())
-                .takerBuyQuoteVolume(r.takerBuyQuoteVolume())
-                .build();
+    /**
+     * 拉取一頁 K 線，失敗時直接拋出（回補分段需區分「無資料」與「請求失敗」）。
+     * 每次請求先依優先序向 {@link BinanceRateLimiter} 取得權重。
+     */
+    private List<BinanceKlineResponse> requestKlines(
+            String symbol, String interval,
+            Long startTime, Long endTime, int limit, Priority priority) throws InterruptedException {
+        rateLimiter.acquire(BinanceRateLimiter.KLINES, priority);
+        String json = binanceRestClient.get()
+                .uri(uriBuilder -> {
+                    var builder = uriBuilder
+                            .path(props.klinesPath())
+                            .queryParam("symbol", symbol)
+                            .queryParam("interval", interval)
+                            .queryParam("limit", limit);
+                    if (startTime != null) builder.queryParam("startTime", startTime);
+                    if (endTime != null) builder.queryParam("endTime", endTime);
+                    return builder.build();
+                })
+                .retrieve()
+                .body(String.class);
+
+        List<List<Object>> raw = objectMapper.readValue(json, new TypeReference<>() {});
+        if (raw == null) return List.of();
+
+        return raw.stream().map(arr -> new BinanceKlineResponse(
+                ((Number) arr.get(0)).longValue(),
+                new BigDecimal(arr.get(1).toString()),
+                new BigDecimal(arr.get(2).toString()),
+                new BigDecimal(arr.get(3).toString()),
+                new BigDecimal(arr.get(4).toString()),
+                new BigDecimal(arr.get(5).toString()),
+                ((Number) arr.get(6)).longValue(),
+                new BigDecimal(arr.get(7).toString()),
+                ((Number) arr.get(8)).intValue(),
+                new BigDecimal(arr.get(9).toString()),
+                new BigDecimal(arr.get(10).toString())
+        )).toList();
     }
 
     /**
      * 帶進度回調的歷史資料同步（供 HistoricalSyncService 使用）。
-     * 每批次獨立 commit，避免長時間事務造成效能瓶頸。
+     *
+     * <p>{@code [startTime, endTime)} 依固定起點切成每段 {@code backfillChunkBars} 根的時間分段，
+     * 以虛擬執行緒並行拉取（同時最多 {@code backfillParallelism} 段），
+     * 所有請求共用 {@link BinanceRateLimiter} 的權重預算。
+     * 每段內逐頁經 {@link KlineBulkLoader} 寫入；完整分段寫完即記錄於 historical_sync_chunk，
+     * 重新同步時略過已完成分段（斷點續傳）。進度以已完成分段比例回報。
+     *
+     * @throws IllegalStateException 任一分段失敗時（已完成分段仍會保留，下次同步續傳）
      */
     public int fetchAndStoreHistoricalDataWithProgress(
             String symbol, String interval,
             Instant startTime, Instant endTime,
-            java.util.function.BiConsumer<Integer, Integer> progressCallback) {
-
-        Instant currentStart = startTime;
-        int batchCount = 0;
-        int totalSaved = 0;
-
-        // 估算總批次數
-        long totalMinutes = java.time.Duration.between(startTime, endTime).toMinutes();
-        long intervalMinutes = switch (interval) {
-            case "1m" -> 1; case "5m" -> 5; case "15m" -> 15;
-            case "1h" -> 60; case "4h" -> 240; case "1d" -> 1440;
-            default -> 5;
-        };
-        int estimatedBatches = Math.max(1, (int) Math.ceil((double) totalMinutes / intervalMinutes / 1000));
-
-        while (currentStart.isBefore(endTime)) {
-            List<BinanceKlineResponse> batch = fetchKlines(
-                    symbol, interval,
-                    currentStart.toEpochMilli(),
-                    endTime.toEpochMilli(),
-                    1000);
-
-            if (batch.isEmpty()) break;
-
-            List<Kline> entities = batch.stream()
-                    .map(r -> mapToEntity(r, symbol, interval))
-                    .toList();
+            Consumer<SyncProgress> progressCallback) throws InterruptedException {
+
+        long intervalMillis = intervalMinutes(interval) * 60_000L;
+        long chunkMillis = intervalMillis * props.backfillChunkBars();
+        Set<Instant> completed = new HashSet<>(chunkRepository.findCompletedChunkStarts(symbol, interval));
+
+        List<Instant> pending = new ArrayList<>();
+        int totalChunks = 0;
+        for (long t = startTime.toEpochMilli(); t < endTime.toEpochMilli(); t += chunkMillis) {
+            totalChunks++;
+            Instant chunkStart = Instant.ofEpochMilli(t);
+            if (!completed.contains(chunkStart)) pending.add(chunkStart);
+        }
 
-            totalSaved += saveNewKlines(entities).size();
+        int skipped = totalChunks - pending.size();
+        if (skipped > 0) {
+            log.info("[歷史回補] {} [{}] 續傳：略過 {} / {} 個已完成分段", symbol, interval, skipped, totalChunks);
+        }
 
-            batchCount++;
-            if (progressCallback != null) {
-                progressCallback.accept(batchCount, estimatedBatches);
+        AtomicInteger chunksDone = new AtomicInteger(skipped);
+        AtomicLong rowsWritten = new AtomicLong();
+        AtomicInteger failedChunks = new AtomicInteger();
+        long startNanos = System.nanoTime();
+        int chunkCount = totalChunks;
+        Semaphore inFlight = new Semaphore(props.backfillParallelism());
+
+        try (ExecutorService chunkExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Instant chunkStart : pending) {
+                inFlight.acquire();
+                chunkExecutor.submit(() -> {
+                    try {
+                        Instant fullEnd = chunkStart.plusMillis(chunkMillis);
+                        Instant chunkEnd = fullEnd.isBefore(endTime) ? fullEnd : endTime;
+                        int saved = backfillChunk(symbol, interval, chunkStart, chunkEnd);
+                        // 只有完整分段才記錄完成；尾段（截至現在）下次仍需重拉
+                        if (!fullEnd.isAfter(endTime)) {
+                            markChunkCompleted(symbol, interval, chunkStart, chunkEnd, saved);
+                        }
+                        long rows = rowsWritten.addAndGet(saved);
+                        int done = chunksDone.incrementAndGet();
+                        if (progressCallback != null) {
+                            double elapsedSec = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+                            synchronized (progressCallback) {
+                                progressCallback.accept(new SyncProgress(done, chunkCount, rows, rows / elapsedSec));
+                            }
+                        }
+                    } catch (Exception e) {
+                        failedChunks.incrementAndGet();
+                        log.error("[歷史回補] {} [{}] 分段 {} 失敗: {}", symbol, interval, chunkStart, e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
             }
+        }
 
-            long lastCloseTime = batch.getLast().closeTime();
-            currentStart = Instant.ofEpochMilli(lastCloseTime + 1);
+        long rows = rowsWritten.get();
+        log.info("Fetched and stored {} klines for {} [{}] in {} chunks ({} rows/s, {} failed)",
+                rows, symbol, interval, pending.size(),
+                (long) (rows / Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9)), failedChunks.get());
 
-            sleep(props.rateLimitMs());
+        if (failedChunks.get() > 0) {
+            throw new IllegalStateException(failedChunks.get() + " 個分段同步失敗，已完成分段將於下次同步續傳");
         }
-
-        log.info("Fetched and stored {} klines for {} [{}] in {} batches",
-                totalSaved, symbol, interval, batchCount);
-        return totalSaved;
+        return (int) rows;
     }
 
-    private List<Kline> saveNewKlines(List<Kline> klines) {
-        if (klines.isEmpty()) return List.of();
-
-        // 批次查詢已存在的 openTime，避免 N+1（每批 1000 條只需 1 次查詢）
-        String symbol = klines.getFirst().getSymbol();
-        String interval = klines.getFirst().getIntervalType();
-        List<Instant> openTimes = klines.stream().map(Kline::getOpenTime).toList();
-        var existingTimes = new java.util.HashSet<>(
-                klineRepository.findExistingOpenTimes(symbol, interval, openTimes));
-
-        List<Kline> toSave = klines.stream()
-                .filter(k -> !existingTimes.contains(k.getOpenTime()))
-                .toList();
-        return klineRepository.saveAll(toSave);
+    /** 逐頁拉取單一分段並寫入 DB，回傳新增筆數 */
+    private int backfillChunk(String symbol, String interval,
+                              Instant chunkStart, Instant chunkEnd) throws InterruptedException {
+        long currentStart = chunkStart.toEpochMilli();
+        long endMillis = chunkEnd.toEpochMilli() - 1;
+        int saved = 0;
+        while (currentStart <= endMillis) {
+            List<BinanceKlineResponse> page = requestKlines(
+                    symbol, interval, currentStart, endMillis, 1000, Priority.BACKFILL);
+            if (page.isEmpty()) break;
+            saved += bulkLoader.load(symbol, interval, page);
+            currentStart = page.getLast().closeTime() + 1;
+        }
+        return saved;
     }
 
-    private void sleep(long millis) {
+    private void markChunkCompleted(String symbol, String interval,
+                                    Instant chunkStart, Instant chunkEnd, int rowsLoaded) {
         try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            chunkRepository.save(HistoricalSyncChunk.builder()
+                    .symbol(symbol)
+                    .intervalType(interval)
+                    .chunkStart(chunkStart)
+                    .chunkEnd(chunkEnd)
+                    .rowsLoaded(rowsLoaded)
+                    .completedAt(Instant.now())
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            log.debug("分段已記錄完成，跳過: {} {} {}", symbol, interval, chunkStart);
         }
     }
+
+    private static long intervalMinutes(String interval) {
+        return switch (interval) {
+            case "1m" -> 1; case "5m" -> 5; case "15m" -> 15;
+            case "1h" -> 60; case "4h" -> 240; case "1d" -> 1440;
+            default -> 5;
+        };
+    }
 }
@@ -28,14 +28,17 @@ public class BinanceExchangeInfoService {
     private final RestClient binanceRestClient;
     private final BinanceApiProperties apiProperties;
     private final ObjectMapper objectMapper;
+    private final BinanceRateLimiter rateLimiter;
 
     public BinanceExchangeInfoService(
             RestClient binanceRestClient,
             BinanceApiProperties apiProperties,
-            ObjectMapper objectMapper) {
+            ObjectMapper objectMapper,
+            BinanceRateLimiter rateLimiter) {
         this.binanceRestClient = binanceRestClient;
         this.apiProperties = apiProperties;
         this.objectMapper = objectMapper;
+        this.rateLimiter = rateLimiter;
     }
 
     /**
@@ -46,6 +49,7 @@ public class BinanceExchangeInfoService {
     public List<ExchangePairInfo> getAvailablePairs() {
         log.info("正在從 Binance 取得 ExchangeInfo（此呼叫結果將被快取 1 小時）");
         try {
+            rateLimiter.acquire(BinanceRateLimiter.EXCHANGE_INFO, BinanceRateLimiter.Priority.BACKFILL);
             String responseBody = binanceRestClient.get()
                     .uri(apiProperties.exchangeInfoPath())
                     .retrieve()
@@ -73,6 +77,9 @@ public class BinanceExchangeInfoService {
             log.info("取得 {} 個可用 USDT 交易對", pairs.size());
             return pairs;
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
         } catch (Exception e) {
             log.error("取得 ExchangeInfo 失敗: {}", e.getMessage(), e);
             return List.of();
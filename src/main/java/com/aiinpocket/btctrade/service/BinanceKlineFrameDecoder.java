@@ -0,0 +1,338 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.entity.Kline;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Binance kline WebSocket 訊框的串流解碼器。
+ * 以 token 層級的 {@link JsonParser} 逐欄讀取 {@code k} 物件，直接寫入可重複使用的
+ * {@link KlineFrame}，不建立 JsonNode 樹，也不為每個價格欄位建立 BigDecimal。
+ *
+ * <p>價格與成交量以「整數尾數 + 小數位數」保存（去除尾端 0），
+ * 需要精確值時可無損轉回 BigDecimal，需要顯示時可直接取 double。
+ * 只有收盤（{@code x=true}）的訊框才會透過 {@link KlineFrame#toKline()} 建立 Entity。
+ *
+ * <p>執行緒安全：每個執行緒持有自己的 KlineFrame（ThreadLocal），
+ * 回傳的 frame 僅在同一執行緒下一次呼叫 {@link #decode} 之前有效。
+ */
+@Component
+@RequiredArgsConstructor
+public class BinanceKlineFrameDecoder {
+
+    private final ObjectMapper objectMapper;
+
+    private final ThreadLocal<KlineFrame> frames = ThreadLocal.withInitial(KlineFrame::new);
+
+    /** 幣對/間隔字串的共享字典，避免每個訊框都 new String */
+    private final SymbolTable symbolTable = new SymbolTable();
+
+    /**
+     * 解碼單一 WS 訊息（支援單一串流與 combined stream 格式）。
+     *
+     * @return 當前執行緒的 KlineFrame；非 kline 訊息或欄位不完整時返回 null
+     */
+    public KlineFrame decode(String json) {
+        KlineFrame frame = frames.get();
+        frame.reset();
+        try (JsonParser p = objectMapper.createParser(json)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+            return scanObject(p, frame) && frame.isComplete() ? frame : null;
+        }
+    }
+
+    /** 掃描外層物件：遇到 data 進入下一層，遇到 k 解析 K 線，其餘欄位略過 */
+    private boolean scanObject(JsonParser p, KlineFrame frame) {
+        boolean found = false;
+        String name;
+        while ((name = p.nextName()) != null) {
+            JsonToken token = p.nextToken();
+            if (token == JsonToken.START_OBJECT && "data".equals(name)) {
+                found |= scanObject(p, frame);
+            } else if (token == JsonToken.START_OBJECT && "k".equals(name)) {
+                readKline(p, frame);
+                found = true;
+            } else {
+                p.skipChildren();
+            }
+        }
+        return found;
+    }
+
+    private void readKline(JsonParser p, KlineFrame frame) {
+        String name;
+        while ((name = p.nextName()) != null) {
+            JsonToken token = p.nextToken();
+            if (name.length() != 1) {
+                p.skipChildren();
+                continue;
+            }
+            switch (name.charAt(0)) {
+                case 't' -> frame.openTime = p.getLongValue();
+                case 'T' -> frame.closeTime = p.getLongValue();
+                case 's' -> frame.symbol = internText(p);
+                case 'i' -> frame.interval = internText(p);
+                case 'o' -> readDecimal(p, frame, KlineFrame.OPEN);
+                case 'h' -> readDecimal(p, frame, KlineFrame.HIGH);
+                case 'l' -> readDecimal(p, frame, KlineFrame.LOW);
+                case 'c' -> readDecimal(p, frame, KlineFrame.CLOSE);
+                case 'v' -> readDecimal(p, frame, KlineFrame.VOLUME);
+                case 'q' -> readDecimal(p, frame, KlineFrame.QUOTE_VOLUME);
+                case 'V' -> readDecimal(p, frame, KlineFrame.TAKER_BUY_BASE);
+                case 'Q' -> readDecimal(p, frame, KlineFrame.TAKER_BUY_QUOTE);
+                case 'n' -> frame.tradeCount = p.getIntValue();
+                case 'x' -> frame.closed = token == JsonToken.VALUE_TRUE;
+                default -> p.skipChildren();
+            }
+        }
+    }
+
+    private String internText(JsonParser p) {
+        return symbolTable.intern(p.getStringCharacters(), p.getStringOffset(), p.getStringLength());
+    }
+
+    private void readDecimal(JsonParser p, KlineFrame frame, int field) {
+        if (p.currentToken() == JsonToken.VALUE_STRING) {
+            char[] buf = p.getStringCharacters();
+            int off = p.getStringOffset();
+            int len = p.getStringLength();
+            if (!frame.setDecimal(field, buf, off, len)) {
+                // 尾數超出 long 範圍（極少見），退回 BigDecimal 精確解析
+                frame.setOverflow(field, new BigDecimal(buf, off, len));
+            }
+        } else {
+            frame.setOverflow(field, new BigDecimal(p.getString()));
+        }
+        frame.present |= 1 << field;
+    }
+
+    // ======== 可重複使用的原始型別 K 線紀錄 ========
+
+    /**
+     * 可重複使用的原始型別 K 線紀錄。
+     * 時間以 epoch 毫秒保存，價格/成交量以 (尾數, 小數位數) 保存。
+     */
+    public static final class KlineFrame {
+
+        static final int OPEN = 0, HIGH = 1, LOW = 2, CLOSE = 3,
+                VOLUME = 4, QUOTE_VOLUME = 5, TAKER_BUY_BASE = 6, TAKER_BUY_QUOTE = 7;
+        private static final int FIELD_COUNT = 8;
+        /** 必要欄位：開高低收 + 成交量 */
+        private static final int REQUIRED_DECIMALS =
+                (1 << OPEN) | (1 << HIGH) | (1 << LOW) | (1 << CLOSE) | (1 << VOLUME);
+
+        private static final double[] POW10 = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+                1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+        private static final long[] LONG_POW10 = {
+                1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L,
+                100_000_000L, 1_000_000_000L, 10_000_000_000L, 100_000_000_000L,
+                1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+                1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L,
+                1_000_000_000_000_000_000L};
+
+        private String symbol;
+        private String interval;
+        private long openTime = -1;
+        private long closeTime = -1;
+        private int tradeCount;
+        private boolean closed;
+
+        private final long[] mantissa = new long[FIELD_COUNT];
+        private final int[] scale = new int[FIELD_COUNT];
+        /** 尾數溢位時的備援精確值（一般為 null） */
+        private final BigDecimal[] overflow = new BigDecimal[FIELD_COUNT];
+        private int present;
+
+        KlineFrame() {}
+
+        void reset() {
+            symbol = null;
+            interval = null;
+            openTime = -1;
+            closeTime = -1;
+            tradeCount = 0;
+            closed = false;
+            present = 0;
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                overflow[i] = null;
+            }
+        }
+
+        boolean isComplete() {
+            return symbol != null && interval != null && openTime >= 0 && closeTime >= 0
+                    && (present & REQUIRED_DECIMALS) == REQUIRED_DECIMALS;
+        }
+
+        /**
+         * 將十進位字串解析為 (尾數, 小數位數)，小數尾端的 0 延後套用以避免無謂溢位。
+         *
+         * @return false 表示尾數溢位或格式非預期，呼叫端需改用 BigDecimal
+         */
+        boolean setDecimal(int field, char[] buf, int off, int len) {
+            long m = 0;
+            int sc = 0;
+            int pendingZeros = 0;
+            boolean fraction = false;
+            boolean negative = false;
+            boolean anyDigit = false;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                char ch = buf[i];
+                if (ch >= '0' && ch <= '9') {
+                    anyDigit = true;
+                    int d = ch - '0';
+                    if (fraction && d == 0) {
+                        pendingZeros++;
+                        continue;
+                    }
+                    if (pendingZeros > 0) {
+                        if (pendingZeros >= LONG_POW10.length
+                                || m > Long.MAX_VALUE / LONG_POW10[pendingZeros]) return false;
+                        m *= LONG_POW10[pendingZeros];
+                        sc += pendingZeros;
+                        pendingZeros = 0;
+                    }
+                    if (m > (Long.MAX_VALUE - d) / 10) return false;
+                    m = m * 10 + d;
+                    if (fraction) sc++;
+                } else if (ch == '.' && !fraction) {
+                    fraction = true;
+                } else if (ch == '-' && i == off) {
+                    negative = true;
+                } else {
+                    return false;
+                }
+            }
+            if (!anyDigit || sc >= POW10.length) return false;
+            mantissa[field] = negative ? -m : m;
+            scale[field] = sc;
+            return true;
+        }
+
+        void setOverflow(int field, BigDecimal value) {
+            overflow[field] = value;
+        }
+
+        private double doubleOf(int field) {
+            BigDecimal big = overflow[field];
+            if (big != null) return big.doubleValue();
+            // 尾數 < 2^53 且 10^scale 可精確表示時，此除法結果為正確捨入
+            return mantissa[field] / POW10[scale[field]];
+        }
+
+        private BigDecimal decimalOf(int field) {
+            if ((present & (1 << field)) == 0) return null;
+            BigDecimal big = overflow[field];
+            return big != null ? big : BigDecimal.valueOf(mantissa[field], scale[field]);
+        }
+
+        public String symbol() { return symbol; }
+        public String interval() { return interval; }
+        public long openTimeMillis() { return openTime; }
+        public long closeTimeMillis() { return closeTime; }
+        public boolean isClosed() { return closed; }
+        public int tradeCount() { return tradeCount; }
+        public double open() { return doubleOf(OPEN); }
+        public double high() { return doubleOf(HIGH); }
+        public double low() { return doubleOf(LOW); }
+        public double close() { return doubleOf(CLOSE); }
+        public double volume() { return doubleOf(VOLUME); }
+        public double quoteVolume() { return (present & (1 << QUOTE_VOLUME)) != 0 ? doubleOf(QUOTE_VOLUME) : 0; }
+
+        /** 建立 Kline Entity（僅收盤訊框需要，數值以 BigDecimal 精確還原） */
+        public Kline toKline() {
+            return Kline.builder()
+                    .symbol(symbol)
+                    .intervalType(interval)
+                    .openTime(Instant.ofEpochMilli(openTime))
+                    .closeTime(Instant.ofEpochMilli(closeTime))
+                    .openPrice(decimalOf(OPEN))
+                    .highPrice(decimalOf(HIGH))
+                    .lowPrice(decimalOf(LOW))
+                    .closePrice(decimalOf(CLOSE))
+                    .volume(decimalOf(VOLUME))
+                    .quoteVolume(decimalOf(QUOTE_VOLUME))
+                    .tradeCount(tradeCount)
+                    .takerBuyBaseVolume(decimalOf(TAKER_BUY_BASE))
+                    .takerBuyQuoteVolume(decimalOf(TAKER_BUY_QUOTE))
+                    .build();
+        }
+    }
+
+    // ======== 字串字典 ========
+
+    /**
+     * 以 char 區段查找既有字串的開放定址表。
+     * 讀取無鎖（volatile 陣列快照），新增時同步並整表複製；幣對數量有限，寫入極少發生。
+     */
+    static final class SymbolTable {
+
+        private volatile String[] table = new String[256];
+        private int size;
+
+        String intern(char[] buf, int off, int len) {
+            int hash = hash(buf, off, len);
+            String found = find(table, buf, off, len, hash);
+            return found != null ? found : add(buf, off, len, hash);
+        }
+
+        private synchronized String add(char[] buf, int off, int len, int hash) {
+            String[] current = table;
+            String found = find(current, buf, off, len, hash);
+            if (found != null) return found;
+
+            String value = new String(buf, off, len);
+            String[] next = (size + 1) * 2 > current.length
+                    ? new String[current.length * 2] : current.clone();
+            if (next.length != current.length) {
+                for (String s : current) {
+                    if (s != null) insert(next, s);
+                }
+            }
+            insert(next, value);
+            size++;
+            table = next;
+            return value;
+        }
+
+        private static String find(String[] t, char[] buf, int off, int len, int hash) {
+            int mask = t.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                String s = t[i];
+                if (s == null) return null;
+                if (s.hashCode() == hash && matches(s, buf, off, len)) return s;
+            }
+        }
+
+        private static void insert(String[] t, String s) {
+            int mask = t.length - 1;
+            int i = s.hashCode() & mask;
+            while (t[i] != null) i = (i + 1) & mask;
+            t[i] = s;
+        }
+
+        private static boolean matches(String s, char[] buf, int off, int len) {
+            if (s.length() != len) return false;
+            for (int i = 0; i < len; i++) {
+                if (s.charAt(i) != buf[off + i]) return false;
+            }
+            return true;
+        }
+
+        /** 與 {@link String#hashCode()} 相同的計算方式 */
+        private static int hash(char[] buf, int off, int len) {
+            int h = 0;
+            for (int i = off; i < off + len; i++) {
+                h = 31 * h + buf[i];
+            }
+            return h;
+        }
+    }
+}
@@ -3,75 +3,49 @@ package com.aiinpocket.btctrade.service;
 import com.aiinpocket.btctrade.model.entity.Kline;
 import com.aiinpocket.btctrade.model.event.KlineClosed;
 import com.aiinpocket.btctrade.model.event.KlineTick;
-import com.aiinpocket.btctrade.repository.KlineRepository;
-import tools.jackson.databind.JsonNode;
-import tools.jackson.databind.ObjectMapper;
+import com.aiinpocket.btctrade.service.BinanceKlineFrameDecoder.KlineFrame;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-import java.time.Instant;
-
+/**
+ * Binance kline WS 訊息處理器。
+ * 訊框由 {@link BinanceKlineFrameDecoder} 串流解碼為原始型別紀錄；
+ * 未收盤的 tick 只發布原始型別的 {@link KlineTick}，收盤時才建立 Kline Entity，
+ * 並交由 {@link KlineWriteBehindService} 非同步批次寫入。
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class BinanceKlineMessageHandler {
 
-    private final KlineRepository klineRepo;
-    private final ObjectMapper objectMapper;
+    private final KlineWriteBehindService klineWriter;
+    private final HotKlineCache hotKlineCache;
+    private final BinanceKlineFrameDecoder frameDecoder;
     private final ApplicationEventPublisher eventPublisher;
 
     public void handleMessage(String json) {
         try {
-            JsonNode root = objectMapper.readTree(json);
-
-            // 處理 combined stream 格式: {"stream":"...","data":{...}}
-            JsonNode data = root.has("data") ? root.get("data") : root;
-            JsonNode klineData = data.get("k");
-
-            if (klineData == null) {
+            KlineFrame frame = frameDecoder.decode(json);
+            if (frame == null) {
                 log.debug("Non-kline message received, ignoring");
                 return;
             }
 
-            boolean isClosed = klineData.get("x").asBoolean();
-            String symbol = klineData.get("s").asText();
-            String interval = klineData.get("i").asText();
-
-            Kline kline = Kline.builder()
-                    .symbol(symbol)
-                    .intervalType(interval)
-                    .openTime(Instant.ofEpochMilli(klineData.get("t").asLong()))
-                    .closeTime(Instant.ofEpochMilli(klineData.get("T").asLong()))
-                    .openPrice(new BigDecimal(klineData.get("o").asText()))
-                    .highPrice(new BigDecimal(klineData.get("h").asText()))
-                    .lowPrice(new BigDecimal(klineData.get("l").asText()))
-                    .closePrice(new BigDecimal(klineData.get("c").asText()))
-                    .volume(new BigDecimal(klineData.get("v").asText()))
-                    .quoteVolume(new BigDecimal(klineData.get("q").asText()))
-                    .tradeCount(klineData.get("n").asInt())
-                    .takerBuyBaseVolume(new BigDecimal(klineData.get("V").asText()))
-                    .takerBuyQuoteVolume(new BigDecimal(klineData.get("Q").asText()))
-                    .build();
+            String symbol = frame.symbol();
+            String interval = frame.interval();
 
-            if (isClosed) {
-                // K 線收盤 → 存入 DB + 觸發策略評估
-                if (!klineRepo.existsBySymbolAndIntervalTypeAndOpenTime(
-                        symbol, interval, kline.getOpenTime())) {
-                    try {
-                        klineRepo.save(kline);
-                        log.debug("Saved closed kline: {} {} @ {}", symbol, interval, kline.getClosePrice());
-                    } catch (DataIntegrityViolationException e) {
-                        log.debug("Kline 已由 DataFetchJob 寫入，跳過: {} {} {}", symbol, interval, kline.getOpenTime());
-                    }
-                }
+            if (frame.isClosed()) {
+                // K 線收盤 → 追加到熱 K 線緩衝、交給 write-behind 批次寫入 DB，並立即觸發策略評估
+                hotKlineCache.append(frame);
+                Kline kline = frame.toKline();
+                klineWriter.enqueue(kline);
                 eventPublisher.publishEvent(new KlineClosed(symbol, interval, kline));
             } else {
-                // 未收盤 → 即時價格更新
-                eventPublisher.publishEvent(new KlineTick(symbol, kline));
+                // 未收盤 → 即時價格更新（不建立 Entity）
+                eventPublisher.publishEvent(new KlineTick(
+                        symbol, frame.close(), frame.high(), frame.low(), frame.volume()));
             }
         } catch (Exception e) {
             log.error("Failed to parse Binance WS message: {}", e.getMessage());
@@ -0,0 +1,238 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BinanceApiProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Binance REST 全域權重限流器。
+ *
+ * <p>Binance 以 IP 為單位、每個整分鐘視窗累計請求權重（超過即 429，屢犯升級為 418 封鎖）。
+ * 本服務所有 REST 呼叫在送出前向此限流器取得該端點的權重：
+ * <ul>
+ *   <li>本地以整分鐘視窗估算已用權重，並以每個回應的 {@code X-MBX-USED-WEIGHT-1m}
+ *       校正（同 IP 的其他 Pod 用量也會反映在標頭中）</li>
+ *   <li>收到 429/418 時依 {@code Retry-After} 暫停所有請求</li>
+ *   <li>等待中的請求依 {@link Priority} 排隊：缺口補齊 &gt; 歷史回補 &gt; 市場總覽，
+ *       同優先序先到先得</li>
+ * </ul>
+ * 因此可把預算設在接近交易所上限，而不需以固定 sleep 保守壓低速率。
+ */
+@Service
+@Slf4j
+public class BinanceRateLimiter {
+
+    /** 請求優先序（宣告順序即優先順序） */
+    public enum Priority {
+        /** 即時 K 線缺口補齊（DataFetchJob） */
+        GAP_FILL,
+        /** 歷史資料回補、新增幣對前的 exchangeInfo 查詢 */
+        BACKFILL,
+        /** 市場總覽等可退回快取的請求 */
+        MARKET_OVERVIEW
+    }
+
+    public static final String KLINES = "/api/v3/klines";
+    public static final String TICKER_24HR_ALL = "/api/v3/ticker/24hr";
+    public static final String EXCHANGE_INFO = "/api/v3/exchangeInfo";
+
+    /** 各端點的請求權重（依 Binance 文件） */
+    private static final Map<String, Integer> ENDPOINT_WEIGHTS = Map.of(
+            KLINES, 2,
+            TICKER_24HR_ALL, 80,
+            EXCHANGE_INFO, 20
+    );
+    private static final int DEFAULT_WEIGHT = 1;
+    private static final long WINDOW_MILLIS = 60_000;
+    private static final String USED_WEIGHT_HEADER = "X-MBX-USED-WEIGHT-1m";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int weightLimit;
+
+    private long windowStart;
+    private int usedWeight;
+    private long bannedUntil;
+    private long sequence;
+
+    public BinanceRateLimiter(BinanceApiProperties props, MeterRegistry meterRegistry) {
+        this.weightLimit = props.requestWeightPerMinute();
+        this.windowStart = currentWindow(System.currentTimeMillis());
+
+        Gauge.builder("binance.rest.weight.used", this, BinanceRateLimiter::usedWeight)
+                .description("目前分鐘視窗已使用的 REST 權重（本地估算與回應標頭取大者）")
+                .register(meterRegistry);
+        Gauge.builder("binance.rest.weight.waiters", this, BinanceRateLimiter::waiterCount)
+                .description("等待權重的請求數")
+                .register(meterRegistry);
+    }
+
+    /** 查詢端點權重（未列出的端點視為 1） */
+    public static int weightOf(String endpoint) {
+        return ENDPOINT_WEIGHTS.getOrDefault(endpoint, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * 阻塞直到取得端點權重。
+     */
+    public void acquire(String endpoint, Priority priority) throws InterruptedException {
+        acquire(weightOf(endpoint), priority);
+    }
+
+    /**
+     * 阻塞直到取得指定權重。
+     */
+    public void acquire(int weight, Priority priority) throws InterruptedException {
+        tryAcquire(weight, priority, Long.MAX_VALUE);
+    }
+
+    /**
+     * 在逾時內嘗試取得端點權重；逾時則放棄排隊並回傳 false（呼叫端可改用快取）。
+     */
+    public boolean tryAcquire(String endpoint, Priority priority, Duration timeout) throws InterruptedException {
+        return tryAcquire(weightOf(endpoint), priority, timeout.toNanos());
+    }
+
+    /**
+     * 非同步取得端點權重，於虛擬執行緒上排隊，取得後完成 future。
+     */
+    public CompletableFuture<Void> acquireAsync(String endpoint, Priority priority) {
+        int weight = weightOf(endpoint);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                acquire(weight, priority);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * 依回應校正狀態：讀取已用權重標頭，429/418 時依 Retry-After 暫停所有請求。
+     * 由 binanceRestClient 的攔截器對每個回應呼叫。
+     */
+    public void onResponse(int statusCode, HttpHeaders headers) {
+        String used = headers.getFirst(USED_WEIGHT_HEADER);
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            rollWindow(now);
+            if (used != null) {
+                try {
+                    // 標頭值含同 IP 其他請求的用量，只往上校正
+                    usedWeight = Math.max(usedWeight, Integer.parseInt(used.trim()));
+                } catch (NumberFormatException ignored) {
+                    // 非預期格式，沿用本地估算
+                }
+            }
+            if (statusCode == 429 || statusCode == 418) {
+                long retryAfterSec = parseRetryAfter(headers.getFirst(HttpHeaders.RETRY_AFTER));
+                bannedUntil = Math.max(bannedUntil, now + retryAfterSec * 1000);
+                log.warn("[Binance 限流] 收到 {}，暫停所有 REST 請求 {} 秒", statusCode, retryAfterSec);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryAcquire(int weight, Priority priority, long timeoutNanos) throws InterruptedException {
+        long deadline = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeoutNanos;
+        lock.lock();
+        Waiter self = new Waiter(priority, sequence++);
+        waiters.add(self);
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                rollWindow(now);
+                long waitMillis;
+                if (now < bannedUntil) {
+                    waitMillis = bannedUntil - now;
+                } else if (waiters.peek() == self && usedWeight + weight <= weightLimit) {
+                    usedWeight += weight;
+                    return true;
+                } else {
+                    // 本視窗額度不足，或前面有更高優先序的請求：等下一個整分鐘或被喚醒
+                    waitMillis = windowStart + WINDOW_MILLIS - now;
+                }
+
+                long waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, waitMillis));
+                if (deadline != Long.MAX_VALUE) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) return false;
+                    waitNanos = Math.min(waitNanos, remaining);
+                }
+                changed.awaitNanos(waitNanos);
+            }
+        } finally {
+            waiters.remove(self);
+            changed.signalAll();
+            lock.unlock();
+        }
+    }
+
+    private void rollWindow(long now) {
+        long window = currentWindow(now);
+        if (window != windowStart) {
+            windowStart = window;
+            usedWeight = 0;
+        }
+    }
+
+    private static long currentWindow(long now) {
+        return now - (now % WINDOW_MILLIS);
+    }
+
+    private static long parseRetryAfter(String value) {
+        if (value == null) return 60;
+        try {
+            return Math.max(1, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 60;
+        }
+    }
+
+    private int usedWeight() {
+        lock.lock();
+        try {
+            rollWindow(System.currentTimeMillis());
+            return usedWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int waiterCount() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Waiter(Priority priority, long seq) implements Comparable<Waiter> {
+        @Override
+        public int compareTo(Waiter o) {
+            int c = priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+}
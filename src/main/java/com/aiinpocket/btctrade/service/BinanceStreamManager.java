@@ -54,7 +54,7 @@ public class BinanceStreamManager implements SmartLifecycle {
     }
 
     /**
-     * 新符號歷史同步完成後呼叫，啟動 WebSocket 串流。
+     * 新符號歷史同步完成後呼叫，在既有連線上 SUBSCRIBE 其串流。
      */
     public void onSymbolReady(String symbol) {
         log.info("Symbol {} is ready, subscribing to WebSocket", symbol);
@@ -62,7 +62,7 @@ public class BinanceStreamManager implements SmartLifecycle {
     }
 
     /**
-     * 幣對下架後呼叫，停止 WebSocket 串流。
+     * 幣對下架後呼叫，在所屬連線上 UNSUBSCRIBE 其串流。
      */
     public void onSymbolDelisted(String symbol) {
         log.warn("Symbol {} is delisted, unsubscribing from WebSocket", symbol);
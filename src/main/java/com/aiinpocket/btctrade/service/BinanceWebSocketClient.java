@@ -1,45 +1,66 @@
 package com.aiinpocket.btctrade.service;
 
 import com.aiinpocket.btctrade.config.BinanceApiProperties;
-import com.aiinpocket.btctrade.model.enums.SyncStatus;
-import com.aiinpocket.btctrade.repository.TrackedSymbolRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Binance kline 串流連線管理器。
+ *
+ * <p>維持少量 combined-stream 連線（每條最多 {@code wsStreamsPerConnection} 個串流），
+ * 幣對的新增與移除一律透過 Binance 的 JSON {@code SUBSCRIBE} / {@code UNSUBSCRIBE}
+ * 在既有連線上完成，不會為單一幣對建立或關閉 socket。
+ *
+ * <ul>
+ *   <li>新幣對優先放進串流數最少、尚未滿額的連線；全部滿額才開新連線</li>
+ *   <li>訂閱變更先累積，由控制執行緒每 {@value #CONTROL_FLUSH_MS}ms 合併送出；
+ *       每條連線的控制訊息（每個 SUBSCRIBE / UNSUBSCRIBE 分段各算一則）以權杖桶限制在
+ *       每秒 {@value #MAX_CONTROL_MESSAGES_PER_SECOND} 則（Binance 的上限），超出的變更留待下一輪</li>
+ *   <li>斷線重連時以該連線「目前」的完整串流清單重建 URL（而非啟動時的清單）</li>
+ * </ul>
+ */
 @Service
 @Slf4j
 public class BinanceWebSocketClient {
 
     private static final long INITIAL_BACKOFF_SECONDS = 5;
     private static final long MAX_BACKOFF_SECONDS = 300; // 5 minutes cap
+    private static final long CONTROL_FLUSH_MS = 250;
+    /** 單則 SUBSCRIBE/UNSUBSCRIBE 訊息的串流數上限 */
+    private static final int MAX_PARAMS_PER_MESSAGE = 200;
+    /** Binance 每條連線每秒可接受的控制訊息數 */
+    private static final int MAX_CONTROL_MESSAGES_PER_SECOND = 5;
 
     private final BinanceApiProperties props;
     private final BinanceKlineMessageHandler messageHandler;
-    private final TrackedSymbolRepository trackedSymbolRepo;
 
     private final HttpClient httpClient;
-    private final ConcurrentHashMap<String, WebSocket> connections = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Integer> retryCountMap = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService reconnectScheduler =
+    private final List<StreamConnection> pool = new CopyOnWriteArrayList<>();
+    /** 幣對（大寫）→ 所在連線 */
+    private final ConcurrentHashMap<String, StreamConnection> assignments = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+    private final ScheduledExecutorService controlScheduler =
             Executors.newSingleThreadScheduledExecutor(r -> {
-                Thread t = new Thread(r, "ws-reconnect");
+                Thread t = new Thread(r, "ws-control");
                 t.setDaemon(true);
                 return t;
             });
+    private volatile boolean shuttingDown = false;
 
     public BinanceWebSocketClient(BinanceApiProperties props,
-                                  BinanceKlineMessageHandler messageHandler,
-                                  TrackedSymbolRepository trackedSymbolRepo) {
+                                  BinanceKlineMessageHandler messageHandler) {
         this.props = props;
         this.messageHandler = messageHandler;
-        this.trackedSymbolRepo = trackedSymbolRepo;
         // 使用自訂 executor 避免消耗 ForkJoinPool.commonPool
         this.httpClient = HttpClient.newBuilder()
                 .executor(Executors.newFixedThreadPool(2, r -> {
@@ -48,200 +69,245 @@ public class BinanceWebSocketClient {
                     return t;
                 }))
                 .build();
+        controlScheduler.scheduleWithFixedDelay(this::flushPendingChanges,
+                CONTROL_FLUSH_MS, CONTROL_FLUSH_MS, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 訂閱幣對的 kline 串流。已訂閱則忽略。
+     */
     public void subscribe(String symbol) {
-        String lowerSymbol = symbol.toLowerCase();
-        String interval = props.defaultInterval();
-        String streamName = lowerSymbol + "@kline_" + interval;
-        String url = props.wsBaseUrl() + "/ws/" + streamName;
-
-        log.info("Subscribing to Binance WS: {}", streamName);
-
-        httpClient.newWebSocketBuilder()
-                .buildAsync(URI.create(url), new WebSocket.Listener() {
-                    private final StringBuilder buffer = new StringBuilder();
-
-                    @Override
-                    public void onOpen(WebSocket webSocket) {
-                        log.info("Binance WS connected: {}", symbol);
-                        retryCountMap.remove(symbol);
-                        webSocket.request(1);
-                    }
-
-                    @Override
-                    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
-                        buffer.append(data);
-                        if (last) {
-                            String message = buffer.toString();
-                            buffer.setLength(0);
-                            try {
-                                messageHandler.handleMessage(message);
-                            } catch (Exception e) {
-                                log.error("Error handling WS message for {}", symbol, e);
-                            }
-                        }
-                        webSocket.request(1);
-                        return null;
-                    }
-
-                    @Override
-                    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
-                        log.warn("Binance WS closed for {}: {} {}", symbol, statusCode, reason);
-                        connections.remove(symbol);
-                        scheduleReconnect(symbol);
-                        return null;
-                    }
-
-                    @Override
-                    public void onError(WebSocket webSocket, Throwable error) {
-                        log.error("Binance WS error for {}: {}", symbol, error.getMessage());
-                        connections.remove(symbol);
-                        scheduleReconnect(symbol);
-                    }
-                })
-                .thenAccept(ws -> connections.put(symbol, ws))
-                .exceptionally(e -> {
-                    log.error("Failed to connect WS for {}: {}", symbol, e.getMessage());
-                    scheduleReconnect(symbol);
-                    return null;
-                });
+        String key = symbol.toUpperCase();
+        synchronized (pool) {
+            if (assignments.containsKey(key)) return;
+            shuttingDown = false;
+
+            StreamConnection conn = pool.stream()
+                    .filter(c -> c.size() < props.wsStreamsPerConnection())
+                    .min(Comparator.comparingInt(StreamConnection::size))
+                    .orElse(null);
+            boolean created = conn == null;
+            if (created) {
+                conn = new StreamConnection(pool.size());
+                pool.add(conn);
+            }
+            conn.add(streamName(key));
+            assignments.put(key, conn);
+            if (created) {
+                conn.connect();
+            }
+            log.info("Subscribing to Binance WS: {} (connection #{}, {} streams)", key, conn.id, conn.size());
+        }
     }
 
     public void subscribeAll(List<String> symbols) {
-        if (symbols.isEmpty()) return;
+        symbols.forEach(this::subscribe);
+        log.info("Binance WS: {} symbols across {} connections", assignments.size(), pool.size());
+    }
 
-        if (symbols.size() <= 3) {
-            symbols.forEach(this::subscribe);
-            return;
+    /**
+     * 取消訂閱幣對；連線保留供後續新幣對使用。
+     */
+    public void unsubscribe(String symbol) {
+        String key = symbol.toUpperCase();
+        synchronized (pool) {
+            StreamConnection conn = assignments.remove(key);
+            if (conn != null) {
+                conn.remove(streamName(key));
+                log.info("Unsubscribed from Binance WS: {} (connection #{})", key, conn.id);
+            }
         }
+    }
 
-        // 超過 3 個符號用 combined stream
-        String interval = props.defaultInterval();
-        String streams = symbols.stream()
-                .map(s -> s.toLowerCase() + "@kline_" + interval)
-                .collect(Collectors.joining("/"));
-        String url = props.wsBaseUrl() + "/stream?streams=" + streams;
-
-        log.info("Subscribing to Binance combined WS: {} symbols", symbols.size());
-
-        String combinedKey = "__combined__";
-
-        httpClient.newWebSocketBuilder()
-                .buildAsync(URI.create(url), new WebSocket.Listener() {
-                    private final StringBuilder buffer = new StringBuilder();
-
-                    @Override
-                    public void onOpen(WebSocket webSocket) {
-                        log.info("Binance combined WS connected ({} symbols)", symbols.size());
-                        retryCountMap.remove(combinedKey);
-                        webSocket.request(1);
-                    }
-
-                    @Override
-                    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
-                        buffer.append(data);
-                        if (last) {
-                            String message = buffer.toString();
-                            buffer.setLength(0);
-                            try {
-                                messageHandler.handleMessage(message);
-                            } catch (Exception e) {
-                                log.error("Error handling combined WS message", e);
-                            }
-                        }
-                        webSocket.request(1);
-                        return null;
-                    }
+    public void closeAll() {
+        synchronized (pool) {
+            shuttingDown = true;
+            for (StreamConnection conn : pool) {
+                conn.close();
+            }
+            pool.clear();
+            assignments.clear();
+        }
+    }
 
-                    @Override
-                    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
-                        log.warn("Binance combined WS closed: {} {}", statusCode, reason);
-                        connections.remove(combinedKey);
-                        scheduleReconnectCombined(symbols, combinedKey);
-                        return null;
-                    }
-
-                    @Override
-                    public void onError(WebSocket webSocket, Throwable error) {
-                        log.error("Binance combined WS error: {}", error.getMessage());
-                        connections.remove(combinedKey);
-                        scheduleReconnectCombined(symbols, combinedKey);
-                    }
-                })
-                .thenAccept(ws -> connections.put(combinedKey, ws))
-                .exceptionally(e -> {
-                    log.error("Failed to connect combined WS: {}", e.getMessage());
-                    scheduleReconnectCombined(symbols, combinedKey);
-                    return null;
-                });
+    public boolean isConnected(String symbol) {
+        StreamConnection conn = assignments.get(symbol.toUpperCase());
+        return conn != null && conn.isOpen();
     }
 
-    public void unsubscribe(String symbol) {
-        WebSocket ws = connections.remove(symbol);
-        retryCountMap.remove(symbol);
-        if (ws != null) {
-            ws.sendClose(WebSocket.NORMAL_CLOSURE, "unsubscribe");
-            log.info("Unsubscribed from Binance WS: {}", symbol);
-        }
+    private String streamName(String symbol) {
+        return symbol.toLowerCase() + "@kline_" + props.defaultInterval();
     }
 
-    public void closeAll() {
-        connections.forEach((key, ws) -> {
+    private void flushPendingChanges() {
+        for (StreamConnection conn : pool) {
             try {
-                ws.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown");
+                conn.flushPending();
             } catch (Exception e) {
-                log.warn("Error closing WS for {}", key);
+                log.warn("Binance WS connection #{} 送出訂閱變更失敗: {}", conn.id, e.getMessage());
             }
-        });
-        connections.clear();
-        retryCountMap.clear();
+        }
     }
 
-    public boolean isConnected(String symbol) {
-        WebSocket ws = connections.get(symbol);
-        return ws != null && !ws.isInputClosed() && !ws.isOutputClosed();
+    private long calculateBackoff(int retryCount) {
+        long delay = INITIAL_BACKOFF_SECONDS * (1L << Math.min(retryCount - 1, 6));
+        return Math.min(delay, MAX_BACKOFF_SECONDS);
     }
 
-    private void scheduleReconnect(String symbol) {
-        int retryCount = retryCountMap.merge(symbol, 1, Integer::sum);
-        long delay = calculateBackoff(retryCount);
+    /**
+     * 單一 combined-stream 連線。
+     * 期望訂閱與已訂閱的集合及控制訊息限速見 {@link StreamSubscriptions}。
+     */
+    private final class StreamConnection {
+
+        private final int id;
+        private final StreamSubscriptions subscriptions =
+                new StreamSubscriptions(MAX_CONTROL_MESSAGES_PER_SECOND, MAX_PARAMS_PER_MESSAGE);
+        private volatile WebSocket ws;
+        private int retryCount = 0;
+        private boolean reconnectScheduled = false;
+        private boolean closed = false;
+
+        StreamConnection(int id) {
+            this.id = id;
+        }
+
+        synchronized int size() {
+            return subscriptions.size();
+        }
 
-        reconnectScheduler.schedule(() -> {
-            boolean delisted = trackedSymbolRepo.findBySymbol(symbol.toUpperCase())
-                    .map(ts -> ts.getSyncStatus() == SyncStatus.DELISTED)
-                    .orElse(false);
+        synchronized void add(String stream) {
+            subscriptions.add(stream);
+        }
 
-            if (delisted) {
-                log.info("幣對 {} 已下架，跳過 WebSocket 重連", symbol);
-                retryCountMap.remove(symbol);
-                return;
-            }
+        synchronized void remove(String stream) {
+            subscriptions.remove(stream);
+        }
 
-            if (retryCount <= 3) {
-                log.info("Reconnecting Binance WS for {} (attempt {}, delay {}s)", symbol, retryCount, delay);
-            } else {
-                log.warn("Reconnecting Binance WS for {} (attempt {}, delay {}s)", symbol, retryCount, delay);
+        boolean isOpen() {
+            WebSocket socket = ws;
+            return socket != null && !socket.isInputClosed() && !socket.isOutputClosed();
+        }
+
+        /** 以目前的完整串流清單建立連線 */
+        void connect() {
+            Set<String> initial;
+            synchronized (this) {
+                if (closed) return;
+                reconnectScheduled = false;
+                initial = subscriptions.streams();
             }
-            subscribe(symbol);
-        }, delay, TimeUnit.SECONDS);
-    }
+            String url = initial.isEmpty()
+                    ? props.wsBaseUrl() + "/stream"
+                    : props.wsBaseUrl() + "/stream?streams=" + String.join("/", initial);
+
+            httpClient.newWebSocketBuilder()
+                    .buildAsync(URI.create(url), new WebSocket.Listener() {
+                        private final StringBuilder buffer = new StringBuilder();
+
+                        @Override
+                        public void onOpen(WebSocket webSocket) {
+                            synchronized (StreamConnection.this) {
+                                ws = webSocket;
+                                subscriptions.opened(initial);
+                                retryCount = 0;
+                            }
+                            log.info("Binance WS connection #{} connected ({} streams)", id, initial.size());
+                            webSocket.request(1);
+                        }
+
+                        @Override
+                        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                            buffer.append(data);
+                            if (last) {
+                                String message = buffer.toString();
+                                buffer.setLength(0);
+                                if (message.startsWith("{\"error\"")) {
+                                    log.warn("Binance WS connection #{} 控制訊息錯誤: {}", id, message);
+                                } else {
+                                    try {
+                                        messageHandler.handleMessage(message);
+                                    } catch (Exception e) {
+                                        log.error("Error handling WS message on connection #{}", id, e);
+                                    }
+                                }
+                            }
+                            webSocket.request(1);
+                            return null;
+                        }
 
-    private void scheduleReconnectCombined(List<String> symbols, String key) {
-        int retryCount = retryCountMap.merge(key, 1, Integer::sum);
-        long delay = calculateBackoff(retryCount);
+                        @Override
+                        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+                            log.warn("Binance WS connection #{} closed: {} {}", id, statusCode, reason);
+                            onDisconnected();
+                            return null;
+                        }
 
-        if (retryCount <= 3) {
-            log.info("Reconnecting combined WS (attempt {}, delay {}s)", retryCount, delay);
-        } else {
-            log.warn("Reconnecting combined WS (attempt {}, delay {}s)", retryCount, delay);
+                        @Override
+                        public void onError(WebSocket webSocket, Throwable error) {
+                            log.error("Binance WS connection #{} error: {}", id, error.getMessage());
+                            onDisconnected();
+                        }
+                    })
+                    .exceptionally(e -> {
+                        log.error("Failed to connect Binance WS connection #{}: {}", id, e.getMessage());
+                        onDisconnected();
+                        return null;
+                    });
         }
 
-        reconnectScheduler.schedule(() -> subscribeAll(symbols), delay, TimeUnit.SECONDS);
-    }
+        /** 將期望集合與已訂閱集合的差異在限速內送出，其餘留待下一輪（僅在控制執行緒呼叫） */
+        void flushPending() {
+            List<StreamSubscriptions.ControlMessage> messages;
+            WebSocket socket;
+            synchronized (this) {
+                socket = ws;
+                if (closed || socket == null || socket.isOutputClosed()) return;
+                messages = subscriptions.drain(System.nanoTime());
+            }
+            for (StreamSubscriptions.ControlMessage message : messages) {
+                String payload = "{\"method\":\"" + message.method() + "\",\"params\":["
+                        + message.params().stream().map(p -> "\"" + p + "\"").collect(Collectors.joining(","))
+                        + "],\"id\":" + requestIds.incrementAndGet() + "}";
+                // 同一 socket 同時只能有一個未完成的 send，控制執行緒逐則等待完成
+                socket.sendText(payload, true).join();
+                log.debug("Binance WS connection #{} {} {}", id, message.method(), message.params());
+            }
+        }
 
-    private long calculateBackoff(int retryCount) {
-        long delay = INITIAL_BACKOFF_SECONDS * (1L << Math.min(retryCount - 1, 6));
-        return Math.min(delay, MAX_BACKOFF_SECONDS);
+        private void onDisconnected() {
+            int attempt;
+            synchronized (this) {
+                ws = null;
+                subscriptions.disconnected();
+                // onError 與 onClose 可能先後觸發，只排一次重連
+                if (closed || shuttingDown || reconnectScheduled) return;
+                reconnectScheduled = true;
+                attempt = ++retryCount;
+            }
+            long delay = calculateBackoff(attempt);
+            if (attempt <= 3) {
+                log.info("Reconnecting Binance WS connection #{} (attempt {}, delay {}s)", id, attempt, delay);
+            } else {
+                log.warn("Reconnecting Binance WS connection #{} (attempt {}, delay {}s)", id, attempt, delay);
+            }
+            controlScheduler.schedule(this::connect, delay, TimeUnit.SECONDS);
+        }
+
+        void close() {
+            WebSocket socket;
+            synchronized (this) {
+                closed = true;
+                socket = ws;
+                ws = null;
+            }
+            if (socket != null) {
+                try {
+                    socket.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown");
+                } catch (Exception e) {
+                    log.warn("Error closing Binance WS connection #{}", id);
+                }
+            }
+        }
     }
 }
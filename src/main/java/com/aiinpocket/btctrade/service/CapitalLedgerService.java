@@ -0,0 +1,82 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.entity.CapitalLedger;
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.repository.CapitalLedgerRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * 用戶資金帳本服務。
+ * 平倉時在 {@link PositionService#closePosition} 的同一個交易內累加，
+ * 讀取端（收盤評估的可用資金、儀表板統計）只讀一列帳本，成本與交易歷史長度無關。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CapitalLedgerService {
+
+    /** Advisory lock ID：啟動回填專用 */
+    private static final long BACKFILL_LOCK_ID = 2_000_010L;
+
+    private final CapitalLedgerRepository ledgerRepo;
+    private final DistributedLockService lockService;
+
+    /**
+     * 啟動時為尚無帳本的用戶從歷史持倉建立帳本（已有帳本的用戶不受影響）。
+     * 多個 Pod 同時啟動時只有一個執行；之後沒有帳本的用戶會在第一次平倉時從歷史建立。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        lockService.executeWithLock(BACKFILL_LOCK_ID, "資金帳本回填", () -> {
+            int created = ledgerRepo.backfillFromHistory();
+            if (created > 0) {
+                log.info("[資金帳本] 從歷史持倉建立 {} 本帳本", created);
+            }
+        });
+    }
+
+    /**
+     * 計入一筆平倉（需在平倉的交易內呼叫，與持倉更新一起提交或回滾）。
+     */
+    void recordClose(TradePosition position) {
+        long userId = ownerOf(position.getUserId());
+        BigDecimal pnl = position.getRealizedPnl();
+        long win = pnl.signum() > 0 ? 1 : 0;
+        Instant closedAt = position.getExitTime();
+
+        if (ledgerRepo.recordClose(userId, pnl, win, closedAt, Instant.now()) == 1) {
+            return;
+        }
+        if (ledgerRepo.seedFromHistory(userId, position.getId(), pnl, win, closedAt) == 1) {
+            log.info("[資金帳本] 用戶 {} 首次平倉，從歷史持倉建立帳本", userId);
+            return;
+        }
+        // 其他交易剛好同時建立了帳本（插入衝突時會等待對方提交），改為累加
+        ledgerRepo.recordClose(userId, pnl, win, closedAt, Instant.now());
+    }
+
+    /** 用戶帳本（尚無交易時為空帳本） */
+    public CapitalLedger ledger(Long userId) {
+        long owner = ownerOf(userId);
+        return ledgerRepo.findByUserId(owner).orElseGet(() -> CapitalLedger.empty(owner));
+    }
+
+    /**
+     * 可用資金計算用的累計已實現損益。
+     * userId 為 null（舊版全域評估）時沿用原本的口徑：所有實盤持倉的總和。
+     */
+    public BigDecimal realizedPnl(Long userId) {
+        return userId != null ? ledger(userId).getRealizedPnl() : ledgerRepo.sumRealizedPnl();
+    }
+
+    private static long ownerOf(Long userId) {
+        return userId != null ? userId : CapitalLedger.GLOBAL_USER_ID;
+    }
+}
@@ -1,9 +1,9 @@
 package com.aiinpocket.btctrade.service;
 
+import com.aiinpocket.btctrade.model.entity.CapitalLedger;
 import com.aiinpocket.btctrade.model.entity.TrackedSymbol;
 import com.aiinpocket.btctrade.model.entity.TradePosition;
 import com.aiinpocket.btctrade.model.entity.TradeSignal;
-import com.aiinpocket.btctrade.model.enums.PositionStatus;
 import com.aiinpocket.btctrade.repository.KlineRepository;
 import com.aiinpocket.btctrade.repository.TrackedSymbolRepository;
 import com.aiinpocket.btctrade.repository.TradePositionRepository;
@@ -22,6 +22,9 @@ public class DashboardService {
     private final TradeSignalRepository signalRepo;
     private final KlineRepository klineRepo;
     private final TrackedSymbolRepository trackedSymbolRepo;
+    private final HotKlineCache hotKlineCache;
+    private final OpenPositionRegistry positionRegistry;
+    private final CapitalLedgerService ledgerService;
 
     public List<TrackedSymbol> getTrackedSymbols() {
         return trackedSymbolRepo.findByActiveTrue();
@@ -29,12 +32,18 @@ public class DashboardService {
 
     // ── 用戶隔離查詢（Phase 2） ──
 
+    /** 最近 100 筆交易紀錄（新到舊） */
     public List<TradePosition> getUserLivePositions(Long userId, String symbol) {
-        return positionRepo.findByUserIdAndSymbolAndBacktestOrderByEntryTimeAsc(userId, symbol, false);
+        return positionRepo.findTop100ByUserIdAndSymbolAndBacktestOrderByEntryTimeDesc(userId, symbol, false);
+    }
+
+    /** 用戶累計交易統計（讀一列帳本） */
+    public CapitalLedger getUserLedger(Long userId) {
+        return ledgerService.ledger(userId);
     }
 
     public Optional<TradePosition> getUserOpenPosition(Long userId, String symbol) {
-        return positionRepo.findByUserIdAndSymbolAndStatus(userId, symbol, PositionStatus.OPEN);
+        return positionRegistry.find(userId, symbol);
     }
 
     public List<TradeSignal> getUserRecentSignals(Long userId, String symbol) {
@@ -48,13 +57,18 @@ public class DashboardService {
     }
 
     public Optional<TradePosition> getOpenPosition(String symbol) {
-        return positionRepo.findBySymbolAndStatus(symbol, PositionStatus.OPEN);
+        return positionRegistry.find(null, symbol);
     }
 
     public long getKlineCount(String symbol, String interval) {
         return klineRepo.countBySymbolAndIntervalType(symbol, interval);
     }
 
+    /** 最新收盤價（取自熱 K 線緩衝，不查 DB） */
+    public Optional<Double> getLastPrice(String symbol) {
+        return hotKlineCache.lastClose(symbol);
+    }
+
     public List<TradeSignal> getRecentSignals(String symbol) {
         return signalRepo.findTop100BySymbolAndBacktestOrderBySignalTimeDesc(symbol, false);
     }
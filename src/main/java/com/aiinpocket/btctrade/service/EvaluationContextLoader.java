@@ -0,0 +1,85 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.EvaluationContext;
+import com.aiinpocket.btctrade.model.dto.EvaluationContext.Member;
+import com.aiinpocket.btctrade.model.entity.CapitalLedger;
+import com.aiinpocket.btctrade.model.entity.StrategyTemplate;
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.repository.CapitalLedgerRepository;
+import com.aiinpocket.btctrade.repository.StrategyTemplateRepository;
+import com.aiinpocket.btctrade.repository.UserWatchlistRepository;
+import com.aiinpocket.btctrade.repository.UserWatchlistRepository.ActiveStrategyUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * K 線收盤評估的用戶狀態批次載入器。
+ *
+ * <p>不論用戶數多少，固定以 4 個集合查詢取回整個幣對的狀態：
+ * <ol>
+ *   <li>觀察此幣對且有啟用策略的活躍用戶與其模板 ID</li>
+ *   <li>上述用戶使用的策略模板</li>
+ *   <li>幣對上的未平倉實盤持倉（經 {@link OpenPositionRegistry#syncSymbol} 載入並同步記憶體索引）</li>
+ *   <li>觀察此幣對的用戶的資金帳本（每人一列，與交易歷史長度無關）</li>
+ * </ol>
+ * 取代原本每位用戶一次持倉查詢、每次進場再載入該用戶全部歷史持倉計算資金的作法，
+ * 縮短分散式鎖內的評估時間。沒有活躍用戶時只執行第 1 個查詢。
+ */
+@Service
+@RequiredArgsConstructor
+public class EvaluationContextLoader {
+
+    private final UserWatchlistRepository watchlistRepo;
+    private final StrategyTemplateRepository templateRepo;
+    private final CapitalLedgerRepository ledgerRepo;
+    private final OpenPositionRegistry positionRegistry;
+
+    /**
+     * @param activeCutoff 最後登入時間需晚於此時間才視為活躍用戶
+     */
+    public EvaluationContext load(String symbol, Instant activeCutoff) {
+        List<ActiveStrategyUser> users = watchlistRepo.findActiveStrategyUsersBySymbol(symbol, activeCutoff);
+        if (users.isEmpty()) {
+            return new EvaluationContext(symbol, Map.of());
+        }
+
+        Set<Long> templateIds = new HashSet<>();
+        for (ActiveStrategyUser user : users) {
+            templateIds.add(user.getTemplateId());
+        }
+        Map<Long, TradingStrategyProperties> propsByTemplate = new HashMap<>();
+        for (StrategyTemplate template : templateRepo.findAllById(templateIds)) {
+            propsByTemplate.put(template.getId(), template.toProperties());
+        }
+
+        Map<Long, TradePosition> openByUser = positionRegistry.syncSymbol(symbol);
+
+        Map<Long, BigDecimal> pnlByUser = new HashMap<>();
+        for (CapitalLedger ledger : ledgerRepo.findByWatchersOf(symbol)) {
+            pnlByUser.put(ledger.getUserId(), ledger.getRealizedPnl());
+        }
+
+        // 依策略參數內容分組（TradingStrategyProperties 為 record，equals/hashCode 即內容雜湊）：
+        // 系統模板與未修改的複製模板落在同一組，指標與進場判斷每組只算一次
+        Map<TradingStrategyProperties, List<Member>> groups = new LinkedHashMap<>();
+        for (ActiveStrategyUser user : users) {
+            TradingStrategyProperties userProps = propsByTemplate.get(user.getTemplateId());
+            if (userProps == null) continue;
+            groups.computeIfAbsent(userProps, k -> new ArrayList<>())
+                    .add(new Member(user.getUserId(), openByUser.get(user.getUserId()),
+                            pnlByUser.getOrDefault(user.getUserId(), BigDecimal.ZERO)));
+        }
+        return new EvaluationContext(symbol, groups);
+    }
+}
@@ -22,6 +22,8 @@ public class HistoricalSyncService {
     private final TradeWebSocketHandler wsHandler;
     private final BinanceApiProperties apiProperties;
     private final BinanceStreamManager binanceStreamManager;
+    private final HotKlineCache hotKlineCache;
+    private final IndicatorStateRegistry indicatorStateRegistry;
 
     /** 固定起始日期：所有幣對從 2021-01-01 開始同步資料 */
     private static final Instant FIXED_START_DATE =
@@ -44,16 +46,17 @@ public class HistoricalSyncService {
 
             binanceApiService.fetchAndStoreHistoricalDataWithProgress(
                     symbol, interval, startDate, endDate,
-                    (batchDone, totalBatches) -> {
-                        int progress = Math.min(99, (int) (100.0 * batchDone / totalBatches));
-                        trackedSymbolService.updateSyncStatus(symbol, SyncStatus.SYNCING, progress, null);
-                        wsHandler.broadcastSyncProgress(symbol, progress, SyncStatus.SYNCING);
+                    p -> {
+                        trackedSymbolService.updateSyncStatus(symbol, SyncStatus.SYNCING, p.percent(), null);
+                        wsHandler.broadcastSyncProgress(symbol, p.percent(), SyncStatus.SYNCING, p.rowsPerSecond());
                     });
 
             trackedSymbolService.updateSyncStatus(symbol, SyncStatus.READY, 100, null);
             wsHandler.broadcastSyncProgress(symbol, 100, SyncStatus.READY);
 
-            // 同步完成後啟動 WebSocket 串流
+            // 同步完成後重新載入熱 K 線並啟動 WebSocket 串流
+            hotKlineCache.invalidate(symbol);
+            indicatorStateRegistry.invalidate(symbol);
             binanceStreamManager.onSymbolReady(symbol);
             log.info("歷史資料同步完成: {}", symbol);
 
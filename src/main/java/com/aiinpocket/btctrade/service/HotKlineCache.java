@@ -0,0 +1,187 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BinanceApiProperties;
+import com.aiinpocket.btctrade.config.HotKlineCacheProperties;
+import com.aiinpocket.btctrade.model.dto.BinanceKlineResponse;
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
+import com.aiinpocket.btctrade.model.entity.TrackedSymbol;
+import com.aiinpocket.btctrade.model.enums.SyncStatus;
+import com.aiinpocket.btctrade.repository.TrackedSymbolRepository;
+import com.aiinpocket.btctrade.service.BinanceKlineFrameDecoder.KlineFrame;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 熱 K 線快取：每個 (幣對, 週期) 一個 {@link KlineRingBuffer}。
+ *
+ * <ul>
+ *   <li>啟動時（WS 串流開始前）對每個 READY 幣對以單一查詢載入最近 {@code capacity} 根</li>
+ *   <li>之後由 WS 收盤路徑直接以原始型別追加，不經 Entity；
+ *       WS 中斷期間由 DataFetchJob 以 REST 補齊的已收盤 K 線接續追加，恢復後緩衝沒有缺口</li>
+ *   <li>讀取端（即時評估、主控台、市場頁）取快照，不再每次收盤查 DB 並建立 ~200 個 Entity</li>
+ * </ul>
+ * 新幣對在第一次讀取時才載入（歷史同步完成後）。
+ */
+@Service
+@Slf4j
+public class HotKlineCache implements SmartLifecycle {
+
+    private static final String WARM_SQL = """
+            SELECT open_time, close_time, open_price, high_price, low_price, close_price,
+                   volume, quote_volume, trade_count
+            FROM kline
+            WHERE symbol = ? AND interval_type = ?
+            ORDER BY open_time DESC
+            LIMIT ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TrackedSymbolRepository trackedSymbolRepo;
+    private final BinanceApiProperties apiProperties;
+    private final int capacity;
+    private final ConcurrentHashMap<String, KlineRingBuffer> buffers = new ConcurrentHashMap<>();
+    private volatile boolean running = false;
+
+    public HotKlineCache(JdbcTemplate jdbcTemplate,
+                         TrackedSymbolRepository trackedSymbolRepo,
+                         BinanceApiProperties apiProperties,
+                         HotKlineCacheProperties props) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.trackedSymbolRepo = trackedSymbolRepo;
+        this.apiProperties = apiProperties;
+        this.capacity = props.capacity();
+    }
+
+    /**
+     * WS 收盤訊框直接寫入（呼叫端保證 frame 為已收盤）。
+     * 尚未載入的幣對先從 DB 載入，確保緩衝連續。
+     */
+    public void append(KlineFrame frame) {
+        KlineRingBuffer buffer = bufferFor(frame.symbol(), frame.interval());
+        buffer.append(frame.openTimeMillis(), frame.closeTimeMillis(),
+                frame.open(), frame.high(), frame.low(), frame.close(),
+                frame.volume(), frame.quoteVolume(), frame.tradeCount());
+    }
+
+    /**
+     * REST 補齊的已收盤 K 線寫入（由舊到新；不比最後一根新的略過）。
+     */
+    public void append(String symbol, String interval, List<BinanceKlineResponse> klines) {
+        if (klines.isEmpty()) return;
+        KlineRingBuffer buffer = bufferFor(symbol, interval);
+        for (BinanceKlineResponse k : klines) {
+            buffer.append(k.openTime(), k.closeTime(),
+                    k.open().doubleValue(), k.high().doubleValue(), k.low().doubleValue(), k.close().doubleValue(),
+                    k.volume().doubleValue(), k.quoteVolume().doubleValue(), k.tradeCount());
+        }
+    }
+
+    /** 緩衝中最後一根的開盤時間（尚無資料時為 {@link Long#MIN_VALUE}） */
+    public long lastOpenTime(String symbol, String interval) {
+        return bufferFor(symbol, interval).lastOpenTime();
+    }
+
+    /**
+     * 取最近 {@code maxBars} 根 K 線快照。
+     */
+    public KlineWindow window(String symbol, String interval, int maxBars) {
+        return bufferFor(symbol, interval).window(maxBars, Long.MAX_VALUE);
+    }
+
+    /**
+     * 取開盤時間不晚於 {@code untilOpenTime} 的最近 {@code maxBars} 根 K 線快照。
+     */
+    public KlineWindow window(String symbol, String interval, int maxBars, long untilOpenTime) {
+        return bufferFor(symbol, interval).window(maxBars, untilOpenTime);
+    }
+
+    /** 預設週期的最新收盤價（尚無資料時為 empty） */
+    public Optional<Double> lastClose(String symbol) {
+        KlineWindow w = window(symbol, apiProperties.defaultInterval(), 1);
+        return w.size() == 0 ? Optional.empty() : Optional.of(w.lastClose());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 丟棄幣對的緩衝，下次讀取時重新從 DB 載入（歷史同步完成後呼叫，
+     * 避免同步期間被提前讀取而留下不完整的緩衝）。
+     */
+    public void invalidate(String symbol) {
+        buffers.keySet().removeIf(k -> k.startsWith(symbol + ":"));
+    }
+
+    @Override
+    public void start() {
+        String interval = apiProperties.defaultInterval();
+        List<TrackedSymbol> ready = trackedSymbolRepo.findByActiveTrueAndSyncStatus(SyncStatus.READY);
+        for (TrackedSymbol ts : ready) {
+            try {
+                bufferFor(ts.getSymbol(), interval);
+            } catch (Exception e) {
+                log.warn("[熱K線] {} 預載失敗，將於第一次讀取時重試: {}", ts.getSymbol(), e.getMessage());
+            }
+        }
+        running = true;
+        log.info("[熱K線] 已預載 {} 個幣對（每個最多 {} 根）", buffers.size(), capacity);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // 早於 BinanceStreamManager 啟動，WS 收盤訊框到達前已完成預載
+        return Integer.MAX_VALUE - 2;
+    }
+
+    private KlineRingBuffer bufferFor(String symbol, String interval) {
+        String key = symbol + ":" + interval;
+        KlineRingBuffer buffer = buffers.get(key);
+        if (buffer != null) return buffer;
+        // 同一 key 只載入一次；不同幣對可並行載入
+        return buffers.computeIfAbsent(key, k -> load(symbol, interval));
+    }
+
+    /** 單一查詢載入最近 capacity 根（DESC 取出後倒序寫入） */
+    private KlineRingBuffer load(String symbol, String interval) {
+        long[] ot = new long[capacity];
+        long[] ct = new long[capacity];
+        double[] ohlcv = new double[capacity * 6];
+        int[] tc = new int[capacity];
+        int[] count = {0};
+        jdbcTemplate.query(WARM_SQL, (RowCallbackHandler) rs -> {
+            int i = count[0]++;
+            ot[i] = rs.getTimestamp(1).getTime();
+            ct[i] = rs.getTimestamp(2).getTime();
+            for (int f = 0; f < 6; f++) {
+                ohlcv[i * 6 + f] = rs.getDouble(3 + f);
+            }
+            tc[i] = rs.getInt(9);
+        }, symbol, interval, capacity);
+
+        KlineRingBuffer buffer = new KlineRingBuffer(symbol, interval, capacity);
+        for (int i = count[0] - 1; i >= 0; i--) {
+            int b = i * 6;
+            buffer.append(ot[i], ct[i], ohlcv[b], ohlcv[b + 1], ohlcv[b + 2], ohlcv[b + 3],
+                    ohlcv[b + 4], ohlcv[b + 5], tc[i]);
+        }
+        log.debug("[熱K線] 載入 {} {}: {} 根", symbol, interval, count[0]);
+        return buffer;
+    }
+}
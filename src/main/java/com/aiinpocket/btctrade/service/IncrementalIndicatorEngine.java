@@ -0,0 +1,425 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 串流式指標引擎：以 double 保存執行狀態，每根新 K 線 O(1) 更新。
+ *
+ * <p>計算語意與 {@link TechnicalIndicatorService}（ta4j）一致，包括不穩定期回傳 NaN、
+ * 前值為 NaN 時以當前值重設的 EMA / Wilder MMA 行為，因此從同一根 K 線開始餵入時
+ * 產生相同的 {@link IndicatorSnapshot}（誤差僅來自 double 與 DecimalNum 精度差異）：
+ * <ul>
+ *   <li>EMA 短/長、MACD（EMA 差）與訊號線</li>
+ *   <li>RSI：漲跌幅的 Wilder 平滑</li>
+ *   <li>ADX：TR / +DM / -DM 的 Wilder 平滑 → DI → DX → ADX</li>
+ *   <li>Donchian 高低點：單調佇列維護滑動視窗極值（攤銷 O(1)）</li>
+ * </ul>
+ * 非執行緒安全；共享時由呼叫端同步（見 {@link IndicatorStateRegistry}）。
+ */
+public class IncrementalIndicatorEngine {
+
+    private final StrategyParams params;
+
+    private final Ema emaShort;
+    private final Ema emaLong;
+    private final Ema macdShortEma;
+    private final Ema macdLongEma;
+    private final Ema macdSignal;
+    private final Ema avgGain;
+    private final Ema avgLoss;
+    private final Ema atr;
+    private final Ema avgPlusDm;
+    private final Ema avgMinusDm;
+    private final Ema adx;
+    private final MonotonicWindow highestEntry;
+    private final MonotonicWindow lowestEntry;
+    private final MonotonicWindow highestExit;
+    private final MonotonicWindow lowestExit;
+
+    /** 已處理的 K 線數 - 1（即最新一根的 index） */
+    private int index = -1;
+    private long lastOpenTime = Long.MIN_VALUE;
+
+    private double prevHigh;
+    private double prevLow;
+    private double prevClose;
+
+    // 最新一根的輸出
+    private double close;
+    private double rsi;
+    private double macd;
+    private double histogram;
+    private double prevEmaShort;
+    private double prevEmaLong;
+    private double prevHistogram;
+    private double donchianHigh;
+    private double donchianLow;
+    private double donchianExitHigh;
+    private double donchianExitLow;
+
+    public IncrementalIndicatorEngine(StrategyParams params) {
+        this.params = params;
+        this.emaShort = Ema.exponential(params.emaShort());
+        this.emaLong = Ema.exponential(params.emaLong());
+        this.macdShortEma = Ema.exponential(params.macdShort());
+        this.macdLongEma = Ema.exponential(params.macdLong());
+        this.macdSignal = Ema.exponential(params.macdSignal());
+        // RSI 與 ADX 沿用 TechnicalIndicatorService 的設定：皆以 rsiPeriod 為週期
+        this.avgGain = Ema.wilder(params.rsiPeriod());
+        this.avgLoss = Ema.wilder(params.rsiPeriod());
+        this.atr = Ema.wilder(params.rsiPeriod());
+        this.avgPlusDm = Ema.wilder(params.rsiPeriod());
+        this.avgMinusDm = Ema.wilder(params.rsiPeriod());
+        this.adx = Ema.wilder(params.rsiPeriod());
+        this.highestEntry = new MonotonicWindow(params.donchianEntry(), true);
+        this.lowestEntry = new MonotonicWindow(params.donchianEntry(), false);
+        this.highestExit = new MonotonicWindow(params.donchianExit(), true);
+        this.lowestExit = new MonotonicWindow(params.donchianExit(), false);
+    }
+
+    public StrategyParams params() {
+        return params;
+    }
+
+    /** 最新一根 K 線的 index（尚未餵入時為 -1） */
+    public int index() {
+        return index;
+    }
+
+    /** 最新一根 K 線的開盤時間（epoch ms；尚未餵入時為 {@link Long#MIN_VALUE}） */
+    public long lastOpenTime() {
+        return lastOpenTime;
+    }
+
+    /** 清除所有狀態，重新從第一根開始 */
+    public void reset() {
+        index = -1;
+        lastOpenTime = Long.MIN_VALUE;
+        for (Ema e : emas()) {
+            e.value = Double.NaN;
+        }
+        highestEntry.clear();
+        lowestEntry.clear();
+        highestExit.clear();
+        lowestExit.clear();
+    }
+
+    /**
+     * 寫出完整執行狀態（檢查點用）；以相同 {@link StrategyParams} 建立的引擎經 {@link #readState} 還原後，
+     * 接續餵入的輸出與不中斷時逐位元相同。
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(index);
+        out.writeLong(lastOpenTime);
+        for (double v : new double[]{prevHigh, prevLow, prevClose, close, rsi, macd, histogram,
+                prevEmaShort, prevEmaLong, prevHistogram,
+                donchianHigh, donchianLow, donchianExitHigh, donchianExitLow}) {
+            out.writeDouble(v);
+        }
+        for (Ema e : emas()) {
+            out.writeDouble(e.value);
+        }
+        for (MonotonicWindow w : windows()) {
+            w.writeTo(out);
+        }
+    }
+
+    /** 還原 {@link #writeState} 寫出的狀態（呼叫端負責確認指標參數相同） */
+    public void readState(DataInput in) throws IOException {
+        index = in.readInt();
+        lastOpenTime = in.readLong();
+        prevHigh = in.readDouble();
+        prevLow = in.readDouble();
+        prevClose = in.readDouble();
+        close = in.readDouble();
+        rsi = in.readDouble();
+        macd = in.readDouble();
+        histogram = in.readDouble();
+        prevEmaShort = in.readDouble();
+        prevEmaLong = in.readDouble();
+        prevHistogram = in.readDouble();
+        donchianHigh = in.readDouble();
+        donchianLow = in.readDouble();
+        donchianExitHigh = in.readDouble();
+        donchianExitLow = in.readDouble();
+        for (Ema e : emas()) {
+            e.value = in.readDouble();
+        }
+        for (MonotonicWindow w : windows()) {
+            w.readFrom(in);
+        }
+    }
+
+    private Ema[] emas() {
+        return new Ema[]{emaShort, emaLong, macdShortEma, macdLongEma, macdSignal,
+                avgGain, avgLoss, atr, avgPlusDm, avgMinusDm, adx};
+    }
+
+    private MonotonicWindow[] windows() {
+        return new MonotonicWindow[]{highestEntry, lowestEntry, highestExit, lowestExit};
+    }
+
+    /**
+     * 餵入下一根已收盤 K 線。
+     */
+    public void update(long openTime, double high, double low, double close) {
+        int i = ++index;
+        lastOpenTime = openTime;
+        prevEmaShort = emaShort.value;
+        prevEmaLong = emaLong.value;
+        prevHistogram = histogram;
+
+        // Donchian 取前一根 K 線的通道值（避免前瞻偏差）：先讀再推入本根；第一根時取自身
+        if (i > 0) {
+            readDonchian();
+        }
+        highestEntry.push(i, high);
+        lowestEntry.push(i, low);
+        highestExit.push(i, high);
+        lowestExit.push(i, low);
+        if (i == 0) {
+            readDonchian();
+        }
+
+        emaShort.update(i, close);
+        emaLong.update(i, close);
+
+        double shortTerm = macdShortEma.update(i, close);
+        double longTerm = macdLongEma.update(i, close);
+        macd = shortTerm - longTerm;
+        histogram = macd - macdSignal.update(i, macd);
+
+        // RSI
+        double gain = 0;
+        double loss = 0;
+        if (i > 0) {
+            if (close > prevClose) gain = close - prevClose;
+            if (close < prevClose) loss = prevClose - close;
+        }
+        double g = avgGain.update(i, gain);
+        double l = avgLoss.update(i, loss);
+        if (i < params.rsiPeriod()) {
+            rsi = Double.NaN;
+        } else if (l == 0) {
+            rsi = g == 0 ? 0 : 100;
+        } else {
+            rsi = 100 - 100 / (1 + g / l);
+        }
+
+        // ADX
+        double tr = Math.abs(high - low);
+        double plusDm = 0;
+        double minusDm = 0;
+        if (i > 0) {
+            tr = Math.max(tr, Math.max(Math.abs(high - prevClose), Math.abs(prevClose - low)));
+            double upMove = high - prevHigh;
+            double downMove = prevLow - low;
+            // 價格為最小跳動單位的整數倍，上/下移動相等很常見（ta4j 以十進位精確判定為平手）；
+            // double 相減的捨入誤差不得打破平手
+            double tie = 8 * Math.ulp(Math.max(Math.max(high, prevHigh), Math.max(Math.abs(low), Math.abs(prevLow))));
+            if (upMove - downMove > tie && upMove > 0) plusDm = upMove;
+            if (downMove - upMove > tie && downMove > 0) minusDm = downMove;
+        }
+        double atrValue = atr.update(i, tr);
+        double avgPlus = avgPlusDm.update(i, plusDm);
+        double avgMinus = avgMinusDm.update(i, minusDm);
+        double plusDi = atrValue == 0 ? 0 : avgPlus / atrValue * 100;
+        double minusDi = atrValue == 0 ? 0 : avgMinus / atrValue * 100;
+        double diSum = plusDi + minusDi;
+        double dx = diSum == 0 ? 0 : Math.abs(plusDi - minusDi) / diSum * 100;
+        adx.update(i, dx);
+
+        this.close = close;
+        prevHigh = high;
+        prevLow = low;
+        prevClose = close;
+    }
+
+    /**
+     * 以最新一根 K 線組成快照（欄位與 {@link TechnicalIndicatorService#computeAt} 相同）。
+     */
+    public IndicatorSnapshot snapshot() {
+        if (index < 0) {
+            throw new IllegalStateException("尚未餵入任何 K 線");
+        }
+        return new IndicatorSnapshot(
+                toBigDecimal(emaShort.value),
+                toBigDecimal(emaLong.value),
+                toBigDecimal(rsi),
+                toBigDecimal(macd),
+                toBigDecimal(macdSignal.value),
+                toBigDecimal(histogram),
+                toBigDecimal(close),
+                emaGoldenCross(),
+                emaDeathCross(),
+                emaTrendBullish(),
+                macdBullishCross(),
+                macdBearishCross(),
+                toBigDecimal(adx.value),
+                toBigDecimal(donchianHigh),
+                toBigDecimal(donchianLow),
+                toBigDecimal(donchianExitHigh),
+                toBigDecimal(donchianExitLow)
+        );
+    }
+
+    // ---- 原始型別讀取（回測核心逐根使用，不建立快照物件）----
+
+    public double close() {
+        return close;
+    }
+
+    public double rsi() {
+        return rsi;
+    }
+
+    public double adx() {
+        return adx.value;
+    }
+
+    public boolean emaGoldenCross() {
+        return index > 0 && prevEmaShort < prevEmaLong && emaShort.value >= emaLong.value;
+    }
+
+    public boolean emaDeathCross() {
+        return index > 0 && prevEmaShort > prevEmaLong && emaShort.value <= emaLong.value;
+    }
+
+    public boolean emaTrendBullish() {
+        return emaShort.value >= emaLong.value;
+    }
+
+    public boolean macdBullishCross() {
+        return histogramPrev() <= 0 && histogram > 0;
+    }
+
+    public boolean macdBearishCross() {
+        return histogramPrev() >= 0 && histogram < 0;
+    }
+
+    private double histogramPrev() {
+        return index > 0 ? prevHistogram : histogram;
+    }
+
+    private void readDonchian() {
+        donchianHigh = highestEntry.current();
+        donchianLow = lowestEntry.current();
+        donchianExitHigh = highestExit.current();
+        donchianExitLow = lowestExit.current();
+    }
+
+    private static BigDecimal toBigDecimal(double value) {
+        return BigDecimal.valueOf(value).setScale(8, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * EMA / Wilder MMA 的遞迴狀態，語意同 ta4j AbstractEMAIndicator：
+     * index 小於週期時為 NaN；輸入為 NaN 時為 NaN；前值為 NaN 時以當前輸入重設。
+     */
+    private static final class Ema {
+        private final int barCount;
+        private final double multiplier;
+        private double value = Double.NaN;
+
+        private Ema(int barCount, double multiplier) {
+            this.barCount = barCount;
+            this.multiplier = multiplier;
+        }
+
+        static Ema exponential(int barCount) {
+            return new Ema(barCount, 2.0 / (barCount + 1));
+        }
+
+        static Ema wilder(int barCount) {
+            return new Ema(barCount, 1.0 / barCount);
+        }
+
+        double update(int index, double input) {
+            if (index < barCount || Double.isNaN(input)) {
+                value = Double.NaN;
+            } else if (Double.isNaN(value)) {
+                value = input;
+            } else {
+                value = value + (input - value) * multiplier;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 固定長度滑動視窗的極值（單調佇列，環狀陣列實作）。
+     * 佇列中的值單調遞減（最高）或遞增（最低），隊首即視窗極值。
+     */
+    private static final class MonotonicWindow {
+        private final int barCount;
+        private final boolean max;
+        private final int[] indexes;
+        private final double[] values;
+        private int head;
+        private int size;
+
+        MonotonicWindow(int barCount, boolean max) {
+            this.barCount = barCount;
+            this.max = max;
+            this.indexes = new int[barCount];
+            this.values = new double[barCount];
+        }
+
+        void push(int index, double value) {
+            // 移出視窗外的隊首
+            while (size > 0 && indexes[head] <= index - barCount) {
+                head = (head + 1) % barCount;
+                size--;
+            }
+            // 丟棄被新值支配的隊尾
+            while (size > 0) {
+                int tail = (head + size - 1) % barCount;
+                if (max ? values[tail] > value : values[tail] < value) break;
+                size--;
+            }
+            int slot = (head + size) % barCount;
+            indexes[slot] = index;
+            values[slot] = value;
+            size++;
+        }
+
+        double current() {
+            return size == 0 ? Double.NaN : values[head];
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        /** 由隊首依序寫出佇列內容 */
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(size);
+            for (int k = 0; k < size; k++) {
+                int slot = (head + k) % barCount;
+                out.writeInt(indexes[slot]);
+                out.writeDouble(values[slot]);
+            }
+        }
+
+        void readFrom(DataInput in) throws IOException {
+            int n = in.readInt();
+            if (n < 0 || n > barCount) {
+                throw new IOException("Donchian 視窗長度不符: " + n);
+            }
+            head = 0;
+            size = n;
+            for (int k = 0; k < n; k++) {
+                indexes[k] = in.readInt();
+                values[k] = in.readDouble();
+            }
+        }
+    }
+}
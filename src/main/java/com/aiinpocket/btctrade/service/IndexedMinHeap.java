@@ -0,0 +1,104 @@
+package com.aiinpocket.btctrade.service;
+
+import java.util.Arrays;
+
+/**
+ * 以 slot（0 起的整數）為元素的最小堆，鍵存在以 slot 為索引的陣列中；記錄每個 slot 在堆中的位置，
+ * 可就地更新鍵值或移除任意 slot，全部為原始型別陣列。最大堆以負值存入。
+ * 呼叫端負責以 {@link #ensureSlots} 預留 slot 容量，並自行同步。
+ */
+final class IndexedMinHeap {
+    private int[] heap = new int[16];
+    /** slot → 堆中位置（-1 = 不在堆中） */
+    private int[] pos = new int[0];
+    private double[] key = new double[0];
+    private int size;
+
+    void ensureSlots(int capacity) {
+        int old = pos.length;
+        if (old >= capacity) return;
+        pos = Arrays.copyOf(pos, capacity);
+        Arrays.fill(pos, old, capacity, -1);
+        key = Arrays.copyOf(key, capacity);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int top() {
+        return heap[0];
+    }
+
+    double topKey() {
+        return key[heap[0]];
+    }
+
+    void add(int slot, double k) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        key[slot] = k;
+        heap[size] = slot;
+        pos[slot] = size;
+        siftUp(size++);
+    }
+
+    void update(int slot, double k) {
+        double old = key[slot];
+        key[slot] = k;
+        if (k < old) {
+            siftUp(pos[slot]);
+        } else if (k > old) {
+            siftDown(pos[slot]);
+        }
+    }
+
+    void remove(int slot) {
+        int i = pos[slot];
+        if (i < 0) return;
+        pos[slot] = -1;
+        int last = heap[--size];
+        if (i < size) {
+            heap[i] = last;
+            pos[last] = i;
+            siftUp(i);
+            siftDown(pos[last]);
+        }
+    }
+
+    private void siftUp(int i) {
+        int slot = heap[i];
+        double k = key[slot];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (key[p] <= k) break;
+            heap[i] = p;
+            pos[p] = i;
+            i = parent;
+        }
+        heap[i] = slot;
+        pos[slot] = i;
+    }
+
+    private void siftDown(int i) {
+        int slot = heap[i];
+        double k = key[slot];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && key[heap[right]] < key[heap[child]]) {
+                child = right;
+            }
+            int c = heap[child];
+            if (k <= key[c]) break;
+            heap[i] = c;
+            pos[c] = i;
+            i = child;
+        }
+        heap[i] = slot;
+        pos[slot] = i;
+    }
+}
@@ -0,0 +1,91 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+
+/**
+ * 回測核心逐根讀取的指標欄（每根 K 線一格，與 {@link BacktestBars} 對齊）。
+ *
+ * <p>指標只取決於 {@code StrategyParams}，與風控 / RSI 區間無關；
+ * 參數掃描時同一組指標週期的所有組合共用同一份欄位，不必重算。
+ * 計算一次後唯讀，可跨執行緒共享。
+ */
+public final class IndicatorColumns {
+
+    static final byte LONG_TRIGGER = 1;
+    static final byte TREND_BULLISH = 1 << 1;
+    static final byte SHORT_TRIGGER = 1 << 2;
+
+    private final double[] rsi;
+    private final double[] adx;
+    /** 進場訊號位元：{@link #LONG_TRIGGER}（MACD 多頭交叉或 EMA 黃金交叉）等 */
+    private final byte[] signals;
+
+    private IndicatorColumns(double[] rsi, double[] adx, byte[] signals) {
+        this.rsi = rsi;
+        this.adx = adx;
+        this.signals = signals;
+    }
+
+    /**
+     * 以串流引擎走過整段 K 線，記錄每根的 RSI / ADX / 進場訊號。
+     *
+     * @param engine 全新（未餵入任何 K 線）的引擎，決定指標週期
+     */
+    public static IndicatorColumns compute(BacktestBars bars, IncrementalIndicatorEngine engine) {
+        return compute(bars, engine, BacktestProgress.NONE);
+    }
+
+    /**
+     * 同 {@link #compute(BacktestBars, IncrementalIndicatorEngine)}，每 {@link BacktestProgress#STRIDE} 根回報一次進度
+     * （此階段為整體進度的前半段）。
+     */
+    public static IndicatorColumns compute(BacktestBars bars, IncrementalIndicatorEngine engine,
+                                           BacktestProgress progress) {
+        int n = bars.size();
+        long[] openTime = bars.openTime();
+        double[] high = bars.high();
+        double[] low = bars.low();
+        double[] close = bars.close();
+        double[] rsi = new double[n];
+        double[] adx = new double[n];
+        byte[] signals = new byte[n];
+        for (int i = 0; i < n; i++) {
+            if ((i & (BacktestProgress.STRIDE - 1)) == 0) {
+                progress.onBars(i, 2L * n);
+            }
+            engine.update(openTime[i], high[i], low[i], close[i]);
+            rsi[i] = engine.rsi();
+            adx[i] = engine.adx();
+            byte s = 0;
+            if (engine.macdBullishCross() || engine.emaGoldenCross()) s |= LONG_TRIGGER;
+            if (engine.emaTrendBullish()) s |= TREND_BULLISH;
+            if (engine.macdBearishCross() || engine.emaDeathCross()) s |= SHORT_TRIGGER;
+            signals[i] = s;
+        }
+        return new IndicatorColumns(rsi, adx, signals);
+    }
+
+    public int size() {
+        return rsi.length;
+    }
+
+    double rsi(int i) {
+        return rsi[i];
+    }
+
+    double adx(int i) {
+        return adx[i];
+    }
+
+    boolean longTrigger(int i) {
+        return (signals[i] & LONG_TRIGGER) != 0;
+    }
+
+    boolean trendBullish(int i) {
+        return (signals[i] & TREND_BULLISH) != 0;
+    }
+
+    boolean shortTrigger(int i) {
+        return (signals[i] & SHORT_TRIGGER) != 0;
+    }
+}
@@ -0,0 +1,93 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 即時指標狀態表：每個 (幣對, 週期, 策略參數) 一個 {@link IncrementalIndicatorEngine}。
+ *
+ * <p>參數相同的用戶共用同一份狀態，每根收盤 K 線只前進一次；之後同參數的讀取直接取快照。
+ * 狀態與傳入的熱 K 線視窗不連續（首次使用、重啟、漏收、重新同步）時，
+ * 以整個視窗重播重建，因此不需額外的一致性維護。
+ *
+ * <p>由於狀態自首次重播起持續累積，EMA / Wilder 平滑的起點早於固定長度的回看視窗，
+ * 數值與回測（全歷史計算）一致，而非受視窗長度截斷。
+ */
+@Service
+@Slf4j
+public class IndicatorStateRegistry {
+
+    /** (幣對:週期) → 參數 → 引擎 */
+    private final ConcurrentHashMap<String, Map<StrategyParams, IncrementalIndicatorEngine>> states =
+            new ConcurrentHashMap<>();
+    private final Counter rebuilds;
+
+    public IndicatorStateRegistry(MeterRegistry meterRegistry) {
+        this.rebuilds = Counter.builder("indicator.state.rebuilds")
+                .description("指標狀態因不連續而以熱 K 線視窗重播的次數")
+                .register(meterRegistry);
+        Gauge.builder("indicator.state.count", this, IndicatorStateRegistry::stateCount)
+                .description("目前保存的 (幣對, 參數) 指標狀態數")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 取得視窗最後一根 K 線的指標快照，必要時前進或重建狀態。
+     *
+     * @param window 以時間遞增排列、最後一根為本次收盤 K 線的視窗
+     */
+    public IndicatorSnapshot snapshot(KlineWindow window, StrategyParams params) {
+        int n = window.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("K 線視窗為空: " + window.symbol());
+        }
+        Map<StrategyParams, IncrementalIndicatorEngine> bySymbol = states.computeIfAbsent(
+                window.symbol() + ":" + window.interval(), k -> new ConcurrentHashMap<>());
+        IncrementalIndicatorEngine engine = bySymbol.computeIfAbsent(params, IncrementalIndicatorEngine::new);
+
+        long[] openTime = window.openTime();
+        long last = openTime[n - 1];
+        synchronized (engine) {
+            if (engine.lastOpenTime() != last) {
+                if (n >= 2 && engine.lastOpenTime() == openTime[n - 2]) {
+                    feed(engine, window, n - 1);
+                } else {
+                    engine.reset();
+                    for (int i = 0; i < n; i++) {
+                        feed(engine, window, i);
+                    }
+                    rebuilds.increment();
+                    log.debug("[指標狀態] {} {} 以 {} 根重建", window.symbol(), params, n);
+                }
+                if (n >= 2) {
+                    // 落後超過一根的狀態（參數已無人使用）下次也只能重建，直接移除
+                    long previous = openTime[n - 2];
+                    bySymbol.values().removeIf(e -> e != engine && e.lastOpenTime() < previous);
+                }
+            }
+            return engine.snapshot();
+        }
+    }
+
+    /** 丟棄幣對的所有指標狀態（歷史資料重新同步後呼叫） */
+    public void invalidate(String symbol) {
+        states.keySet().removeIf(k -> k.startsWith(symbol + ":"));
+    }
+
+    private static void feed(IncrementalIndicatorEngine engine, KlineWindow window, int i) {
+        engine.update(window.openTime()[i], window.high()[i], window.low()[i], window.close()[i]);
+    }
+
+    private int stateCount() {
+        return states.values().stream().mapToInt(Map::size).sum();
+    }
+}
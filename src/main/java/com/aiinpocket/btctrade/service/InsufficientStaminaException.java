@@ -0,0 +1,11 @@
+package com.aiinpocket.btctrade.service;
+
+/**
+ * 體力不足，無法提交回測或參數掃描（API 回應 429）。
+ */
+public class InsufficientStaminaException extends IllegalStateException {
+
+    public InsufficientStaminaException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,112 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.dto.BinanceKlineResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 歷史 K 線批量寫入器。
+ * 以 PostgreSQL COPY 將整頁資料串流進 session 級暫存表，再以單一
+ * {@code INSERT ... SELECT ... ON CONFLICT DO NOTHING} 合併進 kline，
+ * 完全繞過 JPA persistence context，也不需先查詢已存在的 K 線。
+ *
+ * <p>暫存表為 {@code ON COMMIT DELETE ROWS}，每個連線只建立一次，
+ * 因此 COPY 與合併必須在同一個交易內完成。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class KlineBulkLoader {
+
+    private static final String COLUMNS = """
+            symbol, interval_type, open_time, close_time,
+            open_price, high_price, low_price, close_price, volume,
+            quote_volume, trade_count, taker_buy_base_volume, taker_buy_quote_volume""";
+
+    /** 以 kline 的欄位型別建立暫存表（不帶約束與 IDENTITY） */
+    private static final String CREATE_STAGING =
+            "CREATE TEMP TABLE IF NOT EXISTS kline_staging ON COMMIT DELETE ROWS AS SELECT "
+                    + COLUMNS + " FROM kline WITH NO DATA";
+    private static final String COPY_STAGING =
+            "COPY kline_staging (" + COLUMNS + ") FROM STDIN";
+    private static final String MERGE_STAGING =
+            "INSERT INTO kline (" + COLUMNS + ") SELECT " + COLUMNS
+                    + " FROM kline_staging ON CONFLICT (symbol, interval_type, open_time) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 將一頁 Binance K 線寫入 DB，已存在的 (symbol, interval, openTime) 自動略過。
+     *
+     * @return 實際新增的筆數
+     */
+    public int load(String symbol, String interval, List<BinanceKlineResponse> rows) {
+        if (rows.isEmpty()) return 0;
+        byte[] payload = encode(symbol, interval, rows);
+        Integer inserted = jdbcTemplate.execute((ConnectionCallback<Integer>) con -> copyAndMerge(con, payload));
+        return inserted != null ? inserted : 0;
+    }
+
+    private int copyAndMerge(Connection con, byte[] payload) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute(CREATE_STAGING);
+
+            CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING);
+            try {
+                copyIn.writeToCopy(payload, 0, payload.length);
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) copyIn.cancelCopy();
+            }
+
+            int inserted = stmt.executeUpdate(MERGE_STAGING);
+            con.commit();
+            return inserted;
+        } catch (SQLException | RuntimeException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** COPY text 格式：tab 分隔、換行結尾；所有欄位皆為數字或幣對代號，無需跳脫 */
+    private static byte[] encode(String symbol, String interval, List<BinanceKlineResponse> rows) {
+        StringBuilder sb = new StringBuilder(rows.size() * 200);
+        for (BinanceKlineResponse r : rows) {
+            sb.append(symbol).append('\t')
+                    .append(interval).append('\t')
+                    .append(Instant.ofEpochMilli(r.openTime())).append('\t')
+                    .append(Instant.ofEpochMilli(r.closeTime())).append('\t');
+            appendDecimal(sb, r.open()).append('\t');
+            appendDecimal(sb, r.high()).append('\t');
+            appendDecimal(sb, r.low()).append('\t');
+            appendDecimal(sb, r.close()).append('\t');
+            appendDecimal(sb, r.volume()).append('\t');
+            appendDecimal(sb, r.quoteVolume()).append('\t');
+            sb.append(r.tradeCount()).append('\t');
+            appendDecimal(sb, r.takerBuyBaseVolume()).append('\t');
+            appendDecimal(sb, r.takerBuyQuoteVolume()).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder appendDecimal(StringBuilder sb, BigDecimal value) {
+        return value != null ? sb.append(value.toPlainString()) : sb.append("\\N");
+    }
+}
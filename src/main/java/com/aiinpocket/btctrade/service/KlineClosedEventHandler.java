@@ -3,54 +3,68 @@ package com.aiinpocket.btctrade.service;
 import com.aiinpocket.btctrade.config.BinanceApiProperties;
 import com.aiinpocket.btctrade.config.IntervalConfig;
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.EvaluationContext;
+import com.aiinpocket.btctrade.model.dto.EvaluationContext.Member;
 import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
-import com.aiinpocket.btctrade.model.entity.Kline;
-import com.aiinpocket.btctrade.model.entity.StrategyTemplate;
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
 import com.aiinpocket.btctrade.model.enums.SyncStatus;
+import com.aiinpocket.btctrade.model.enums.TradeAction;
 import com.aiinpocket.btctrade.model.event.KlineClosed;
-import com.aiinpocket.btctrade.repository.AppUserRepository;
-import com.aiinpocket.btctrade.repository.KlineRepository;
-import com.aiinpocket.btctrade.repository.StrategyTemplateRepository;
 import com.aiinpocket.btctrade.repository.TrackedSymbolRepository;
-import com.aiinpocket.btctrade.repository.UserWatchlistRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.ta4j.core.BarSeries;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
 
 /**
  * K 線收盤事件監聽器。
- * Phase 2: 遍歷所有有啟用策略且觀察此幣對的用戶，為每位用戶獨立評估策略。
- * BarSeries 每幣對只建一次（共享），指標和策略評估按用戶參數獨立計算。
+ * Phase 2: 遍歷所有有啟用策略且觀察此幣對的用戶，依策略參數內容分組：
+ * 指標與進場判斷每組計算一次（成本與相異模板數成正比，而非用戶數），
+ * 再依每位成員的持倉狀態分派進出場。
+ * 用戶、模板、持倉與已實現損益由 {@link EvaluationContextLoader} 以固定次數的集合查詢一次載入，
+ * 評估過程不再逐用戶查詢 DB。
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class KlineClosedEventHandler {
 
-    private final KlineRepository klineRepo;
-    private final BarSeriesFactory barSeriesFactory;
-    private final TechnicalIndicatorService indicatorService;
+    private final HotKlineCache hotKlineCache;
+    private final IndicatorStateRegistry indicatorStateRegistry;
     private final TradeExecutionService tradeExecutionService;
     private final TradingStrategyProperties props;
     private final TrackedSymbolRepository trackedSymbolRepo;
     private final BinanceApiProperties apiProperties;
     private final IntervalConfig.IntervalParams intervalParams;
-    private final UserWatchlistRepository watchlistRepo;
-    private final AppUserRepository userRepo;
-    private final StrategyTemplateRepository templateRepo;
+    private final EvaluationContextLoader contextLoader;
     private final DistributedLockService lockService;
+    private final StripedEvaluationExecutor evaluationExecutor;
+    private final MeterRegistry meterRegistry;
 
     /** Advisory lock ID 基底：策略評估用 1_000_000 + symbol hash */
     private static final long EVAL_LOCK_BASE = 1_000_000L;
 
+    /** 幣對的策略評估鎖（{@link TickStopEngine} 的停損出場也取同一把，與收盤評估互斥） */
+    static long evaluationLockId(String symbol) {
+        return EVAL_LOCK_BASE + Math.abs(symbol.hashCode());
+    }
+
+    /**
+     * 收盤事件在 WS 讀取執行緒上發布；此處只排入所屬幣對的評估條後立即返回。
+     */
     @EventListener
     public void onKlineClosed(KlineClosed event) {
+        evaluationExecutor.submit(event.symbol(), "strategy", event.kline().getCloseTime(), () -> evaluate(event));
+    }
+
+    private void evaluate(KlineClosed event) {
         String symbol = event.symbol();
 
         // 只對 active + READY 的符號執行策略
@@ -61,48 +75,47 @@ public class KlineClosedEventHandler {
         }
 
         // Phase 3: 分散式鎖，多 Pod 環境下只有一個 Pod 執行此幣對的策略評估
-        long lockId = EVAL_LOCK_BASE + Math.abs(symbol.hashCode());
-        lockService.executeWithLock(lockId, "策略評估-" + symbol, () -> evaluateSymbol(event, symbol));
+        lockService.executeWithLock(evaluationLockId(symbol), "策略評估-" + symbol, () -> evaluateSymbol(event, symbol));
     }
 
     private void evaluateSymbol(KlineClosed event, String symbol) {
         try {
-            // 載入最近 N 根 K 線（足夠計算指標即可）
-            int lookback = Math.max(props.strategy().emaLong() * 3, 200);
-            List<Kline> recentKlines = klineRepo
-                    .findBySymbolAndIntervalTypeAndOpenTimeBetweenOrderByOpenTimeAsc(
-                            symbol, apiProperties.defaultInterval(),
-                            event.kline().getOpenTime().minusSeconds(
-                                    lookback * intervalParams.barDurationMinutes() * 60),
-                            event.kline().getCloseTime());
-
-            if (recentKlines.size() < props.strategy().emaLong() + 10) {
+            // 取熱 K 線緩衝中截至本根的全部內容（收盤訊框在發布事件前已追加）；
+            // 指標狀態連續時只用到最後一根，整個視窗僅在狀態需要重建時重播
+            KlineWindow window = hotKlineCache.window(symbol, apiProperties.defaultInterval(),
+                    hotKlineCache.capacity(), event.kline().getOpenTime().toEpochMilli());
+
+            if (window.size() < props.strategy().emaLong() + 10) {
                 log.debug("Not enough klines for strategy evaluation: {} (need {})",
-                        recentKlines.size(), props.strategy().emaLong() + 10);
+                        window.size(), props.strategy().emaLong() + 10);
                 return;
             }
 
-            // BarSeries 每幣對只建一次（共享）
-            BarSeries series = barSeriesFactory.createFromKlines(recentKlines, "live-" + symbol);
-
             // Phase 2: 遍歷所有有啟用策略且觀察此幣對的活躍用戶（排除 7 天未登入）
             Instant activeCutoff = Instant.now().minus(7, ChronoUnit.DAYS);
-            List<Long> activeUserIds = watchlistRepo.findActiveStrategyUserIdsBySymbol(symbol, activeCutoff);
+            EvaluationContext context = contextLoader.load(symbol, activeCutoff);
 
-            if (activeUserIds.isEmpty()) {
+            if (context.groups().isEmpty()) {
                 log.debug("[策略評估] 幣對 {} 無啟用策略的用戶訂閱", symbol);
                 return;
             }
 
-            log.debug("[策略評估] 幣對 {} 共 {} 位用戶需要評估", symbol, activeUserIds.size());
-
-            for (Long userId : activeUserIds) {
-                try {
-                    evaluateForUser(userId, symbol, series);
-                } catch (Exception e) {
-                    log.error("[策略評估] userId={} 幣對 {} 評估失敗: {}",
-                            userId, symbol, e.getMessage());
-                }
+            Map<TradingStrategyProperties, List<Member>> groups = context.groups();
+            DistributionSummary.builder("evaluation.groups")
+                    .description("每次收盤評估的相異策略參數組數")
+                    .register(meterRegistry)
+                    .record(groups.size());
+            DistributionSummary fanOut = DistributionSummary.builder("evaluation.fanout")
+                    .description("每個策略參數組分派的用戶數")
+                    .register(meterRegistry);
+
+            log.debug("[策略評估] 幣對 {} 共 {} 位用戶、{} 組策略參數",
+                    symbol, context.userCount(), groups.size());
+
+            Instant now = Instant.now();
+            for (var group : groups.entrySet()) {
+                fanOut.record(group.getValue().size());
+                evaluateGroup(symbol, window, group.getKey(), group.getValue(), now);
             }
 
         } catch (Exception e) {
@@ -110,27 +123,34 @@ public class KlineClosedEventHandler {
         }
     }  // end evaluateSymbol
 
-    private void evaluateForUser(Long userId, String symbol, BarSeries series) {
-        // 1. 查詢用戶的啟用策略模板
-        var user = userRepo.findById(userId).orElse(null);
-        if (user == null || user.getActiveStrategyTemplateId() == null) return;
-
-        var template = templateRepo.findById(user.getActiveStrategyTemplateId()).orElse(null);
-        if (template == null) return;
-
-        // 2. 轉換為用戶自訂參數
-        TradingStrategyProperties userProps = template.toProperties();
-
-        // 3. 建立臨時的指標和策略服務（無狀態，可安全 new）
-        TechnicalIndicatorService userIndicator = new TechnicalIndicatorService(userProps);
-        StrategyService userStrategy = new StrategyService(userProps, intervalParams);
-
-        // 4. 計算用戶特定參數的指標快照
-        int lastIndex = series.getBarCount() - 1;
-        IndicatorSnapshot snapshot = userIndicator.computeAt(series, lastIndex);
+    /**
+     * 同一組策略參數：指標快照與無持倉時的進場判斷只計算一次，再分派給每位成員；
+     * 出場判斷依各自持倉在 {@link TradeExecutionService} 內完成。
+     */
+    private void evaluateGroup(String symbol, KlineWindow window,
+                               TradingStrategyProperties groupProps, List<Member> members, Instant now) {
+        IndicatorSnapshot snapshot;
+        StrategyService groupStrategy;
+        TradeAction entryAction;
+        try {
+            snapshot = indicatorStateRegistry.snapshot(window, groupProps.strategy());
+            // 臨時的策略服務（無狀態，可安全 new）
+            groupStrategy = new StrategyService(groupProps, intervalParams);
+            entryAction = groupStrategy.evaluate(snapshot, null, now);
+        } catch (Exception e) {
+            log.error("[策略評估] 幣對 {} 策略參數組（{} 位用戶）評估失敗: {}",
+                    symbol, members.size(), e.getMessage());
+            return;
+        }
 
-        // 5. 用戶獨立交易評估
-        tradeExecutionService.evaluateAndExecuteForUser(
-                userId, symbol, snapshot, userProps, userStrategy);
+        for (Member member : members) {
+            try {
+                tradeExecutionService.executeForMember(
+                        member, symbol, snapshot, groupProps, groupStrategy, entryAction, now);
+            } catch (Exception e) {
+                log.error("[策略評估] userId={} 幣對 {} 評估失敗: {}",
+                        member.userId(), symbol, e.getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,124 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
+
+/**
+ * 單一 (幣對, 週期) 的固定容量 K 線環形緩衝，以原始型別欄位陣列保存。
+ * 寫入只接受比最後一根更新的 K 線（重複或亂序的收盤訊框直接忽略）；
+ * 讀取回傳複本，不持有鎖外的內部陣列。
+ */
+public final class KlineRingBuffer {
+
+    private final String symbol;
+    private final String interval;
+    private final int capacity;
+
+    private final long[] openTime;
+    private final long[] closeTime;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+    private final double[] quoteVolume;
+    private final int[] tradeCount;
+
+    /** 下一個寫入位置 */
+    private int head;
+    private int size;
+
+    public KlineRingBuffer(String symbol, String interval, int capacity) {
+        this.symbol = symbol;
+        this.interval = interval;
+        this.capacity = capacity;
+        this.openTime = new long[capacity];
+        this.closeTime = new long[capacity];
+        this.open = new double[capacity];
+        this.high = new double[capacity];
+        this.low = new double[capacity];
+        this.close = new double[capacity];
+        this.volume = new double[capacity];
+        this.quoteVolume = new double[capacity];
+        this.tradeCount = new int[capacity];
+    }
+
+    /**
+     * 追加一根已收盤 K 線。
+     *
+     * @return false 表示此 K 線不比最後一根新而被忽略
+     */
+    public synchronized boolean append(long openTimeMillis, long closeTimeMillis,
+                                       double o, double h, double l, double c,
+                                       double v, double qv, int trades) {
+        if (size > 0 && openTimeMillis <= openTime[(head - 1 + capacity) % capacity]) {
+            return false;
+        }
+        openTime[head] = openTimeMillis;
+        closeTime[head] = closeTimeMillis;
+        open[head] = o;
+        high[head] = h;
+        low[head] = l;
+        close[head] = c;
+        volume[head] = v;
+        quoteVolume[head] = qv;
+        tradeCount[head] = trades;
+        head = (head + 1) % capacity;
+        if (size < capacity) size++;
+        return true;
+    }
+
+    /** 最後一根 K 線的開盤時間（空緩衝回傳 {@link Long#MIN_VALUE}） */
+    public synchronized long lastOpenTime() {
+        return size == 0 ? Long.MIN_VALUE : openTime[(head - 1 + capacity) % capacity];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 取最近 {@code maxBars} 根、開盤時間不晚於 {@code untilOpenTime} 的 K 線快照。
+     */
+    public synchronized KlineWindow window(int maxBars, long untilOpenTime) {
+        // 由新往舊略過晚於 untilOpenTime 的 K 線（評估排隊期間可能已有更新的收盤）
+        int skip = 0;
+        while (skip < size && openTime[index(size - 1 - skip)] > untilOpenTime) {
+            skip++;
+        }
+        int available = size - skip;
+        int n = Math.min(maxBars, available);
+        int first = available - n;
+
+        long[] ot = new long[n];
+        long[] ct = new long[n];
+        double[] o = new double[n];
+        double[] h = new double[n];
+        double[] l = new double[n];
+        double[] c = new double[n];
+        double[] v = new double[n];
+        double[] qv = new double[n];
+        int[] tc = new int[n];
+        for (int i = 0; i < n; i++) {
+            int idx = index(first + i);
+            ot[i] = openTime[idx];
+            ct[i] = closeTime[idx];
+            o[i] = open[idx];
+            h[i] = high[idx];
+            l[i] = low[idx];
+            c[i] = close[idx];
+            v[i] = volume[idx];
+            qv[i] = quoteVolume[idx];
+            tc[i] = tradeCount[idx];
+        }
+        return new KlineWindow(symbol, interval, ot, ct, o, h, l, c, v, qv, tc);
+    }
+
+    /** 第 i 根（0 = 緩衝中最舊的）在陣列中的位置 */
+    private int index(int i) {
+        return (head - size + i + capacity) % capacity;
+    }
+}
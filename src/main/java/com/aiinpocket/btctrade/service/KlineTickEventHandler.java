@@ -14,6 +14,6 @@ public class KlineTickEventHandler {
 
     @EventListener
     public void onKlineTick(KlineTick event) {
-        wsHandler.broadcastPriceTick(event.symbol(), event.kline());
+        wsHandler.broadcastPriceTick(event);
     }
 }
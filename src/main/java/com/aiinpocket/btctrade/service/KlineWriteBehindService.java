@@ -0,0 +1,255 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.KlineWriteBehindProperties;
+import com.aiinpocket.btctrade.model.entity.Kline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 收盤 K 線 write-behind 寫入器。
+ * WS 執行緒只負責 offer 進有界佇列，背景執行緒每個 flush 視窗將累積的 K 線
+ * 以單一多列 {@code INSERT ... ON CONFLICT DO NOTHING} 寫入，
+ * 取代每根 K 線一次 exists 查詢 + 單筆 save 的往返（IDENTITY 主鍵讓 Hibernate 無法批次）。
+ *
+ * <p>批次寫入失敗時保留同一批次，以指數退避重試 {@code retry-attempts} 次（INSERT 為冪等，重試不會重複寫入）；
+ * 重試期間新的 K 線繼續在佇列中累積。重試用盡或佇列已滿時才丟棄並計入 {@code kline.write_behind.dropped}，
+ * 並記錄幣對與時間範圍。丟棄的 K 線不會自動補回（DataFetchJob 跳過 WS 已連線的幣對、只抓最新一根），
+ * 需對該幣對重新執行歷史同步。
+ */
+@Service
+@Slf4j
+public class KlineWriteBehindService implements SmartLifecycle {
+
+    private static final String INSERT_PREFIX = """
+            INSERT INTO kline (symbol, interval_type, open_time, close_time,
+                open_price, high_price, low_price, close_price, volume,
+                quote_volume, trade_count, taker_buy_base_volume, taker_buy_quote_volume)
+            VALUES """;
+    private static final String ROW_PLACEHOLDER = "(?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String ON_CONFLICT = " ON CONFLICT (symbol, interval_type, open_time) DO NOTHING";
+    private static final int COLUMNS = 13;
+    /** PostgreSQL 單一語句綁定參數上限為 32767 */
+    private static final int MAX_ROWS_PER_STATEMENT = 32767 / COLUMNS;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final KlineWriteBehindProperties props;
+    private final BlockingQueue<Kline> queue;
+    private final int maxBatchSize;
+    private final Timer flushTimer;
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+    private final Counter retriedCounter;
+
+    private volatile boolean running = false;
+    private Thread writerThread;
+
+    public KlineWriteBehindService(JdbcTemplate jdbcTemplate,
+                                   KlineWriteBehindProperties props,
+                                   MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.props = props;
+        this.queue = new ArrayBlockingQueue<>(props.queueCapacity());
+        this.maxBatchSize = Math.min(props.maxBatchSize(), MAX_ROWS_PER_STATEMENT);
+
+        Gauge.builder("kline.write_behind.queue.depth", queue, BlockingQueue::size)
+                .description("等待寫入 DB 的收盤 K 線數")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("kline.write_behind.flush")
+                .description("單次多列 INSERT 的耗時")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("kline.write_behind.dropped")
+                .description("佇列已滿或寫入失敗而丟棄的 K 線數")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("kline.write_behind.written")
+                .description("已送出寫入的 K 線數")
+                .register(meterRegistry);
+        this.retriedCounter = Counter.builder("kline.write_behind.retried")
+                .description("寫入失敗後重試的批次數")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 將收盤 K 線放入寫入佇列（非阻塞）。
+     *
+     * @return false 表示佇列已滿、此筆被丟棄
+     */
+    public boolean enqueue(Kline kline) {
+        if (queue.offer(kline)) {
+            return true;
+        }
+        droppedCounter.increment();
+        log.warn("[K線寫入] 佇列已滿 ({}), 丟棄 {} {} {}",
+                props.queueCapacity(), kline.getSymbol(), kline.getIntervalType(), kline.getOpenTime());
+        return false;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::runLoop, "kline-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("[K線寫入] write-behind 啟動: capacity={}, flushInterval={}ms, maxBatch={}",
+                props.queueCapacity(), props.flushIntervalMs(), maxBatchSize);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (writerThread != null) {
+            // 不中斷寫入中的執行緒，等它在 poll 逾時後自行結束
+            try {
+                writerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 關閉前把剩餘的 K 線寫完
+        drainAndFlush();
+        log.info("[K線寫入] write-behind 已停止");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // 比 BinanceStreamManager 早啟動、晚停止：WS 關閉後才做最後一次 flush
+        return Integer.MAX_VALUE - 1;
+    }
+
+    private void runLoop() {
+        List<Kline> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                // 等第一筆進來後再收集一個 flush 視窗，讓同一時間收盤的幣對合併成一批
+                Kline first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                Thread.sleep(props.flushIntervalMs());
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                flush(batch, props.retryAttempts());
+                batch.clear();
+                // 一次沒收完（超過 maxBatchSize）時立即繼續寫
+                while (queue.size() >= maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize);
+                    flush(batch, props.retryAttempts());
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /** 關閉時只嘗試一次，避免 DB 不可用時卡住關閉流程 */
+    private void drainAndFlush() {
+        List<Kline> batch = new ArrayList<>(maxBatchSize);
+        while (queue.drainTo(batch, maxBatchSize) > 0) {
+            flush(batch, 1);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 寫入一個批次，失敗時以指數退避重試，用盡才丟棄。
+     *
+     * @param attempts 總嘗試次數（含第一次）
+     */
+    private void flush(List<Kline> batch, int attempts) {
+        if (batch.isEmpty()) return;
+        long backoffMs = props.retryBackoffMs();
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                int inserted = insertBatch(batch);
+                writtenCounter.increment(batch.size());
+                log.debug("[K線寫入] flush {} 筆，新增 {} 筆", batch.size(), inserted);
+                return;
+            } catch (Exception e) {
+                if (attempt >= attempts) {
+                    drop(batch, e);
+                    return;
+                }
+                retriedCounter.increment();
+                log.warn("[K線寫入] 批次寫入失敗（第 {}/{} 次），{}ms 後重試 {} 筆: {}",
+                        attempt, attempts, backoffMs, batch.size(), e.getMessage());
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                drop(batch, ie);
+                return;
+            }
+            backoffMs *= 2;
+        }
+    }
+
+    private void drop(List<Kline> batch, Exception cause) {
+        droppedCounter.increment(batch.size());
+        Instant from = batch.getFirst().getOpenTime();
+        Instant to = from;
+        Set<String> symbols = new TreeSet<>();
+        for (Kline k : batch) {
+            symbols.add(k.getSymbol());
+            if (k.getOpenTime().isBefore(from)) from = k.getOpenTime();
+            if (k.getOpenTime().isAfter(to)) to = k.getOpenTime();
+        }
+        log.error("[K線寫入] 批次寫入重試用盡，丟棄 {} 筆（{} ~ {}，需重新同步歷史資料的幣對: {}）: {}",
+                batch.size(), from, to, symbols, cause.getMessage());
+    }
+
+    private int insertBatch(List<Kline> batch) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + batch.size() * 28 + ON_CONFLICT.length());
+        sql.append(INSERT_PREFIX);
+        Object[] args = new Object[batch.size() * COLUMNS];
+        int p = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append(ROW_PLACEHOLDER);
+            Kline k = batch.get(i);
+            args[p++] = k.getSymbol();
+            args[p++] = k.getIntervalType();
+            args[p++] = toTimestamp(k.getOpenTime());
+            args[p++] = toTimestamp(k.getCloseTime());
+            args[p++] = k.getOpenPrice();
+            args[p++] = k.getHighPrice();
+            args[p++] = k.getLowPrice();
+            args[p++] = k.getClosePrice();
+            args[p++] = k.getVolume();
+            args[p++] = k.getQuoteVolume();
+            args[p++] = k.getTradeCount();
+            args[p++] = k.getTakerBuyBaseVolume();
+            args[p++] = k.getTakerBuyQuoteVolume();
+        }
+        sql.append(ON_CONFLICT);
+        return jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private static OffsetDateTime toTimestamp(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+}
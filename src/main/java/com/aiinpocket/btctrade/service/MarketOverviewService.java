@@ -1,6 +1,8 @@
 package com.aiinpocket.btctrade.service;
 
 import com.aiinpocket.btctrade.config.BinanceApiProperties;
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
 import com.aiinpocket.btctrade.model.entity.TrackedSymbol;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,13 +12,15 @@ import tools.jackson.core.type.TypeReference;
 import tools.jackson.databind.ObjectMapper;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 市場總覽服務。
- * 從 Binance API 取得 24hr 行情，提供多幣對市場概覽。
+ * 以熱 K 線緩衝計算追蹤幣對的 24hr 行情，緩衝不足一天的幣對才向 Binance API 取得，提供多幣對市場概覽。
  * 內建 60 秒記憶體快取，避免頻繁請求 API。
  */
 @Service
@@ -28,11 +32,15 @@ public class MarketOverviewService {
     private final BinanceApiProperties props;
     private final TrackedSymbolService trackedSymbolService;
     private final ObjectMapper objectMapper;
+    private final BinanceRateLimiter rateLimiter;
+    private final HotKlineCache hotKlineCache;
+    private final IntervalParams intervalParams;
 
     /** 快取 */
     private volatile List<MarketTicker> cachedTickers = List.of();
     private volatile Instant cacheExpiry = Instant.EPOCH;
     private static final long CACHE_TTL_SECONDS = 60;
+    private static final Duration RATE_LIMIT_WAIT = Duration.ofSeconds(2);
 
     /**
      * 取得所有追蹤幣對的 24hr 行情。
@@ -59,46 +67,22 @@ public class MarketOverviewService {
             List<TrackedSymbol> tracked = trackedSymbolService.getReadySymbols();
             if (tracked.isEmpty()) return List.of();
 
-            // 建立幣對名稱集合
-            Set<String> trackedSymbols = new HashSet<>();
+            // 先以熱 K 線緩衝計算最近 24 小時行情；緩衝不足 24 小時的幣對才需呼叫 Binance
+            List<MarketTicker> result = new ArrayList<>();
+            Set<String> missingSymbols = new HashSet<>();
             for (TrackedSymbol ts : tracked) {
-                trackedSymbols.add(ts.getSymbol());
+                MarketTicker fromCache = tickerFromHotCache(ts.getSymbol());
+                if (fromCache != null) {
+                    result.add(fromCache);
+                } else {
+                    missingSymbols.add(ts.getSymbol());
+                }
             }
 
-            // 呼叫 Binance ticker/24hr API（取所有 USDT 對）
-            String json = binanceRestClient.get()
-                    .uri(props.baseUrl() + "/api/v3/ticker/24hr")
-                    .retrieve()
-                    .body(String.class);
-
-            if (json == null || json.isBlank()) {
-                log.warn("[市場] Binance ticker API 回應為空");
+            if (!missingSymbols.isEmpty() && !fetchTickers(missingSymbols, result)) {
                 return cachedTickers;
             }
 
-            List<Map<String, Object>> allTickers = objectMapper.readValue(
-                    json, new TypeReference<List<Map<String, Object>>>() {});
-
-            // 只保留追蹤的幣對
-            List<MarketTicker> result = new ArrayList<>();
-            for (Map<String, Object> t : allTickers) {
-                String symbol = (String) t.get("symbol");
-                if (symbol != null && trackedSymbols.contains(symbol)) {
-                    result.add(new MarketTicker(
-                            symbol,
-                            parseBd(t.get("lastPrice")),
-                            parseBd(t.get("priceChangePercent")),
-                            parseBd(t.get("priceChange")),
-                            parseBd(t.get("highPrice")),
-                            parseBd(t.get("lowPrice")),
-                            parseBd(t.get("volume")),
-                            parseBd(t.get("quoteVolume")),
-                            parseBd(t.get("openPrice")),
-                            Long.parseLong(t.getOrDefault("count", "0").toString())
-                    ));
-                }
-            }
-
             // 按漲跌幅排序
             result.sort((a, b) -> b.priceChangePercent().compareTo(a.priceChangePercent()));
 
@@ -108,12 +92,97 @@ public class MarketOverviewService {
             log.info("[市場] 刷新 {} 個幣對行情", result.size());
             return cachedTickers;
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return cachedTickers;
         } catch (Exception e) {
             log.error("[市場] 取得 24hr 行情失敗", e);
             return cachedTickers; // 回傳舊快取
         }
     }
 
+    /**
+     * 以熱 K 線緩衝最近一天的 K 線計算 24hr 行情（截至最後一根收盤）。
+     *
+     * @return null 表示緩衝不足 24 小時
+     */
+    private MarketTicker tickerFromHotCache(String symbol) {
+        int barsPerDay = intervalParams.barsPerDay();
+        KlineWindow w = hotKlineCache.window(symbol, props.defaultInterval(), barsPerDay);
+        if (w.size() < barsPerDay) return null;
+
+        double high = Double.NEGATIVE_INFINITY;
+        double low = Double.POSITIVE_INFINITY;
+        double volume = 0;
+        double quoteVolume = 0;
+        long trades = 0;
+        for (int i = 0; i < w.size(); i++) {
+            high = Math.max(high, w.high()[i]);
+            low = Math.min(low, w.low()[i]);
+            volume += w.volume()[i];
+            quoteVolume += w.quoteVolume()[i];
+            trades += w.tradeCount()[i];
+        }
+        BigDecimal open = BigDecimal.valueOf(w.open()[0]);
+        BigDecimal last = BigDecimal.valueOf(w.lastClose());
+        BigDecimal change = last.subtract(open);
+        BigDecimal changePct = open.signum() == 0 ? BigDecimal.ZERO
+                : change.multiply(BigDecimal.valueOf(100)).divide(open, 3, RoundingMode.HALF_UP);
+        return new MarketTicker(symbol, last, changePct, change,
+                BigDecimal.valueOf(high), BigDecimal.valueOf(low),
+                BigDecimal.valueOf(volume).setScale(8, RoundingMode.HALF_UP),
+                BigDecimal.valueOf(quoteVolume).setScale(8, RoundingMode.HALF_UP),
+                open, trades);
+    }
+
+    /**
+     * 呼叫 Binance ticker/24hr API 補齊緩衝不足的幣對。
+     *
+     * @return false 表示權重不足或回應為空，呼叫端應沿用舊快取
+     */
+    private boolean fetchTickers(Set<String> symbols, List<MarketTicker> result) throws InterruptedException {
+        // 全市場 ticker 權重 80 且優先序最低：限流器忙碌時直接回傳舊快取
+        if (!rateLimiter.tryAcquire(BinanceRateLimiter.TICKER_24HR_ALL,
+                BinanceRateLimiter.Priority.MARKET_OVERVIEW, RATE_LIMIT_WAIT)) {
+            log.debug("[市場] REST 權重不足，沿用快取行情");
+            return false;
+        }
+
+        // 呼叫 Binance ticker/24hr API（取所有 USDT 對）
+        String json = binanceRestClient.get()
+                .uri(BinanceRateLimiter.TICKER_24HR_ALL)
+                .retrieve()
+                .body(String.class);
+
+        if (json == null || json.isBlank()) {
+            log.warn("[市場] Binance ticker API 回應為空");
+            return false;
+        }
+
+        List<Map<String, Object>> allTickers = objectMapper.readValue(
+                json, new TypeReference<List<Map<String, Object>>>() {});
+
+        // 只保留需要補齊的幣對
+        for (Map<String, Object> t : allTickers) {
+            String symbol = (String) t.get("symbol");
+            if (symbol != null && symbols.contains(symbol)) {
+                result.add(new MarketTicker(
+                        symbol,
+                        parseBd(t.get("lastPrice")),
+                        parseBd(t.get("priceChangePercent")),
+                        parseBd(t.get("priceChange")),
+                        parseBd(t.get("highPrice")),
+                        parseBd(t.get("lowPrice")),
+                        parseBd(t.get("volume")),
+                        parseBd(t.get("quoteVolume")),
+                        parseBd(t.get("openPrice")),
+                        Long.parseLong(t.getOrDefault("count", "0").toString())
+                ));
+            }
+        }
+        return true;
+    }
+
     /**
      * 取得市場摘要統計。
      */
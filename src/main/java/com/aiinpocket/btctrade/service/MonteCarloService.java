@@ -0,0 +1,203 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.MonteCarloProperties;
+import com.aiinpocket.btctrade.config.MonteCarloProperties.Method;
+import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.dto.BacktestReport.TradeDetail;
+import com.aiinpocket.btctrade.model.dto.MonteCarloSummary;
+import com.aiinpocket.btctrade.model.dto.MonteCarloSummary.Band;
+import com.aiinpocket.btctrade.model.dto.MonteCarloSummary.Histogram;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 回測結果的 Monte Carlo 後處理：直接使用報告中已在記憶體的交易清單，不重跑回測。
+ *
+ * <p>每筆交易換算為「資金報酬率」r = pnl ÷ 進場前權益（部位以資金比例下單，故可重新排列後複利），
+ * 每條路徑依 {@link Method} 重排或重抽 r 後計算最終資金、平倉權益最大回撤與最長連敗。
+ * <ul>
+ *   <li>路徑切成固定大小的區塊，在模擬專用的 {@link ForkJoinPool} 上並行計算（不佔用 common pool，
+ *       多個回測同時分析時總執行緒數仍有上限）；每區塊使用由根種子 {@link SplittableRandom#split()} 出的亂數源，
+ *       結果與執行緒數無關、可重現</li>
+ *   <li>結果寫入原始型別陣列，最後只輸出分位數與直方圖，resultJson 不含任何原始路徑</li>
+ *   <li>PERMUTATION 下最終資金固定（複利與順序無關），只輸出回撤與連敗分布</li>
+ * </ul>
+ */
+@Service
+@Slf4j
+public class MonteCarloService {
+
+    /** 每個並行區塊的路徑數 */
+    private static final int CHUNK = 256;
+    private static final int MAX_SIMULATIONS = 100_000;
+
+    private final MonteCarloProperties props;
+    private final ForkJoinPool pool;
+
+    public MonteCarloService(MonteCarloProperties props) {
+        this.props = props;
+        int parallelism = props.parallelism() > 0
+                ? props.parallelism()
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 依設定分析報告的交易序列；停用或交易數不足 2 筆時回傳原報告。
+     */
+    public BacktestReport attach(BacktestReport report) {
+        if (!props.enabled() || report.trades().size() < 2) {
+            return report;
+        }
+        long start = System.nanoTime();
+        MonteCarloSummary summary = simulate(pool, report.initialCapital().doubleValue(), report.trades(),
+                props.method(), props.simulations(), props.seed(), props.histogramBins());
+        log.debug("[Monte Carlo] {} 筆交易 × {} 路徑，耗時 {} ms",
+                report.trades().size(), summary.simulations(), (System.nanoTime() - start) / 1_000_000);
+        return report.withMonteCarlo(summary);
+    }
+
+    /** 在 {@code pool} 上並行模擬（其中的 parallel stream 也使用此池） */
+    static MonteCarloSummary simulate(ForkJoinPool pool, double initialCapital, List<TradeDetail> trades,
+                                      Method method, int simulations, long seed, int bins) {
+        double[] returns = equityReturns(initialCapital, trades);
+        int n = returns.length;
+        int sims = Math.max(1, Math.min(MAX_SIMULATIONS, simulations));
+
+        double[] finals = new double[sims];
+        double[] drawdowns = new double[sims];
+        double[] streaks = new double[sims];
+
+        int chunks = (sims + CHUNK - 1) / CHUNK;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) {
+            randoms[c] = root.split();
+        }
+
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+            SplittableRandom random = randoms[c];
+            double[] path = new double[n];
+            int end = Math.min(sims, (c + 1) * CHUNK);
+            for (int s = c * CHUNK; s < end; s++) {
+                if (method == Method.PERMUTATION) {
+                    System.arraycopy(returns, 0, path, 0, n);
+                    for (int i = n - 1; i > 0; i--) {
+                        int j = random.nextInt(i + 1);
+                        double tmp = path[i];
+                        path[i] = path[j];
+                        path[j] = tmp;
+                    }
+                } else {
+                    for (int i = 0; i < n; i++) {
+                        path[i] = returns[random.nextInt(n)];
+                    }
+                }
+
+                double equity = initialCapital;
+                double peak = initialCapital;
+                double maxDrawdown = 0;
+                int streak = 0;
+                int maxStreak = 0;
+                for (int i = 0; i < n; i++) {
+                    double r = path[i];
+                    equity *= 1 + r;
+                    if (equity > peak) peak = equity;
+                    double dd = (equity - peak) / peak;
+                    if (dd < maxDrawdown) maxDrawdown = dd;
+                    streak = r < 0 ? streak + 1 : 0;
+                    if (streak > maxStreak) maxStreak = streak;
+                }
+                finals[s] = equity;
+                drawdowns[s] = maxDrawdown;
+                streaks[s] = maxStreak;
+            }
+        })).join();
+
+        Arrays.sort(drawdowns);
+        Arrays.sort(streaks);
+        int histogramBins = Math.max(1, bins);
+        if (method == Method.PERMUTATION) {
+            // 各路徑的最終資金只差浮點誤差，分位數與虧損機率沒有資訊量
+            return new MonteCarloSummary(method.name(), sims, seed,
+                    null, band(drawdowns, 4), band(streaks, 0), null,
+                    null, histogram(drawdowns, histogramBins, 4, false), histogram(streaks, histogramBins, 0, true));
+        }
+
+        int losing = 0;
+        for (double f : finals) {
+            if (f < initialCapital) losing++;
+        }
+        Arrays.sort(finals);
+
+        return new MonteCarloSummary(method.name(), sims, seed,
+                band(finals, 2), band(drawdowns, 4), band(streaks, 0),
+                BigDecimal.valueOf(losing).divide(BigDecimal.valueOf(sims), 4, RoundingMode.HALF_UP),
+                histogram(finals, histogramBins, 2, false),
+                histogram(drawdowns, histogramBins, 4, false),
+                histogram(streaks, histogramBins, 0, true));
+    }
+
+    /** 依序重建每筆交易進場前的權益，換算資金報酬率 */
+    private static double[] equityReturns(double initialCapital, List<TradeDetail> trades) {
+        double[] returns = new double[trades.size()];
+        double equity = initialCapital;
+        for (int i = 0; i < returns.length; i++) {
+            double pnl = trades.get(i).pnl().doubleValue();
+            returns[i] = equity > 0 ? pnl / equity : 0;
+            equity += pnl;
+        }
+        return returns;
+    }
+
+    private static Band band(double[] sorted, int scale) {
+        return new Band(percentile(sorted, 0.05, scale), percentile(sorted, 0.25, scale),
+                percentile(sorted, 0.50, scale), percentile(sorted, 0.75, scale),
+                percentile(sorted, 0.95, scale));
+    }
+
+    /** 最近秩法（nearest-rank） */
+    private static BigDecimal percentile(double[] sorted, double p, int scale) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return BigDecimal.valueOf(sorted[Math.max(0, rank - 1)]).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 等寬直方圖；整數值（連敗數）的格寬至少為 1，避免空格。
+     */
+    private static Histogram histogram(double[] sorted, int bins, int scale, boolean integer) {
+        double min = sorted[0];
+        double max = sorted[sorted.length - 1];
+        double width;
+        int count;
+        if (integer) {
+            width = Math.max(1, Math.ceil((max - min + 1) / bins));
+            count = (int) Math.ceil((max - min + 1) / width);
+        } else {
+            width = max > min ? (max - min) / bins : 1;
+            count = max > min ? bins : 1;
+        }
+        int[] counts = new int[count];
+        for (double v : sorted) {
+            int k = (int) ((v - min) / width);
+            counts[Math.min(count - 1, k)]++;
+        }
+        return new Histogram(BigDecimal.valueOf(min).setScale(scale, RoundingMode.HALF_UP),
+                BigDecimal.valueOf(width).setScale(integer ? 0 : Math.max(scale, 6), RoundingMode.HALF_UP),
+                counts);
+    }
+}
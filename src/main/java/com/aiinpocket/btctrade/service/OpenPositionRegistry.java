@@ -0,0 +1,299 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.model.enums.PositionStatus;
+import com.aiinpocket.btctrade.repository.TradePositionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 實盤未平倉持倉的記憶體索引（依用戶、依幣對）。
+ *
+ * <p>持倉只在 {@link PositionService} 開倉 / 平倉時變動，因此評估、儀表板等讀取端不必每次查 DB：
+ * <ul>
+ *   <li>啟動時從 DB 重建</li>
+ *   <li>{@link PositionService} 寫入後 write-through：交易提交後才套用；回滾時從 DB 重新載入該用戶的該幣對</li>
+ *   <li>收盤評估在分散式鎖內以 {@link #syncSymbol} 一次重新載入整個幣對，
+ *       多個 Pod 輪流取得鎖時也能看到其他 Pod 的開平倉</li>
+ *   <li>定期與 DB 比對，差異記入 {@code position.registry.drift} 並以 DB 為準修正</li>
+ * </ul>
+ * 任何變動都會通知 {@link #addListener} 註冊的監聽者（例如 {@link TickStopEngine} 據此重建停損索引）。
+ *
+ * <p>讀取不加鎖；寫入以本物件為鎖序列化，讓兩個索引同步變動。
+ * 重新載入時在鎖內查詢，避免以查詢當下之前的快照覆蓋期間提交的變動。
+ * 回傳的 {@link TradePosition} 為共用實例，呼叫端不得修改：{@link PositionService} 平倉時修改分離的複本，
+ * 停損上調也在交易提交後才寫回共用實例。
+ * 舊版全域持倉（userId 為 null）以 {@link #GLOBAL} 為用戶鍵。
+ */
+@Service
+@Slf4j
+public class OpenPositionRegistry {
+
+    /** 全域持倉（userId 為 null）的用戶鍵 */
+    private static final long GLOBAL = -1L;
+
+    private final TradePositionRepository positionRepo;
+    /** 幣對 → 用戶 → 持倉 */
+    private final Map<String, Map<Long, TradePosition>> bySymbol = new ConcurrentHashMap<>();
+    /** 用戶 → 幣對 → 持倉 */
+    private final Map<Long, Map<String, TradePosition>> byUser = new ConcurrentHashMap<>();
+    private final Counter driftCounter;
+    /** 變動監聽者：參數為變動的幣對，null 表示全部重建 */
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public OpenPositionRegistry(TradePositionRepository positionRepo, MeterRegistry meterRegistry) {
+        this.positionRepo = positionRepo;
+        Gauge.builder("position.registry.size", this, OpenPositionRegistry::size)
+                .description("記憶體中的實盤未平倉持倉數")
+                .register(meterRegistry);
+        this.driftCounter = Counter.builder("position.registry.drift")
+                .description("定期比對時與 DB 不一致的持倉數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void rebuild() {
+        List<TradePosition> open;
+        synchronized (this) {
+            open = positionRepo.findByStatusAndBacktest(PositionStatus.OPEN, false);
+            bySymbol.clear();
+            byUser.clear();
+            notifyChanged(null);
+            open.forEach(this::put);
+        }
+        log.info("[持倉索引] 從 DB 載入 {} 筆未平倉持倉", open.size());
+    }
+
+    /** 註冊變動通知（在寫入鎖內呼叫，監聽者只應做標記之類的輕量工作） */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyChanged(String symbol) {
+        for (Consumer<String> listener : listeners) {
+            listener.accept(symbol);
+        }
+    }
+
+    // ── 讀取 ──
+
+    public Optional<TradePosition> find(Long userId, String symbol) {
+        Map<String, TradePosition> positions = byUser.get(key(userId));
+        return positions == null ? Optional.empty() : Optional.ofNullable(positions.get(symbol));
+    }
+
+    /** 用戶所有幣對的未平倉持倉 */
+    public List<TradePosition> forUser(Long userId) {
+        Map<String, TradePosition> positions = byUser.get(key(userId));
+        return positions == null ? List.of() : List.copyOf(positions.values());
+    }
+
+    /** 幣對上所有用戶的未平倉持倉 */
+    public List<TradePosition> forSymbol(String symbol) {
+        Map<Long, TradePosition> positions = bySymbol.get(symbol);
+        return positions == null ? List.of() : List.copyOf(positions.values());
+    }
+
+    public int size() {
+        return bySymbol.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // ── 寫入 ──
+
+    /**
+     * 從 DB 重新載入整個幣對（一個查詢），回傳各用戶的持倉（不含全域持倉）。
+     * 在收盤評估的分散式鎖內呼叫，確保依據的是最新狀態。
+     */
+    public Map<Long, TradePosition> syncSymbol(String symbol) {
+        Map<Long, TradePosition> byOwner = new HashMap<>();
+        synchronized (this) {
+            List<TradePosition> open = positionRepo.findBySymbolAndStatusAndBacktest(
+                    symbol, PositionStatus.OPEN, false);
+            for (TradePosition position : forSymbol(symbol)) {
+                remove(position);
+            }
+            for (TradePosition position : open) {
+                put(position);
+                if (position.getUserId() != null) {
+                    byOwner.putIfAbsent(position.getUserId(), position);
+                }
+            }
+        }
+        return byOwner;
+    }
+
+    /** 開倉後呼叫（交易提交後才加入） */
+    void opened(TradePosition position) {
+        if (position.isBacktest()) return;
+        afterCompletion(position, () -> {
+            synchronized (this) {
+                put(position);
+            }
+        });
+    }
+
+    /** 平倉後呼叫（交易提交後才移除） */
+    void closed(TradePosition position) {
+        if (position.isBacktest()) return;
+        afterCompletion(position, () -> {
+            synchronized (this) {
+                remove(position);
+            }
+        });
+    }
+
+    /** 交易提交後套用；回滾時以 DB 為準重新載入該用戶的該幣對；沒有交易時立即套用 */
+    private void afterCompletion(TradePosition position, Runnable onCommit) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    onCommit.run();
+                } else {
+                    reload(position.getUserId(), position.getSymbol());
+                }
+            }
+        });
+    }
+
+    private void reload(Long userId, String symbol) {
+        try {
+            synchronized (this) {
+                Optional<TradePosition> current = positionRepo
+                        .findBySymbolAndStatusAndBacktest(symbol, PositionStatus.OPEN, false).stream()
+                        .filter(p -> Objects.equals(p.getUserId(), userId))
+                        .findFirst();
+                find(userId, symbol).ifPresent(this::remove);
+                current.ifPresent(this::put);
+            }
+        } catch (Exception e) {
+            log.warn("[持倉索引] 交易回滾後重新載入失敗，待定期比對修正: userId={}, symbol={}, error={}",
+                    userId, symbol, e.getMessage());
+        }
+    }
+
+    private void put(TradePosition position) {
+        long owner = key(position.getUserId());
+        bySymbol.computeIfAbsent(position.getSymbol(), k -> new ConcurrentHashMap<>()).put(owner, position);
+        byUser.computeIfAbsent(owner, k -> new ConcurrentHashMap<>()).put(position.getSymbol(), position);
+        notifyChanged(position.getSymbol());
+    }
+
+    private void remove(TradePosition position) {
+        long owner = key(position.getUserId());
+        Map<Long, TradePosition> symbolPositions = bySymbol.get(position.getSymbol());
+        if (symbolPositions != null) {
+            symbolPositions.remove(owner);
+            if (symbolPositions.isEmpty()) bySymbol.remove(position.getSymbol());
+        }
+        Map<String, TradePosition> userPositions = byUser.get(owner);
+        if (userPositions != null) {
+            userPositions.remove(position.getSymbol());
+            if (userPositions.isEmpty()) byUser.remove(owner);
+        }
+        notifyChanged(position.getSymbol());
+    }
+
+    private static long key(Long userId) {
+        return userId != null ? userId : GLOBAL;
+    }
+
+    // ── 定期比對 ──
+
+    /** 與 DB 比對的結果：僅 DB 有、僅記憶體有、兩邊都有但持倉不同（以 ID 判斷） */
+    public record Drift(List<Long> missing, List<Long> stale, List<Long> mismatched) {
+        public int total() {
+            return missing.size() + stale.size() + mismatched.size();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${positions.reconcile-interval-ms:600000}",
+            initialDelayString = "${positions.reconcile-interval-ms:600000}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("[持倉索引] 比對失敗: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 與 DB 全量比對；有差異時記錄並以 DB 為準重建。
+     */
+    public Drift reconcile() {
+        Drift drift;
+        synchronized (this) {
+            List<TradePosition> open = positionRepo.findByStatusAndBacktest(PositionStatus.OPEN, false);
+            Map<Long, TradePosition> inDb = new HashMap<>();
+            for (TradePosition position : open) {
+                inDb.put(position.getId(), position);
+            }
+            Map<Long, TradePosition> inMemory = new HashMap<>();
+            for (Map<Long, TradePosition> positions : bySymbol.values()) {
+                for (TradePosition position : positions.values()) {
+                    inMemory.put(position.getId(), position);
+                }
+            }
+
+            List<Long> missing = new ArrayList<>();
+            List<Long> mismatched = new ArrayList<>();
+            for (TradePosition position : open) {
+                TradePosition cached = inMemory.get(position.getId());
+                if (cached == null) {
+                    missing.add(position.getId());
+                } else if (!sameState(cached, position)) {
+                    mismatched.add(position.getId());
+                }
+            }
+            List<Long> stale = new ArrayList<>();
+            for (Long id : inMemory.keySet()) {
+                if (!inDb.containsKey(id)) stale.add(id);
+            }
+            drift = new Drift(missing, stale, mismatched);
+
+            if (drift.total() > 0) {
+                bySymbol.clear();
+                byUser.clear();
+                notifyChanged(null);
+                open.forEach(this::put);
+            }
+        }
+        if (drift.total() > 0) {
+            driftCounter.increment(drift.total());
+            log.warn("[持倉索引] 與 DB 不一致，已以 DB 為準重建：缺少 {}、多餘 {}、內容不同 {}",
+                    drift.missing(), drift.stale(), drift.mismatched());
+        }
+        return drift;
+    }
+
+    private static boolean sameState(TradePosition a, TradePosition b) {
+        return Objects.equals(a.getUserId(), b.getUserId())
+                && Objects.equals(a.getSymbol(), b.getSymbol())
+                && a.getDirection() == b.getDirection()
+                && a.getStatus() == b.getStatus()
+                && a.getEntryPrice().compareTo(b.getEntryPrice()) == 0
+                && a.getQuantity().compareTo(b.getQuantity()) == 0
+                && a.getStopLossPrice().compareTo(b.getStopLossPrice()) == 0;
+    }
+}
@@ -0,0 +1,362 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BacktestSweepProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.RiskParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.RsiParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.dto.ParameterSweepResult;
+import com.aiinpocket.btctrade.model.dto.ParameterSweepResult.Row;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 參數掃描：以一個策略模板為基準，對指定參數軸的笛卡兒積逐組回測並排名。
+ *
+ * <p>執行方式：
+ * <ul>
+ *   <li>K 線只從 DB 載入一次，所有組合共用同一份 {@link BacktestBars}</li>
+ *   <li>組合依指標週期（{@link StrategyParams}）分組；每組只計算一次 {@link IndicatorColumns}，
+ *       只改 RSI 區間 / 停損 / 移動停利的組合直接共用</li>
+ *   <li>組與組內的組合都在掃描專用 {@link ForkJoinPool} 上並行，不佔用 common pool 與即時交易執行緒</li>
+ *   <li>組合數有硬上限；體力依組合數折算成回測次數計費</li>
+ * </ul>
+ *
+ * <p>掃描與一般回測一樣以 {@code backtest_run} 紀錄排入 {@link BacktestJobQueue}，
+ * 在佇列的工作執行緒上執行（不佔用請求執行緒），失敗時退還體力。
+ */
+@Service
+@Slf4j
+public class ParameterSweepService {
+
+    /** 單一軸展開後的值數上限（避免 from/to/step 展開出巨大清單） */
+    private static final int MAX_AXIS_VALUES = 100;
+
+    /** 排名：年化報酬（高→低）、Sharpe（高→低）、最大回撤（淺→深） */
+    static final Comparator<BacktestReport> RANKING =
+            Comparator.comparing(BacktestReport::annualizedReturn).reversed()
+                    .thenComparing(Comparator.comparing(BacktestReport::sharpeRatio).reversed())
+                    .thenComparing(r -> r.maxDrawdown().abs());
+
+    private final BacktestService backtestService;
+    private final BacktestSweepProperties sweepProps;
+    private final ForkJoinPool pool;
+    private final Timer sweepTimer;
+
+    public ParameterSweepService(BacktestService backtestService,
+                                 BacktestSweepProperties sweepProps,
+                                 MeterRegistry meterRegistry) {
+        this.backtestService = backtestService;
+        this.sweepProps = sweepProps;
+        int parallelism = sweepProps.parallelism() > 0
+                ? sweepProps.parallelism()
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.pool = new ForkJoinPool(parallelism);
+        this.sweepTimer = Timer.builder("backtest.sweep.duration")
+                .description("參數掃描耗時（載入 K 線 + 全部組合）")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 可掃描的參數軸（其餘參數沿用模板）。
+     */
+    enum Axis {
+        EMA_SHORT("emaShort", true),
+        EMA_LONG("emaLong", true),
+        RSI_LONG_ENTRY_MIN("rsiLongEntryMin", false),
+        RSI_LONG_ENTRY_MAX("rsiLongEntryMax", false),
+        RSI_SHORT_ENTRY_MIN("rsiShortEntryMin", false),
+        RSI_SHORT_ENTRY_MAX("rsiShortEntryMax", false),
+        STOP_LOSS_PCT("stopLossPct", false),
+        TRAILING_ACTIVATE_PCT("trailingActivatePct", false),
+        TRAILING_OFFSET_PCT("trailingOffsetPct", false);
+
+        final String key;
+        final boolean integer;
+
+        Axis(String key, boolean integer) {
+            this.key = key;
+            this.integer = integer;
+        }
+
+        static Axis of(String key) {
+            for (Axis axis : values()) {
+                if (axis.key.equals(key)) return axis;
+            }
+            throw new IllegalArgumentException("不支援的掃描參數: " + key);
+        }
+
+        TradingStrategyProperties apply(TradingStrategyProperties p, Number v) {
+            StrategyParams s = p.strategy();
+            RiskParams r = p.risk();
+            RsiParams x = p.rsi();
+            double d = v.doubleValue();
+            return switch (this) {
+                case EMA_SHORT -> new TradingStrategyProperties(new StrategyParams(v.intValue(), s.emaLong(),
+                        s.rsiPeriod(), s.macdShort(), s.macdLong(), s.macdSignal(), s.donchianEntry(), s.donchianExit()), r, x);
+                case EMA_LONG -> new TradingStrategyProperties(new StrategyParams(s.emaShort(), v.intValue(),
+                        s.rsiPeriod(), s.macdShort(), s.macdLong(), s.macdSignal(), s.donchianEntry(), s.donchianExit()), r, x);
+                case RSI_LONG_ENTRY_MIN -> new TradingStrategyProperties(s, r, new RsiParams(d, x.longEntryMax(),
+                        x.shortEntryMin(), x.shortEntryMax(), x.longExitExtreme(), x.shortExitExtreme()));
+                case RSI_LONG_ENTRY_MAX -> new TradingStrategyProperties(s, r, new RsiParams(x.longEntryMin(), d,
+                        x.shortEntryMin(), x.shortEntryMax(), x.longExitExtreme(), x.shortExitExtreme()));
+                case RSI_SHORT_ENTRY_MIN -> new TradingStrategyProperties(s, r, new RsiParams(x.longEntryMin(),
+                        x.longEntryMax(), d, x.shortEntryMax(), x.longExitExtreme(), x.shortExitExtreme()));
+                case RSI_SHORT_ENTRY_MAX -> new TradingStrategyProperties(s, r, new RsiParams(x.longEntryMin(),
+                        x.longEntryMax(), x.shortEntryMin(), d, x.longExitExtreme(), x.shortExitExtreme()));
+                case STOP_LOSS_PCT -> new TradingStrategyProperties(s, new RiskParams(d, r.maxHoldingDays(),
+                        r.initialCapital(), r.maxTradesPerDay(), r.leverage(), r.trailingActivatePct(),
+                        r.trailingOffsetPct(), r.timeStopDays(), r.cooldownDays(), r.positionSizePct()), x);
+                case TRAILING_ACTIVATE_PCT -> new TradingStrategyProperties(s, new RiskParams(r.stopLossPct(),
+                        r.maxHoldingDays(), r.initialCapital(), r.maxTradesPerDay(), r.leverage(), d,
+                        r.trailingOffsetPct(), r.timeStopDays(), r.cooldownDays(), r.positionSizePct()), x);
+                case TRAILING_OFFSET_PCT -> new TradingStrategyProperties(s, new RiskParams(r.stopLossPct(),
+                        r.maxHoldingDays(), r.initialCapital(), r.maxTradesPerDay(), r.leverage(),
+                        r.trailingActivatePct(), d, r.timeStopDays(), r.cooldownDays(), r.positionSizePct()), x);
+            };
+        }
+    }
+
+    /** 一組待回測的參數：覆寫值（供結果顯示）與套用後的完整參數 */
+    record Combination(Map<String, Number> overrides, TradingStrategyProperties props) {}
+
+    /** 展開並過濾後的組合；{@code skipped} 為參數不合法而略過的數量 */
+    record Plan(List<Combination> combinations, int skipped) {}
+
+    private record Scored(Combination combination, BacktestReport report) {}
+
+    /**
+     * 執行參數掃描（於呼叫端執行緒等待結果）。由 {@link UserBacktestService} 在回測佇列的工作執行緒中呼叫，
+     * 提交與扣體力見 {@link UserBacktestService#submitSweep}。
+     *
+     * @param base        提交時的模板參數快照
+     * @param axes        參數軸：值可為單一數字、數字清單，或 {@code {"from":..,"to":..,"step":..}} 範圍
+     * @param staminaCost 提交時扣除的體力（僅寫入結果）
+     * @param progress    以已完成組合數回報進度；拋出 {@link java.util.concurrent.CancellationException} 時中止
+     * @throws IllegalArgumentException 參數軸不合法、組合數超過上限或 K 線不足
+     */
+    public ParameterSweepResult sweep(String symbol, Instant startDate, Instant endDate,
+                                      TradingStrategyProperties base, Map<String, Object> axes,
+                                      int staminaCost, BacktestProgress progress) {
+        Plan plan = plan(base, axes);
+        List<Combination> combos = plan.combinations();
+        Timer.Sample sample = Timer.start();
+        long startNanos = System.nanoTime();
+
+        BacktestBars bars = backtestService.loadBars(symbol, startDate, endDate);
+        checkBars(bars, combos);
+
+        Map<StrategyParams, List<Combination>> groups = combos.stream()
+                .collect(Collectors.groupingBy(c -> c.props().strategy(), LinkedHashMap::new, Collectors.toList()));
+        log.info("[參數掃描] {}：{} 組合（{} 組指標週期），{} 根 K 線，並行度 {}",
+                symbol, combos.size(), groups.size(), bars.size(), pool.getParallelism());
+
+        // 組合在池中並行完成，回報序列化後交給（非執行緒安全的）progress
+        AtomicInteger done = new AtomicInteger();
+        BacktestProgress counted = (processed, total) -> {
+            synchronized (done) {
+                progress.onBars(processed, total);
+            }
+        };
+        counted.onBars(0, combos.size());
+        List<Scored> scored = inPool(() -> groups.values().parallelStream()
+                .flatMap(group -> runGroup(symbol, startDate, endDate, bars, group, () ->
+                        counted.onBars(done.incrementAndGet(), combos.size())).stream())
+                .toList());
+
+        List<Row> rows = rank(scored);
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        sample.stop(sweepTimer);
+        log.info("[參數掃描] {} 完成：{} 組合，耗時 {} ms", symbol, combos.size(), elapsedMs);
+
+        return new ParameterSweepResult(symbol, startDate, endDate, bars.size(),
+                combos.size(), groups.size(), plan.skipped(), staminaCost, elapsedMs, rows);
+    }
+
+    /**
+     * 解析參數軸、展開笛卡兒積並過濾不合法組合。
+     *
+     * @throws IllegalArgumentException 參數軸不合法、組合數超過上限或沒有合法組合
+     */
+    Plan plan(TradingStrategyProperties base, Map<String, Object> axes) {
+        List<Combination> all = expand(base, parseAxes(axes));
+        List<Combination> combos = all.stream().filter(c -> isValid(c.props())).toList();
+        if (combos.isEmpty()) {
+            throw new IllegalArgumentException("沒有合法的參數組合（EMA 短週期須小於長週期、RSI 區間下限須小於上限）");
+        }
+        return new Plan(combos, all.size() - combos.size());
+    }
+
+    /** 體力 = 年數 × ceil(組合數 / combinationsPerStamina) */
+    int staminaCost(int years, int combinations) {
+        int perStamina = Math.max(1, sweepProps.combinationsPerStamina());
+        return years * ((combinations + perStamina - 1) / perStamina);
+    }
+
+    /** @throws IllegalArgumentException 區間內的 K 線不足以計算最長的 EMA */
+    static void checkBars(BacktestBars bars, List<Combination> combos) {
+        int maxEmaLong = combos.stream().mapToInt(c -> c.props().strategy().emaLong()).max().orElse(0);
+        if (bars.size() < maxEmaLong + 10) {
+            throw new IllegalArgumentException("需要至少 " + (maxEmaLong + 10) + " 根 K 線，目前只有 " + bars.size());
+        }
+    }
+
+    /** 在掃描專用 ForkJoinPool 上執行（其中的 parallel stream 也使用此池） */
+    <T> T inPool(Callable<T> task) {
+        return pool.submit(task).join();
+    }
+
+    /** 同一指標週期的組合：指標欄算一次，組內並行回測 */
+    private List<Scored> runGroup(String symbol, Instant startDate, Instant endDate,
+                                  BacktestBars bars, List<Combination> group, Runnable onCombination) {
+        TradingStrategyProperties first = group.getFirst().props();
+        IndicatorColumns columns = IndicatorColumns.compute(bars,
+                new TechnicalIndicatorService(first).createEngine());
+        return group.parallelStream()
+                .map(c -> {
+                    Scored scored = new Scored(c, backtestService.runOnColumns(
+                            symbol, startDate, endDate, bars, columns, c.props(), true).report());
+                    onCombination.run();
+                    return scored;
+                })
+                .toList();
+    }
+
+    private static List<Row> rank(List<Scored> scored) {
+        List<Scored> sorted = new ArrayList<>(scored);
+        sorted.sort(Comparator.comparing(Scored::report, RANKING));
+        List<Row> rows = new ArrayList<>(sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            BacktestReport r = sorted.get(i).report();
+            rows.add(new Row(i + 1, sorted.get(i).combination().overrides(),
+                    r.annualizedReturn(), r.maxDrawdown(), r.sharpeRatio(), r.totalReturn(),
+                    r.totalTrades(), r.winRate(), r.profitFactor()));
+        }
+        return rows;
+    }
+
+    /**
+     * 解析參數軸，並在展開前檢查組合數上限。
+     */
+    Map<Axis, List<Number>> parseAxes(Map<String, Object> axes) {
+        if (axes == null || axes.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一個掃描參數");
+        }
+        Map<Axis, List<Number>> parsed = new LinkedHashMap<>();
+        long total = 1;
+        for (Map.Entry<String, Object> entry : axes.entrySet()) {
+            Axis axis = Axis.of(entry.getKey());
+            List<Number> values = parseValues(axis, entry.getValue());
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("掃描參數 " + axis.key + " 沒有任何值");
+            }
+            total *= values.size();
+            if (total > sweepProps.maxCombinations()) {
+                throw new IllegalArgumentException("參數組合數超過上限 " + sweepProps.maxCombinations());
+            }
+            parsed.put(axis, values);
+        }
+        return parsed;
+    }
+
+    private List<Number> parseValues(Axis axis, Object spec) {
+        List<BigDecimal> raw = new ArrayList<>();
+        if (spec instanceof Map<?, ?> range) {
+            BigDecimal from = decimal(axis, range.get("from"));
+            BigDecimal to = decimal(axis, range.get("to"));
+            BigDecimal step = decimal(axis, range.get("step"));
+            if (step.signum() <= 0 || to.compareTo(from) < 0) {
+                throw new IllegalArgumentException("掃描參數 " + axis.key + " 的範圍不合法");
+            }
+            long count = to.subtract(from).divideToIntegralValue(step).longValueExact() + 1;
+            if (count > MAX_AXIS_VALUES) {
+                throw new IllegalArgumentException("掃描參數 " + axis.key + " 超過 " + MAX_AXIS_VALUES + " 個值");
+            }
+            for (long k = 0; k < count; k++) {
+                raw.add(from.add(step.multiply(BigDecimal.valueOf(k))));
+            }
+        } else if (spec instanceof List<?> list) {
+            if (list.size() > MAX_AXIS_VALUES) {
+                throw new IllegalArgumentException("掃描參數 " + axis.key + " 超過 " + MAX_AXIS_VALUES + " 個值");
+            }
+            for (Object o : list) raw.add(decimal(axis, o));
+        } else {
+            raw.add(decimal(axis, spec));
+        }
+
+        List<Number> values = new ArrayList<>(raw.size());
+        for (BigDecimal v : raw.stream().distinct().toList()) {
+            if (axis.integer) {
+                if (v.stripTrailingZeros().scale() > 0) {
+                    throw new IllegalArgumentException("掃描參數 " + axis.key + " 必須為整數");
+                }
+                values.add(v.intValueExact());
+            } else {
+                values.add(v.doubleValue());
+            }
+        }
+        return values;
+    }
+
+    private static BigDecimal decimal(Axis axis, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("掃描參數 " + axis.key + " 缺少數值");
+        }
+        try {
+            return new BigDecimal(value.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("掃描參數 " + axis.key + " 不是數字: " + value);
+        }
+    }
+
+    /** 笛卡兒積展開（依軸宣告順序，最後一軸變化最快） */
+    static List<Combination> expand(TradingStrategyProperties base, Map<Axis, List<Number>> axes) {
+        List<Combination> combos = List.of(new Combination(Map.of(), base));
+        for (Map.Entry<Axis, List<Number>> entry : axes.entrySet()) {
+            Axis axis = entry.getKey();
+            List<Combination> next = new ArrayList<>(combos.size() * entry.getValue().size());
+            for (Combination c : combos) {
+                for (Number v : entry.getValue()) {
+                    Map<String, Number> overrides = new LinkedHashMap<>(c.overrides());
+                    overrides.put(axis.key, v);
+                    next.add(new Combination(overrides, axis.apply(c.props(), v)));
+                }
+            }
+            combos = next;
+        }
+        return combos;
+    }
+
+    private static boolean isValid(TradingStrategyProperties p) {
+        StrategyParams s = p.strategy();
+        RsiParams x = p.rsi();
+        RiskParams r = p.risk();
+        return s.emaShort() >= 2 && s.emaShort() < s.emaLong()
+                && x.longEntryMin() >= 0 && x.longEntryMin() < x.longEntryMax() && x.longEntryMax() <= 100
+                && x.shortEntryMin() >= 0 && x.shortEntryMin() < x.shortEntryMax() && x.shortEntryMax() <= 100
+                && r.stopLossPct() > 0 && r.stopLossPct() < 1
+                && r.trailingActivatePct() >= 0 && r.trailingOffsetPct() >= 0;
+    }
+}
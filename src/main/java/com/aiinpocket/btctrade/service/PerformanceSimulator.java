@@ -0,0 +1,297 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * 可接續的單一時段績效模擬：指標引擎 + {@link BacktestKernel.Cursor} + 串流績效累加器，
+ * 整體可序列化為精簡的檢查點（{@link #checkpoint()}），下次從檢查點還原後只需餵入新 K 線。
+ *
+ * <p>與 {@link BacktestKernel#run} 使用同一個 {@link BacktestKernel#step}，交易完全相同；
+ * 績效指標則改為逐根串流累計，不保留權益曲線：
+ * <ul>
+ *   <li>最大回撤：每根收盤權益相對歷史峰值</li>
+ *   <li>夏普：每根權益報酬的 Welford 平均 / 母體變異數（報告版本以降採樣曲線計算，數值略有差異）</li>
+ *   <li>總報酬 / 年化 / 未平倉浮盈：與績效模式的回測報告相同（未平倉部位不計入資金）</li>
+ * </ul>
+ * 因此「從檢查點接續」與「從頭重算」的結果逐位元相同。非執行緒安全。
+ */
+public final class PerformanceSimulator {
+
+    /** 檢查點格式版本；模擬規則或格式變更時遞增，舊檢查點的參數雜湊隨之失效而全量重建 */
+    static final byte VERSION = 2;
+
+    /**
+     * 暖機長度為最長指標回溯的倍數：EMA 初值的殘留權重約 e^(-2×倍數)，Wilder 平滑（RSI / ADX）約 e^(-倍數)，
+     * 時段起點的指標已收斂，交易從起點當根即可開始。
+     */
+    static final int WARMUP_LOOKBACK_MULTIPLE = 5;
+
+    private final IncrementalIndicatorEngine engine;
+    private final BacktestKernel kernel;
+    private final IntervalParams intervalParams;
+    /** 開始交易的時間（epoch ms）；之前的 K 線只用於指標暖機 */
+    private final long periodStart;
+    private final Duration warmupLead;
+    private BacktestKernel.Cursor cursor;
+
+    // ---- 串流累加器 ----
+    private int tradedBars;
+    private int trades;
+    private int wins;
+    private double peakEquity;
+    private double maxDrawdown;
+    private double lastEquity;
+    private long returnCount;
+    private double returnMean;
+    private double returnM2;
+    private double lastClose;
+
+    private PerformanceSimulator(TradingStrategyProperties props, IntervalParams intervalParams, long periodStart) {
+        this.engine = new IncrementalIndicatorEngine(props.strategy());
+        this.kernel = new BacktestKernel(props, intervalParams, new StrategyService(props, intervalParams));
+        this.intervalParams = intervalParams;
+        this.periodStart = periodStart;
+        this.warmupLead = warmupLead(props, intervalParams);
+        this.cursor = kernel.newCursor();
+    }
+
+    /**
+     * 全新模擬在時段起點前預先餵入的指標暖機長度：最長指標回溯（K 線數）的 {@value #WARMUP_LOOKBACK_MULTIPLE} 倍，
+     * 依 K 線週期換算成時間。最長回溯取 EMA 長週期、MACD 慢線 + 訊號線、ADX（DX 再平滑一次，約 2 × 週期）
+     * 與唐奇安通道中的最大者。
+     */
+    public static Duration warmupLead(TradingStrategyProperties props, IntervalParams intervalParams) {
+        StrategyParams s = props.strategy();
+        int lookback = Math.max(Math.max(s.emaLong(), s.macdLong() + s.macdSignal()),
+                Math.max(s.rsiPeriod() * 2, Math.max(s.donchianEntry(), s.donchianExit())));
+        return Duration.ofMinutes(intervalParams.barDurationMinutes() * WARMUP_LOOKBACK_MULTIPLE * lookback);
+    }
+
+    /** 全新的模擬：指標自 {@code periodStart - warmupLead} 起暖機，從 {@code periodStart} 起交易 */
+    public static PerformanceSimulator create(TradingStrategyProperties props, IntervalParams intervalParams,
+                                              Instant periodStart) {
+        return new PerformanceSimulator(props, intervalParams, periodStart.toEpochMilli());
+    }
+
+    /**
+     * 由檢查點還原。呼叫端須以 {@link #paramsHash} 確認檢查點出自相同參數。
+     *
+     * @throws IllegalArgumentException 檢查點版本不符或內容損毀
+     */
+    public static PerformanceSimulator restore(TradingStrategyProperties props, IntervalParams intervalParams,
+                                               byte[] state) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("檢查點版本不符: " + version);
+            }
+            PerformanceSimulator sim = new PerformanceSimulator(props, intervalParams, in.readLong());
+            sim.engine.readState(in);
+            sim.cursor = BacktestKernel.Cursor.readFrom(in);
+            sim.tradedBars = in.readInt();
+            sim.trades = in.readInt();
+            sim.wins = in.readInt();
+            sim.peakEquity = in.readDouble();
+            sim.maxDrawdown = in.readDouble();
+            sim.lastEquity = in.readDouble();
+            sim.returnCount = in.readLong();
+            sim.returnMean = in.readDouble();
+            sim.returnM2 = in.readDouble();
+            sim.lastClose = in.readDouble();
+            return sim;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("檢查點內容損毀", e);
+        }
+    }
+
+    /** 寫出目前完整狀態 */
+    public byte[] checkpoint() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(periodStart);
+            engine.writeState(out);
+            cursor.writeTo(out);
+            out.writeInt(tradedBars);
+            out.writeInt(trades);
+            out.writeInt(wins);
+            out.writeDouble(peakEquity);
+            out.writeDouble(maxDrawdown);
+            out.writeDouble(lastEquity);
+            out.writeLong(returnCount);
+            out.writeDouble(returnMean);
+            out.writeDouble(returnM2);
+            out.writeDouble(lastClose);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 策略參數 + K 線週期 + 檢查點版本的 SHA-256；不同即表示檢查點不可沿用。
+     */
+    public static String paramsHash(TradingStrategyProperties props, IntervalParams intervalParams) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String canonical = VERSION + "|" + intervalParams.interval() + "|" + props;
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 餵入 {@code bars} 中尚未處理的 K 線（全新模擬自暖機起點、還原的模擬自上次進度之後），回傳實際處理的根數。
+     * 同一份 K 線可供多個時段共用。
+     */
+    public int feed(BacktestBars bars) {
+        long[] openTime = bars.openTime();
+        double[] high = bars.high();
+        double[] low = bars.low();
+        double[] close = bars.close();
+        long after = engine.lastOpenTime();
+        int from;
+        if (after == Long.MIN_VALUE) {
+            int i = Arrays.binarySearch(openTime, warmupStart().toEpochMilli());
+            from = i >= 0 ? i : -(i + 1);
+        } else {
+            int i = Arrays.binarySearch(openTime, after);
+            from = i >= 0 ? i + 1 : -(i + 1);
+        }
+        for (int i = from; i < openTime.length; i++) {
+            feed(openTime[i], high[i], low[i], close[i]);
+        }
+        return openTime.length - from;
+    }
+
+    /** 餵入下一根已收盤 K 線 */
+    public void feed(long openTime, double high, double low, double close) {
+        engine.update(openTime, high, low, close);
+        int i = engine.index();
+        lastClose = close;
+        if (i < kernel.warmupBars() || openTime < periodStart) {
+            return;
+        }
+
+        BacktestKernel.Trade closed = kernel.step(cursor, i, high, low, close, engine.rsi(), engine.adx(),
+                engine.macdBullishCross() || engine.emaGoldenCross(), engine.emaTrendBullish(),
+                engine.macdBearishCross() || engine.emaDeathCross());
+        if (closed != null) {
+            trades++;
+            // 與報告一致：損益捨入到 0.01 後為正才算獲利
+            if (BacktestKernel.roundHalfUp(closed.pnl(), 2) > 0) wins++;
+        }
+
+        double equity = cursor.equity(close);
+        if (tradedBars++ == 0) {
+            peakEquity = equity;
+        } else if (lastEquity > 0) {
+            double r = (equity - lastEquity) / lastEquity;
+            returnCount++;
+            double delta = r - returnMean;
+            returnMean += delta / returnCount;
+            returnM2 += delta * (r - returnMean);
+        }
+        if (equity > peakEquity) peakEquity = equity;
+        if (peakEquity > 0) {
+            double dd = (equity - peakEquity) / peakEquity;
+            if (dd < maxDrawdown) maxDrawdown = dd;
+        }
+        lastEquity = equity;
+    }
+
+    public Instant periodStart() {
+        return Instant.ofEpochMilli(periodStart);
+    }
+
+    /** 全新模擬需要的第一根 K 線時間 */
+    public Instant warmupStart() {
+        return periodStart().minus(warmupLead);
+    }
+
+    /** 已處理的最新一根開盤時間（尚未餵入時為 null） */
+    public Instant lastOpenTime() {
+        long t = engine.lastOpenTime();
+        return t == Long.MIN_VALUE ? null : Instant.ofEpochMilli(t);
+    }
+
+    /** 已參與交易模擬的 K 線數（暖機與時段起點之前的不計） */
+    public int tradedBars() {
+        return tradedBars;
+    }
+
+    /**
+     * 績效快照（欄位精度與 {@link com.aiinpocket.btctrade.model.entity.StrategyPerformance} 相同）。
+     *
+     * @param unrealizedPnlPct    未平倉浮盈百分比（null 表示無持倉）
+     * @param unrealizedDirection 未平倉方向 LONG/SHORT（null 表示無持倉）
+     */
+    public record Metrics(BigDecimal winRate, BigDecimal totalReturn, BigDecimal annualizedReturn,
+                          BigDecimal maxDrawdown, BigDecimal sharpeRatio, int totalTrades,
+                          BigDecimal unrealizedPnlPct, String unrealizedDirection) {}
+
+    /**
+     * 以 {@code end} 作為時段終點（年化報酬的日曆天數）計算目前績效。
+     */
+    public Metrics metrics(Instant end) {
+        double initialCapital = kernel.initialCapital();
+        BacktestKernel.Trade open = cursor.openPosition(engine.index(), lastClose);
+        // 績效模式：未平倉部位的資金計入，浮動損益不計入
+        double finalCapital = cursor.capital() + (open != null ? open.capitalUsed() : 0);
+
+        BigDecimal winRate = trades > 0
+                ? BigDecimal.valueOf(wins).divide(BigDecimal.valueOf(trades), 4, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO;
+        BigDecimal totalReturn = BigDecimal.valueOf(finalCapital).subtract(BigDecimal.valueOf(initialCapital))
+                .divide(BigDecimal.valueOf(initialCapital), 6, RoundingMode.HALF_UP);
+
+        long totalDays = Duration.between(periodStart(), end).toDays();
+        BigDecimal annualizedReturn = BigDecimal.ZERO;
+        if (totalDays > 0 && finalCapital > 0) {
+            annualizedReturn = BigDecimal.valueOf(Math.pow(finalCapital / initialCapital, 365.0 / totalDays) - 1)
+                    .setScale(4, RoundingMode.HALF_UP);
+        }
+
+        BigDecimal sharpe = BigDecimal.ZERO;
+        if (returnCount > 0) {
+            double std = Math.sqrt(returnM2 / returnCount);
+            if (std > 0) {
+                double riskFreePerBar = 0.04 / intervalParams.barsPerYear();
+                sharpe = BigDecimal.valueOf((returnMean - riskFreePerBar) / std * intervalParams.sharpeAnnualizer())
+                        .setScale(4, RoundingMode.HALF_UP);
+            }
+        }
+
+        BigDecimal unrealizedPnlPct = null;
+        String unrealizedDirection = null;
+        if (open != null) {
+            unrealizedPnlPct = BigDecimal.valueOf(open.pnl())
+                    .divide(BigDecimal.valueOf(open.capitalUsed()), 6, RoundingMode.HALF_UP);
+            unrealizedDirection = open.direction().name();
+        }
+
+        return new Metrics(winRate, totalReturn, annualizedReturn,
+                BigDecimal.valueOf(maxDrawdown).setScale(4, RoundingMode.HALF_UP), sharpe, trades,
+                unrealizedPnlPct, unrealizedDirection);
+    }
+}
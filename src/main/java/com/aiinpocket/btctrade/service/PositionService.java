@@ -1,6 +1,7 @@
 package com.aiinpocket.btctrade.service;
 
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.RiskParams;
 import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
 import com.aiinpocket.btctrade.model.entity.TradePosition;
 import com.aiinpocket.btctrade.model.entity.TradeSignal;
@@ -11,10 +12,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -25,6 +30,8 @@ public class PositionService {
     private final TradeSignalRepository signalRepo;
     private final TradingStrategyProperties props;
     private final BattleService battleService;
+    private final OpenPositionRegistry positionRegistry;
+    private final CapitalLedgerService ledgerService;
 
     @Transactional
     public TradePosition openPosition(
@@ -33,18 +40,18 @@ public class PositionService {
             BigDecimal availableCapital,
             IndicatorSnapshot snapshot,
             boolean isBacktest) {
-        return openPosition(null, symbol, direction, price, time, availableCapital, snapshot, isBacktest, props.risk().stopLossPct());
+        return openPosition(null, symbol, direction, price, time, availableCapital, snapshot, isBacktest, props.risk());
     }
 
-    /** 為特定用戶開倉（使用用戶自訂停損比例） */
+    /** 為特定用戶開倉（使用用戶自訂停損與移動停利參數） */
     @Transactional
     public TradePosition openPositionForUser(
             Long userId, String symbol, PositionDirection direction,
             BigDecimal price, Instant time,
             BigDecimal availableCapital,
             IndicatorSnapshot snapshot,
-            boolean isBacktest, double stopLossPct) {
-        return openPosition(userId, symbol, direction, price, time, availableCapital, snapshot, isBacktest, stopLossPct);
+            boolean isBacktest, RiskParams risk) {
+        return openPosition(userId, symbol, direction, price, time, availableCapital, snapshot, isBacktest, risk);
     }
 
     private TradePosition openPosition(
@@ -52,8 +59,9 @@ public class PositionService {
             BigDecimal price, Instant time,
             BigDecimal availableCapital,
             IndicatorSnapshot snapshot,
-            boolean isBacktest, double slPct) {
+            boolean isBacktest, RiskParams risk) {
 
+        double slPct = risk.stopLossPct();
         BigDecimal quantity = availableCapital.divide(price, 8, RoundingMode.HALF_DOWN);
 
         BigDecimal stopLoss = direction == PositionDirection.LONG
@@ -70,10 +78,13 @@ public class PositionService {
                 .quantity(quantity)
                 .capitalUsed(availableCapital)
                 .stopLossPrice(stopLoss.setScale(8, RoundingMode.HALF_UP))
+                .trailingActivatePct(risk.trailingActivatePct())
+                .trailingOffsetPct(risk.trailingOffsetPct())
                 .backtest(isBacktest)
                 .build();
 
         positionRepo.save(position);
+        positionRegistry.opened(position);
 
         saveSignal(userId, symbol, time, snapshot,
                 direction == PositionDirection.LONG
@@ -96,12 +107,20 @@ public class PositionService {
         return position;
     }
 
+    /**
+     * 平倉並回傳已平倉的持倉。
+     *
+     * <p>傳入的持倉可能是 {@link OpenPositionRegistry} 的共用實例，平倉欄位只寫在分離的複本上：
+     * 提交前其他執行緒不會看到未提交的平倉狀態，回滾時共用實例也保持原樣；
+     * 提交後索引直接移除該持倉。呼叫端應改用回傳值。
+     */
     @Transactional
     public TradePosition closePosition(
-            TradePosition position, BigDecimal exitPrice,
+            TradePosition open, BigDecimal exitPrice,
             Instant exitTime, ExitReason reason,
             IndicatorSnapshot snapshot) {
 
+        TradePosition position = open.toBuilder().build();
         boolean isLong = position.getDirection() == PositionDirection.LONG;
 
         BigDecimal pnl = isLong
@@ -118,7 +137,11 @@ public class PositionService {
         position.setExitReason(reason);
         position.setStatus(mapReasonToStatus(reason));
 
-        positionRepo.save(position);
+        position = positionRepo.save(position);
+        if (!position.isBacktest()) {
+            ledgerService.recordClose(position);
+        }
+        positionRegistry.closed(position);
 
         saveSignal(position.getUserId(), position.getSymbol(), exitTime, snapshot,
                 isLong ? TradeAction.LONG_EXIT : TradeAction.SHORT_EXIT,
@@ -141,6 +164,37 @@ public class PositionService {
         return position;
     }
 
+    /** 移動停損的新停損價 */
+    public record StopMove(TradePosition position, BigDecimal stopLossPrice) {}
+
+    /**
+     * 批次寫入 {@link TickStopEngine} 依 tick 上調的停損價（只往有利方向移動，已平倉者略過），
+     * 提交後才更新記憶體中的持倉。
+     *
+     * @return 實際更新的筆數
+     */
+    @Transactional
+    public int tightenStopLosses(List<StopMove> moves) {
+        List<StopMove> applied = new ArrayList<>();
+        for (StopMove move : moves) {
+            if (positionRepo.tightenStopLoss(move.position().getId(), move.stopLossPrice()) == 1) {
+                applied.add(move);
+            }
+        }
+        Runnable apply = () -> applied.forEach(m -> m.position().setStopLossPrice(m.stopLossPrice()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+        return applied.size();
+    }
+
     private void saveSignal(Long userId, String symbol, Instant time,
                             IndicatorSnapshot snapshot, TradeAction action,
                             boolean isBacktest) {
@@ -165,6 +219,7 @@ public class PositionService {
         return switch (reason) {
             case SIGNAL_REVERSAL -> PositionStatus.CLOSED_BY_SIGNAL;
             case STOP_LOSS -> PositionStatus.CLOSED_BY_STOP_LOSS;
+            case TRAILING_STOP -> PositionStatus.CLOSED_BY_TRAILING_STOP;
             case RSI_EXTREME -> PositionStatus.CLOSED_BY_RSI_EXTREME;
             case MAX_HOLDING_PERIOD -> PositionStatus.CLOSED_BY_MAX_HOLDING;
         };
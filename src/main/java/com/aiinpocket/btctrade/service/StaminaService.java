@@ -65,7 +65,7 @@ public class StaminaService {
      *
      * @param user 用戶
      * @param cost 消耗量（= 回測年數）
-     * @throws IllegalStateException 體力不足
+     * @throws InsufficientStaminaException 體力不足
      */
     @Transactional
     public void consumeStamina(AppUser user, int cost) {
@@ -73,7 +73,7 @@ public class StaminaService {
         user = userRepo.findById(user.getId()).orElseThrow();
         applyRegen(user);
         if (user.getStamina() < cost) {
-            throw new IllegalStateException(
+            throw new InsufficientStaminaException(
                     String.format("體力不足！需要 %d 點，目前 %d 點", cost, user.getStamina()));
         }
         user.setStamina(user.getStamina() - cost);
@@ -81,6 +81,21 @@ public class StaminaService {
         log.info("[體力] 用戶 {} 消耗 {} 點體力，剩餘 {}/{}", user.getId(), cost, user.getStamina(), user.getMaxStamina());
     }
 
+    /**
+     * 退還體力（回測或參數掃描執行失敗時呼叫），不超過上限。
+     *
+     * @param userId 用戶 ID
+     * @param amount 提交時扣除的體力
+     */
+    @Transactional
+    public void refundStamina(Long userId, int amount) {
+        AppUser user = userRepo.findById(userId).orElseThrow();
+        applyRegen(user);
+        user.setStamina(Math.min(user.getMaxStamina(), user.getStamina() + amount));
+        userRepo.save(user);
+        log.info("[體力] 用戶 {} 退還 {} 點體力，目前 {}/{}", userId, amount, user.getStamina(), user.getMaxStamina());
+    }
+
     /**
      * 使用金幣恢復體力（神父祈禱）。
      * 恢復指定數量的體力，不超過上限。
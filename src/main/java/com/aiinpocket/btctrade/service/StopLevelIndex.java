@@ -0,0 +1,278 @@
+package com.aiinpocket.btctrade.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 單一幣對的停損價位索引（實盤逐 tick 檢查停損與移動停利）。
+ *
+ * <p>每筆持倉佔一個 slot，狀態存在原始型別陣列中；另以四個存放 slot 的索引堆排序：
+ * <ul>
+ *   <li>多頭停損（最大堆）：tick 低點 ≤ 堆頂即觸發</li>
+ *   <li>空頭停損（最小堆）：tick 高點 ≥ 堆頂即觸發</li>
+ *   <li>多頭移動停利（最小堆）：鍵為下一個會改變狀態的價格（未啟動為啟動價，啟動後為峰值）</li>
+ *   <li>空頭移動停利（最大堆）：鍵為啟動價或谷值</li>
+ * </ul>
+ * 每個 tick 只比對堆頂：沒有觸發時 O(1)，每筆觸發或移動停損上調 O(log n)，與其他持倉數量無關；
+ * 上調時在堆中（{@link IndexedMinHeap}）就地調整位置，不重建。
+ *
+ * <p>規則與 {@link BacktestKernel} 的日內停損相同：先以高（低）點更新峰值與移動停損，
+ * 再以低（高）點檢查停損；停損價取到 1e-8，出場價即停損價。
+ * 非執行緒安全，由呼叫端同步。
+ */
+public final class StopLevelIndex {
+
+    /** 觸發的停損 */
+    @FunctionalInterface
+    public interface HitSink {
+        void hit(long positionId, boolean isLong, double stopPrice);
+    }
+
+    /** 已上調、尚未寫回的停損價 */
+    @FunctionalInterface
+    public interface MoveSink {
+        void moved(long positionId, double stopPrice);
+    }
+
+    /** 最大堆以負值存入最小堆 */
+    private final IndexedMinHeap longStops = new IndexedMinHeap();
+    private final IndexedMinHeap shortStops = new IndexedMinHeap();
+    private final IndexedMinHeap longTrails = new IndexedMinHeap();
+    private final IndexedMinHeap shortTrails = new IndexedMinHeap();
+
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private long[] ids;
+    private boolean[] isLong;
+    private double[] entry;
+    private double[] stop;
+    /** 開倉以來的最有利價格（多頭為最高、空頭為最低） */
+    private double[] peak;
+    /** 移動停利啟動門檻（NaN = 不啟用） */
+    private double[] activatePct;
+    private double[] offsetPct;
+    private boolean[] moved;
+    private int[] movedSlots;
+    private int movedCount;
+    private int[] freeSlots;
+    private int freeCount;
+    private int slotCount;
+    private int size;
+
+    public StopLevelIndex() {
+        this(16);
+    }
+
+    public StopLevelIndex(int expectedSize) {
+        allocate(Math.max(16, expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long positionId) {
+        return slotById.containsKey(positionId);
+    }
+
+    /** 目前的停損價（不存在時為 NaN） */
+    public double stop(long positionId) {
+        Integer slot = slotById.get(positionId);
+        return slot == null ? Double.NaN : stop[slot];
+    }
+
+    /** 開倉以來的最有利價格（不存在時為 NaN） */
+    public double peak(long positionId) {
+        Integer slot = slotById.get(positionId);
+        return slot == null ? Double.NaN : peak[slot];
+    }
+
+    /** 停損價是否已上調但尚未以 {@link #drainMoved} 取走 */
+    public boolean moved(long positionId) {
+        Integer slot = slotById.get(positionId);
+        return slot != null && moved[slot];
+    }
+
+    /**
+     * 加入持倉（同 ID 已存在時取代）。
+     *
+     * @param peak        開倉以來的最有利價格（新持倉為進場價）
+     * @param activatePct 移動停利啟動門檻；NaN 表示只有固定停損
+     * @param moved       停損價已上調但尚未寫回（重建索引時沿用舊狀態）
+     */
+    public void add(long positionId, boolean isLong, double entry, double stop, double peak,
+                    double activatePct, double offsetPct, boolean moved) {
+        remove(positionId);
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot();
+        slotById.put(positionId, slot);
+        this.ids[slot] = positionId;
+        this.isLong[slot] = isLong;
+        this.entry[slot] = entry;
+        this.stop[slot] = stop;
+        this.peak[slot] = peak;
+        this.activatePct[slot] = activatePct;
+        this.offsetPct[slot] = offsetPct;
+        this.moved[slot] = false;
+        boolean trailing = !Double.isNaN(activatePct);
+        if (isLong) {
+            longStops.add(slot, -stop);
+            if (trailing) longTrails.add(slot, longTrailKey(slot));
+        } else {
+            shortStops.add(slot, stop);
+            if (trailing) shortTrails.add(slot, -shortTrailKey(slot));
+        }
+        if (moved) markMoved(slot);
+        size++;
+    }
+
+    public boolean remove(long positionId) {
+        Integer slot = slotById.get(positionId);
+        if (slot == null) return false;
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * 以一個 tick 期間的價格範圍探測：先更新移動停利，再取出所有觸發的停損（觸發者自索引移除）。
+     *
+     * @return 觸發筆數
+     */
+    public int probe(double high, double low, HitSink sink) {
+        while (!longTrails.isEmpty() && longTrails.topKey() < high) {
+            ratchetLong(longTrails.top(), high);
+        }
+        while (!shortTrails.isEmpty() && -shortTrails.topKey() > low) {
+            ratchetShort(shortTrails.top(), low);
+        }
+
+        int hits = 0;
+        while (!longStops.isEmpty() && -longStops.topKey() >= low) {
+            int slot = longStops.top();
+            sink.hit(ids[slot], true, stop[slot]);
+            removeSlot(slot);
+            hits++;
+        }
+        while (!shortStops.isEmpty() && shortStops.topKey() <= high) {
+            int slot = shortStops.top();
+            sink.hit(ids[slot], false, stop[slot]);
+            removeSlot(slot);
+            hits++;
+        }
+        return hits;
+    }
+
+    /** 取走上次以來上調過停損的持倉 */
+    public void drainMoved(MoveSink sink) {
+        for (int i = 0; i < movedCount; i++) {
+            int slot = movedSlots[i];
+            if (moved[slot]) {
+                moved[slot] = false;
+                sink.moved(ids[slot], stop[slot]);
+            }
+        }
+        movedCount = 0;
+    }
+
+    // ── 移動停利 ──
+
+    private void ratchetLong(int slot, double high) {
+        peak[slot] = high;
+        double e = entry[slot];
+        double peakPct = (high - e) / e;
+        if (peakPct >= activatePct[slot]) {
+            // 新停損 = 進場價 × (1 + (峰值浮盈 - offset))，至少保本；只允許上調
+            double newStop = BacktestKernel.roundHalfUp(e * (1 + Math.max(0, peakPct - offsetPct[slot])), 8);
+            if (newStop > stop[slot]) {
+                stop[slot] = newStop;
+                longStops.update(slot, -newStop);
+                markMoved(slot);
+            }
+        }
+        longTrails.update(slot, longTrailKey(slot));
+    }
+
+    private void ratchetShort(int slot, double low) {
+        peak[slot] = low;
+        double e = entry[slot];
+        double peakPct = (e - low) / e;
+        if (peakPct >= activatePct[slot]) {
+            double newStop = BacktestKernel.roundHalfUp(e * (1 - Math.max(0, peakPct - offsetPct[slot])), 8);
+            if (newStop < stop[slot]) {
+                stop[slot] = newStop;
+                shortStops.update(slot, newStop);
+                markMoved(slot);
+            }
+        }
+        shortTrails.update(slot, -shortTrailKey(slot));
+    }
+
+    /** 高點超過此價才需處理：未達啟動價前為啟動價（含等於），之後為峰值 */
+    private double longTrailKey(int slot) {
+        return Math.max(peak[slot], Math.nextDown(entry[slot] * (1 + activatePct[slot])));
+    }
+
+    private double shortTrailKey(int slot) {
+        return Math.min(peak[slot], Math.nextUp(entry[slot] * (1 - activatePct[slot])));
+    }
+
+    // ── slot 管理 ──
+
+    private void markMoved(int slot) {
+        if (moved[slot]) return;
+        moved[slot] = true;
+        if (movedCount == movedSlots.length) {
+            movedSlots = Arrays.copyOf(movedSlots, movedCount * 2);
+        }
+        movedSlots[movedCount++] = slot;
+    }
+
+    private void removeSlot(int slot) {
+        longStops.remove(slot);
+        shortStops.remove(slot);
+        longTrails.remove(slot);
+        shortTrails.remove(slot);
+        slotById.remove(ids[slot]);
+        moved[slot] = false;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    private int nextSlot() {
+        if (slotCount == ids.length) {
+            allocate(ids.length * 2);
+        }
+        return slotCount++;
+    }
+
+    private void allocate(int capacity) {
+        int old = ids == null ? 0 : ids.length;
+        if (old == 0) {
+            ids = new long[capacity];
+            isLong = new boolean[capacity];
+            entry = new double[capacity];
+            stop = new double[capacity];
+            peak = new double[capacity];
+            activatePct = new double[capacity];
+            offsetPct = new double[capacity];
+            moved = new boolean[capacity];
+            movedSlots = new int[16];
+            freeSlots = new int[16];
+        } else {
+            ids = Arrays.copyOf(ids, capacity);
+            isLong = Arrays.copyOf(isLong, capacity);
+            entry = Arrays.copyOf(entry, capacity);
+            stop = Arrays.copyOf(stop, capacity);
+            peak = Arrays.copyOf(peak, capacity);
+            activatePct = Arrays.copyOf(activatePct, capacity);
+            offsetPct = Arrays.copyOf(offsetPct, capacity);
+            moved = Arrays.copyOf(moved, capacity);
+        }
+        longStops.ensureSlots(capacity);
+        shortStops.ensureSlots(capacity);
+        longTrails.ensureSlots(capacity);
+        shortTrails.ensureSlots(capacity);
+    }
+}
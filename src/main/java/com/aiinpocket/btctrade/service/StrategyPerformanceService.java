@@ -1,35 +1,61 @@
 package com.aiinpocket.btctrade.service;
 
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.PerformanceComputeProperties;
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
-import com.aiinpocket.btctrade.model.dto.BacktestResultWithUnrealized;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
 import com.aiinpocket.btctrade.model.dto.StrategyPerformanceSummary;
 import com.aiinpocket.btctrade.model.dto.StrategyPerformanceSummary.PeriodMetric;
+import com.aiinpocket.btctrade.model.entity.PerformanceCheckpoint;
 import com.aiinpocket.btctrade.model.entity.StrategyPerformance;
 import com.aiinpocket.btctrade.model.entity.StrategyTemplate;
 import com.aiinpocket.btctrade.model.enums.PerformancePeriod;
+import com.aiinpocket.btctrade.repository.PerformanceCheckpointRepository;
 import com.aiinpocket.btctrade.repository.StrategyPerformanceRepository;
 import com.aiinpocket.btctrade.repository.StrategyTemplateRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityManager;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
  * 策略績效計算服務。
  * 負責為每個策略模板跑 7 個時段的回測，將結果 upsert 到 DB，
  * 並提供前端查詢用的績效摘要 DTO。
+ *
+ * <p>績效與檢查點以模板的參數指紋（{@link StrategyTemplate#fingerprint()}）為鍵：
+ * 多位用戶複製出的相同參數模板只計算、只儲存一次，摘要查詢時再依指紋對應回各模板。
+ *
+ * <p>每個（參數指紋, 時段）保存一份 {@link PerformanceSimulator} 檢查點（指標狀態、持倉、資金、回撤/夏普累加器），
+ * 排程每次只需從上次處理到的 K 線接續，餵入期間新增的 K 線：
+ * <ul>
+ *   <li>模板參數變更（參數雜湊不同）→ 該模板所有時段全量重建</li>
+ *   <li>滾動時段（近 N 天）起點固定在錨點，漂移超過容許值才重新定錨重建（見 {@link PerformancePeriod#needsRebase}）</li>
+ *   <li>一次計算內的 K 線共用，只載入所有時段中最早需要的範圍</li>
+ * </ul>
+ * 批次計算（排程 / 用戶全部重算）時模板在專用執行緒池上並行，共用同一份唯讀 K 線。
+ * 同一參數指紋同時只會有一個計算（見 {@link #fingerprintLocks}），單一模板的重算會等待批次中同指紋的計算完成，
+ * 不會以較舊的狀態覆寫批次剛寫入的檢查點與績效。
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class StrategyPerformanceService {
 
@@ -38,25 +64,94 @@ public class StrategyPerformanceService {
     private final BacktestService backtestService;
     private final StrategyTemplateRepository templateRepo;
     private final StrategyPerformanceRepository perfRepo;
+    private final PerformanceCheckpointRepository checkpointRepo;
     private final EntityManager entityManager;
+    private final IntervalParams intervalParams;
+    /** 模板並行計算專用執行緒池（與即時交易、用戶回測隔離） */
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final Timer templateTimer;
 
     /** 每位用戶的計算進度追蹤（記憶體內，不需持久化） */
     private final ConcurrentHashMap<Long, ComputeProgress> progressMap = new ConcurrentHashMap<>();
 
-    /** 全域計算鎖：防止 Quartz Job 和用戶 API 同時執行大量回測導致 OOM */
+    /** 最近一次排程計算的進度 */
+    private volatile ComputeProgress scheduledProgress;
+
+    /** 全域計算鎖：同一時間只有一輪批次計算（一份共用 K 線） */
     private final AtomicBoolean globalComputeLock = new AtomicBoolean(false);
 
+    /**
+     * 參數指紋鎖：檢查點與績效以指紋為鍵，同一指紋的讀取檢查點 → 餵入 → 寫回必須互斥，
+     * 否則單一模板重算與批次計算會以各自讀到的舊檢查點互相覆寫。
+     */
+    private final ConcurrentHashMap<String, ReentrantLock> fingerprintLocks = new ConcurrentHashMap<>();
+
+    public StrategyPerformanceService(BacktestService backtestService,
+                                      StrategyTemplateRepository templateRepo,
+                                      StrategyPerformanceRepository perfRepo,
+                                      PerformanceCheckpointRepository checkpointRepo,
+                                      EntityManager entityManager,
+                                      IntervalParams intervalParams,
+                                      PerformanceComputeProperties computeProps,
+                                      MeterRegistry meterRegistry) {
+        this.backtestService = backtestService;
+        this.templateRepo = templateRepo;
+        this.perfRepo = perfRepo;
+        this.checkpointRepo = checkpointRepo;
+        this.entityManager = entityManager;
+        this.intervalParams = intervalParams;
+        this.parallelism = computeProps.parallelism() > 0
+                ? computeProps.parallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.pool = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("perf-compute-", 0).daemon(true).factory());
+        this.templateTimer = Timer.builder("performance.compute.template.duration")
+                .description("單一模板 7 個時段的績效計算耗時")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 單一參數指紋的計算耗時（同指紋的模板共用一次計算）。
+     *
+     * @param templateId     代表模板（同指紋中的第一個）
+     * @param templates      共用此結果的模板數
+     * @param resumedPeriods 從檢查點接續的時段數（其餘為全量重建）
+     * @param bars           各時段實際餵入的 K 線總數
+     */
+    public record TemplateTiming(Long templateId, String name, int templates, int succeededPeriods,
+                                 int resumedPeriods, long bars, long elapsedMs) {}
+
     public static class ComputeProgress {
         private final AtomicInteger completed = new AtomicInteger(0);
         private final AtomicInteger failed = new AtomicInteger(0);
         private final int total;
+        private final int parallelism;
+        private final long startedAt = System.currentTimeMillis();
+        private final Queue<TemplateTiming> timings = new ConcurrentLinkedQueue<>();
+        private volatile long finishedAt;
         private volatile boolean running = true;
 
-        public ComputeProgress(int total) { this.total = total; }
+        public ComputeProgress(int total) { this(total, 1); }
+        public ComputeProgress(int total, int parallelism) { this.total = total; this.parallelism = parallelism; }
         public int getCompleted() { return completed.get(); }
         public int getFailed() { return failed.get(); }
         public int getTotal() { return total; }
+        public int getParallelism() { return parallelism; }
         public boolean isRunning() { return running; }
+        public long getElapsedMs() { return (running ? System.currentTimeMillis() : finishedAt) - startedAt; }
+        /** 已完成參數指紋的耗時（依完成順序） */
+        public List<TemplateTiming> getTemplateTimings() { return List.copyOf(timings); }
+
+        private void finish() {
+            finishedAt = System.currentTimeMillis();
+            running = false;
+        }
     }
 
     /** 查詢指定用戶的計算進度 */
@@ -64,8 +159,14 @@ public class StrategyPerformanceService {
         return progressMap.get(userId);
     }
 
+    /** 最近一次排程計算的進度（尚未執行過時為 null） */
+    public ComputeProgress getScheduledProgress() {
+        return scheduledProgress;
+    }
+
     /**
      * 計算單個模板在所有時段的績效，upsert 到 DB。
+     * 若批次計算正在處理相同參數指紋，會等待其完成後再從它留下的檢查點接續。
      */
     public void computePerformance(Long templateId) {
         StrategyTemplate template = templateRepo.findById(templateId).orElse(null);
@@ -73,40 +174,242 @@ public class StrategyPerformanceService {
             log.warn("[績效計算] 模板不存在: id={}", templateId);
             return;
         }
+        String fingerprint = template.fingerprint();
+        withFingerprintLock(fingerprint, () -> {
+            // 取得鎖之後才決定計算時間點，避免以比批次更早的時間覆寫績效
+            Instant now = Instant.now();
+            computeFingerprint(fingerprint, List.of(template), new Series(now), now, null);
+        });
+    }
 
-        Instant now = Instant.now();
-        var customProps = template.toProperties();
-        int successCount = 0;
+    /** 持有參數指紋鎖執行 */
+    private void withFingerprintLock(String fingerprint, Runnable task) {
+        ReentrantLock lock = fingerprintLocks.computeIfAbsent(fingerprint, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            task.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 一次計算（單一模板或一輪批次）內共用的 K 線。
+     * 只在需要比已載入範圍更早的資料時才重新載入；全部時段都從檢查點接續時，只載入上次之後的新 K 線。
+     * 載入後的 {@link BacktestBars} 唯讀，並行的模板直接共用同一份陣列。
+     */
+    private final class Series {
+        private final Instant now;
+        private BacktestBars bars;
+        private Instant loadedFrom;
+
+        private Series(Instant now) {
+            this.now = now;
+        }
+
+        synchronized BacktestBars from(Instant from) {
+            if (bars == null || from.isBefore(loadedFrom)) {
+                bars = backtestService.loadBars(BENCHMARK_SYMBOL, from, now);
+                loadedFrom = from;
+                log.info("[績效計算] 載入 {} 根 {} K 線（{} → {}）", bars.size(), BENCHMARK_SYMBOL, from, now);
+            }
+            return bars;
+        }
+    }
+
+    /**
+     * 單一時段的模擬。
+     *
+     * @param checkpoint 既有的檢查點 Entity（首次計算時為 null）
+     * @param resumed    是否從檢查點接續（否則為全量重建）
+     */
+    private record Book(PerformancePeriod period, PerformanceSimulator simulator,
+                        PerformanceCheckpoint checkpoint, boolean resumed) {
+
+        /** 本次需要的第一根 K 線時間 */
+        Instant feedFrom() {
+            return resumed ? simulator.lastOpenTime().plusMillis(1) : simulator.warmupStart();
+        }
+    }
 
+    /**
+     * 計算一組相同參數指紋模板的 7 個時段（以第一個模板的參數計算）：參數雜湊相符且不需重新定錨的時段從檢查點接續，只餵入新 K 線；
+     * 其餘（首次計算、參數變更、滾動視窗漂移過多）以目前的起點全量重建。
+     *
+     * @param progress 進度追蹤器（可為 null）
+     */
+    private void computeFingerprint(String fingerprint, List<StrategyTemplate> sharing, Series series,
+                                    Instant now, ComputeProgress progress) {
+        long startedAt = System.nanoTime();
+        StrategyTemplate template = sharing.getFirst();
+        Long templateId = template.getId();
+        TradingStrategyProperties customProps = template.toProperties();
+        String paramsHash = PerformanceSimulator.paramsHash(customProps, intervalParams);
+        Map<String, PerformanceCheckpoint> checkpoints = checkpointRepo
+                .findByParamsFingerprintAndSymbol(fingerprint, BENCHMARK_SYMBOL).stream()
+                .collect(Collectors.toMap(PerformanceCheckpoint::getPeriodKey, c -> c));
+
+        List<Book> books = new ArrayList<>();
         for (PerformancePeriod period : PerformancePeriod.values()) {
+            PerformanceCheckpoint checkpoint = checkpoints.get(period.name());
+            PerformanceSimulator simulator = null;
+            if (checkpoint != null && resumable(period, paramsHash, checkpoint.getParamsHash(),
+                    checkpoint.getPeriodStart(), now)) {
+                try {
+                    simulator = PerformanceSimulator.restore(customProps, intervalParams, checkpoint.getState());
+                } catch (IllegalArgumentException e) {
+                    log.warn("[績效計算] 模板 {} 時段 {} 檢查點無法還原，改為重建: {}",
+                            templateId, period.name(), e.getMessage());
+                }
+            }
+            boolean resumed = simulator != null;
+            if (!resumed) {
+                simulator = PerformanceSimulator.create(customProps, intervalParams, period.computeStartDate(now));
+            }
+            books.add(new Book(period, simulator, checkpoint, resumed));
+        }
+
+        Instant from = books.stream().map(Book::feedFrom).min(Instant::compareTo).orElseThrow();
+        BacktestBars bars = series.from(from);
+        int minBars = customProps.strategy().emaLong() + 10;
+        int successCount = 0;
+        int resumedCount = 0;
+        long fedBars = 0;
+
+        for (Book book : books) {
             try {
-                Instant start = period.computeStartDate(now);
-                upsertPerformance(templateId, period, start, now, customProps);
+                int fed = book.simulator().feed(bars);
+                fedBars += fed;
+                if (book.resumed()) resumedCount++;
+                if (fed > 0 || !book.resumed()) {
+                    saveCheckpoint(fingerprint, book, paramsHash, now);
+                }
+                if (book.simulator().tradedBars() < minBars) {
+                    throw new IllegalStateException("需要至少 " + minBars + " 根 K 線，目前只有 "
+                            + book.simulator().tradedBars());
+                }
+                upsertPerformance(fingerprint, book.period(), book.simulator().periodStart(), now,
+                        book.simulator().metrics(now));
                 successCount++;
+                if (progress != null) progress.completed.incrementAndGet();
             } catch (Exception e) {
-                log.warn("[績效計算] 模板 {} 時段 {} 計算失敗: {}", templateId, period.name(), e.getMessage());
+                if (progress != null) progress.failed.incrementAndGet();
+                log.warn("[績效計算] 模板 {} 時段 {} 計算失敗: {}", templateId, book.period().name(), e.getMessage());
             }
         }
 
-        log.info("[績效計算] 模板 {} 完成，成功 {}/{} 個時段",
-                templateId, successCount, PerformancePeriod.values().length);
+        long elapsedNanos = System.nanoTime() - startedAt;
+        templateTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (progress != null) {
+            progress.timings.add(new TemplateTiming(templateId, template.getName(), sharing.size(),
+                    successCount, resumedCount, fedBars, elapsedNanos / 1_000_000));
+        }
+        log.info("[績效計算] 模板 {}（共用指紋 {} 個模板）完成，成功 {}/{} 個時段（接續 {}、重建 {}，共處理 {} 根 K 線，{} ms）",
+                templateId, sharing.size(), successCount, books.size(), resumedCount, books.size() - resumedCount, fedBars,
+                elapsedNanos / 1_000_000);
+    }
+
+    /** 檢查點可接續：參數雜湊相同且滾動時段不需重新定錨 */
+    private static boolean resumable(PerformancePeriod period, String paramsHash, String checkpointHash,
+                                     Instant checkpointStart, Instant now) {
+        return paramsHash.equals(checkpointHash) && !period.needsRebase(checkpointStart, now);
     }
 
     /**
-     * 單一時段的回測 + upsert（共用邏輯）。
+     * 由檢查點的定位欄位（不讀取序列化狀態）推算一批指紋最早需要的 K 線時間，
+     * 讓整輪批次只載入一次。
      */
-    private void upsertPerformance(Long templateId, PerformancePeriod period,
-                                    Instant start, Instant end,
-                                    com.aiinpocket.btctrade.config.TradingStrategyProperties customProps) {
-        BacktestResultWithUnrealized result = backtestService.runBacktestForPerformance(
-                BENCHMARK_SYMBOL, start, end, customProps);
+    private Instant earliestRequired(Map<String, List<StrategyTemplate>> byFingerprint, Instant now) {
+        Map<String, Map<String, PerformanceCheckpointRepository.Head>> heads = checkpointRepo
+                .findHeadsBySymbol(BENCHMARK_SYMBOL).stream()
+                .collect(Collectors.groupingBy(PerformanceCheckpointRepository.Head::getFingerprint,
+                        Collectors.toMap(PerformanceCheckpointRepository.Head::getPeriodKey, h -> h)));
+        Instant earliest = now;
+        for (var entry : byFingerprint.entrySet()) {
+            TradingStrategyProperties props = entry.getValue().getFirst().toProperties();
+            String paramsHash = PerformanceSimulator.paramsHash(props, intervalParams);
+            Duration warmupLead = PerformanceSimulator.warmupLead(props, intervalParams);
+            Map<String, PerformanceCheckpointRepository.Head> byPeriod = heads.getOrDefault(entry.getKey(), Map.of());
+            for (PerformancePeriod period : PerformancePeriod.values()) {
+                PerformanceCheckpointRepository.Head head = byPeriod.get(period.name());
+                Instant required = head != null
+                        && resumable(period, paramsHash, head.getParamsHash(), head.getPeriodStart(), now)
+                        ? head.getLastOpenTime().plusMillis(1)
+                        : period.computeStartDate(now).minus(warmupLead);
+                if (required.isBefore(earliest)) earliest = required;
+            }
+        }
+        return earliest;
+    }
+
+    /** 依參數指紋分組（保留模板順序），相同參數的模板只計算一次 */
+    private static Map<String, List<StrategyTemplate>> groupByFingerprint(List<StrategyTemplate> templates) {
+        return templates.stream().collect(Collectors.groupingBy(
+                StrategyTemplate::fingerprint, LinkedHashMap::new, Collectors.toList()));
+    }
+
+    /**
+     * 在專用執行緒池上並行計算多組參數指紋：先推算整批最早需要的 K 線並載入一次，
+     * 各指紋共用這份唯讀陣列，執行中同時存在的模擬狀態只與執行緒數成正比。
+     */
+    private void computeTemplates(Map<String, List<StrategyTemplate>> byFingerprint, Instant now,
+                                  ComputeProgress progress) {
+        if (byFingerprint.isEmpty()) {
+            return;
+        }
+        Series series = new Series(now);
+        series.from(earliestRequired(byFingerprint, now));
+        List<Callable<Void>> tasks = byFingerprint.entrySet().stream()
+                .<Callable<Void>>map(entry -> () -> {
+                    StrategyTemplate template = entry.getValue().getFirst();
+                    try {
+                        withFingerprintLock(entry.getKey(),
+                                () -> computeFingerprint(entry.getKey(), entry.getValue(), series, now, progress));
+                    } catch (Exception e) {
+                        log.error("[績效計算] 模板 {} ({}) 計算失敗: {}",
+                                template.getId(), template.getName(), e.getMessage());
+                    }
+                    return null;
+                })
+                .toList();
+        try {
+            pool.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("[績效計算] 並行計算被中斷");
+        }
+    }
 
-        var report = result.report();
+    private void saveCheckpoint(String fingerprint, Book book, String paramsHash, Instant now) {
+        PerformanceSimulator simulator = book.simulator();
+        if (simulator.lastOpenTime() == null) {
+            return;
+        }
+        PerformanceCheckpoint checkpoint = book.checkpoint() != null
+                ? book.checkpoint()
+                : PerformanceCheckpoint.builder()
+                        .paramsFingerprint(fingerprint)
+                        .symbol(BENCHMARK_SYMBOL)
+                        .periodKey(book.period().name())
+                        .build();
+        checkpoint.setParamsHash(paramsHash);
+        checkpoint.setPeriodStart(simulator.periodStart());
+        checkpoint.setLastOpenTime(simulator.lastOpenTime());
+        checkpoint.setState(simulator.checkpoint());
+        checkpoint.setUpdatedAt(now);
+        checkpointRepo.save(checkpoint);
+    }
 
+    /**
+     * 單一時段的結果 upsert（共用邏輯）。
+     */
+    private void upsertPerformance(String fingerprint, PerformancePeriod period,
+                                    Instant start, Instant end,
+                                    PerformanceSimulator.Metrics metrics) {
         StrategyPerformance perf = perfRepo
-                .findByStrategyTemplateIdAndPeriodKeyAndSymbol(templateId, period.name(), BENCHMARK_SYMBOL)
+                .findByParamsFingerprintAndPeriodKeyAndSymbol(fingerprint, period.name(), BENCHMARK_SYMBOL)
                 .orElseGet(() -> StrategyPerformance.builder()
-                        .strategyTemplate(templateRepo.getReferenceById(templateId))
+                        .paramsFingerprint(fingerprint)
                         .symbol(BENCHMARK_SYMBOL)
                         .periodKey(period.name())
                         .periodLabel(period.getLabel())
@@ -114,14 +417,14 @@ public class StrategyPerformanceService {
 
         perf.setPeriodStart(start);
         perf.setPeriodEnd(end);
-        perf.setWinRate(report.winRate());
-        perf.setTotalReturn(report.totalReturn());
-        perf.setAnnualizedReturn(report.annualizedReturn());
-        perf.setMaxDrawdown(report.maxDrawdown());
-        perf.setSharpeRatio(report.sharpeRatio());
-        perf.setTotalTrades(report.totalTrades());
-        perf.setUnrealizedPnlPct(result.unrealizedPnlPct());
-        perf.setUnrealizedDirection(result.unrealizedDirection());
+        perf.setWinRate(metrics.winRate());
+        perf.setTotalReturn(metrics.totalReturn());
+        perf.setAnnualizedReturn(metrics.annualizedReturn());
+        perf.setMaxDrawdown(metrics.maxDrawdown());
+        perf.setSharpeRatio(metrics.sharpeRatio());
+        perf.setTotalTrades(metrics.totalTrades());
+        perf.setUnrealizedPnlPct(metrics.unrealizedPnlPct());
+        perf.setUnrealizedDirection(metrics.unrealizedDirection());
         perf.setComputedAt(Instant.now());
 
         perfRepo.save(perf);
@@ -130,6 +433,7 @@ public class StrategyPerformanceService {
 
     /**
      * 非同步計算單個模板的績效（用於模板建立/修改後觸發）。
+     * 與批次計算以參數指紋鎖互斥（見 {@link #computePerformance}）。
      */
     @Async("backtestExecutor")
     public void computePerformanceAsync(Long templateId) {
@@ -142,78 +446,46 @@ public class StrategyPerformanceService {
     }
 
     /**
-     * 非同步逐一計算多個模板的績效（避免多個大型回測同時執行導致 OOM）。
-     * 單一 async 任務內順序執行，確保同一時間只有一個回測在跑。
-     * 透過 progressMap 追蹤進度，供前端輪詢。
+     * 非同步計算多個模板的績效：模板在績效專用執行緒池上並行，共用同一份 K 線。
+     * 透過 progressMap 追蹤進度與各模板耗時，供前端輪詢。
      */
     @Async("backtestExecutor")
     public void computeMultiplePerformancesAsync(List<Long> templateIds, Long userId) {
         if (!globalComputeLock.compareAndSet(false, true)) {
             log.warn("[績效計算] 全域計算鎖已佔用（可能有 Quartz Job 正在執行），跳過用戶 {} 的計算請求", userId);
             ComputeProgress skipped = new ComputeProgress(0);
-            skipped.running = false;
+            skipped.finish();
             progressMap.put(userId, skipped);
             return;
         }
 
         try {
-            int totalSteps = templateIds.size() * PerformancePeriod.values().length;
-            ComputeProgress progress = new ComputeProgress(totalSteps);
+            int periods = PerformancePeriod.values().length;
+            List<StrategyTemplate> templates = templateRepo.findAllById(templateIds);
+            Map<String, List<StrategyTemplate>> byFingerprint = groupByFingerprint(templates);
+            int missing = templateIds.size() - templates.size();
+            ComputeProgress progress = new ComputeProgress((byFingerprint.size() + missing) * periods, parallelism);
             progressMap.put(userId, progress);
 
-            log.info("[績效計算] 開始逐一計算 {} 個模板的績效（共 {} 個時段）",
-                    templateIds.size(), totalSteps);
-
-            int completedTemplates = 0;
-            for (Long templateId : templateIds) {
-                try {
-                    computePerformanceWithProgress(templateId, progress);
-                    completedTemplates++;
-                } catch (Exception e) {
-                    log.error("[績效計算] 模板 {} 計算失敗: {}", templateId, e.getMessage());
-                }
+            if (missing > 0) {
+                log.warn("[績效計算] {} 個模板不存在，略過", missing);
+                progress.failed.addAndGet(missing * periods);
             }
+            log.info("[績效計算] 開始以 {} 執行緒並行計算 {} 個模板（{} 組不同參數）的績效（共 {} 個時段）",
+                    parallelism, templates.size(), byFingerprint.size(), progress.getTotal());
+
+            computeTemplates(byFingerprint, Instant.now(), progress);
 
-            progress.running = false;
-            log.info("[績效計算] 完成 {}/{} 個模板（成功 {}/失敗 {} 個時段）",
-                    completedTemplates, templateIds.size(),
-                    progress.getCompleted(), progress.getFailed());
+            progress.finish();
+            log.info("[績效計算] 完成 {} 個模板（成功 {}/失敗 {} 個時段），耗時 {} ms",
+                    templates.size(), progress.getCompleted(), progress.getFailed(), progress.getElapsedMs());
         } finally {
             globalComputeLock.set(false);
         }
     }
 
     /**
-     * 計算單個模板的績效並更新進度追蹤器。
-     */
-    private void computePerformanceWithProgress(Long templateId, ComputeProgress progress) {
-        StrategyTemplate template = templateRepo.findById(templateId).orElse(null);
-        if (template == null) {
-            log.warn("[績效計算] 模板不存在: id={}", templateId);
-            for (int i = 0; i < PerformancePeriod.values().length; i++) {
-                progress.failed.incrementAndGet();
-            }
-            return;
-        }
-
-        Instant now = Instant.now();
-        var customProps = template.toProperties();
-
-        for (PerformancePeriod period : PerformancePeriod.values()) {
-            try {
-                Instant start = period.computeStartDate(now);
-                upsertPerformance(templateId, period, start, now, customProps);
-                progress.completed.incrementAndGet();
-            } catch (Exception e) {
-                progress.failed.incrementAndGet();
-                log.warn("[績效計算] 模板 {} 時段 {} 計算失敗: {}",
-                        templateId, period.name(), e.getMessage());
-            }
-        }
-    }
-
-    /**
-     * 逐一計算所有模板的績效（供 Quartz Job 呼叫）。
+     * 並行計算所有模板的績效（供 Quartz Job 呼叫）。
      * 透過全域鎖確保不會與用戶觸發的計算同時執行。
      */
     public void computeAllPerformances() {
@@ -224,19 +496,29 @@ public class StrategyPerformanceService {
 
         try {
             List<StrategyTemplate> allTemplates = templateRepo.findAll();
-            log.info("[績效排程] 開始逐一計算 {} 個模板的績效", allTemplates.size());
-
-            int completed = 0;
-            for (StrategyTemplate template : allTemplates) {
-                try {
-                    computePerformance(template.getId());
-                    completed++;
-                } catch (Exception e) {
-                    log.error("[績效排程] 模板 {} ({}) 計算失敗: {}",
-                            template.getId(), template.getName(), e.getMessage());
+            Map<String, List<StrategyTemplate>> byFingerprint = groupByFingerprint(allTemplates);
+            ComputeProgress progress = new ComputeProgress(
+                    byFingerprint.size() * PerformancePeriod.values().length, parallelism);
+            scheduledProgress = progress;
+            log.info("[績效排程] 開始以 {} 執行緒並行計算 {} 個模板（{} 組不同參數）的績效",
+                    parallelism, allTemplates.size(), byFingerprint.size());
+
+            computeTemplates(byFingerprint, Instant.now(), progress);
+            if (!byFingerprint.isEmpty()) {
+                // 已無任何模板使用的參數指紋（模板刪除或修改後）；重新讀取模板，
+                // 避免刪掉本輪開始後才建立、已由單一模板計算寫入的指紋
+                Set<String> inUse = new HashSet<>(byFingerprint.keySet());
+                templateRepo.findAll().forEach(t -> inUse.add(t.fingerprint()));
+                int orphans = perfRepo.deleteByParamsFingerprintNotIn(inUse)
+                        + checkpointRepo.deleteByParamsFingerprintNotIn(inUse);
+                if (orphans > 0) {
+                    log.info("[績效排程] 清除 {} 筆已無模板使用的績效/檢查點", orphans);
                 }
             }
-            log.info("[績效排程] 完成 {}/{} 個模板的績效計算", completed, allTemplates.size());
+
+            progress.finish();
+            log.info("[績效排程] 完成 {} 個模板（成功 {}/失敗 {} 個時段），耗時 {} ms",
+                    allTemplates.size(), progress.getCompleted(), progress.getFailed(), progress.getElapsedMs());
         } finally {
             globalComputeLock.set(false);
         }
@@ -250,20 +532,21 @@ public class StrategyPerformanceService {
         List<StrategyTemplate> templates = templateRepo.findByUserIdOrSystemDefaultTrue(userId);
         if (templates.isEmpty()) return List.of();
 
-        List<Long> templateIds = templates.stream().map(StrategyTemplate::getId).toList();
+        Set<String> fingerprints = templates.stream().map(StrategyTemplate::fingerprint)
+                .collect(Collectors.toSet());
 
-        // 2. 批次查詢績效
-        List<StrategyPerformance> allPerfs = perfRepo.findByStrategyTemplateIdInAndSymbol(
-                templateIds, BENCHMARK_SYMBOL);
+        // 2. 批次查詢績效（相同參數的模板共用同一組結果）
+        List<StrategyPerformance> allPerfs = perfRepo.findByParamsFingerprintInAndSymbol(
+                fingerprints, BENCHMARK_SYMBOL);
 
-        // 按 templateId 分組
-        Map<Long, List<StrategyPerformance>> perfMap = allPerfs.stream()
-                .collect(Collectors.groupingBy(p -> p.getStrategyTemplate().getId()));
+        // 按參數指紋分組
+        Map<String, List<StrategyPerformance>> perfMap = allPerfs.stream()
+                .collect(Collectors.groupingBy(StrategyPerformance::getParamsFingerprint));
 
         // 3. 組裝 DTO
         List<StrategyPerformanceSummary> summaries = new ArrayList<>();
         for (StrategyTemplate tmpl : templates) {
-            List<StrategyPerformance> perfs = perfMap.getOrDefault(tmpl.getId(), List.of());
+            List<StrategyPerformance> perfs = perfMap.getOrDefault(tmpl.fingerprint(), List.of());
 
             List<PeriodMetric> periods = perfs.stream()
                     .map(p -> new PeriodMetric(
@@ -295,16 +578,17 @@ public class StrategyPerformanceService {
         List<StrategyTemplate> templates = templateRepo.findAllBySystemDefaultTrue();
         if (templates.isEmpty()) return List.of();
 
-        List<Long> templateIds = templates.stream().map(StrategyTemplate::getId).toList();
-        List<StrategyPerformance> allPerfs = perfRepo.findByStrategyTemplateIdInAndSymbol(
-                templateIds, BENCHMARK_SYMBOL);
+        Set<String> fingerprints = templates.stream().map(StrategyTemplate::fingerprint)
+                .collect(Collectors.toSet());
+        List<StrategyPerformance> allPerfs = perfRepo.findByParamsFingerprintInAndSymbol(
+                fingerprints, BENCHMARK_SYMBOL);
 
-        Map<Long, List<StrategyPerformance>> perfMap = allPerfs.stream()
-                .collect(Collectors.groupingBy(p -> p.getStrategyTemplate().getId()));
+        Map<String, List<StrategyPerformance>> perfMap = allPerfs.stream()
+                .collect(Collectors.groupingBy(StrategyPerformance::getParamsFingerprint));
 
         List<StrategyPerformanceSummary> summaries = new ArrayList<>();
         for (StrategyTemplate tmpl : templates) {
-            List<StrategyPerformance> perfs = perfMap.getOrDefault(tmpl.getId(), List.of());
+            List<StrategyPerformance> perfs = perfMap.getOrDefault(tmpl.fingerprint(), List.of());
             List<PeriodMetric> periods = perfs.stream()
                     .map(p -> new PeriodMetric(
                             p.getPeriodKey(), p.getPeriodLabel(),
@@ -41,9 +41,28 @@ public class StrategyService {
     }
 
     private TradeAction evaluateEntry(IndicatorSnapshot snap) {
-        var rsiParams = props.rsi();
         double rsi = snap.rsi().doubleValue();
         double adx = snap.adx().doubleValue();
+        TradeAction action = evaluateEntry(rsi, adx,
+                snap.macdBullishCross() || snap.emaGoldenCross(),
+                snap.emaTrendBullish(),
+                snap.macdBearishCross() || snap.emaDeathCross());
+        if (action != TradeAction.HOLD) {
+            log.debug("{}: RSI={}, ADX={}, MACD_HIST={}", action, rsi, adx, snap.macdHistogram());
+        }
+        return action;
+    }
+
+    /**
+     * 進場判斷（原始型別版本，回測核心逐根呼叫，不配置物件）。
+     *
+     * @param longTrigger     MACD 柱狀圖向上穿越零軸或 EMA 黃金交叉
+     * @param emaTrendBullish EMA 短線在長線之上
+     * @param shortTrigger    MACD 柱狀圖向下穿越零軸或 EMA 死亡交叉
+     */
+    public TradeAction evaluateEntry(double rsi, double adx,
+                                     boolean longTrigger, boolean emaTrendBullish, boolean shortTrigger) {
+        var rsiParams = props.rsi();
 
         // ADX 趨勢強度過濾器
         if (adx < 20) {
@@ -51,22 +70,14 @@ public class StrategyService {
         }
 
         // ======== 做多條件 ========
-        boolean longTrigger = snap.macdBullishCross() || snap.emaGoldenCross();
-        boolean longTrend = snap.emaTrendBullish();
         boolean longRsi = rsi >= rsiParams.longEntryMin() && rsi <= rsiParams.longEntryMax();
-
-        if (longTrigger && longTrend && longRsi) {
-            log.debug("LONG_ENTRY: RSI={}, ADX={}, MACD_HIST={}", rsi, adx, snap.macdHistogram());
+        if (longTrigger && emaTrendBullish && longRsi) {
             return TradeAction.LONG_ENTRY;
         }
 
         // ======== 做空條件 ========
-        boolean shortTrigger = snap.macdBearishCross() || snap.emaDeathCross();
-        boolean shortTrend = !snap.emaTrendBullish();
         boolean shortRsi = rsi >= rsiParams.shortEntryMin() && rsi <= rsiParams.shortEntryMax();
-
-        if (shortTrigger && shortTrend && shortRsi) {
-            log.debug("SHORT_ENTRY: RSI={}, ADX={}, MACD_HIST={}", rsi, adx, snap.macdHistogram());
+        if (shortTrigger && !emaTrendBullish && shortRsi) {
             return TradeAction.SHORT_ENTRY;
         }
 
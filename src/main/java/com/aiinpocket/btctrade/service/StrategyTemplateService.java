@@ -5,7 +5,6 @@ import com.aiinpocket.btctrade.model.entity.AppUser;
 import com.aiinpocket.btctrade.model.entity.StrategyTemplate;
 import com.aiinpocket.btctrade.repository.AppUserRepository;
 import com.aiinpocket.btctrade.repository.BacktestRunRepository;
-import com.aiinpocket.btctrade.repository.StrategyPerformanceRepository;
 import com.aiinpocket.btctrade.repository.StrategyTemplateRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -35,7 +34,6 @@ import java.util.Map;
 public class StrategyTemplateService {
 
     private final StrategyTemplateRepository templateRepo;
-    private final StrategyPerformanceRepository perfRepo;
     private final BacktestRunRepository backtestRunRepo;
     private final AppUserRepository userRepo;
     private final TradingStrategyProperties defaultProps;
@@ -113,14 +111,13 @@ public class StrategyTemplateService {
     @EventListener(ApplicationReadyEvent.class)
     @Transactional
     public void ensureDefaultTemplate() {
-        // 遷移：如果存在舊版單一預設模板，刪除它（連同績效資料和回測紀錄）
+        // 遷移：如果存在舊版單一預設模板，刪除它（連同回測紀錄）
         templateRepo.findAllBySystemDefaultTrue().stream()
                 .filter(t -> "系統預設策略".equals(t.getName()))
                 .forEach(old -> {
                     log.info("[策略模板] 偵測到舊版預設模板 '{}' (id={})，將遷移為四職業版本",
                             old.getName(), old.getId());
                     backtestRunRepo.deleteByStrategyTemplateId(old.getId());
-                    perfRepo.deleteByStrategyTemplateId(old.getId());
                     templateRepo.delete(old);
                 });
 
@@ -145,6 +142,13 @@ public class StrategyTemplateService {
         } else {
             log.debug("[策略模板] 所有職業預設模板已存在，跳過初始化");
         }
+
+        // 補值：參數指紋欄位加入前建立的模板（交易提交時寫回）
+        List<StrategyTemplate> unfingerprinted = templateRepo.findByParamsFingerprintIsNull();
+        unfingerprinted.forEach(StrategyTemplate::refreshFingerprint);
+        if (!unfingerprinted.isEmpty()) {
+            log.info("[策略模板] 已補上 {} 個模板的參數指紋", unfingerprinted.size());
+        }
     }
 
     /**
@@ -301,9 +305,8 @@ public class StrategyTemplateService {
             throw new IllegalArgumentException("無權刪除此策略模板");
         }
 
-        // 先清理關聯資料再刪除模板
+        // 先清理關聯資料再刪除模板（績效以參數指紋共用，由排程清理無人使用的參數組）
         backtestRunRepo.deleteByStrategyTemplateId(templateId);
-        perfRepo.deleteByStrategyTemplateId(templateId);
         templateRepo.delete(template);
         log.info("[策略模板] 用戶 {} 刪除模板 {} (id={})", userId, template.getName(), templateId);
     }
@@ -0,0 +1,107 @@
+package com.aiinpocket.btctrade.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 單一 combined-stream 連線的訂閱狀態與控制訊息限速。
+ *
+ * <p>{@code streams} 為期望訂閱的集合，{@code live} 為 socket 上已送出的集合，兩者差異即待送出的
+ * {@code UNSUBSCRIBE} / {@code SUBSCRIBE}（每則最多 {@code maxParamsPerMessage} 個串流）。
+ * 控制訊息以權杖桶限速：桶內 {@code maxMessagesPerSecond} 個權杖，每送出一則（每個分段各算一則）
+ * 用掉一個，該權杖在一秒後才歸還，因此任意一秒內送出的控制訊息都不超過上限。
+ * 權杖用完時剩餘的差異保留在集合中，下一次 {@link #drain} 再送。
+ *
+ * <p>非執行緒安全，由呼叫端（連線物件）同步。
+ */
+final class StreamSubscriptions {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** 一則待送出的控制訊息 */
+    record ControlMessage(String method, List<String> params) {}
+
+    private final int maxParamsPerMessage;
+    private final Set<String> streams = new LinkedHashSet<>();
+    private final Set<String> live = new HashSet<>();
+    /** 各權杖最近一次被使用的時間（環狀，{@code next} 指向最早用掉的一個） */
+    private final long[] spentAt;
+    private int next = 0;
+    /** 曾被使用過的權杖數（未滿前不需比對時間） */
+    private int used = 0;
+
+    StreamSubscriptions(int maxMessagesPerSecond, int maxParamsPerMessage) {
+        this.maxParamsPerMessage = maxParamsPerMessage;
+        this.spentAt = new long[Math.max(1, maxMessagesPerSecond)];
+    }
+
+    int size() {
+        return streams.size();
+    }
+
+    void add(String stream) {
+        streams.add(stream);
+    }
+
+    void remove(String stream) {
+        streams.remove(stream);
+    }
+
+    /** 目前期望訂閱的串流（重連時據此重建 URL） */
+    Set<String> streams() {
+        return new LinkedHashSet<>(streams);
+    }
+
+    /** 連線建立：URL 中帶的串流即已訂閱 */
+    void opened(Collection<String> initial) {
+        live.clear();
+        live.addAll(initial);
+    }
+
+    /** 連線中斷：socket 上不再有任何訂閱 */
+    void disconnected() {
+        live.clear();
+    }
+
+    /**
+     * 取出此刻可送出的控制訊息（先 UNSUBSCRIBE 後 SUBSCRIBE），並視為已送出更新 {@code live}。
+     * 權杖不足時只取出部分，其餘留待下次。
+     *
+     * @param nowNanos 目前時間（{@link System#nanoTime()}）
+     */
+    List<ControlMessage> drain(long nowNanos) {
+        List<ControlMessage> messages = new ArrayList<>();
+        List<String> toUnsubscribe = live.stream().filter(s -> !streams.contains(s)).toList();
+        if (!take("UNSUBSCRIBE", toUnsubscribe, nowNanos, messages)) {
+            return messages;
+        }
+        List<String> toSubscribe = streams.stream().filter(s -> !live.contains(s)).toList();
+        take("SUBSCRIBE", toSubscribe, nowNanos, messages);
+        return messages;
+    }
+
+    /** 依剩餘權杖分段取出；回傳 false 表示權杖用完、仍有未送出的部分 */
+    private boolean take(String method, List<String> params, long nowNanos, List<ControlMessage> out) {
+        for (int i = 0; i < params.size(); i += maxParamsPerMessage) {
+            if (used == spentAt.length && nowNanos - spentAt[next] < WINDOW_NANOS) {
+                return false;
+            }
+            spentAt[next] = nowNanos;
+            next = (next + 1) % spentAt.length;
+            used = Math.min(used + 1, spentAt.length);
+            List<String> part = List.copyOf(params.subList(i, Math.min(params.size(), i + maxParamsPerMessage)));
+            if (method.equals("SUBSCRIBE")) {
+                live.addAll(part);
+            } else {
+                part.forEach(live::remove);
+            }
+            out.add(new ControlMessage(method, part));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,145 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.EvaluationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 依幣對分條的策略評估執行器。
+ *
+ * <p>K 線收盤事件原本在 WS 讀取執行緒上同步執行評估（查 DB、建 BarSeries、逐用戶計算），
+ * 會卡住同一連線上所有其他幣對的訊息。此處將評估移到獨立階段：
+ * <ul>
+ *   <li>幣對以 hash 固定對應到某一條（單執行緒），同幣對嚴格依序評估</li>
+ *   <li>不同幣對分散在多條上並行，吃滿多核</li>
+ *   <li>同一個 (階段, 幣對) 最多只有一筆待評估：尚未開始時，較新的收盤取代較舊的（計入
+ *       {@code evaluation.coalesced}）。佇列長度因此不超過分到該條的幣對數 × 階段數，
+ *       所有幣對在同一個邊界收盤的突發也不會擠掉其他幣對的評估</li>
+ * </ul>
+ *
+ * <p>指標：{@code evaluation.queue.depth}（每條）、{@code evaluation.lag}（收盤到開始評估）、
+ * {@code evaluation.coalesced}。
+ */
+@Component
+@Slf4j
+public class StripedEvaluationExecutor implements SmartLifecycle {
+
+    /** 待評估的最新收盤 */
+    private record Pending(Instant closeTime, Runnable task) {}
+
+    private final ThreadPoolExecutor[] stripes;
+    /** (階段:幣對) → 已排入、尚未開始的評估 */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Timer lagTimer;
+    private final Counter coalesced;
+    private volatile boolean running = false;
+
+    public StripedEvaluationExecutor(EvaluationProperties props, MeterRegistry meterRegistry) {
+        int stripeCount = props.stripes() > 0 ? props.stripes() : Runtime.getRuntime().availableProcessors();
+        this.coalesced = Counter.builder("evaluation.coalesced")
+                .description("尚未開始評估即被同幣對較新收盤取代的收盤事件數")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("evaluation.lag")
+                .description("K 線收盤到開始策略評估的延遲")
+                .register(meterRegistry);
+
+        this.stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            String threadName = "eval-" + i;
+            ThreadPoolExecutor stripe = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> new Thread(r, threadName));
+            stripes[i] = stripe;
+            Gauge.builder("evaluation.queue.depth", stripe, s -> s.getQueue().size())
+                    .tag("stripe", String.valueOf(i))
+                    .description("每條評估佇列中等待的收盤事件數")
+                    .register(meterRegistry);
+        }
+        log.info("[策略評估] 分條執行器: {} 條（同幣對待評估的收盤合併為最新一根）", stripeCount);
+    }
+
+    /**
+     * 將某幣對的評估任務排入其所屬的條；同一階段已有尚未開始的任務時以本任務取代。
+     *
+     * @param symbol    幣對（決定所屬條，同幣對保證依序）
+     * @param stage     評估階段（例如策略評估、提醒），不同階段各自合併、互不取代
+     * @param closeTime 該 K 線的收盤時間（用於量測延遲）
+     * @param task      評估任務
+     */
+    public void submit(String symbol, String stage, Instant closeTime, Runnable task) {
+        String key = stage + ":" + symbol;
+        Pending next = new Pending(closeTime, task);
+        if (pending.put(key, next) != null) {
+            coalesced.increment();
+            log.debug("[策略評估] {} 尚未開始的收盤評估被 {} 取代", key, closeTime);
+            return;
+        }
+        ThreadPoolExecutor stripe = stripes[Math.floorMod(symbol.hashCode(), stripes.length)];
+        try {
+            stripe.execute(() -> runPending(key, symbol));
+        } catch (RejectedExecutionException e) {
+            // 只會發生在關閉之後
+            pending.remove(key, next);
+            log.debug("[策略評估] 執行器已關閉，略過 {} 的收盤評估", key);
+        }
+    }
+
+    private void runPending(String key, String symbol) {
+        Pending latest = pending.remove(key);
+        if (latest == null) return;
+        lagTimer.record(Duration.between(latest.closeTime(), Instant.now()));
+        try {
+            latest.task().run();
+        } catch (Exception e) {
+            log.error("[策略評估] {} 評估任務失敗", symbol, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ThreadPoolExecutor stripe : stripes) {
+            try {
+                if (!stripe.awaitTermination(10, TimeUnit.SECONDS)) {
+                    stripe.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stripe.shutdownNow();
+            }
+        }
+        log.info("[策略評估] 分條執行器已停止");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // 在 BinanceStreamManager 關閉 WS 之後才停止，讓已收到的收盤事件評估完
+        return Integer.MAX_VALUE - 1;
+    }
+}
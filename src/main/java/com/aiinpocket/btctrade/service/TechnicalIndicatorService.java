@@ -69,6 +69,13 @@ public class TechnicalIndicatorService {
         );
     }
 
+    /**
+     * 以本服務的策略參數建立串流指標引擎（回測逐根餵入，結果與 {@link #computeFromSet} 一致）。
+     */
+    public IncrementalIndicatorEngine createEngine() {
+        return new IncrementalIndicatorEngine(props.strategy());
+    }
+
     /**
      * 使用預建立的指標集合計算指定 index 的快照。
      * ta4j 指標內部有快取，連續遞增的 index 呼叫效率為 O(1)。
@@ -82,8 +89,8 @@ public class TechnicalIndicatorService {
     }
 
     /**
-     * 即時用途（KlineClosedEventHandler）：每次呼叫建立新的指標實例。
-     * 僅用於單次計算，不適合迴圈內使用。
+     * 單次計算：每次呼叫建立新的指標實例，不適合迴圈內使用。
+     * 即時評估改由 {@link IndicatorStateRegistry} 遞增計算。
      */
     public IndicatorSnapshot computeAt(BarSeries series, int index) {
         var sp = props.strategy();
@@ -0,0 +1,35 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.event.KlineTick;
+
+/**
+ * 單一幣對上一個 tick 到本 tick 之間到過的價格範圍。
+ *
+ * <p>tick 的高低點是整根 K 線的累計值：創新高（低）才表示這段期間到過該價，否則以最新價為準；
+ * 高點變低或低點變高表示已換到下一根，取新一根的高低點。非執行緒安全，由呼叫端同步。
+ */
+final class TickRange {
+
+    private double barHigh = Double.NaN;
+    private double barLow = Double.NaN;
+    private double high;
+    private double low;
+
+    void update(KlineTick tick) {
+        double tickHigh = tick.highPrice();
+        double tickLow = tick.lowPrice();
+        boolean newBar = Double.isNaN(barHigh) || tickHigh < barHigh || tickLow > barLow;
+        high = newBar || tickHigh > barHigh ? tickHigh : tick.closePrice();
+        low = newBar || tickLow < barLow ? tickLow : tick.closePrice();
+        barHigh = tickHigh;
+        barLow = tickLow;
+    }
+
+    double high() {
+        return high;
+    }
+
+    double low() {
+        return low;
+    }
+}
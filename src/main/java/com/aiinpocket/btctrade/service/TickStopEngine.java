@@ -0,0 +1,282 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
+import com.aiinpocket.btctrade.model.dto.TradeNotification;
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.model.enums.ExitReason;
+import com.aiinpocket.btctrade.model.enums.PositionDirection;
+import com.aiinpocket.btctrade.model.enums.TradeAction;
+import com.aiinpocket.btctrade.model.event.KlineTick;
+import com.aiinpocket.btctrade.service.PositionService.StopMove;
+import com.aiinpocket.btctrade.service.notification.NotificationDispatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 逐 tick 的停損 / 移動停利引擎。
+ *
+ * <p>原本實盤只在 K 線收盤時以收盤價檢查停損，盤中觸及停損最多晚一根 K 線才出場，
+ * 與回測的日內停損（{@link BacktestKernel}）不一致。此處為每個幣對維護一份 {@link StopLevelIndex}，
+ * 每個 {@link KlineTick} 以該 tick 期間的價格範圍探測：
+ * <ul>
+ *   <li>索引在 {@link OpenPositionRegistry} 變動時標記重建，重建時沿用各持倉已上調的停損與峰值</li>
+ *   <li>觸發的持倉交給單一背景執行緒，在該幣對的評估鎖內以 DB 為準確認仍未平倉後，以停損價平倉</li>
+ *   <li>上調的停損價定期批次寫回 DB（只往有利方向移動，多個 Pod 同時寫入時保留最有利者）</li>
+ * </ul>
+ * tick 在 WS 讀取執行緒上處理，探測不查 DB、沒有觸發時不配置物件。
+ */
+@Service
+@Slf4j
+public class TickStopEngine {
+
+    /** 評估鎖被收盤評估占用時的重試次數與間隔 */
+    private static final int MAX_CLOSE_ATTEMPTS = 20;
+    private static final long RETRY_DELAY_MS = 250;
+
+    private final OpenPositionRegistry positionRegistry;
+    private final PositionService positionService;
+    private final DistributedLockService lockService;
+    private final NotificationDispatcher notificationDispatcher;
+    private final Map<String, SymbolStops> symbols = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService closer = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "tick-stops"));
+    private final Counter triggeredCounter;
+
+    public TickStopEngine(OpenPositionRegistry positionRegistry, PositionService positionService,
+                          DistributedLockService lockService, NotificationDispatcher notificationDispatcher,
+                          MeterRegistry meterRegistry) {
+        this.positionRegistry = positionRegistry;
+        this.positionService = positionService;
+        this.lockService = lockService;
+        this.notificationDispatcher = notificationDispatcher;
+        Gauge.builder("stops.indexed", this, TickStopEngine::size)
+                .description("停損索引中的持倉數")
+                .register(meterRegistry);
+        this.triggeredCounter = Counter.builder("stops.triggered")
+                .description("tick 觸發的停損數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void subscribe() {
+        positionRegistry.addListener(this::markDirty);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        closer.shutdown();
+        closer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    public int size() {
+        int total = 0;
+        for (SymbolStops state : symbols.values()) {
+            total += state.index.size();
+        }
+        return total;
+    }
+
+    @EventListener
+    public void onKlineTick(KlineTick tick) {
+        String symbol = tick.symbol();
+        List<Hit> hits = symbols.computeIfAbsent(symbol, SymbolStops::new).probe(tick);
+        if (!hits.isEmpty()) {
+            triggeredCounter.increment(hits.size());
+            closer.execute(() -> close(symbol, hits, 1));
+        }
+    }
+
+    private void markDirty(String symbol) {
+        if (symbol == null) {
+            symbols.values().forEach(state -> state.dirty = true);
+        } else {
+            SymbolStops state = symbols.get(symbol);
+            if (state != null) state.dirty = true;
+        }
+    }
+
+    // ── 平倉 ──
+
+    private record Hit(TradePosition position, double stopPrice) {}
+
+    /** 與收盤評估、其他 Pod 互斥：取不到鎖時稍後重試，仍失敗則重建索引後由下一個 tick 重新檢查 */
+    private void close(String symbol, List<Hit> hits, int attempt) {
+        boolean ran;
+        try {
+            ran = lockService.executeWithLock(KlineClosedEventHandler.evaluationLockId(symbol),
+                    "停損出場-" + symbol, () -> closeHits(symbol, hits));
+        } catch (Exception e) {
+            log.error("[停損] {} 平倉失敗: {}", symbol, e.getMessage(), e);
+            ran = false;
+        }
+        if (ran) return;
+        if (attempt < MAX_CLOSE_ATTEMPTS && !closer.isShutdown()) {
+            closer.schedule(() -> close(symbol, hits, attempt + 1), RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+        } else {
+            log.warn("[停損] {} 無法取得評估鎖，{} 筆停損待重建索引後重新檢查", symbol, hits.size());
+            markDirty(symbol);
+        }
+    }
+
+    private void closeHits(String symbol, List<Hit> hits) {
+        // 鎖內以 DB 為準：持倉可能已被收盤評估或其他 Pod 平倉
+        positionRegistry.syncSymbol(symbol);
+        Instant now = Instant.now();
+        for (Hit hit : hits) {
+            Long id = hit.position().getId();
+            TradePosition position = positionRegistry.find(hit.position().getUserId(), symbol)
+                    .filter(p -> p.getId().equals(id))
+                    .orElse(null);
+            if (position == null) continue;
+
+            BigDecimal exitPrice = BigDecimal.valueOf(hit.stopPrice()).setScale(8, RoundingMode.HALF_UP);
+            try {
+                ExitReason reason = exitReason(position, hit.stopPrice());
+                positionService.closePosition(position, exitPrice, now, reason,
+                        IndicatorSnapshot.priceOnly(exitPrice));
+                log.info("[停損] userId={} {} {} 盤中觸及{} @ {}", position.getUserId(), symbol,
+                        position.getDirection(), reason == ExitReason.TRAILING_STOP ? "移動停利" : "停損", exitPrice);
+
+                TradeNotification notification = new TradeNotification(symbol,
+                        position.getDirection() == PositionDirection.LONG ? TradeAction.LONG_EXIT : TradeAction.SHORT_EXIT,
+                        exitPrice, null, null, now);
+                if (position.getUserId() != null) {
+                    notificationDispatcher.notifyUser(position.getUserId(), notification);
+                } else {
+                    notificationDispatcher.notifyAllSubscribers(symbol, notification);
+                }
+            } catch (Exception e) {
+                log.error("[停損] positionId={} {} 平倉失敗: {}", id, symbol, e.getMessage(), e);
+                markDirty(symbol);
+            }
+        }
+    }
+
+    /**
+     * 與 {@link BacktestKernel} 相同的出場原因：停損已離開開倉時的原始位置且出場不虧損者為移動停利，其餘為停損。
+     * 移動停損至少保本，上調後必位於進場價的有利側（含保本），原始停損則一定在不利側，
+     * 因此不需保存原始停損價，索引重建或重啟後（DB 已寫回上調的停損）也能判斷。
+     */
+    static ExitReason exitReason(TradePosition position, double stopPrice) {
+        boolean isLong = position.getDirection() == PositionDirection.LONG;
+        double entry = position.getEntryPrice().doubleValue();
+        boolean trailed = position.getTrailingActivatePct() != null
+                && (isLong ? stopPrice >= entry : stopPrice <= entry);
+        double pnl = isLong ? stopPrice - entry : entry - stopPrice;
+        return trailed && pnl >= 0 ? ExitReason.TRAILING_STOP : ExitReason.STOP_LOSS;
+    }
+
+    // ── 停損價寫回 ──
+
+    @Scheduled(fixedDelayString = "${positions.stop-flush-interval-ms:5000}",
+            initialDelayString = "${positions.stop-flush-interval-ms:5000}")
+    public void flushMovedStops() {
+        List<StopMove> moves = new ArrayList<>();
+        for (SymbolStops state : symbols.values()) {
+            state.drainMoved(moves);
+        }
+        if (moves.isEmpty()) return;
+        try {
+            int applied = positionService.tightenStopLosses(moves);
+            log.debug("[停損] 寫回 {} 筆移動停損（{} 筆已平倉或 DB 已有更有利的停損）",
+                    applied, moves.size() - applied);
+        } catch (Exception e) {
+            // 重建時停損優於 DB 者會重新標記為待寫回
+            log.warn("[停損] 寫回移動停損失敗，下次重試: {}", e.getMessage());
+            markDirty(null);
+        }
+    }
+
+    /** 單一幣對的索引與 tick 狀態（以本物件為鎖） */
+    private final class SymbolStops {
+
+        private final String symbol;
+        private volatile boolean dirty = true;
+        private StopLevelIndex index = new StopLevelIndex();
+        private Map<Long, TradePosition> positions = Map.of();
+        private final TickRange range = new TickRange();
+        private List<Hit> hits;
+        private final StopLevelIndex.HitSink sink = this::onHit;
+
+        SymbolStops(String symbol) {
+            this.symbol = symbol;
+        }
+
+        synchronized List<Hit> probe(KlineTick tick) {
+            if (dirty) rebuild();
+            range.update(tick);
+            if (index.size() == 0) return List.of();
+            index.probe(range.high(), range.low(), sink);
+            List<Hit> result = hits;
+            hits = null;
+            return result == null ? List.of() : result;
+        }
+
+        private void onHit(long positionId, boolean isLong, double stopPrice) {
+            TradePosition position = positions.remove(positionId);
+            if (position == null) return;
+            if (hits == null) hits = new ArrayList<>();
+            hits.add(new Hit(position, stopPrice));
+        }
+
+        synchronized void drainMoved(List<StopMove> moves) {
+            index.drainMoved((positionId, stopPrice) -> {
+                TradePosition position = positions.get(positionId);
+                if (position != null) {
+                    moves.add(new StopMove(position, BigDecimal.valueOf(stopPrice).setScale(8, RoundingMode.HALF_UP)));
+                }
+            });
+        }
+
+        /** 從持倉索引重建，沿用舊索引中已上調的停損與峰值 */
+        private void rebuild() {
+            dirty = false;
+            List<TradePosition> open = positionRegistry.forSymbol(symbol);
+            StopLevelIndex fresh = new StopLevelIndex(open.size());
+            Map<Long, TradePosition> byId = new HashMap<>();
+            for (TradePosition position : open) {
+                if (position.getStopLossPrice() == null) continue;
+                long id = position.getId();
+                boolean isLong = position.getDirection() == PositionDirection.LONG;
+                double entry = position.getEntryPrice().doubleValue();
+                double stop = position.getStopLossPrice().doubleValue();
+                double peak = entry;
+                boolean moved = false;
+                if (index.contains(id)) {
+                    double kept = index.stop(id);
+                    if (isLong ? kept > stop : kept < stop) {
+                        stop = kept;
+                        moved = true;
+                    }
+                    peak = index.peak(id);
+                }
+                boolean trailing = position.getTrailingActivatePct() != null && position.getTrailingOffsetPct() != null;
+                fresh.add(id, isLong, entry, stop, peak,
+                        trailing ? position.getTrailingActivatePct() : Double.NaN,
+                        trailing ? position.getTrailingOffsetPct() : 0, moved);
+                byId.put(id, position);
+            }
+            index = fresh;
+            positions = byId;
+        }
+    }
+}
@@ -2,11 +2,11 @@ package com.aiinpocket.btctrade.service;
 
 import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.EvaluationContext.Member;
 import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
 import com.aiinpocket.btctrade.model.dto.TradeNotification;
 import com.aiinpocket.btctrade.model.entity.TradePosition;
 import com.aiinpocket.btctrade.model.enums.*;
-import com.aiinpocket.btctrade.repository.TradePositionRepository;
 import com.aiinpocket.btctrade.service.notification.NotificationDispatcher;
 import com.aiinpocket.btctrade.websocket.TradeWebSocketHandler;
 import lombok.RequiredArgsConstructor;
@@ -16,19 +16,19 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
 
 /**
  * 交易執行服務。
  * 接收 K 線收盤事件後，評估策略並執行進場/出場操作。
- * 支援全域評估（舊邏輯）和每用戶獨立評估（Phase 2）。
+ * 支援全域評估（舊邏輯）和每用戶評估（以同策略參數組預先算好的進場判斷執行，見 {@link KlineClosedEventHandler}）。
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class TradeExecutionService {
 
-    private final TradePositionRepository positionRepo;
+    private final OpenPositionRegistry positionRegistry;
+    private final CapitalLedgerService ledgerService;
     private final PositionService positionService;
     private final StrategyService strategyService;
     private final TradingStrategyProperties props;
@@ -40,15 +40,13 @@ public class TradeExecutionService {
      * 全域評估策略並執行交易（舊邏輯，保留向下相容）。
      */
     public void evaluateAndExecute(String symbol, IndicatorSnapshot snapshot) {
-        var openPosition = positionRepo
-                .findBySymbolAndStatus(symbol, PositionStatus.OPEN)
-                .orElse(null);
+        var openPosition = positionRegistry.find(null, symbol).orElse(null);
 
         TradeAction action = strategyService.evaluate(snapshot, openPosition, Instant.now());
 
         if (action != TradeAction.HOLD) {
             log.info("[交易執行] {} 產生訊號: {} @ ${}", symbol, action, snapshot.closePrice());
-            executeAction(null, action, symbol, openPosition, snapshot, props);
+            executeAction(null, action, symbol, openPosition, snapshot, props, null);
 
             wsHandler.broadcastSignal(action, snapshot);
 
@@ -60,38 +58,48 @@ public class TradeExecutionService {
     }
 
     /**
-     * 為特定用戶評估策略並執行交易（Phase 2：每用戶獨立評估）。
-     * 使用用戶的自訂策略參數建立臨時 StrategyService 實例。
+     * 以同策略參數組預先算好的進場判斷，為收盤評估批次載入的用戶（持倉、累計已實現損益）執行交易，不再查詢 DB；
+     * 無持倉時直接採用 {@code entryAction}，有持倉時依該持倉評估出場。只有實際進出場時才會寫入。
      */
-    public void evaluateAndExecuteForUser(
-            Long userId, String symbol,
+    public void executeForMember(
+            Member member, String symbol,
             IndicatorSnapshot snapshot,
             TradingStrategyProperties userProps,
-            StrategyService userStrategy) {
-
-        var openPosition = positionRepo
-                .findByUserIdAndSymbolAndStatus(userId, symbol, PositionStatus.OPEN)
-                .orElse(null);
+            StrategyService userStrategy,
+            TradeAction entryAction,
+            Instant now) {
+        execute(member.userId(), member.openPosition(), member.realizedPnl(),
+                symbol, snapshot, userProps, userStrategy, entryAction, now);
+    }
 
-        TradeAction action = userStrategy.evaluate(snapshot, openPosition, Instant.now());
+    private void execute(Long userId, TradePosition openPosition, BigDecimal realizedPnl,
+                         String symbol, IndicatorSnapshot snapshot,
+                         TradingStrategyProperties userProps, StrategyService userStrategy,
+                         TradeAction entryAction, Instant now) {
+        TradeAction action = openPosition == null
+                ? entryAction
+                : userStrategy.evaluate(snapshot, openPosition, now);
 
         if (action != TradeAction.HOLD) {
             log.info("[交易執行] userId={} {} 產生訊號: {} @ ${}",
                     userId, symbol, action, snapshot.closePrice());
-            executeAction(userId, action, symbol, openPosition, snapshot, userProps);
+            executeAction(userId, action, symbol, openPosition, snapshot, userProps, realizedPnl);
 
             wsHandler.broadcastSignal(action, snapshot);
 
             TradeNotification notification = new TradeNotification(
                     symbol, action, snapshot.closePrice(),
-                    snapshot.rsi(), snapshot.macdHistogram(), Instant.now());
+                    snapshot.rsi(), snapshot.macdHistogram(), now);
             notificationDispatcher.notifyUser(userId, notification);
         }
     }
 
+    /**
+     * @param realizedPnl 已預先彙總的累計已實現損益；null 時於進場當下讀取資金帳本（單列，見 {@link CapitalLedgerService#realizedPnl}）
+     */
     private void executeAction(Long userId, TradeAction action, String symbol,
                                TradePosition openPosition, IndicatorSnapshot snapshot,
-                               TradingStrategyProperties actionProps) {
+                               TradingStrategyProperties actionProps, BigDecimal realizedPnl) {
         Instant now = Instant.now();
 
         switch (action) {
@@ -99,11 +107,13 @@ public class TradeExecutionService {
                 if (openPosition == null) {
                     PositionDirection dir = action == TradeAction.LONG_ENTRY
                             ? PositionDirection.LONG : PositionDirection.SHORT;
-                    BigDecimal capital = calculateAvailableCapital(userId, actionProps);
+                    BigDecimal capital = realizedPnl != null
+                            ? BigDecimal.valueOf(actionProps.risk().initialCapital()).add(realizedPnl)
+                            : calculateAvailableCapital(userId, actionProps);
                     if (userId != null) {
                         positionService.openPositionForUser(
                                 userId, symbol, dir, snapshot.closePrice(), now,
-                                capital, snapshot, false, actionProps.risk().stopLossPct());
+                                capital, snapshot, false, actionProps.risk());
                     } else {
                         positionService.openPosition(
                                 symbol, dir, snapshot.closePrice(), now,
@@ -123,20 +133,9 @@ public class TradeExecutionService {
         }
     }
 
+    /** 初始資金 + 資金帳本的累計已實現損益（讀一列帳本，與交易歷史長度無關） */
     private BigDecimal calculateAvailableCapital(Long userId, TradingStrategyProperties capitalProps) {
-        List<TradePosition> closedPositions;
-        if (userId != null) {
-            closedPositions = positionRepo.findByUserIdAndBacktestOrderByEntryTimeAsc(userId, false);
-        } else {
-            closedPositions = positionRepo.findByBacktestOrderByEntryTimeAsc(false);
-        }
-
-        BigDecimal totalPnl = closedPositions.stream()
-                .filter(p -> p.getRealizedPnl() != null)
-                .map(TradePosition::getRealizedPnl)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        return BigDecimal.valueOf(capitalProps.risk().initialCapital()).add(totalPnl);
+        return BigDecimal.valueOf(capitalProps.risk().initialCapital()).add(ledgerService.realizedPnl(userId));
     }
 
     private ExitReason determineExitReason(
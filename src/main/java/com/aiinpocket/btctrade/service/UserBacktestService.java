@@ -1,32 +1,42 @@
 package com.aiinpocket.btctrade.service;
 
+import com.aiinpocket.btctrade.config.BacktestQueueProperties;
 import com.aiinpocket.btctrade.config.TradingStrategyProperties;
 import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.dto.ParameterSweepResult;
+import com.aiinpocket.btctrade.model.dto.WalkForwardResult;
 import com.aiinpocket.btctrade.model.entity.AppUser;
 import com.aiinpocket.btctrade.model.entity.BacktestRun;
 import com.aiinpocket.btctrade.model.entity.StrategyTemplate;
 import com.aiinpocket.btctrade.model.enums.BacktestRunStatus;
+import com.aiinpocket.btctrade.model.event.BacktestQueued;
 import com.aiinpocket.btctrade.repository.BacktestRunRepository;
-import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.task.TaskExecutor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tools.jackson.databind.ObjectMapper;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 /**
  * 用戶回測服務。
- * 管理用戶發起的回測任務生命週期：建立紀錄 → 非同步執行 → 儲存結果。
+ * 管理用戶發起的回測任務生命週期：建立紀錄（排入佇列）→ 由 {@link BacktestJobQueue} 排程執行 → 儲存結果。
  *
  * <p>核心設計：
  * <ul>
- *   <li>回測在 {@code backtestExecutor} 獨立執行緒池中執行，不影響即時交易</li>
- *   <li>每位用戶同時只能有 1 個 RUNNING 回測，防止 CPU 過載</li>
- *   <li>結果以 JSON 序列化儲存到 DB（BacktestRun.resultJson），供前端展示</li>
+ *   <li>回測在佇列的專用工作執行緒中執行，不影響即時交易，也不佔用請求執行緒</li>
+ *   <li>每位用戶排隊中 + 執行中的回測數有上限（{@code backtest.queue.max-queued-per-user}）</li>
+ *   <li>提交時保存策略參數快照，排隊期間修改模板或重啟後重新執行都不影響結果</li>
+ *   <li>結果以 JSON 序列化儲存到 DB（BacktestRun.resultJson），供前端展示；
+ *       附帶的 Monte Carlo 分析只存分位數與直方圖，不增加多少體積</li>
+ *   <li>相同參數指紋、幣對、以 UTC 日界對齊且已完全過去的區間，直接沿用最近一筆已完成回測的結果，不重新計算</li>
+ *   <li>參數掃描與 walk-forward 也以一筆紀錄排入同一佇列（共用排隊上限與公平排程）</li>
+ *   <li>體力在提交時扣除，執行失敗時退還</li>
  * </ul>
  */
 @Service
@@ -40,7 +50,11 @@ public class UserBacktestService {
     private final GamificationService gamificationService;
     private final BacktestAdventureService adventureService;
     private final StaminaService staminaService;
-    private final TaskExecutor backtestExecutor;
+    private final MonteCarloService monteCarloService;
+    private final ParameterSweepService sweepService;
+    private final WalkForwardService walkForwardService;
+    private final BacktestQueueProperties queueProps;
+    private final ApplicationEventPublisher eventPublisher;
 
     public UserBacktestService(
             BacktestRunRepository runRepo,
@@ -50,7 +64,11 @@ public class UserBacktestService {
             GamificationService gamificationService,
             BacktestAdventureService adventureService,
             StaminaService staminaService,
-            @Qualifier("backtestExecutor") TaskExecutor backtestExecutor) {
+            MonteCarloService monteCarloService,
+            ParameterSweepService sweepService,
+            WalkForwardService walkForwardService,
+            BacktestQueueProperties queueProps,
+            ApplicationEventPublisher eventPublisher) {
         this.runRepo = runRepo;
         this.backtestService = backtestService;
         this.templateService = templateService;
@@ -58,28 +76,16 @@ public class UserBacktestService {
         this.gamificationService = gamificationService;
         this.adventureService = adventureService;
         this.staminaService = staminaService;
-        this.backtestExecutor = backtestExecutor;
-    }
-
-    /** 啟動時清理因伺服器重啟而卡住的 RUNNING/PENDING 回測 */
-    @PostConstruct
-    void cleanupStaleRuns() {
-        List<BacktestRun> staleRuns = runRepo.findByStatusIn(
-                List.of(BacktestRunStatus.RUNNING, BacktestRunStatus.PENDING));
-        if (!staleRuns.isEmpty()) {
-            for (BacktestRun run : staleRuns) {
-                run.setStatus(BacktestRunStatus.FAILED);
-                run.setResultJson("{\"error\":\"伺服器重啟導致回測中斷，請重新提交\"}");
-                run.setCompletedAt(Instant.now());
-            }
-            runRepo.saveAll(staleRuns);
-            log.info("[用戶回測] 啟動清理：{} 筆卡住的回測已標記為 FAILED", staleRuns.size());
-        }
+        this.monteCarloService = monteCarloService;
+        this.sweepService = sweepService;
+        this.walkForwardService = walkForwardService;
+        this.queueProps = queueProps;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
      * 提交回測任務。
-     * 建立 BacktestRun 紀錄後立即返回，實際計算在 backtestExecutor 中非同步執行。
+     * 建立 PENDING 的 BacktestRun 紀錄後立即返回，交易提交後由 {@link BacktestJobQueue} 排程執行。
      *
      * @param user       發起回測的用戶
      * @param templateId 策略模板 ID
@@ -87,16 +93,13 @@ public class UserBacktestService {
      * @param startDate  回測起始時間
      * @param endDate    回測結束時間
      * @return 新建立的 BacktestRun 紀錄（狀態 PENDING）
-     * @throws IllegalStateException 用戶已有 RUNNING 的回測
+     * @throws IllegalStateException        用戶排隊中的回測已達上限
+     * @throws InsufficientStaminaException 體力不足
      */
     @Transactional
     public BacktestRun submitBacktest(AppUser user, Long templateId, String symbol,
                                        Instant startDate, Instant endDate) {
-        // 限制每位用戶同時只能有 1 個執行中的回測（含 PENDING + RUNNING）
-        if (runRepo.existsByUserIdAndStatusIn(user.getId(),
-                List.of(BacktestRunStatus.RUNNING, BacktestRunStatus.PENDING))) {
-            throw new IllegalStateException("您已有一個回測正在執行中，請等待完成後再提交新的回測");
-        }
+        checkQueueLimit(user);
 
         // 體力檢查與扣除（消耗量 = 回測年數，由 Controller 傳入）
         int years = Math.max(1, (int) (java.time.Duration.between(startDate, endDate).toDays() / 365));
@@ -117,10 +120,13 @@ public class UserBacktestService {
         BacktestRun run = BacktestRun.builder()
                 .user(user)
                 .strategyTemplate(template)
+                .paramsFingerprint(template.fingerprint())
+                .paramsJson(objectMapper.writeValueAsString(template.toProperties()))
                 .symbol(symbol.toUpperCase())
                 .startDate(startDate)
                 .endDate(endDate)
                 .status(BacktestRunStatus.PENDING)
+                .staminaCost(years)
                 .adventureJson(adventureJson)
                 .build();
         runRepo.save(run);
@@ -128,37 +134,151 @@ public class UserBacktestService {
         log.info("[用戶回測] 用戶 {} 提交回測: runId={}, template={}, symbol={}, period={} → {}",
                 user.getId(), run.getId(), template.getName(), symbol, startDate, endDate);
 
-        // 透過 TaskExecutor 提交非同步執行（避免 @Async 自我呼叫失效問題）
-        final Long runId = run.getId();
-        final TradingStrategyProperties customProps = template.toProperties();
-        backtestExecutor.execute(() -> executeBacktest(runId, customProps));
+        // 交易提交後通知佇列排程
+        eventPublisher.publishEvent(new BacktestQueued(run.getId(), user.getId()));
+        return run;
+    }
+
+    /**
+     * 提交參數掃描。參數軸先行驗證並依組合數扣除體力，之後與回測一樣建立 PENDING 紀錄排入佇列，
+     * 結果（{@link com.aiinpocket.btctrade.model.dto.ParameterSweepResult}）以 GET /api/user/backtest/{id} 取得。
+     *
+     * @param axes 參數軸，格式見 {@link ParameterSweepService#sweep}
+     * @throws IllegalArgumentException     參數軸不合法或組合數超過上限
+     * @throws IllegalStateException        用戶排隊中的回測已達上限
+     * @throws InsufficientStaminaException 體力不足
+     */
+    @Transactional
+    public BacktestRun submitSweep(AppUser user, Long templateId, String symbol,
+                                   Instant startDate, Instant endDate, int years, Map<String, Object> axes) {
+        checkQueueLimit(user);
+        StrategyTemplate template = templateService.getTemplate(templateId, user.getId());
+        TradingStrategyProperties base = template.toProperties();
+        int staminaCost = sweepService.staminaCost(years, sweepService.plan(base, axes).combinations().size());
+        staminaService.consumeStamina(user, staminaCost);
+
+        // 不寫入參數指紋：掃描結果不是 BacktestReport，不可被一般回測當作快取沿用
+        BacktestRun run = BacktestRun.builder()
+                .user(user)
+                .strategyTemplate(template)
+                .paramsJson(objectMapper.writeValueAsString(base))
+                .sweepAxesJson(objectMapper.writeValueAsString(axes))
+                .symbol(symbol.toUpperCase())
+                .startDate(startDate)
+                .endDate(endDate)
+                .status(BacktestRunStatus.PENDING)
+                .staminaCost(staminaCost)
+                .build();
+        runRepo.save(run);
+
+        log.info("[用戶回測] 用戶 {} 提交參數掃描: runId={}, template={}, symbol={}, stamina={}",
+                user.getId(), run.getId(), template.getName(), symbol, staminaCost);
+        eventPublisher.publishEvent(new BacktestQueued(run.getId(), user.getId()));
+        return run;
+    }
+
+    /**
+     * 提交 walk-forward。視窗與參數軸先行驗證並扣除體力，之後與參數掃描一樣建立 PENDING 紀錄排入佇列，
+     * 結果（{@link WalkForwardResult}）以 GET /api/user/backtest/{id} 取得。
+     *
+     * @param axes 參數軸，格式見 {@link ParameterSweepService#sweep}
+     * @throws IllegalArgumentException     視窗或參數軸不合法、組合數超過上限
+     * @throws IllegalStateException        用戶排隊中的回測已達上限
+     * @throws InsufficientStaminaException 體力不足
+     */
+    @Transactional
+    public BacktestRun submitWalkForward(AppUser user, Long templateId, String symbol,
+                                         Instant startDate, Instant endDate, int years,
+                                         int inSampleDays, int outOfSampleDays, Map<String, Object> axes) {
+        checkQueueLimit(user);
+        StrategyTemplate template = templateService.getTemplate(templateId, user.getId());
+        TradingStrategyProperties base = template.toProperties();
+        int staminaCost = walkForwardService.staminaCost(base, axes, years, inSampleDays, outOfSampleDays);
+        staminaService.consumeStamina(user, staminaCost);
+
+        // 與參數掃描相同，不寫入參數指紋
+        BacktestRun run = BacktestRun.builder()
+                .user(user)
+                .strategyTemplate(template)
+                .paramsJson(objectMapper.writeValueAsString(base))
+                .sweepAxesJson(objectMapper.writeValueAsString(axes))
+                .inSampleDays(inSampleDays)
+                .outOfSampleDays(outOfSampleDays)
+                .symbol(symbol.toUpperCase())
+                .startDate(startDate)
+                .endDate(endDate)
+                .status(BacktestRunStatus.PENDING)
+                .staminaCost(staminaCost)
+                .build();
+        runRepo.save(run);
+
+        log.info("[用戶回測] 用戶 {} 提交 walk-forward: runId={}, template={}, symbol={}, IS/OOS={}/{}, stamina={}",
+                user.getId(), run.getId(), template.getName(), symbol, inSampleDays, outOfSampleDays, staminaCost);
+        eventPublisher.publishEvent(new BacktestQueued(run.getId(), user.getId()));
         return run;
     }
 
-    /** 在 backtestExecutor 執行緒池中執行回測（由 submitBacktest 透過 executor 提交） */
-    void executeBacktest(Long runId, TradingStrategyProperties customProps) {
-        BacktestRun run = runRepo.findById(runId).orElse(null);
+    /** 限制每位用戶排隊中 + 執行中的回測數（含參數掃描與 walk-forward） */
+    private void checkQueueLimit(AppUser user) {
+        long queued = runRepo.countByUserIdAndStatusIn(user.getId(),
+                List.of(BacktestRunStatus.RUNNING, BacktestRunStatus.PENDING));
+        if (queued >= queueProps.maxQueuedPerUser()) {
+            throw new IllegalStateException("您已有 " + queued + " 個回測排隊或執行中，請等待完成後再提交新的回測");
+        }
+    }
+
+    /**
+     * 執行已由佇列認領（RUNNING）的回測、參數掃描或 walk-forward，在佇列的工作執行緒中呼叫。
+     * 最終狀態只在本節點仍持有租約時寫回；租約已被其他節點收回時結果捨棄、不發放獎勵。
+     *
+     * @param leaseOwner 認領時寫入的節點識別
+     * @param progress   進度回報；拋出 {@link CancellationException} 時回測標記為 CANCELLED
+     * @return 最終狀態（找不到紀錄或租約已失效時為 null）
+     */
+    BacktestRunStatus executeBacktest(Long runId, String leaseOwner, BacktestProgress progress) {
+        BacktestRun run = runRepo.findByIdWithRelations(runId).orElse(null);
         if (run == null) {
             log.error("[用戶回測] 找不到回測紀錄: runId={}", runId);
-            return;
+            return null;
         }
+        log.info("[用戶回測] 開始執行: runId={}, symbol={}, attempt={}", runId, run.getSymbol(), run.getAttempts());
 
-        // 更新狀態為 RUNNING
-        run.setStatus(BacktestRunStatus.RUNNING);
-        runRepo.save(run);
-        log.info("[用戶回測] 開始執行: runId={}, symbol={}", runId, run.getSymbol());
-
+        long[] bars = new long[2];
+        BacktestProgress tracked = (processed, total) -> {
+            bars[0] = processed;
+            bars[1] = total;
+            progress.onBars(processed, total);
+        };
         try {
-            // 呼叫 BacktestService 的自訂參數回測方法
-            BacktestReport report = backtestService.runBacktestWithParams(
-                    run.getSymbol(), run.getStartDate(), run.getEndDate(), customProps);
+            // 提交時的參數快照（舊紀錄沒有快照時使用模板目前的參數）
+            TradingStrategyProperties customProps = run.getParamsJson() != null
+                    ? objectMapper.readValue(run.getParamsJson(), TradingStrategyProperties.class)
+                    : run.getStrategyTemplate().toProperties();
+            if (run.isWalkForward()) {
+                return executeWalkForward(run, leaseOwner, customProps, tracked);
+            }
+            if (run.isSweep()) {
+                return executeSweep(run, leaseOwner, customProps, tracked);
+            }
+
+            // 先找相同參數與區間的既有結果；沒有才呼叫 BacktestService 的自訂參數回測方法，
+            // 再以同一份交易清單附上 Monte Carlo 分析
+            BacktestReport report = findCachedReport(run);
+            if (report == null) {
+                report = monteCarloService.attach(backtestService.runBacktestWithParams(
+                        run.getSymbol(), run.getStartDate(), run.getEndDate(), customProps, tracked));
+            }
 
             // 序列化結果到 JSON
             String resultJson = objectMapper.writeValueAsString(report);
             run.setResultJson(resultJson);
             run.setStatus(BacktestRunStatus.COMPLETED);
+            run.setBarsProcessed(bars[1]);
+            run.setBarsTotal(bars[1]);
             run.setCompletedAt(Instant.now());
-            runRepo.save(run);
+            if (!finish(run, leaseOwner)) {
+                return null;
+            }
 
             log.info("[用戶回測] 完成: runId={}, trades={}, annualReturn={}%, passed={}",
                     runId, report.totalTrades(),
@@ -180,6 +300,16 @@ public class UserBacktestService {
             } catch (Exception gamEx) {
                 log.warn("[遊戲化] 回測獎勵處理失敗: runId={}, error={}", runId, gamEx.getMessage());
             }
+            return BacktestRunStatus.COMPLETED;
+        } catch (CancellationException e) {
+            log.info("[用戶回測] 已取消: runId={}, 已處理 {}/{} 根", runId, bars[0], bars[1]);
+            run.setStatus(BacktestRunStatus.CANCELLED);
+            run.setResultJson("{\"error\":\"回測已取消\"}");
+            run.setBarsProcessed(bars[0]);
+            run.setBarsTotal(bars[1]);
+            run.setCancelRequested(true);
+            run.setCompletedAt(Instant.now());
+            return finish(run, leaseOwner) ? BacktestRunStatus.CANCELLED : null;
         } catch (Exception e) {
             // 回測失敗：記錄錯誤訊息
             // 使用巢狀 try-catch 確保狀態更新不會因為 DB 異常而遺失錯誤日誌
@@ -188,11 +318,120 @@ public class UserBacktestService {
                 run.setStatus(BacktestRunStatus.FAILED);
                 run.setResultJson(buildErrorJson(e.getMessage()));
                 run.setCompletedAt(Instant.now());
-                runRepo.save(run);
+                if (!finish(run, leaseOwner)) {
+                    return null;
+                }
+                refundStamina(run);
             } catch (Exception dbEx) {
                 log.error("[用戶回測] 儲存失敗狀態時發生 DB 錯誤: runId={}", runId, dbEx);
             }
+            return BacktestRunStatus.FAILED;
+        }
+    }
+
+    /** 執行參數掃描並寫回排名結果（進度以已完成組合數回報） */
+    @SuppressWarnings("unchecked")
+    private BacktestRunStatus executeSweep(BacktestRun run, String leaseOwner, TradingStrategyProperties base,
+                                           BacktestProgress progress) {
+        Map<String, Object> axes = objectMapper.readValue(run.getSweepAxesJson(), Map.class);
+        int staminaCost = run.getStaminaCost() != null ? run.getStaminaCost() : 0;
+        ParameterSweepResult result = sweepService.sweep(run.getSymbol(), run.getStartDate(), run.getEndDate(),
+                base, axes, staminaCost, progress);
+        run.setResultJson(objectMapper.writeValueAsString(result));
+        run.setStatus(BacktestRunStatus.COMPLETED);
+        run.setBarsProcessed(result.combinations());
+        run.setBarsTotal(result.combinations());
+        run.setCompletedAt(Instant.now());
+        if (!finish(run, leaseOwner)) {
+            return null;
+        }
+        log.info("[用戶回測] 參數掃描完成: runId={}, combinations={}, elapsed={}ms",
+                run.getId(), result.combinations(), result.elapsedMs());
+        return BacktestRunStatus.COMPLETED;
+    }
+
+    /** 執行 walk-forward 並寫回串接的樣本外結果（進度以已完成的視窗 × 組合數回報） */
+    @SuppressWarnings("unchecked")
+    private BacktestRunStatus executeWalkForward(BacktestRun run, String leaseOwner, TradingStrategyProperties base,
+                                                 BacktestProgress progress) {
+        Map<String, Object> axes = objectMapper.readValue(run.getSweepAxesJson(), Map.class);
+        int staminaCost = run.getStaminaCost() != null ? run.getStaminaCost() : 0;
+        long[] bars = new long[1];
+        WalkForwardResult result = walkForwardService.walkForward(run.getSymbol(), run.getStartDate(),
+                run.getEndDate(), base, run.getInSampleDays(), run.getOutOfSampleDays(), axes, staminaCost,
+                (processed, total) -> {
+                    bars[0] = total;
+                    progress.onBars(processed, total);
+                });
+        run.setResultJson(objectMapper.writeValueAsString(result));
+        run.setStatus(BacktestRunStatus.COMPLETED);
+        run.setBarsProcessed(bars[0]);
+        run.setBarsTotal(bars[0]);
+        run.setCompletedAt(Instant.now());
+        if (!finish(run, leaseOwner)) {
+            return null;
+        }
+        log.info("[用戶回測] Walk-forward 完成: runId={}, windows={}, elapsed={}ms",
+                run.getId(), result.windows().size(), result.elapsedMs());
+        return BacktestRunStatus.COMPLETED;
+    }
+
+    private void refundStamina(BacktestRun run) {
+        refundStamina(run.getId(), run.getUser().getId(), run.getStaminaCost());
+    }
+
+    /**
+     * 退還提交時扣除的體力。只在成功寫回 FAILED 的節點呼叫（執行失敗或重試耗盡的過期收回），不會重複退還；
+     * 退還失敗只記錄錯誤。
+     */
+    void refundStamina(Long runId, Long userId, Integer cost) {
+        if (cost == null || cost <= 0) {
+            return;
+        }
+        try {
+            staminaService.refundStamina(userId, cost);
+        } catch (Exception e) {
+            log.error("[用戶回測] 退還體力失敗: runId={}, stamina={}", runId, cost, e);
+        }
+    }
+
+    /** 以租約持有者身分寫回最終狀態；回傳 false 表示租約已被收回（其他節點會重新執行） */
+    private boolean finish(BacktestRun run, String leaseOwner) {
+        if (runRepo.finish(run.getId(), leaseOwner, run.getStatus(), run.getResultJson(),
+                run.getBarsProcessed(), run.getBarsTotal(), run.getCompletedAt()) == 1) {
+            return true;
+        }
+        log.warn("[用戶回測] 租約已失效，捨棄結果: runId={}, status={}", run.getId(), run.getStatus());
+        return false;
+    }
+
+    /**
+     * 查詢可沿用的既有結果：區間起訖都在 UTC 日界且終點不晚於今天 0 時（K 線已全部收盤、結果不會再變），
+     * 並有相同參數指紋、幣對與區間的已完成回測。不符合或結果無法解析時回傳 null。
+     */
+    BacktestReport findCachedReport(BacktestRun run) {
+        Instant start = run.getStartDate();
+        Instant end = run.getEndDate();
+        if (run.getParamsFingerprint() == null
+                || !start.equals(start.truncatedTo(ChronoUnit.DAYS))
+                || !end.equals(end.truncatedTo(ChronoUnit.DAYS))
+                || end.isAfter(Instant.now().truncatedTo(ChronoUnit.DAYS))) {
+            return null;
         }
+        return runRepo.findFirstByParamsFingerprintAndSymbolAndStartDateAndEndDateAndStatusOrderByCompletedAtDesc(
+                        run.getParamsFingerprint(), run.getSymbol(), start, end, BacktestRunStatus.COMPLETED)
+                .map(cached -> {
+                    try {
+                        BacktestReport report = objectMapper.readValue(cached.getResultJson(), BacktestReport.class);
+                        log.info("[用戶回測] 沿用相同參數與區間的既有結果: runId={}, cachedRunId={}",
+                                run.getId(), cached.getId());
+                        return report;
+                    } catch (Exception e) {
+                        log.warn("[用戶回測] 既有結果無法解析，改為重新計算: cachedRunId={}", cached.getId());
+                        return null;
+                    }
+                })
+                .orElse(null);
     }
 
     /** 查詢用戶的回測歷史（最近 10 筆，JOIN FETCH 避免 LazyInitializationException） */
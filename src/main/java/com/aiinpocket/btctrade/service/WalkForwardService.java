@@ -0,0 +1,269 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.dto.WalkForwardResult;
+import com.aiinpocket.btctrade.service.ParameterSweepService.Combination;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Walk-forward 最佳化：將歷史切成滾動的樣本內 / 樣本外視窗，
+ * 每個視窗在樣本內以參數掃描挑出最佳組合，再於緊接的樣本外區間驗證，最後把樣本外結果串成一份報告。
+ *
+ * <p>與單次回測 / 績效計算（全部為樣本內）相比，樣本外報告才是參數穩健度的誠實估計。
+ * <ul>
+ *   <li>K 線只載入一次；所有視窗以 bar 區間共用同一份不可變的 {@link BacktestBars}，
+ *       視窗之前的歷史即為指標暖機，不需重讀資料</li>
+ *   <li>指標欄依指標週期計算一次、跨所有視窗共用；同一組欄位上各視窗並行</li>
+ *   <li>樣本外各視窗也並行執行，之後依序以前一段的期末資金複利縮放串接</li>
+ *   <li>與參數掃描共用 ForkJoinPool 與組合上限</li>
+ * </ul>
+ *
+ * <p>與參數掃描一樣以 {@code backtest_run} 紀錄排入 {@link BacktestJobQueue}，
+ * 提交與扣體力見 {@link UserBacktestService#submitWalkForward}，失敗時退還體力。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WalkForwardService {
+
+    private static final int MIN_IN_SAMPLE_DAYS = 7;
+    private static final int MAX_WINDOWS = 120;
+
+    private final ParameterSweepService sweepService;
+    private final BacktestService backtestService;
+    private final IntervalParams intervalParams;
+
+    /** 一個視窗的 bar 區間：樣本內 [isFrom, isTo)，樣本外 [isTo, oosTo) */
+    record Span(int index, int isFrom, int isTo, int oosTo) {}
+
+    private record Candidate(int window, Combination combination, BacktestReport report) {}
+
+    /**
+     * 提交前驗證視窗與參數軸，並計算體力：每根 K 線在樣本內被評估約 ceil(IS/OOS) 次，
+     * 故以 {@code 年數 × ceil(IS/OOS)} 年份、依組合數折算。
+     *
+     * @throws IllegalArgumentException 視窗或參數軸不合法、組合數超過上限
+     */
+    int staminaCost(TradingStrategyProperties base, Map<String, Object> axes, int years,
+                    int inSampleDays, int outOfSampleDays) {
+        checkWindows(inSampleDays, outOfSampleDays);
+        int combinations = sweepService.plan(base, axes).combinations().size();
+        int passes = (inSampleDays + outOfSampleDays - 1) / outOfSampleDays;
+        return sweepService.staminaCost(years * passes, combinations);
+    }
+
+    private static void checkWindows(int inSampleDays, int outOfSampleDays) {
+        if (inSampleDays < MIN_IN_SAMPLE_DAYS || outOfSampleDays < 1 || outOfSampleDays > inSampleDays) {
+            throw new IllegalArgumentException("樣本內需至少 " + MIN_IN_SAMPLE_DAYS + " 天，樣本外需 1 天以上且不超過樣本內");
+        }
+    }
+
+    /**
+     * 執行 walk-forward（於呼叫端執行緒等待結果）。由 {@link UserBacktestService} 在回測佇列的工作執行緒中呼叫。
+     *
+     * @param base            提交時的模板參數快照
+     * @param inSampleDays    樣本內視窗長度（天）
+     * @param outOfSampleDays 樣本外視窗長度（天），也是視窗的滾動步長
+     * @param axes            參數軸，格式同 {@link ParameterSweepService#sweep}
+     * @param staminaCost     提交時扣除的體力（僅寫入結果）
+     * @param progress        以已完成的（視窗 × 組合）數加上已完成的樣本外視窗數回報進度；
+     *                        拋出 {@link java.util.concurrent.CancellationException} 時中止
+     * @throws IllegalArgumentException 視窗或參數軸不合法、歷史資料不足
+     */
+    public WalkForwardResult walkForward(String symbol, Instant startDate, Instant endDate,
+                                         TradingStrategyProperties base,
+                                         int inSampleDays, int outOfSampleDays, Map<String, Object> axes,
+                                         int staminaCost, BacktestProgress progress) {
+        checkWindows(inSampleDays, outOfSampleDays);
+        List<Combination> combos = sweepService.plan(base, axes).combinations();
+        long startNanos = System.nanoTime();
+
+        BacktestBars bars = backtestService.loadBars(symbol, startDate, endDate);
+        ParameterSweepService.checkBars(bars, combos);
+        List<Span> spans = spans(bars.openTime(), inSampleDays, outOfSampleDays);
+        if (spans.isEmpty()) {
+            throw new IllegalArgumentException("歷史資料不足以切出任何樣本內/樣本外視窗");
+        }
+
+        Map<StrategyParams, List<Combination>> groups = combos.stream()
+                .collect(Collectors.groupingBy(c -> c.props().strategy(), LinkedHashMap::new, Collectors.toList()));
+        log.info("[Walk-forward] {}：{} 視窗 × {} 組合（{} 組指標週期），{} 根 K 線",
+                symbol, spans.size(), combos.size(), groups.size(), bars.size());
+
+        // 各視窗與組合在池中並行完成，回報序列化後交給（非執行緒安全的）progress
+        long total = (long) spans.size() * combos.size() + spans.size();
+        AtomicLong done = new AtomicLong();
+        Runnable step = () -> {
+            synchronized (done) {
+                progress.onBars(done.incrementAndGet(), total);
+            }
+        };
+        progress.onBars(0, total);
+
+        // ---- 樣本內：每組指標欄算一次，各視窗並行掃描 ----
+        List<Candidate> candidates = sweepService.inPool(() -> groups.values().parallelStream()
+                .flatMap(group -> inSample(symbol, bars, spans, group, step).stream())
+                .toList());
+        Candidate[] best = new Candidate[spans.size()];
+        Comparator<Candidate> ranking = Comparator.comparing(Candidate::report, ParameterSweepService.RANKING);
+        for (Candidate c : candidates) {
+            if (best[c.window()] == null || ranking.compare(c, best[c.window()]) < 0) {
+                best[c.window()] = c;
+            }
+        }
+
+        // ---- 樣本外：依勝出參數的指標週期分組，各視窗並行 ----
+        Map<StrategyParams, List<Span>> winners = spans.stream().collect(Collectors.groupingBy(
+                s -> best[s.index()].combination().props().strategy(), LinkedHashMap::new, Collectors.toList()));
+        BacktestKernel.Result[] outOfSample = new BacktestKernel.Result[spans.size()];
+        sweepService.inPool(() -> {
+            winners.values().parallelStream().forEach(group -> {
+                IndicatorColumns columns = columns(bars, best[group.getFirst().index()].combination().props());
+                group.parallelStream().forEach(span -> {
+                    outOfSample[span.index()] = backtestService.runKernel(
+                            bars, columns, best[span.index()].combination().props(), span.isTo(), span.oosTo());
+                    step.run();
+                });
+            });
+            return null;
+        });
+
+        WalkForwardResult result = stitch(symbol, bars, spans, best, outOfSample, inSampleDays, outOfSampleDays,
+                combos.size(), staminaCost, (System.nanoTime() - startNanos) / 1_000_000);
+        log.info("[Walk-forward] {} 完成：樣本外年化 {}，耗時 {} ms",
+                symbol, result.outOfSample().annualizedReturn(), result.elapsedMs());
+        return result;
+    }
+
+    private List<Candidate> inSample(String symbol, BacktestBars bars, List<Span> spans, List<Combination> group,
+                                     Runnable onCandidate) {
+        IndicatorColumns columns = columns(bars, group.getFirst().props());
+        long[] openTime = bars.openTime();
+        return spans.parallelStream()
+                .flatMap(span -> group.stream().map(c -> {
+                    Candidate candidate = new Candidate(span.index(), c, backtestService.report(symbol,
+                            Instant.ofEpochMilli(openTime[span.isFrom()]), Instant.ofEpochMilli(openTime[span.isTo() - 1]),
+                            bars, span.isTo() - span.isFrom(),
+                            backtestService.runKernel(bars, columns, c.props(), span.isFrom(), span.isTo())));
+                    onCandidate.run();
+                    return candidate;
+                }))
+                .toList();
+    }
+
+    private static IndicatorColumns columns(BacktestBars bars, TradingStrategyProperties props) {
+        return IndicatorColumns.compute(bars, new TechnicalIndicatorService(props).createEngine());
+    }
+
+    /**
+     * 依時間切出視窗：第 k 個視窗的樣本內起點為 {@code t0 + k × OOS}；
+     * 只保留樣本外區間完整落在資料範圍內的視窗。
+     */
+    List<Span> spans(long[] openTime, int inSampleDays, int outOfSampleDays) {
+        List<Span> spans = new ArrayList<>();
+        if (openTime.length == 0) return spans;
+        long dayMs = 86_400_000L;
+        long barMs = intervalParams.barDurationMinutes() * 60_000L;
+        long isMs = inSampleDays * dayMs;
+        long oosMs = outOfSampleDays * dayMs;
+        long t0 = openTime[0];
+        long dataEnd = openTime[openTime.length - 1] + barMs;
+        for (int k = 0; ; k++) {
+            long isStart = t0 + k * oosMs;
+            long isEnd = isStart + isMs;
+            long oosEnd = isEnd + oosMs;
+            if (oosEnd > dataEnd) break;
+            if (spans.size() == MAX_WINDOWS) {
+                throw new IllegalArgumentException("視窗數超過上限 " + MAX_WINDOWS + "，請加長樣本外天數");
+            }
+            int isFrom = lowerBound(openTime, isStart);
+            int isTo = lowerBound(openTime, isEnd);
+            int oosTo = lowerBound(openTime, oosEnd);
+            if (isTo > isFrom && oosTo > isTo) {
+                spans.add(new Span(spans.size(), isFrom, isTo, oosTo));
+            }
+        }
+        return spans;
+    }
+
+    private static int lowerBound(long[] sorted, long key) {
+        int i = Arrays.binarySearch(sorted, key);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    /**
+     * 樣本外結果依序串接：第 k 段的交易與權益乘上前面各段的累積報酬倍數（部位以資金比例計算，故可線性縮放）。
+     */
+    private WalkForwardResult stitch(String symbol, BacktestBars bars, List<Span> spans, Candidate[] best,
+                                     BacktestKernel.Result[] outOfSample, int inSampleDays, int outOfSampleDays,
+                                     int combinations, int staminaCost, long elapsedMs) {
+        long[] openTime = bars.openTime();
+        double initialCapital = outOfSample[0].initialCapital();
+        double factor = 1;
+        List<BacktestKernel.Trade> trades = new ArrayList<>();
+        int equityCount = Arrays.stream(outOfSample).mapToInt(r -> r.equity().length).sum();
+        int[] equityBars = new int[equityCount];
+        double[] equity = new double[equityCount];
+        int e = 0;
+        List<WalkForwardResult.Window> windows = new ArrayList<>(spans.size());
+        double inSampleSum = 0;
+
+        for (Span span : spans) {
+            BacktestKernel.Result r = outOfSample[span.index()];
+            double scale = factor * initialCapital / r.initialCapital();
+            for (BacktestKernel.Trade t : r.trades()) {
+                trades.add(new BacktestKernel.Trade(t.direction(), t.entryBar(), t.exitBar(), t.entryPrice(),
+                        t.exitPrice(), t.pnl() * scale, t.capitalUsed() * scale, t.exitReason()));
+            }
+            for (int k = 0; k < r.equity().length; k++, e++) {
+                equityBars[e] = r.equityBars()[k];
+                equity[e] = r.equity()[k] * scale;
+            }
+            double windowReturn = r.finalCapital() / r.initialCapital();
+            factor *= windowReturn;
+
+            BacktestReport is = best[span.index()].report();
+            inSampleSum += is.annualizedReturn().doubleValue();
+            windows.add(new WalkForwardResult.Window(span.index(),
+                    Instant.ofEpochMilli(openTime[span.isFrom()]), Instant.ofEpochMilli(openTime[span.isTo() - 1]),
+                    Instant.ofEpochMilli(openTime[span.isTo()]), Instant.ofEpochMilli(openTime[span.oosTo() - 1]),
+                    best[span.index()].combination().overrides(),
+                    is.annualizedReturn(), is.sharpeRatio(),
+                    BigDecimal.valueOf(windowReturn - 1).setScale(6, RoundingMode.HALF_UP),
+                    r.trades().size()));
+        }
+
+        Span first = spans.getFirst();
+        Span last = spans.getLast();
+        BacktestKernel.Result stitched = new BacktestKernel.Result(first.isTo(), trades, equityBars, equity,
+                initialCapital, initialCapital * factor, null);
+        BacktestReport report = backtestService.report(symbol,
+                Instant.ofEpochMilli(openTime[first.isTo()]), Instant.ofEpochMilli(openTime[last.oosTo() - 1]),
+                bars, last.oosTo() - first.isTo(), stitched);
+
+        double inSampleMean = inSampleSum / spans.size();
+        BigDecimal efficiency = inSampleMean > 0
+                ? BigDecimal.valueOf(report.annualizedReturn().doubleValue() / inSampleMean).setScale(4, RoundingMode.HALF_UP)
+                : null;
+        return new WalkForwardResult(symbol, inSampleDays, outOfSampleDays, combinations, staminaCost,
+                elapsedMs, windows, efficiency, report);
+    }
+}
@@ -1,5 +1,6 @@
 package com.aiinpocket.btctrade.service.notification;
 
+import com.aiinpocket.btctrade.model.dto.AlertNotification;
 import com.aiinpocket.btctrade.model.dto.TradeNotification;
 import com.aiinpocket.btctrade.model.entity.NotificationChannel;
 import com.aiinpocket.btctrade.model.enums.ChannelType;
@@ -68,6 +69,35 @@ public class DiscordNotificationSender implements NotificationSender {
         }
     }
 
+    @Override
+    public void sendAlert(NotificationChannel channel, AlertNotification alert) {
+        try {
+            Map<String, Object> config = parseConfig(objectMapper, channel.getConfigJson());
+            String webhookUrl = (String) config.get("webhookUrl");
+
+            Map<String, Object> embed = Map.of(
+                    "title", "BtcTrade 提醒",
+                    "description", alert.toMessageText(),
+                    "color", 16705372
+            );
+            Map<String, Object> body = Map.of(
+                    "embeds", List.of(embed),
+                    "username", "BtcTrade"
+            );
+
+            restClient.post()
+                    .uri(webhookUrl)
+                    .header("Content-Type", "application/json")
+                    .body(body)
+                    .retrieve()
+                    .toBodilessEntity();
+
+            log.info("[通知-Discord] 提醒已發送");
+        } catch (Exception e) {
+            log.error("[通知-Discord] 提醒發送失敗: channelId={}", channel.getId(), e);
+        }
+    }
+
     @Override
     public boolean testConnection(NotificationChannel channel) {
         try {
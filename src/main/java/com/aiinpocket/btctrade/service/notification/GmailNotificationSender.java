@@ -1,5 +1,6 @@
 package com.aiinpocket.btctrade.service.notification;
 
+import com.aiinpocket.btctrade.model.dto.AlertNotification;
 import com.aiinpocket.btctrade.model.dto.TradeNotification;
 import com.aiinpocket.btctrade.model.entity.NotificationChannel;
 import com.aiinpocket.btctrade.model.enums.ChannelType;
@@ -64,6 +65,25 @@ public class GmailNotificationSender implements NotificationSender {
         }
     }
 
+    @Override
+    public void sendAlert(NotificationChannel channel, AlertNotification alert) {
+        try {
+            Map<String, Object> config = parseConfig(objectMapper, channel.getConfigJson());
+            String recipientEmail = (String) config.get("recipientEmail");
+
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo(recipientEmail);
+            message.setSubject(String.format("[BtcTrade] 提醒 %s %s %s",
+                    alert.symbol(), alert.type().name(), alert.threshold().toPlainString()));
+            message.setText(alert.toMessageText());
+
+            mailSender.send(message);
+            log.info("[通知-Gmail] 提醒郵件已發送至 {}", recipientEmail);
+        } catch (Exception e) {
+            log.error("[通知-Gmail] 提醒發送失敗: channelId={}", channel.getId(), e);
+        }
+    }
+
     @Override
     public boolean testConnection(NotificationChannel channel) {
         try {
@@ -1,5 +1,6 @@
 package com.aiinpocket.btctrade.service.notification;
 
+import com.aiinpocket.btctrade.model.dto.AlertNotification;
 import com.aiinpocket.btctrade.model.dto.TradeNotification;
 import com.aiinpocket.btctrade.model.entity.NotificationChannel;
 import com.aiinpocket.btctrade.model.enums.ChannelType;
@@ -133,4 +134,25 @@ public class NotificationDispatcher {
             }
         }
     }
+
+    /**
+     * 對單一使用者發送自訂提醒的觸發通知。
+     * 提醒由使用者主動建立，發送到所有已啟用的管道（不受進場 / 出場訂閱設定影響）。
+     */
+    @Async("notificationExecutor")
+    public void notifyAlert(Long userId, AlertNotification alert) {
+        for (NotificationChannel channel : channelRepo.findByUserIdAndEnabledTrue(userId)) {
+            NotificationSender sender = senderMap.get(channel.getChannelType());
+            if (sender == null) {
+                log.warn("[通知分發] 找不到 {} 類型的發送器", channel.getChannelType());
+                continue;
+            }
+            try {
+                sender.sendAlert(channel, alert);
+            } catch (Exception e) {
+                log.error("[通知分發] 提醒發送失敗: userId={}, channelId={}, type={}",
+                        userId, channel.getId(), channel.getChannelType(), e);
+            }
+        }
+    }
 }
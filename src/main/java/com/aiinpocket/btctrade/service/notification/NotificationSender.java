@@ -1,5 +1,6 @@
 package com.aiinpocket.btctrade.service.notification;
 
+import com.aiinpocket.btctrade.model.dto.AlertNotification;
 import com.aiinpocket.btctrade.model.dto.TradeNotification;
 import com.aiinpocket.btctrade.model.entity.NotificationChannel;
 import com.aiinpocket.btctrade.model.enums.ChannelType;
@@ -27,6 +28,14 @@ public interface NotificationSender {
      */
     void send(NotificationChannel channel, TradeNotification notification);
 
+    /**
+     * 發送用戶自訂提醒的觸發通知到指定的管道。
+     *
+     * @param channel  通知管道設定
+     * @param alert    提醒觸發內容
+     */
+    void sendAlert(NotificationChannel channel, AlertNotification alert);
+
     /**
      * 測試管道連線是否正常。
      * 會實際發送一條測試訊息到指定的管道。
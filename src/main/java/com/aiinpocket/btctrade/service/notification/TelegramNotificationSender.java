@@ -1,5 +1,6 @@
 package com.aiinpocket.btctrade.service.notification;
 
+import com.aiinpocket.btctrade.model.dto.AlertNotification;
 import com.aiinpocket.btctrade.model.dto.TradeNotification;
 import com.aiinpocket.btctrade.model.entity.NotificationChannel;
 import com.aiinpocket.btctrade.model.enums.ChannelType;
@@ -66,6 +67,32 @@ public class TelegramNotificationSender implements NotificationSender {
         }
     }
 
+    @Override
+    public void sendAlert(NotificationChannel channel, AlertNotification alert) {
+        try {
+            Map<String, Object> config = parseConfig(objectMapper, channel.getConfigJson());
+            String botToken = (String) config.get("botToken");
+            String chatId = (String) config.get("chatId");
+
+            Map<String, Object> body = Map.of(
+                    "chat_id", chatId,
+                    "text", alert.toMessageText(),
+                    "parse_mode", "HTML"
+            );
+
+            restClient.post()
+                    .uri(TELEGRAM_API_BASE + "/bot{token}/sendMessage", botToken)
+                    .header("Content-Type", "application/json")
+                    .body(body)
+                    .retrieve()
+                    .toBodilessEntity();
+
+            log.info("[通知-Telegram] 提醒已發送至 chatId={}", chatId);
+        } catch (Exception e) {
+            log.error("[通知-Telegram] 提醒發送失敗: channelId={}", channel.getId(), e);
+        }
+    }
+
     @Override
     public boolean testConnection(NotificationChannel channel) {
         try {
@@ -1,9 +1,9 @@
 package com.aiinpocket.btctrade.websocket;
 
 import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
-import com.aiinpocket.btctrade.model.entity.Kline;
 import com.aiinpocket.btctrade.model.enums.SyncStatus;
 import com.aiinpocket.btctrade.model.enums.TradeAction;
+import com.aiinpocket.btctrade.model.event.KlineTick;
 import tools.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -68,14 +68,14 @@ public class TradeWebSocketHandler extends TextWebSocketHandler {
         ));
     }
 
-    public void broadcastPriceTick(String symbol, Kline kline) {
+    public void broadcastPriceTick(KlineTick tick) {
         broadcast(Map.of(
                 "type", "PRICE_TICK",
-                "symbol", symbol,
-                "price", kline.getClosePrice(),
-                "high", kline.getHighPrice(),
-                "low", kline.getLowPrice(),
-                "volume", kline.getVolume(),
+                "symbol", tick.symbol(),
+                "price", tick.closePrice(),
+                "high", tick.highPrice(),
+                "low", tick.lowPrice(),
+                "volume", tick.volume(),
                 "timestamp", System.currentTimeMillis()
         ));
     }
@@ -90,6 +90,20 @@ public class TradeWebSocketHandler extends TextWebSocketHandler {
         ));
     }
 
+    /**
+     * 同步中的進度廣播，附帶目前的寫入速率（rows/s）
+     */
+    public void broadcastSyncProgress(String symbol, int progress, SyncStatus status, double rowsPerSecond) {
+        broadcast(Map.of(
+                "type", "SYNC_PROGRESS",
+                "symbol", symbol,
+                "progress", progress,
+                "status", status.name(),
+                "rowsPerSecond", Math.round(rowsPerSecond),
+                "timestamp", System.currentTimeMillis()
+        ));
+    }
+
     public void broadcastDelistNotification(String symbol) {
         broadcast(Map.of(
                 "type", "SYMBOL_DELISTED",
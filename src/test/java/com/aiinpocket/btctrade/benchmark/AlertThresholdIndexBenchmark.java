@@ -0,0 +1,99 @@
+package com.aiinpocket.btctrade.benchmark;
+
+import com.aiinpocket.btctrade.service.AlertThresholdIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 價格提醒逐 tick 比對：門檻索引 vs 逐筆掃描。
+ * 單一幣對 10 萬筆啟用中的提醒分布在現價 ±5%，tick 為隨機漫步；
+ * 觸發的提醒立即在新價位重新建立，維持啟用數量不變。
+ *
+ * <p>執行方式：{@code mvn test-compile} 後以 IDE 執行 main。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlertThresholdIndexBenchmark {
+
+    @Param({"100000"})
+    public int alerts;
+
+    private Random random;
+    private double price;
+    private long nextId;
+    private AlertThresholdIndex index;
+    private double[] thresholds;
+    private boolean[] above;
+    private int[] hitIds;
+
+    @Setup
+    public void setup() {
+        random = new Random(42);
+        price = 50_000;
+        index = new AlertThresholdIndex(alerts);
+        thresholds = new double[alerts];
+        above = new boolean[alerts];
+        hitIds = new int[alerts];
+        for (int i = 0; i < alerts; i++) {
+            double threshold = nextThreshold();
+            thresholds[i] = threshold;
+            above[i] = threshold > price;
+            index.add(nextId++, above[i], threshold);
+        }
+    }
+
+    @Benchmark
+    public int indexedTick() {
+        double[] tick = nextTick();
+        int hits = index.probe(tick[0], tick[1], (id, threshold) -> { });
+        for (int k = 0; k < hits; k++) {
+            double threshold = nextThreshold();
+            index.add(nextId++, threshold > price, threshold);
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public void naiveScanTick(Blackhole bh) {
+        double[] tick = nextTick();
+        double high = tick[0];
+        double low = tick[1];
+        int hits = 0;
+        for (int i = 0; i < thresholds.length; i++) {
+            if (above[i] ? high >= thresholds[i] : low <= thresholds[i]) {
+                hitIds[hits++] = i;
+            }
+        }
+        for (int k = 0; k < hits; k++) {
+            int i = hitIds[k];
+            thresholds[i] = nextThreshold();
+            above[i] = thresholds[i] > price;
+        }
+        bh.consume(hits);
+    }
+
+    private double[] nextTick() {
+        price *= 1 + random.nextGaussian() * 0.0008;
+        double spread = price * 0.0004 * random.nextDouble();
+        return new double[]{price + spread, price - spread};
+    }
+
+    private double nextThreshold() {
+        return price * (1 + (random.nextDouble() - 0.5) * 0.1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(AlertThresholdIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,96 @@
+package com.aiinpocket.btctrade.benchmark;
+
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.RiskParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.RsiParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.service.BacktestKernel;
+import com.aiinpocket.btctrade.service.BacktestService;
+import com.aiinpocket.btctrade.service.IncrementalIndicatorEngine;
+import com.aiinpocket.btctrade.service.IndicatorColumns;
+import com.aiinpocket.btctrade.service.StrategyService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回測吞吐量（bars/s）：5 年份 5m K 線（約 52.5 萬根）的單次回測。
+ * {@code kernel} 只量測原始型別核心；{@code fullReport} 另含 BigDecimal 報告邊界。
+ *
+ * <p>執行方式：{@code mvn test-compile} 後以 IDE 執行 main，
+ * 或加上 {@code -prof gc} 確認每根 K 線的配置量接近零。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BacktestKernelBenchmark {
+
+    private static final int BARS = 5 * 365 * 288;
+    private static final long FIVE_MINUTES = 300_000L;
+
+    private final TradingStrategyProperties props = new TradingStrategyProperties(
+            new StrategyParams(12, 26, 14, 12, 26, 9, 20, 10),
+            new RiskParams(0.04, 5, 10000, 5, 1, 0.02, 0.001, 2, 0, 0.8),
+            new RsiParams(30, 65, 35, 70, 75, 25));
+    private final IntervalParams intervalParams = IntervalParams.of5m();
+
+    private BacktestBars bars;
+    private StrategyService strategy;
+    private BacktestService backtestService;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(5);
+        long[] openTime = new long[BARS];
+        double[] high = new double[BARS];
+        double[] low = new double[BARS];
+        double[] close = new double[BARS];
+        double price = 30_000;
+        double drift = 0;
+        for (int i = 0; i < BARS; i++) {
+            if (i % 2000 == 0) drift = (random.nextInt(3) - 1) * 0.0004;
+            double o = price;
+            double c = Math.round(o * Math.exp(drift + random.nextGaussian() * 0.0025) * 100) / 100.0;
+            openTime[i] = 1_577_836_800_000L + i * FIVE_MINUTES;
+            high[i] = Math.round(Math.max(o, c) * (1 + Math.abs(random.nextGaussian()) * 0.0012) * 100) / 100.0;
+            low[i] = Math.round(Math.min(o, c) * (1 - Math.abs(random.nextGaussian()) * 0.0012) * 100) / 100.0;
+            close[i] = c;
+            price = c;
+        }
+        bars = new BacktestBars(openTime, high, low, close);
+        strategy = new StrategyService(props, intervalParams);
+        backtestService = new BacktestService(null, null, null, props, intervalParams);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BARS)
+    public void kernel(Blackhole bh) {
+        IndicatorColumns columns = IndicatorColumns.compute(bars, new IncrementalIndicatorEngine(props.strategy()));
+        bh.consume(new BacktestKernel(props, intervalParams, strategy).run(bars, columns, true));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BARS)
+    public void fullReport(Blackhole bh) {
+        bh.consume(backtestService.runOnBars("BTCUSDT",
+                Instant.ofEpochMilli(bars.openTime()[0]),
+                Instant.ofEpochMilli(bars.openTime()[BARS - 1]),
+                bars, props, true));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(BacktestKernelBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package com.aiinpocket.btctrade.benchmark;
+
+import com.aiinpocket.btctrade.model.entity.Kline;
+import com.aiinpocket.btctrade.service.BinanceKlineFrameDecoder;
+import com.aiinpocket.btctrade.service.BinanceKlineFrameDecoder.KlineFrame;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WS kline 訊框解碼：舊的 JsonNode 樹 + BigDecimal 路徑 vs 串流解碼器。
+ * 未收盤 tick 佔絕大多數流量，因此分別量測 tick 與收盤訊框。
+ *
+ * <p>執行方式：{@code mvn test-compile} 後以 IDE 執行 main，
+ * 或加上 {@code -prof gc} 觀察每次操作的配置量。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KlineFrameDecodeBenchmark {
+
+    private static final String TICK = """
+            {"stream":"btcusdt@kline_5m","data":{"e":"kline","E":1739000012345,"s":"BTCUSDT",\
+            "k":{"t":1739000000000,"T":1739000299999,"s":"BTCUSDT","i":"5m","f":4500000001,"L":4500001234,\
+            "o":"97123.45000000","c":"97150.01000000","h":"97188.88000000","l":"97100.00000000",\
+            "v":"123.45678000","n":1234,"x":false,"q":"11999999.12345678","V":"61.00000000",\
+            "Q":"5925000.50000000","B":"0"}}}""";
+
+    private static final String CLOSED = TICK.replace("\"x\":false", "\"x\":true");
+
+    private ObjectMapper objectMapper;
+    private BinanceKlineFrameDecoder decoder;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        decoder = new BinanceKlineFrameDecoder(objectMapper);
+    }
+
+    @Benchmark
+    public void treeTick(Blackhole bh) {
+        bh.consume(decodeWithTree(TICK));
+    }
+
+    @Benchmark
+    public void streamingTick(Blackhole bh) {
+        KlineFrame frame = decoder.decode(TICK);
+        bh.consume(frame.close());
+        bh.consume(frame.high());
+        bh.consume(frame.low());
+        bh.consume(frame.volume());
+    }
+
+    @Benchmark
+    public void treeClosed(Blackhole bh) {
+        bh.consume(decodeWithTree(CLOSED));
+    }
+
+    @Benchmark
+    public void streamingClosed(Blackhole bh) {
+        bh.consume(decoder.decode(CLOSED).toKline());
+    }
+
+    /** 原 BinanceKlineMessageHandler 的樹狀解析路徑（每個訊框都建立 Kline） */
+    private Kline decodeWithTree(String json) {
+        JsonNode root = objectMapper.readTree(json);
+        JsonNode data = root.has("data") ? root.get("data") : root;
+        JsonNode k = data.get("k");
+        return Kline.builder()
+                .symbol(k.get("s").asString())
+                .intervalType(k.get("i").asString())
+                .openTime(Instant.ofEpochMilli(k.get("t").asLong()))
+                .closeTime(Instant.ofEpochMilli(k.get("T").asLong()))
+                .openPrice(new BigDecimal(k.get("o").asString()))
+                .highPrice(new BigDecimal(k.get("h").asString()))
+                .lowPrice(new BigDecimal(k.get("l").asString()))
+                .closePrice(new BigDecimal(k.get("c").asString()))
+                .volume(new BigDecimal(k.get("v").asString()))
+                .quoteVolume(new BigDecimal(k.get("q").asString()))
+                .tradeCount(k.get("n").asInt())
+                .takerBuyBaseVolume(new BigDecimal(k.get("V").asString()))
+                .takerBuyQuoteVolume(new BigDecimal(k.get("Q").asString()))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(KlineFrameDecodeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,137 @@
+package com.aiinpocket.btctrade.benchmark;
+
+import com.aiinpocket.btctrade.service.StopLevelIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 盤中停損 / 移動停利逐 tick 比對：停損索引 vs 逐筆掃描。
+ * 單一幣對 5 萬筆未平倉持倉在現價附近開倉，多空各半、四分之三帶移動停利，tick 為隨機漫步；
+ * 觸發的持倉立即在新價位重新開倉，維持持倉數量不變。索引版每 256 個 tick 取走一次待寫回的停損上調。
+ *
+ * <p>執行方式：{@code mvn test-compile} 後以 IDE 執行 main。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StopLevelIndexBenchmark {
+
+    @Param({"50000"})
+    public int positions;
+
+    private Random random;
+    private double price;
+    private long nextId;
+    private long ticks;
+    private StopLevelIndex index;
+
+    // 逐筆掃描的對照組；多一格（索引 positions）作為索引版開倉參數的暫存
+    private boolean[] isLong;
+    private double[] entry;
+    private double[] stop;
+    private double[] activatePct;
+    private double[] offsetPct;
+    private double[] peakPnlPct;
+    private int[] hitSlots;
+
+    @Setup
+    public void setup() {
+        random = new Random(7);
+        price = 50_000;
+        index = new StopLevelIndex(positions);
+        isLong = new boolean[positions + 1];
+        entry = new double[positions + 1];
+        stop = new double[positions + 1];
+        activatePct = new double[positions + 1];
+        offsetPct = new double[positions + 1];
+        peakPnlPct = new double[positions + 1];
+        hitSlots = new int[positions];
+        for (int i = 0; i < positions; i++) {
+            open(i);
+            addToIndex(i);
+        }
+    }
+
+    @Benchmark
+    public int indexedTick(Blackhole bh) {
+        double[] tick = nextTick();
+        int hits = index.probe(tick[0], tick[1], (id, isLong, stopPrice) -> { });
+        for (int k = 0; k < hits; k++) {
+            open(positions);
+            addToIndex(positions);
+        }
+        if ((++ticks & 255) == 0) {
+            index.drainMoved((id, stopPrice) -> bh.consume(stopPrice));
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int naiveScanTick() {
+        double[] tick = nextTick();
+        double high = tick[0];
+        double low = tick[1];
+        int hits = 0;
+        for (int i = 0; i < positions; i++) {
+            boolean l = isLong[i];
+            if (!Double.isNaN(activatePct[i])) {
+                double pnlPct = l ? (high - entry[i]) / entry[i] : (entry[i] - low) / entry[i];
+                if (pnlPct > peakPnlPct[i]) peakPnlPct[i] = pnlPct;
+                if (peakPnlPct[i] >= activatePct[i]) {
+                    double trailLevel = Math.max(0, peakPnlPct[i] - offsetPct[i]);
+                    double newStop = round8(l ? entry[i] * (1 + trailLevel) : entry[i] * (1 - trailLevel));
+                    if (l ? newStop > stop[i] : newStop < stop[i]) stop[i] = newStop;
+                }
+            }
+            if (l ? low <= stop[i] : high >= stop[i]) {
+                hitSlots[hits++] = i;
+            }
+        }
+        for (int k = 0; k < hits; k++) {
+            open(hitSlots[k]);
+        }
+        return hits;
+    }
+
+    /** 在現價附近開倉，寫入對照組陣列的 {@code slot} */
+    private void open(int slot) {
+        boolean l = random.nextBoolean();
+        double e = round8(price * (1 + (random.nextDouble() - 0.5) * 0.002));
+        double slPct = 0.01 + random.nextDouble() * 0.03;
+        boolean trailing = random.nextInt(4) != 0;
+        isLong[slot] = l;
+        entry[slot] = e;
+        stop[slot] = round8(l ? e * (1 - slPct) : e * (1 + slPct));
+        activatePct[slot] = trailing ? 0.005 + random.nextDouble() * 0.02 : Double.NaN;
+        offsetPct[slot] = trailing ? 0.002 + random.nextDouble() * 0.01 : 0;
+        peakPnlPct[slot] = 0;
+    }
+
+    private void addToIndex(int slot) {
+        index.add(nextId++, isLong[slot], entry[slot], stop[slot], entry[slot], activatePct[slot], offsetPct[slot], false);
+    }
+
+    private double[] nextTick() {
+        price *= 1 + random.nextGaussian() * 0.0008;
+        double spread = price * 0.0004 * random.nextDouble();
+        return new double[]{price + spread, price - spread};
+    }
+
+    private static double round8(double value) {
+        return Math.floor(value * 1e8 + 0.5) / 1e8;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(StopLevelIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,94 @@
+package com.aiinpocket.btctrade.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlertThresholdIndexTest {
+
+    private record Alert(boolean isAbove, double threshold) {}
+
+    @Test
+    void matchesNaiveScanOnRandomWalk() {
+        Random random = new Random(42);
+        AlertThresholdIndex index = new AlertThresholdIndex();
+        Map<Long, Alert> reference = new HashMap<>();
+        double price = 50_000;
+        long[] nextId = {1};
+
+        for (int i = 0; i < 5_000; i++) {
+            arm(index, reference, nextId[0]++, random, price);
+        }
+
+        int totalHits = 0;
+        for (int t = 0; t < 20_000; t++) {
+            price *= 1 + random.nextGaussian() * 0.001;
+            double spread = price * 0.0005 * random.nextDouble();
+            double high = price + spread;
+            double low = price - spread;
+
+            Map<Long, Double> hits = new HashMap<>();
+            index.probe(high, low, (id, threshold) -> hits.put(id, threshold));
+
+            Map<Long, Double> expected = new HashMap<>();
+            reference.entrySet().removeIf(e -> {
+                Alert alert = e.getValue();
+                boolean hit = alert.isAbove() ? high >= alert.threshold() : low <= alert.threshold();
+                if (hit) expected.put(e.getKey(), alert.threshold());
+                return hit;
+            });
+            assertThat(hits).as("tick %d", t).isEqualTo(expected);
+            totalHits += hits.size();
+
+            // 用戶持續建立新提醒、偶爾刪除
+            for (int k = 0; k < hits.size(); k++) {
+                arm(index, reference, nextId[0]++, random, price);
+            }
+            if (t % 50 == 0 && !reference.isEmpty()) {
+                long id = reference.keySet().iterator().next();
+                assertThat(index.remove(id)).isTrue();
+                reference.remove(id);
+            }
+        }
+
+        assertThat(totalHits).isGreaterThan(5_000);
+        assertThat(index.size()).isEqualTo(reference.size());
+    }
+
+    @Test
+    void singleValueProbeFiresThresholdsOnBothSidesInclusively() {
+        AlertThresholdIndex index = new AlertThresholdIndex();
+        index.add(1, false, 25);
+        index.add(2, false, 30);
+        index.add(3, true, 70);
+        index.add(4, true, 25);
+
+        List<Long> hits = new ArrayList<>();
+        assertThat(index.probe(25, 25, (id, threshold) -> hits.add(id))).isEqualTo(3);
+        assertThat(hits).containsExactlyInAnyOrder(1L, 2L, 4L);
+
+        // 已觸發者不再觸發；同 ID 重新加入視為新的提醒
+        hits.clear();
+        index.add(1, true, 60);
+        index.probe(20, 20, (id, threshold) -> hits.add(id));
+        assertThat(hits).isEmpty();
+        index.probe(65, 65, (id, threshold) -> hits.add(id));
+        assertThat(hits).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    /** 在當前價 ±5% 內建立一筆提醒：高於現價為向上穿越，低於現價為向下穿越 */
+    private static void arm(AlertThresholdIndex index, Map<Long, Alert> reference, long id,
+                            Random random, double price) {
+        double threshold = price * (1 + (random.nextDouble() - 0.5) * 0.1);
+        boolean isAbove = threshold > price;
+        index.add(id, isAbove, threshold);
+        reference.put(id, new Alert(isAbove, threshold));
+    }
+}
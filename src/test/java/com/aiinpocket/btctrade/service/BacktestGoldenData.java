@@ -0,0 +1,162 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.RiskParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.RsiParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.dto.BacktestReport.TradeDetail;
+import com.aiinpocket.btctrade.model.dto.BacktestResultWithUnrealized;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 回測黃金結果回歸測試的共用資料：固定種子的合成 K 線、四個職業模板參數與結果的文字格式。
+ */
+final class BacktestGoldenData {
+
+    static final long FIVE_MINUTES = 300_000L;
+    static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    static final int BARS = 90 * 288;
+
+    /** 與 StrategyTemplateService 的四個職業模板相同 */
+    static final Map<String, TradingStrategyProperties> TEMPLATES = new LinkedHashMap<>();
+
+    static {
+        TEMPLATES.put("warrior", new TradingStrategyProperties(
+                new StrategyParams(12, 26, 14, 12, 26, 9, 20, 10),
+                new RiskParams(0.04, 5, 10000, 5, 1, 0.02, 0.001, 2, 0, 0.8),
+                new RsiParams(30, 65, 35, 70, 75, 25)));
+        TEMPLATES.put("mage", new TradingStrategyProperties(
+                new StrategyParams(12, 26, 14, 12, 26, 9, 20, 10),
+                new RiskParams(0.05, 10, 10000, 3, 1, 0.03, 0.001, 4, 0, 1.0),
+                new RsiParams(25, 70, 30, 75, 80, 20)));
+        TEMPLATES.put("ranger", new TradingStrategyProperties(
+                new StrategyParams(12, 26, 14, 12, 26, 9, 20, 10),
+                new RiskParams(0.05, 7, 10000, 5, 1, 0.03, 0.001, 3, 0, 0.4),
+                new RsiParams(25, 70, 30, 75, 80, 20)));
+        TEMPLATES.put("assassin", new TradingStrategyProperties(
+                new StrategyParams(8, 21, 14, 12, 26, 9, 20, 10),
+                new RiskParams(0.03, 2, 10000, 8, 1, 0.015, 0.001, 1, 0, 1.0),
+                new RsiParams(30, 65, 35, 70, 75, 25)));
+    }
+
+    private BacktestGoldenData() {
+    }
+
+    /** 合成 K 線欄位（價格取到 0.01） */
+    record Bars(long[] openTime, double[] open, double[] high, double[] low, double[] close, double[] volume) {
+        int size() {
+            return openTime.length;
+        }
+    }
+
+    /**
+     * 幾何隨機漫步，每約兩千根切換一次漂移方向（多/空/盤整），讓策略有足夠的進出場。
+     */
+    static Bars syntheticBars(int n, long seed) {
+        Random random = new Random(seed);
+        long[] openTime = new long[n];
+        double[] open = new double[n];
+        double[] high = new double[n];
+        double[] low = new double[n];
+        double[] close = new double[n];
+        double[] volume = new double[n];
+
+        double price = 42_000;
+        double drift = 0;
+        for (int i = 0; i < n; i++) {
+            if (i % 2000 == 0) {
+                drift = (random.nextInt(3) - 1) * 0.0004;
+            }
+            double o = round(price);
+            double c = round(o * Math.exp(drift + random.nextGaussian() * 0.0025));
+            double h = round(Math.max(o, c) * (1 + Math.abs(random.nextGaussian()) * 0.0012));
+            double l = round(Math.min(o, c) * (1 - Math.abs(random.nextGaussian()) * 0.0012));
+            openTime[i] = START.toEpochMilli() + i * FIVE_MINUTES;
+            open[i] = o;
+            high[i] = h;
+            low[i] = l;
+            close[i] = c;
+            volume[i] = round(1 + random.nextDouble() * 50);
+            price = c;
+        }
+        return new Bars(openTime, open, high, low, close, volume);
+    }
+
+    static Instant end(Bars bars) {
+        return Instant.ofEpochMilli(bars.openTime()[bars.size() - 1]);
+    }
+
+    /** 結果的文字格式：摘要欄位 key=value，之後每筆交易一行 CSV */
+    static String format(BacktestResultWithUnrealized result) {
+        BacktestReport r = result.report();
+        StringBuilder sb = new StringBuilder();
+        sb.append("totalBars=").append(r.totalBars()).append('\n');
+        sb.append("totalTrades=").append(r.totalTrades()).append('\n');
+        sb.append("finalCapital=").append(r.finalCapital().toPlainString()).append('\n');
+        sb.append("totalReturn=").append(r.totalReturn().toPlainString()).append('\n');
+        sb.append("maxDrawdown=").append(r.maxDrawdown().toPlainString()).append('\n');
+        sb.append("sharpeRatio=").append(r.sharpeRatio().toPlainString()).append('\n');
+        sb.append("unrealizedPnlPct=").append(result.unrealizedPnlPct() == null
+                ? "" : result.unrealizedPnlPct().toPlainString()).append('\n');
+        sb.append("unrealizedDirection=").append(result.unrealizedDirection() == null
+                ? "" : result.unrealizedDirection()).append('\n');
+        sb.append("trades:\n");
+        for (TradeDetail t : r.trades()) {
+            sb.append(t.tradeNumber()).append(',')
+                    .append(t.direction()).append(',')
+                    .append(t.entryTime()).append(',')
+                    .append(t.exitTime()).append(',')
+                    .append(t.entryPrice().toPlainString()).append(',')
+                    .append(t.exitPrice().toPlainString()).append(',')
+                    .append(t.pnl().toPlainString()).append(',')
+                    .append(t.returnPct().toPlainString()).append(',')
+                    .append(t.exitReason()).append(',')
+                    .append(t.holdingBars()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** 讀取 {@link #format} 產生的黃金檔 */
+    static Golden read(String resource) throws IOException {
+        try (InputStream in = BacktestGoldenData.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IOException("找不到黃金檔: " + resource);
+            String[] lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+            Map<String, String> summary = new LinkedHashMap<>();
+            List<String[]> trades = new ArrayList<>();
+            boolean inTrades = false;
+            for (String line : lines) {
+                if (line.isBlank()) continue;
+                if (line.equals("trades:")) {
+                    inTrades = true;
+                } else if (inTrades) {
+                    trades.add(line.split(","));
+                } else {
+                    int eq = line.indexOf('=');
+                    summary.put(line.substring(0, eq), line.substring(eq + 1));
+                }
+            }
+            return new Golden(summary, trades);
+        }
+    }
+
+    record Golden(Map<String, String> summary, List<String[]> trades) {
+        BigDecimal decimal(String key) {
+            return new BigDecimal(summary.get(key));
+        }
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+}
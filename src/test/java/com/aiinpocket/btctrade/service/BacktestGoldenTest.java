@@ -0,0 +1,106 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.dto.BacktestReport.TradeDetail;
+import com.aiinpocket.btctrade.model.dto.BacktestResultWithUnrealized;
+import com.aiinpocket.btctrade.service.BacktestGoldenData.Bars;
+import com.aiinpocket.btctrade.service.BacktestGoldenData.Golden;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 原始型別回測核心與黃金結果的回歸比對。
+ *
+ * <p>黃金檔（src/test/resources/backtest-golden）由改寫前的 BigDecimal 回測引擎
+ * 在相同合成資料上產生；四個職業模板 × 強制平倉/保留未平倉。
+ * 交易序列（方向、時間、價格、出場原因、持倉根數）須完全一致，
+ * 金額只容許 double 與 BigDecimal 累加造成的分位誤差。
+ */
+class BacktestGoldenTest {
+
+    private static final Bars BARS = BacktestGoldenData.syntheticBars(BacktestGoldenData.BARS, 20240101L);
+    private static final BigDecimal CENT = new BigDecimal("0.01");
+    private static final BigDecimal RATIO_TOLERANCE = new BigDecimal("0.000002");
+
+    private final BacktestService backtestService =
+            new BacktestService(null, null, null, null, IntervalParams.of5m());
+
+    static Stream<String> scenarios() {
+        return BacktestGoldenData.TEMPLATES.keySet().stream()
+                .flatMap(name -> Stream.of(name, name + "-open"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("scenarios")
+    void matchesGoldenResult(String scenario) throws Exception {
+        boolean keepOpen = scenario.endsWith("-open");
+        TradingStrategyProperties props = BacktestGoldenData.TEMPLATES.get(scenario.replace("-open", ""));
+        BacktestBars bars = new BacktestBars(BARS.openTime(), BARS.high(), BARS.low(), BARS.close());
+        Instant end = BacktestGoldenData.end(BARS);
+
+        BacktestResultWithUnrealized result = backtestService.runOnBars(
+                "BTCUSDT", BacktestGoldenData.START, end, bars, props, !keepOpen);
+        Golden golden = BacktestGoldenData.read("/backtest-golden/" + scenario + ".txt");
+        BacktestReport report = result.report();
+
+        assertThat(report.totalBars()).isEqualTo(Integer.parseInt(golden.summary().get("totalBars")));
+        assertThat(report.trades()).hasSize(golden.trades().size());
+        for (int k = 0; k < golden.trades().size(); k++) {
+            String[] g = golden.trades().get(k);
+            TradeDetail t = report.trades().get(k);
+            String at = scenario + " trade #" + g[0];
+            assertThat(t.direction()).as(at).isEqualTo(g[1]);
+            assertThat(t.entryTime()).as(at).isEqualTo(Instant.parse(g[2]));
+            assertThat(t.exitTime()).as(at).isEqualTo(Instant.parse(g[3]));
+            assertThat(t.entryPrice()).as(at).isEqualByComparingTo(g[4]);
+            assertThat(t.exitPrice()).as(at).isEqualByComparingTo(g[5]);
+            assertThat(t.pnl()).as(at).isCloseTo(new BigDecimal(g[6]), within(CENT));
+            assertThat(t.returnPct()).as(at).isCloseTo(new BigDecimal(g[7]), within(RATIO_TOLERANCE));
+            assertThat(t.exitReason()).as(at).isEqualTo(g[8]);
+            assertThat(t.holdingBars()).as(at).isEqualTo(Integer.parseInt(g[9]));
+        }
+
+        assertThat(report.finalCapital()).isCloseTo(golden.decimal("finalCapital"), within(CENT));
+        assertThat(report.totalReturn()).isCloseTo(golden.decimal("totalReturn"), within(RATIO_TOLERANCE));
+        assertThat(report.maxDrawdown()).isCloseTo(golden.decimal("maxDrawdown"), within(new BigDecimal("0.0001")));
+        assertThat(report.sharpeRatio()).isCloseTo(golden.decimal("sharpeRatio"), within(new BigDecimal("0.0001")));
+        if (keepOpen && !golden.summary().get("unrealizedDirection").isEmpty()) {
+            assertThat(result.unrealizedDirection()).isEqualTo(golden.summary().get("unrealizedDirection"));
+            assertThat(result.unrealizedPnlPct())
+                    .isCloseTo(golden.decimal("unrealizedPnlPct"), within(RATIO_TOLERANCE));
+        } else {
+            assertThat(result.unrealizedDirection()).isNull();
+        }
+
+        if (keepOpen) {
+            // 績效計算的檢查點模擬：中途寫出檢查點再還原接續，結果須與完整回測一致
+            int half = bars.size() / 2;
+            PerformanceSimulator first = PerformanceSimulator.create(props, IntervalParams.of5m(), BacktestGoldenData.START);
+            first.feed(new BacktestBars(Arrays.copyOf(bars.openTime(), half), Arrays.copyOf(bars.high(), half),
+                    Arrays.copyOf(bars.low(), half), Arrays.copyOf(bars.close(), half)));
+            PerformanceSimulator resumed = PerformanceSimulator.restore(props, IntervalParams.of5m(), first.checkpoint());
+            assertThat(resumed.feed(bars)).isEqualTo(bars.size() - half);
+
+            PerformanceSimulator.Metrics metrics = resumed.metrics(end);
+            assertThat(metrics.totalTrades()).isEqualTo(report.totalTrades());
+            assertThat(metrics.winRate()).isEqualByComparingTo(report.winRate());
+            assertThat(metrics.totalReturn()).isEqualByComparingTo(report.totalReturn());
+            assertThat(metrics.annualizedReturn()).isEqualByComparingTo(report.annualizedReturn());
+            assertThat(metrics.unrealizedDirection()).isEqualTo(result.unrealizedDirection());
+            assertThat(metrics.unrealizedPnlPct()).isEqualTo(result.unrealizedPnlPct());
+            // 逐根權益的回撤至少與降採樣曲線一樣深
+            assertThat(metrics.maxDrawdown()).isLessThanOrEqualTo(report.maxDrawdown());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BacktestQueueProperties;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository.Exhausted;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository.Queued;
+import com.aiinpocket.btctrade.websocket.TradeWebSocketHandler;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class BacktestJobQueueTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+    private static final long NO_AGING = 0;
+
+    private record Job(Long getId, Long getUserId, Instant getStartDate, Instant getEndDate, Instant getCreatedAt)
+            implements Queued {}
+
+    private record Expired(Long getId, Long getUserId, Integer getStaminaCost) implements Exhausted {}
+
+    private static Job job(long id, long user, int years, int submittedSecond) {
+        Instant end = Instant.parse("2025-01-01T00:00:00Z");
+        return new Job(id, user, end.minus(Duration.ofDays(365L * years)), end, T0.plusSeconds(submittedSecond));
+    }
+
+    private static List<Long> ids(List<Queued> order) {
+        return order.stream().map(Queued::getId).toList();
+    }
+
+    @Test
+    void interleavesUsersAndPrefersShortRanges() {
+        // 用戶 1 先排了兩個 5 年，用戶 2 之後排 1 年，用戶 3 排 10 年
+        List<Queued> queued = List.of(job(1, 1, 5, 0), job(2, 1, 5, 1), job(3, 2, 1, 2), job(4, 3, 10, 0));
+
+        assertThat(ids(BacktestJobQueue.order(queued, Map.of(), T0.plusSeconds(3), NO_AGING)))
+                .containsExactly(3L, 1L, 4L, 2L);
+        // 用戶 1 已有一個執行中：其他用戶的回測全部排在前面
+        assertThat(ids(BacktestJobQueue.order(queued, Map.of(1L, 1), T0.plusSeconds(3), NO_AGING)))
+                .containsExactly(3L, 4L, 1L, 2L);
+    }
+
+    @Test
+    void agingLetsLongRangesOvertakeNewShortOnes() {
+        List<Queued> queued = List.of(job(1, 1, 10, 0), job(2, 2, 1, 600));
+        Instant now = T0.plusSeconds(601);
+
+        // 每等 1 分鐘折抵 1 年：10 年的回測等了 10 分鐘，分數已低於剛提交的 1 年回測
+        assertThat(ids(BacktestJobQueue.order(queued, Map.of(), now, 60_000))).containsExactly(1L, 2L);
+        assertThat(ids(BacktestJobQueue.order(queued, Map.of(), now, NO_AGING))).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void refundsStaminaOnlyForExhaustedRunsThisNodeMarkedFailed() {
+        BacktestRunRepository runRepo = mock(BacktestRunRepository.class);
+        UserBacktestService userBacktestService = mock(UserBacktestService.class);
+        BacktestJobQueue queue = new BacktestJobQueue(runRepo, userBacktestService, mock(TradeWebSocketHandler.class),
+                new BacktestQueueProperties(1, 3, 60_000, 3, 2000, 500, 60_000, 15_000, "node-a"));
+        try {
+            when(runRepo.findExpiredExhausted(T0, 3)).thenReturn(List.of(new Expired(1L, 7L, 4), new Expired(2L, 8L, 2)));
+            when(runRepo.reclaimExpiredExhausted(eq(1L), eq(T0), eq(3), anyString())).thenReturn(1);
+            // 第 2 筆已被其他節點先收回：不重複退還
+            when(runRepo.reclaimExpiredExhausted(eq(2L), eq(T0), eq(3), anyString())).thenReturn(0);
+
+            queue.reclaimExpiredLeases(T0);
+
+            verify(userBacktestService).refundStamina(1L, 7L, 4);
+            verifyNoMoreInteractions(userBacktestService);
+            verify(runRepo).requeueExpired(T0);
+            verify(runRepo).reclaimExpiredCancelled(eq(T0), any());
+        } finally {
+            queue.shutdown();
+        }
+    }
+}
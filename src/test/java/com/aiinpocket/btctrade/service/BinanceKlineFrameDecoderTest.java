@@ -0,0 +1,59 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.entity.Kline;
+import com.aiinpocket.btctrade.service.BinanceKlineFrameDecoder.KlineFrame;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinanceKlineFrameDecoderTest {
+
+    private static final String COMBINED = """
+            {"stream":"pepeusdt@kline_5m","data":{"e":"kline","E":1739000012345,"s":"PEPEUSDT",\
+            "k":{"t":1739000000000,"T":1739000299999,"s":"PEPEUSDT","i":"5m","f":1,"L":2,\
+            "o":"0.00001234","c":"0.00001250","h":"0.00001260","l":"0.00001200",\
+            "v":"98765432109876.00000000","n":42,"x":true,"q":"1234567.89000000",\
+            "V":"123456789012345678901.12345678","Q":"0","B":"0"}}}""";
+
+    private final BinanceKlineFrameDecoder decoder = new BinanceKlineFrameDecoder(new ObjectMapper());
+
+    @Test
+    void decodesCombinedStreamIntoExactKline() {
+        KlineFrame frame = decoder.decode(COMBINED);
+
+        assertThat(frame).isNotNull();
+        assertThat(frame.isClosed()).isTrue();
+        assertThat(frame.close()).isEqualTo(0.0000125);
+
+        Kline kline = frame.toKline();
+        assertThat(kline.getSymbol()).isEqualTo("PEPEUSDT");
+        assertThat(kline.getIntervalType()).isEqualTo("5m");
+        assertThat(kline.getOpenTime()).isEqualTo(Instant.ofEpochMilli(1739000000000L));
+        assertThat(kline.getCloseTime()).isEqualTo(Instant.ofEpochMilli(1739000299999L));
+        assertThat(kline.getOpenPrice()).isEqualByComparingTo("0.00001234");
+        assertThat(kline.getLowPrice()).isEqualByComparingTo("0.00001200");
+        assertThat(kline.getVolume()).isEqualByComparingTo("98765432109876");
+        assertThat(kline.getQuoteVolume()).isEqualByComparingTo("1234567.89");
+        // 尾數超出 long 範圍時退回 BigDecimal，仍需精確
+        assertThat(kline.getTakerBuyBaseVolume())
+                .isEqualByComparingTo(new BigDecimal("123456789012345678901.12345678"));
+        assertThat(kline.getTradeCount()).isEqualTo(42);
+    }
+
+    @Test
+    void reusesInternedSymbolAcrossFrames() {
+        String first = decoder.decode(COMBINED).symbol();
+        String second = decoder.decode(COMBINED.replace("\"x\":true", "\"x\":false")).symbol();
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    void ignoresNonKlineMessages() {
+        assertThat(decoder.decode("{\"result\":null,\"id\":1}")).isNull();
+    }
+}
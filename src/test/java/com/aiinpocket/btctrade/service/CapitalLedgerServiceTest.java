@@ -0,0 +1,68 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.entity.CapitalLedger;
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.repository.CapitalLedgerRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CapitalLedgerServiceTest {
+
+    private static final Instant CLOSED_AT = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final CapitalLedgerRepository ledgerRepo = mock(CapitalLedgerRepository.class);
+    private final CapitalLedgerService service = new CapitalLedgerService(ledgerRepo, mock(DistributedLockService.class));
+
+    private static TradePosition closed(Long userId, String pnl) {
+        return TradePosition.builder().id(9L).userId(userId).realizedPnl(new BigDecimal(pnl))
+                .exitTime(CLOSED_AT).backtest(false).build();
+    }
+
+    @Test
+    void seedsFromHistoryOnFirstCloseAndFallsBackToIncrementOnConcurrentSeed() {
+        // 已有帳本：直接累加
+        when(ledgerRepo.recordClose(eq(1L), any(), anyLong(), any(), any())).thenReturn(1);
+        service.recordClose(closed(1L, "12.5"));
+        verify(ledgerRepo).recordClose(eq(1L), eq(new BigDecimal("12.5")), eq(1L), eq(CLOSED_AT), any());
+        verify(ledgerRepo, never()).seedFromHistory(eq(1L), anyLong(), any(), anyLong(), any());
+
+        // 首次平倉：從歷史建立（全域持倉記在 GLOBAL_USER_ID）
+        when(ledgerRepo.recordClose(eq(0L), any(), anyLong(), any(), any())).thenReturn(0);
+        when(ledgerRepo.seedFromHistory(0L, 9L, new BigDecimal("-3"), 0L, CLOSED_AT)).thenReturn(1);
+        service.recordClose(closed(null, "-3"));
+        verify(ledgerRepo, times(1)).recordClose(eq(0L), any(), anyLong(), any(), any());
+
+        // 其他交易同時建立了帳本：改為累加
+        when(ledgerRepo.recordClose(eq(2L), any(), anyLong(), any(), any())).thenReturn(0, 1);
+        when(ledgerRepo.seedFromHistory(eq(2L), anyLong(), any(), anyLong(), any())).thenReturn(0);
+        service.recordClose(closed(2L, "5"));
+        verify(ledgerRepo, times(2)).recordClose(eq(2L), any(), anyLong(), any(), any());
+    }
+
+    @Test
+    void readsSingleLedgerRowPerUserAndTotalForLegacyGlobalPath() {
+        when(ledgerRepo.findByUserId(1L)).thenReturn(Optional.of(
+                CapitalLedger.builder().userId(1L).realizedPnl(new BigDecimal("70")).tradeCount(2).winCount(1).build()));
+        when(ledgerRepo.findByUserId(2L)).thenReturn(Optional.empty());
+        when(ledgerRepo.sumRealizedPnl()).thenReturn(new BigDecimal("120"));
+
+        assertThat(service.realizedPnl(1L)).isEqualByComparingTo("70");
+        assertThat(service.ledger(1L).winRate()).isEqualByComparingTo("0.5");
+        assertThat(service.realizedPnl(2L)).isEqualByComparingTo("0");
+        assertThat(service.ledger(2L).getTradeCount()).isZero();
+        assertThat(service.realizedPnl(null)).isEqualByComparingTo("120");
+    }
+}
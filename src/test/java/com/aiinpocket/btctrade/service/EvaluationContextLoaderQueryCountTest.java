@@ -0,0 +1,169 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.EvaluationContext;
+import com.aiinpocket.btctrade.model.dto.EvaluationContext.Member;
+import com.aiinpocket.btctrade.model.entity.AppUser;
+import com.aiinpocket.btctrade.model.entity.CapitalLedger;
+import com.aiinpocket.btctrade.model.entity.StrategyTemplate;
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.model.entity.UserWatchlist;
+import com.aiinpocket.btctrade.model.enums.PositionDirection;
+import com.aiinpocket.btctrade.model.enums.PositionStatus;
+import com.aiinpocket.btctrade.repository.CapitalLedgerRepository;
+import com.aiinpocket.btctrade.repository.StrategyTemplateRepository;
+import com.aiinpocket.btctrade.repository.TradePositionRepository;
+import com.aiinpocket.btctrade.repository.UserWatchlistRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 對本機 PostgreSQL（{@code docker compose up -d postgres}）計算收盤評估載入的 SQL 次數。
+ * 設定 {@code BTCTRADE_TEST_DB_URL}（例如 {@code jdbc:postgresql://localhost:5432/btctrade}）才會執行，
+ * 資料建在獨立的 schema 中，不影響既有資料。
+ */
+@EnabledIfEnvironmentVariable(named = "BTCTRADE_TEST_DB_URL", matches = ".+")
+class EvaluationContextLoaderQueryCountTest {
+
+    private static final String SCHEMA = "evaluation_context_test";
+    private static final String SYMBOL = "BTCUSDT";
+
+    private static LocalContainerEntityManagerFactoryBean factoryBean;
+    private static EntityManagerFactory emf;
+    private static EvaluationContextLoader loader;
+    private static StrategyTemplate[] templates;
+    private static int seeded;
+
+    @BeforeAll
+    static void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getenv("BTCTRADE_TEST_DB_URL"),
+                System.getenv().getOrDefault("DB_USERNAME", "btctrade"),
+                System.getenv().getOrDefault("DB_PASSWORD", "btctrade_dev"));
+        new JdbcTemplate(dataSource).execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE; CREATE SCHEMA " + SCHEMA);
+        dataSource.setSchema(SCHEMA);
+
+        factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan("com.aiinpocket.btctrade.model.entity");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "create",
+                "hibernate.generate_statistics", "true"));
+        factoryBean.afterPropertiesSet();
+        emf = factoryBean.getObject();
+
+        JpaRepositoryFactory repositories = new JpaRepositoryFactory(
+                SharedEntityManagerCreator.createSharedEntityManager(emf));
+        TradePositionRepository positionRepo = repositories.getRepository(TradePositionRepository.class);
+        loader = new EvaluationContextLoader(
+                repositories.getRepository(UserWatchlistRepository.class),
+                repositories.getRepository(StrategyTemplateRepository.class),
+                repositories.getRepository(CapitalLedgerRepository.class),
+                new OpenPositionRegistry(positionRepo, new SimpleMeterRegistry()));
+
+        Iterator<TradingStrategyProperties> props = BacktestGoldenData.TEMPLATES.values().iterator();
+        templates = new StrategyTemplate[]{
+                StrategyTemplate.fromProperties(props.next()).name("a").build(),
+                StrategyTemplate.fromProperties(props.next()).name("b").build()};
+        inTransaction(em -> {
+            for (StrategyTemplate template : templates) em.persist(template);
+        });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (factoryBean != null) factoryBean.destroy();
+    }
+
+    @Test
+    void loadsWholeSymbolInConstantNumberOfQueries() {
+        seedUsers(50);
+        EvaluationContext small = loadCounting(4);
+        assertThat(small.userCount()).isEqualTo(50);
+        assertThat(small.groups()).hasSize(2);
+
+        // 每位用戶：帳本累計 +70（2 筆平倉）、偶數用戶另有 1 筆未平倉；其他幣對的觀察者不列入
+        Member first = small.groups().values().iterator().next().getFirst();
+        assertThat(first.realizedPnl()).isEqualByComparingTo("70");
+        assertThat(small.groups().values().stream().flatMap(List::stream)
+                .filter(m -> m.openPosition() != null)).hasSize(25);
+
+        seedUsers(450);
+        EvaluationContext large = loadCounting(4);
+        assertThat(large.userCount()).isEqualTo(500);
+    }
+
+    private static EvaluationContext loadCounting(int expectedStatements) {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        EvaluationContext context = loader.load(SYMBOL, Instant.now().minus(7, ChronoUnit.DAYS));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(expectedStatements);
+        return context;
+    }
+
+    private static void seedUsers(int count) {
+        inTransaction(em -> {
+            Instant entry = Instant.now().minus(3, ChronoUnit.DAYS);
+            for (int i = 0; i < count; i++) {
+                int n = seeded++;
+                AppUser user = AppUser.builder().oauthProvider("GOOGLE").oauthId("u" + n)
+                        .email("u" + n + "@example.com").activeStrategyTemplateId(templates[n % 2].getId()).build();
+                em.persist(user);
+                em.persist(UserWatchlist.builder().user(user).symbol(SYMBOL).build());
+                em.persist(UserWatchlist.builder().user(user).symbol("ETHUSDT").build());
+                em.persist(CapitalLedger.builder().userId(user.getId()).realizedPnl(new BigDecimal("70"))
+                        .tradeCount(2).winCount(1).lastClosedAt(entry).updatedAt(entry).build());
+                if (n % 2 == 0) {
+                    em.persist(openPosition(user, entry.plusSeconds(120)));
+                }
+                // 只觀察其他幣對、有啟用策略的用戶
+                AppUser other = AppUser.builder().oauthProvider("GOOGLE").oauthId("o" + n)
+                        .email("o" + n + "@example.com").activeStrategyTemplateId(templates[0].getId()).build();
+                em.persist(other);
+                em.persist(UserWatchlist.builder().user(other).symbol("ETHUSDT").build());
+            }
+        });
+    }
+
+    private static TradePosition openPosition(AppUser user, Instant entry) {
+        return TradePosition.builder().userId(user.getId()).symbol(SYMBOL)
+                .direction(PositionDirection.LONG).status(PositionStatus.OPEN)
+                .entryPrice(new BigDecimal("50000")).entryTime(entry)
+                .quantity(new BigDecimal("0.1")).capitalUsed(new BigDecimal("5000"))
+                .stopLossPrice(new BigDecimal("49000")).backtest(false).build();
+    }
+
+    private static void inTransaction(Consumer<EntityManager> work) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            work.accept(em);
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties.StrategyParams;
+import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.ta4j.core.BarSeries;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 串流指標引擎與 ta4j（{@link TechnicalIndicatorService}）的等價性。
+ *
+ * <p>以固定種子產生一年份 5m K 線（價格取到 0.01，含平盤與等高低點以涵蓋 RSI / DM 的邊界），
+ * 逐根比對兩種實作的 {@link IndicatorSnapshot}。
+ */
+class IncrementalIndicatorEngineTest {
+
+    private static final int BARS_PER_YEAR = 365 * 288;
+    private static final long FIVE_MINUTES = 300_000L;
+    private static final BigDecimal TOLERANCE = new BigDecimal("0.000001");
+
+    private static final StrategyParams DEFAULT =
+            new StrategyParams(12, 26, 14, 12, 26, 9, 20, 10);
+    private static final StrategyParams CUSTOM =
+            new StrategyParams(9, 50, 7, 8, 21, 5, 55, 20);
+
+    private final BarSeriesFactory barSeriesFactory = new BarSeriesFactory();
+
+    @Test
+    void matchesTa4jOverOneYearOfBars() {
+        assertEquivalent(randomWalk(BARS_PER_YEAR, 42L), DEFAULT);
+    }
+
+    @Test
+    void matchesTa4jWithCustomParameters() {
+        assertEquivalent(randomWalk(BARS_PER_YEAR / 4, 7L), CUSTOM);
+    }
+
+    @Test
+    void registryAdvancesSharedStateAndRebuildsOnGap() {
+        KlineWindow full = randomWalk(3000, 99L);
+        IndicatorStateRegistry registry = new IndicatorStateRegistry(new SimpleMeterRegistry());
+
+        // 逐根以 1000 根滑動視窗餵入（與熱 K 線緩衝相同），狀態應持續累積而非每次重建
+        IncrementalIndicatorEngine reference = new IncrementalIndicatorEngine(DEFAULT);
+        for (int i = 0; i < full.size(); i++) {
+            reference.update(full.openTime()[i], full.high()[i], full.low()[i], full.close()[i]);
+            if (i < 999) continue;
+            KlineWindow window = slice(full, i - 999, i + 1);
+            assertThat(registry.snapshot(window, DEFAULT)).isEqualTo(reference.snapshot());
+            // 同參數第二次讀取直接取快照
+            assertThat(registry.snapshot(window, DEFAULT)).isEqualTo(reference.snapshot());
+        }
+
+        // 跳過一根：狀態不連續，以視窗重播重建
+        KlineWindow gapped = slice(full, 1000, full.size());
+        KlineWindow afterGap = slice(full, 1000, full.size() - 2);
+        registry.snapshot(afterGap, DEFAULT);
+        IncrementalIndicatorEngine replay = new IncrementalIndicatorEngine(DEFAULT);
+        for (int i = 0; i < gapped.size(); i++) {
+            replay.update(gapped.openTime()[i], gapped.high()[i], gapped.low()[i], gapped.close()[i]);
+        }
+        assertThat(registry.snapshot(gapped, DEFAULT)).isEqualTo(replay.snapshot());
+    }
+
+    private void assertEquivalent(KlineWindow window, StrategyParams params) {
+        TechnicalIndicatorService ta4j = new TechnicalIndicatorService(
+                new TradingStrategyProperties(params, null, null));
+        BarSeries series = barSeriesFactory.createFromWindow(window, "equivalence");
+        TechnicalIndicatorService.IndicatorSet set = ta4j.createIndicators(series);
+        IncrementalIndicatorEngine engine = ta4j.createEngine();
+
+        int warmup = Math.max(params.emaLong(), 35);
+        for (int i = 0; i < window.size(); i++) {
+            engine.update(window.openTime()[i], window.high()[i], window.low()[i], window.close()[i]);
+            if (i < warmup) continue;
+
+            IndicatorSnapshot expected = ta4j.computeFromSet(set, series, i);
+            IndicatorSnapshot actual = engine.snapshot();
+            String at = "index " + i;
+            assertThat(actual.emaShort()).as(at).isCloseTo(expected.emaShort(), within(TOLERANCE));
+            assertThat(actual.emaLong()).as(at).isCloseTo(expected.emaLong(), within(TOLERANCE));
+            assertThat(actual.rsi()).as(at).isCloseTo(expected.rsi(), within(TOLERANCE));
+            assertThat(actual.macdValue()).as(at).isCloseTo(expected.macdValue(), within(TOLERANCE));
+            assertThat(actual.macdSignal()).as(at).isCloseTo(expected.macdSignal(), within(TOLERANCE));
+            assertThat(actual.macdHistogram()).as(at).isCloseTo(expected.macdHistogram(), within(TOLERANCE));
+            assertThat(actual.closePrice()).as(at).isEqualByComparingTo(expected.closePrice());
+            assertThat(actual.adx()).as(at).isCloseTo(expected.adx(), within(TOLERANCE));
+            assertThat(actual.donchianHigh()).as(at).isEqualByComparingTo(expected.donchianHigh());
+            assertThat(actual.donchianLow()).as(at).isEqualByComparingTo(expected.donchianLow());
+            assertThat(actual.donchianExitHigh()).as(at).isEqualByComparingTo(expected.donchianExitHigh());
+            assertThat(actual.donchianExitLow()).as(at).isEqualByComparingTo(expected.donchianExitLow());
+            assertThat(actual.emaGoldenCross()).as(at).isEqualTo(expected.emaGoldenCross());
+            assertThat(actual.emaDeathCross()).as(at).isEqualTo(expected.emaDeathCross());
+            assertThat(actual.emaTrendBullish()).as(at).isEqualTo(expected.emaTrendBullish());
+            assertThat(actual.macdBullishCross()).as(at).isEqualTo(expected.macdBullishCross());
+            assertThat(actual.macdBearishCross()).as(at).isEqualTo(expected.macdBearishCross());
+        }
+    }
+
+    /** 幾何隨機漫步，價格取到 0.01；約 5% 的 K 線為平盤 */
+    private static KlineWindow randomWalk(int n, long seed) {
+        Random random = new Random(seed);
+        long[] openTime = new long[n];
+        long[] closeTime = new long[n];
+        double[] open = new double[n];
+        double[] high = new double[n];
+        double[] low = new double[n];
+        double[] close = new double[n];
+        double[] volume = new double[n];
+        int[] tradeCount = new int[n];
+
+        double price = 30_000;
+        long t = 1_609_459_200_000L;
+        for (int i = 0; i < n; i++) {
+            double o = round(price);
+            double c = random.nextDouble() < 0.05 ? o : round(o * Math.exp(random.nextGaussian() * 0.002));
+            double h = round(Math.max(o, c) * (1 + Math.abs(random.nextGaussian()) * 0.001));
+            double l = round(Math.min(o, c) * (1 - Math.abs(random.nextGaussian()) * 0.001));
+            openTime[i] = t;
+            closeTime[i] = t + FIVE_MINUTES - 1;
+            open[i] = o;
+            high[i] = h;
+            low[i] = l;
+            close[i] = c;
+            volume[i] = round(random.nextDouble() * 100);
+            tradeCount[i] = random.nextInt(1000);
+            price = c;
+            t += FIVE_MINUTES;
+        }
+        return new KlineWindow("BTCUSDT", "5m", openTime, closeTime, open, high, low, close,
+                volume, volume.clone(), tradeCount);
+    }
+
+    private static KlineWindow slice(KlineWindow w, int from, int to) {
+        return new KlineWindow(w.symbol(), w.interval(),
+                Arrays.copyOfRange(w.openTime(), from, to), Arrays.copyOfRange(w.closeTime(), from, to),
+                Arrays.copyOfRange(w.open(), from, to), Arrays.copyOfRange(w.high(), from, to),
+                Arrays.copyOfRange(w.low(), from, to), Arrays.copyOfRange(w.close(), from, to),
+                Arrays.copyOfRange(w.volume(), from, to), Arrays.copyOfRange(w.quoteVolume(), from, to),
+                Arrays.copyOfRange(w.tradeCount(), from, to));
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+}
@@ -0,0 +1,97 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.dto.KlineWindow;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KlineRingBufferTest {
+
+    private static final long BAR = 300_000L;
+
+    /** 第 i 根：開盤 i × 5 分鐘，收盤價 = 100 + i */
+    private static boolean append(KlineRingBuffer buffer, int i) {
+        return append(buffer, i, 100 + i);
+    }
+
+    private static boolean append(KlineRingBuffer buffer, int i, double close) {
+        return buffer.append(i * BAR, (i + 1) * BAR - 1, close - 1, close + 1, close - 2, close, 10 + i, 1000 + i, i);
+    }
+
+    @Test
+    void keepsTheMostRecentBarsInOrderAfterWrapAround() {
+        KlineRingBuffer buffer = new KlineRingBuffer("BTCUSDT", "5m", 4);
+        for (int i = 0; i < 11; i++) {
+            assertThat(append(buffer, i)).isTrue();
+        }
+
+        assertThat(buffer.size()).isEqualTo(4);
+        assertThat(buffer.lastOpenTime()).isEqualTo(10 * BAR);
+        KlineWindow w = buffer.window(10, Long.MAX_VALUE);
+        assertThat(w.openTime()).containsExactly(7 * BAR, 8 * BAR, 9 * BAR, 10 * BAR);
+        assertThat(w.close()).containsExactly(107, 108, 109, 110);
+        assertThat(w.closeTime()).containsExactly(8 * BAR - 1, 9 * BAR - 1, 10 * BAR - 1, 11 * BAR - 1);
+        assertThat(w.high()).containsExactly(108, 109, 110, 111);
+        assertThat(w.low()).containsExactly(105, 106, 107, 108);
+        assertThat(w.volume()).containsExactly(17, 18, 19, 20);
+        assertThat(w.quoteVolume()).containsExactly(1007, 1008, 1009, 1010);
+        assertThat(w.tradeCount()).containsExactly(7, 8, 9, 10);
+        assertThat(w.symbol()).isEqualTo("BTCUSDT");
+        assertThat(w.interval()).isEqualTo("5m");
+    }
+
+    @Test
+    void ignoresDuplicateAndOutOfOrderBars() {
+        KlineRingBuffer buffer = new KlineRingBuffer("BTCUSDT", "5m", 8);
+        append(buffer, 0);
+        append(buffer, 1);
+        append(buffer, 3);
+
+        // 重複的收盤訊框不覆寫既有資料
+        assertThat(append(buffer, 3, 999)).isFalse();
+        // 比最後一根舊的（亂序到達）直接忽略，不插入中間
+        assertThat(append(buffer, 2)).isFalse();
+        assertThat(append(buffer, 0, 999)).isFalse();
+
+        KlineWindow w = buffer.window(8, Long.MAX_VALUE);
+        assertThat(w.openTime()).containsExactly(0, BAR, 3 * BAR);
+        assertThat(w.close()).containsExactly(100, 101, 103);
+        assertThat(append(buffer, 4)).isTrue();
+        assertThat(buffer.lastOpenTime()).isEqualTo(4 * BAR);
+    }
+
+    @Test
+    void windowLimitsBarsAndSkipsBarsAfterTheRequestedOpenTime() {
+        KlineRingBuffer buffer = new KlineRingBuffer("BTCUSDT", "5m", 5);
+        for (int i = 0; i < 7; i++) {
+            append(buffer, i);
+        }
+
+        // 緩衝內為第 2..6 根
+        assertThat(buffer.window(3, Long.MAX_VALUE).openTime()).containsExactly(4 * BAR, 5 * BAR, 6 * BAR);
+        // 截至第 4 根：略過較新的 5、6，再取最近 2 根
+        assertThat(buffer.window(2, 4 * BAR).openTime()).containsExactly(3 * BAR, 4 * BAR);
+        // 介於兩根開盤時間之間：以不晚於該時間的最後一根為止
+        assertThat(buffer.window(10, 4 * BAR + 1).openTime()).containsExactly(2 * BAR, 3 * BAR, 4 * BAR);
+        // 早於緩衝內所有 K 線：空快照
+        assertThat(buffer.window(10, BAR).size()).isZero();
+    }
+
+    @Test
+    void snapshotIsACopyAndEmptyBufferHasNoLastOpenTime() {
+        KlineRingBuffer buffer = new KlineRingBuffer("BTCUSDT", "5m", 3);
+        assertThat(buffer.lastOpenTime()).isEqualTo(Long.MIN_VALUE);
+        assertThat(buffer.window(3, Long.MAX_VALUE).size()).isZero();
+
+        append(buffer, 0);
+        append(buffer, 1);
+        KlineWindow before = buffer.window(3, Long.MAX_VALUE);
+        append(buffer, 2);
+        append(buffer, 3);
+
+        // 之後的寫入（含覆寫最舊的位置）不影響先前取出的快照
+        assertThat(before.openTime()).containsExactly(0, BAR);
+        assertThat(before.lastClose()).isEqualTo(101);
+        assertThat(buffer.window(3, Long.MAX_VALUE).openTime()).containsExactly(BAR, 2 * BAR, 3 * BAR);
+    }
+}
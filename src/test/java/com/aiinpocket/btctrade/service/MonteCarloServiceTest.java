@@ -0,0 +1,63 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.MonteCarloProperties.Method;
+import com.aiinpocket.btctrade.model.dto.BacktestReport.TradeDetail;
+import com.aiinpocket.btctrade.model.dto.MonteCarloSummary;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MonteCarloServiceTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    private static List<TradeDetail> trades(int n, long seed) {
+        Random random = new Random(seed);
+        List<TradeDetail> trades = new ArrayList<>();
+        double equity = 10_000;
+        for (int i = 0; i < n; i++) {
+            double pnl = Math.round(equity * 0.8 * (random.nextGaussian() * 0.03 + 0.004) * 100) / 100.0;
+            equity += pnl;
+            trades.add(new TradeDetail(i + 1, "LONG", Instant.EPOCH, Instant.EPOCH, BigDecimal.ONE, BigDecimal.ONE,
+                    BigDecimal.valueOf(pnl), BigDecimal.ZERO, "RSI_EXTREME", 1));
+        }
+        return trades;
+    }
+
+    @Test
+    void permutationReportsOnlyPathRisk() {
+        List<TradeDetail> trades = trades(120, 3);
+
+        MonteCarloSummary summary = MonteCarloService.simulate(POOL, 10_000, trades, Method.PERMUTATION, 3000, 9, 20);
+
+        // 重排不改變複利後的最終資金：不輸出最終資金分布與虧損機率
+        assertThat(summary.finalEquity()).isNull();
+        assertThat(summary.finalEquityHistogram()).isNull();
+        assertThat(summary.probabilityOfLoss()).isNull();
+        assertThat(summary.maxDrawdown().p5()).isLessThan(summary.maxDrawdown().p95());
+        assertThat(summary.maxLosingStreak().p5()).isLessThanOrEqualTo(summary.maxLosingStreak().p95());
+        assertThat(IntStream.of(summary.maxDrawdownHistogram().counts()).sum()).isEqualTo(3000);
+        assertThat(IntStream.of(summary.losingStreakHistogram().counts()).sum()).isEqualTo(3000);
+    }
+
+    @Test
+    void bootstrapIsReproducibleForSeed() {
+        List<TradeDetail> trades = trades(80, 5);
+
+        MonteCarloSummary a = MonteCarloService.simulate(POOL, 10_000, trades, Method.BOOTSTRAP, 2000, 42, 20);
+        MonteCarloSummary b = MonteCarloService.simulate(POOL, 10_000, trades, Method.BOOTSTRAP, 2000, 42, 20);
+
+        assertThat(a.finalEquity()).isEqualTo(b.finalEquity());
+        assertThat(a.finalEquityHistogram().counts()).containsExactly(b.finalEquityHistogram().counts());
+        assertThat(a.finalEquity().p5()).isLessThan(a.finalEquity().p95());
+        assertThat(a.finalEquityHistogram().counts()).hasSize(20);
+    }
+}
@@ -0,0 +1,143 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.dto.IndicatorSnapshot;
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.model.enums.ExitReason;
+import com.aiinpocket.btctrade.model.enums.PositionDirection;
+import com.aiinpocket.btctrade.model.enums.PositionStatus;
+import com.aiinpocket.btctrade.repository.TradePositionRepository;
+import com.aiinpocket.btctrade.repository.TradeSignalRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OpenPositionRegistryTest {
+
+    private final TradePositionRepository positionRepo = mock(TradePositionRepository.class);
+    /** 模擬 DB 中的未平倉持倉 */
+    private final List<TradePosition> db = new ArrayList<>();
+    private OpenPositionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        when(positionRepo.findByStatusAndBacktest(PositionStatus.OPEN, false)).thenAnswer(inv -> List.copyOf(db));
+        when(positionRepo.findBySymbolAndStatusAndBacktest(anyString(), eq(PositionStatus.OPEN), eq(false)))
+                .thenAnswer(inv -> db.stream().filter(p -> p.getSymbol().equals(inv.getArgument(0))).toList());
+        db.add(position(1L, 10L, "BTCUSDT"));
+        db.add(position(2L, 10L, "ETHUSDT"));
+        db.add(position(3L, null, "BTCUSDT"));
+        registry = new OpenPositionRegistry(positionRepo, new SimpleMeterRegistry());
+        registry.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static TradePosition position(Long id, Long userId, String symbol) {
+        return TradePosition.builder().id(id).userId(userId).symbol(symbol)
+                .direction(PositionDirection.LONG).status(PositionStatus.OPEN)
+                .entryPrice(new BigDecimal("100")).entryTime(Instant.parse("2025-01-01T00:00:00Z"))
+                .quantity(BigDecimal.ONE).capitalUsed(new BigDecimal("100"))
+                .stopLossPrice(new BigDecimal("96")).backtest(false).build();
+    }
+
+    @Test
+    void indexesByUserAndSymbolAndAppliesWritesOnlyAfterCommit() {
+        assertThat(registry.find(10L, "BTCUSDT")).map(TradePosition::getId).contains(1L);
+        assertThat(registry.find(null, "BTCUSDT")).map(TradePosition::getId).contains(3L);
+        assertThat(registry.forUser(10L)).hasSize(2);
+        assertThat(registry.forSymbol("BTCUSDT")).hasSize(2);
+
+        // 交易中開倉：提交前看不到，提交後才出現
+        TransactionSynchronizationManager.initSynchronization();
+        TradePosition opened = position(4L, 20L, "BTCUSDT");
+        registry.opened(opened);
+        assertThat(registry.find(20L, "BTCUSDT")).isEmpty();
+        db.add(opened);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(registry.find(20L, "BTCUSDT")).contains(opened);
+
+        // 平倉的交易回滾：以 DB 為準保留持倉
+        TransactionSynchronizationManager.initSynchronization();
+        registry.closed(opened);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(registry.find(20L, "BTCUSDT")).map(TradePosition::getId).contains(4L);
+
+        // 沒有交易時立即套用
+        registry.closed(opened);
+        assertThat(registry.find(20L, "BTCUSDT")).isEmpty();
+        assertThat(registry.size()).isEqualTo(3);
+    }
+
+    @Test
+    void closingLeavesSharedInstanceUntouchedUntilCommit() {
+        when(positionRepo.save(any(TradePosition.class))).thenAnswer(inv -> inv.getArgument(0));
+        PositionService positionService = new PositionService(positionRepo, mock(TradeSignalRepository.class),
+                null, mock(BattleService.class), registry, mock(CapitalLedgerService.class));
+        TradePosition shared = registry.find(10L, "BTCUSDT").orElseThrow();
+
+        TransactionSynchronizationManager.initSynchronization();
+        TradePosition closed = positionService.closePosition(shared, new BigDecimal("110"),
+                Instant.parse("2025-01-02T00:00:00Z"), ExitReason.SIGNAL_REVERSAL,
+                IndicatorSnapshot.priceOnly(new BigDecimal("110")));
+
+        // 提交前：其他執行緒讀到的共用實例仍是未平倉
+        assertThat(closed).isNotSameAs(shared);
+        assertThat(closed.getStatus()).isNotEqualTo(PositionStatus.OPEN);
+        assertThat(closed.getRealizedPnl()).isEqualByComparingTo("10");
+        assertThat(shared.getStatus()).isEqualTo(PositionStatus.OPEN);
+        assertThat(shared.getExitPrice()).isNull();
+        assertThat(registry.find(10L, "BTCUSDT")).containsSame(shared);
+
+        db.removeIf(p -> p.getId() == 1L);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(registry.find(10L, "BTCUSDT")).isEmpty();
+    }
+
+    @Test
+    void reconcileFlagsDriftAndRebuildsFromDatabase() {
+        assertThat(registry.reconcile().total()).isZero();
+
+        // 其他途徑修改 DB：一筆平倉、一筆新開倉、一筆停損價變動
+        db.removeIf(p -> p.getId() == 2L);
+        db.add(position(5L, 30L, "SOLUSDT"));
+        TradePosition moved = position(1L, 10L, "BTCUSDT");
+        moved.setStopLossPrice(new BigDecimal("98"));
+        db.set(0, moved);
+
+        var drift = registry.reconcile();
+
+        assertThat(drift.missing()).containsExactly(5L);
+        assertThat(drift.stale()).containsExactly(2L);
+        assertThat(drift.mismatched()).containsExactly(1L);
+        assertThat(registry.find(10L, "ETHUSDT")).isEmpty();
+        assertThat(registry.find(30L, "SOLUSDT")).isPresent();
+        assertThat(registry.find(10L, "BTCUSDT")).contains(moved);
+        assertThat(registry.reconcile().total()).isZero();
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(s -> s.afterCompletion(status));
+    }
+}
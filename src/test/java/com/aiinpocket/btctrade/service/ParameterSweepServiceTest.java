@@ -0,0 +1,86 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BacktestSweepProperties;
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.dto.ParameterSweepResult;
+import com.aiinpocket.btctrade.service.BacktestGoldenData.Bars;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ParameterSweepServiceTest {
+
+    private static final Bars BARS = BacktestGoldenData.syntheticBars(30 * 288, 7L);
+    private static final TradingStrategyProperties BASE = BacktestGoldenData.TEMPLATES.get("warrior");
+
+    private final BacktestBars bars = new BacktestBars(BARS.openTime(), BARS.high(), BARS.low(), BARS.close());
+    private final Instant end = BacktestGoldenData.end(BARS);
+    private final BacktestService backtestService =
+            spy(new BacktestService(null, null, null, BASE, IntervalParams.of5m()));
+
+    private ParameterSweepService service(int maxCombinations) {
+        doReturn(bars).when(backtestService).loadBars(any(), any(), any());
+        return new ParameterSweepService(backtestService,
+                new BacktestSweepProperties(maxCombinations, 2, 4), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void ranksEveryCombinationAndMatchesSingleBacktest() {
+        ParameterSweepService service = service(50);
+        List<Long> progress = new CopyOnWriteArrayList<>();
+        ParameterSweepResult result = service.sweep("BTCUSDT", BacktestGoldenData.START, end, BASE, Map.of(
+                        "emaShort", List.of(8, 12, 30),
+                        "stopLossPct", Map.of("from", 0.03, "to", 0.05, "step", 0.01)),
+                service.staminaCost(1, 6), (processed, total) -> progress.add(processed));
+
+        // emaShort=30 ≥ emaLong=26 的三組不合法
+        assertThat(result.combinations()).isEqualTo(6);
+        assertThat(result.skipped()).isEqualTo(3);
+        assertThat(result.indicatorSets()).isEqualTo(2);
+        assertThat(result.staminaCost()).isEqualTo(2);
+        verify(backtestService, times(1)).loadBars(any(), any(), any());
+        // 每完成一組回報一次（開始時回報 0）
+        assertThat(progress).containsExactlyInAnyOrder(0L, 1L, 2L, 3L, 4L, 5L, 6L);
+
+        assertThat(result.rows()).extracting(ParameterSweepResult.Row::annualizedReturn)
+                .isSortedAccordingTo((a, b) -> b.compareTo(a));
+
+        // 共用指標欄的結果與單獨回測一致
+        ParameterSweepResult.Row row = result.rows().getFirst();
+        TradingStrategyProperties props = BASE;
+        for (Map.Entry<String, Number> e : row.params().entrySet()) {
+            props = ParameterSweepService.Axis.of(e.getKey()).apply(props, e.getValue());
+        }
+        BacktestReport single = backtestService.runOnBars("BTCUSDT", BacktestGoldenData.START, end,
+                bars, props, true).report();
+        assertThat(row.annualizedReturn()).isEqualByComparingTo(single.annualizedReturn());
+        assertThat(row.totalTrades()).isEqualTo(single.totalTrades());
+        assertThat(row.maxDrawdown()).isEqualByComparingTo(single.maxDrawdown());
+    }
+
+    @Test
+    void rejectsSweepOverCombinationCap() {
+        ParameterSweepService service = service(10);
+        assertThatThrownBy(() -> service.sweep("BTCUSDT", BacktestGoldenData.START, end, BASE,
+                Map.of("emaShort", List.of(5, 6, 7, 8), "rsiLongEntryMin", List.of(20, 25, 30)),
+                0, BacktestProgress.NONE))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(backtestService, never()).loadBars(any(), any(), any());
+    }
+}
@@ -0,0 +1,218 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.model.entity.TradePosition;
+import com.aiinpocket.btctrade.model.enums.ExitReason;
+import com.aiinpocket.btctrade.model.enums.PositionDirection;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StopLevelIndexTest {
+
+    /** 逐筆持倉依 {@link BacktestKernel} 日內停損規則模擬的對照組（每個 tick O(n)） */
+    private static final class Reference {
+        final boolean isLong;
+        final double entry;
+        final double activatePct;
+        final double offsetPct;
+        double stop;
+        double peakPnlPct;
+
+        Reference(boolean isLong, double entry, double stop, double activatePct, double offsetPct) {
+            this.isLong = isLong;
+            this.entry = entry;
+            this.stop = stop;
+            this.activatePct = activatePct;
+            this.offsetPct = offsetPct;
+        }
+
+        /** @return 觸發時回傳 true */
+        boolean tick(double high, double low) {
+            if (!Double.isNaN(activatePct)) {
+                double best = isLong ? high : low;
+                double pnlPct = isLong ? (best - entry) / entry : (entry - best) / entry;
+                if (pnlPct > peakPnlPct) peakPnlPct = pnlPct;
+                if (peakPnlPct >= activatePct) {
+                    double trailLevel = Math.max(0, peakPnlPct - offsetPct);
+                    double newStop = BacktestKernel.roundHalfUp(isLong
+                            ? entry * (1 + trailLevel) : entry * (1 - trailLevel), 8);
+                    if (isLong ? newStop > stop : newStop < stop) stop = newStop;
+                }
+            }
+            return isLong ? low <= stop : high >= stop;
+        }
+    }
+
+    /** 隨機漫步的 tick 流與在當前價附近開倉的持倉 */
+    private static final class Market {
+        final Random random;
+        double price = 50_000;
+        long nextId = 1;
+
+        Market(long seed) {
+            this.random = new Random(seed);
+        }
+
+        double[] nextTick() {
+            price *= 1 + random.nextGaussian() * 0.0008;
+            double spread = price * 0.0004 * random.nextDouble();
+            return new double[]{price + spread, price - spread};
+        }
+
+        void open(StopLevelIndex index, Map<Long, Reference> reference) {
+            long id = nextId++;
+            boolean isLong = random.nextBoolean();
+            double entry = BacktestKernel.roundHalfUp(price * (1 + (random.nextDouble() - 0.5) * 0.002), 8);
+            double slPct = 0.01 + random.nextDouble() * 0.03;
+            double stop = BacktestKernel.roundHalfUp(isLong ? entry * (1 - slPct) : entry * (1 + slPct), 8);
+            boolean trailing = random.nextInt(4) != 0;
+            double activatePct = trailing ? 0.005 + random.nextDouble() * 0.02 : Double.NaN;
+            double offsetPct = trailing ? 0.002 + random.nextDouble() * 0.01 : 0;
+            index.add(id, isLong, entry, stop, entry, activatePct, offsetPct, false);
+            if (reference != null) {
+                reference.put(id, new Reference(isLong, entry, stop, activatePct, offsetPct));
+            }
+        }
+    }
+
+    @Test
+    void matchesPerPositionKernelRulesOnSyntheticTicks() {
+        Market market = new Market(42);
+        StopLevelIndex index = new StopLevelIndex();
+        Map<Long, Reference> reference = new HashMap<>();
+        for (int i = 0; i < 3_000; i++) {
+            market.open(index, reference);
+        }
+
+        int totalHits = 0;
+        for (int t = 0; t < 20_000; t++) {
+            double[] tick = market.nextTick();
+            Map<Long, Double> hits = new HashMap<>();
+            index.probe(tick[0], tick[1], (id, isLong, stopPrice) -> hits.put(id, stopPrice));
+
+            Map<Long, Double> expected = new HashMap<>();
+            reference.entrySet().removeIf(e -> {
+                if (!e.getValue().tick(tick[0], tick[1])) return false;
+                expected.put(e.getKey(), e.getValue().stop);
+                return true;
+            });
+            assertThat(hits).as("tick %d", t).isEqualTo(expected);
+            totalHits += hits.size();
+
+            // 持倉持續開平：補開新倉、偶爾由訊號平倉（自索引移除）
+            for (int k = 0; k < hits.size(); k++) {
+                market.open(index, reference);
+            }
+            if (t % 50 == 0 && !reference.isEmpty()) {
+                long id = reference.keySet().iterator().next();
+                assertThat(index.remove(id)).isTrue();
+                reference.remove(id);
+            }
+        }
+
+        assertThat(totalHits).isGreaterThan(3_000);
+        assertThat(index.size()).isEqualTo(reference.size());
+        reference.forEach((id, ref) -> assertThat(index.stop(id)).as("position %d", id).isEqualTo(ref.stop));
+    }
+
+    @Test
+    void drainsEachRatchetedStopOnceAndCarriesStateAcrossRebuild() {
+        StopLevelIndex index = new StopLevelIndex();
+        index.add(1, true, 100, 96, 100, 0.02, 0.01, false);
+        index.add(2, false, 100, 104, 100, Double.NaN, 0, false);
+
+        index.probe(103, 102.5, (id, isLong, stopPrice) -> { });
+        index.probe(105, 104.5, (id, isLong, stopPrice) -> { });
+        assertThat(index.stop(1)).isEqualTo(104.0);
+        assertThat(index.peak(1)).isEqualTo(105.0);
+
+        List<Long> drained = new ArrayList<>();
+        index.drainMoved((id, stopPrice) -> drained.add(id));
+        index.drainMoved((id, stopPrice) -> drained.add(id));
+        assertThat(drained).containsExactly(1L);
+
+        // 重建時以舊索引的停損與峰值重新加入，高點未創新高不再上調
+        StopLevelIndex rebuilt = new StopLevelIndex();
+        rebuilt.add(1, true, 100, index.stop(1), index.peak(1), 0.02, 0.01, index.moved(1));
+        rebuilt.probe(104.5, 104.2, (id, isLong, stopPrice) -> { });
+        assertThat(rebuilt.stop(1)).isEqualTo(104.0);
+
+        List<Long> hits = new ArrayList<>();
+        rebuilt.probe(104.1, 103.9, (id, isLong, stopPrice) -> hits.add(id));
+        assertThat(hits).containsExactly(1L);
+        assertThat(rebuilt.size()).isZero();
+    }
+
+    @Test
+    void labelsRatchetedExitsInProfitAsTrailingStopLikeTheKernel() {
+        // 移動停損上調（多頭 102、空頭 98）後觸發：出場不虧損，記為移動停利
+        assertThat(exitReason(true, 0.02, new double[]{103, 102.5}, new double[]{99, 97}))
+                .isEqualTo(ExitReason.TRAILING_STOP);
+        assertThat(exitReason(false, 0.02, new double[]{97.5, 97}, new double[]{101, 99}))
+                .isEqualTo(ExitReason.TRAILING_STOP);
+        // 只有固定停損、或移動停利尚未啟動就觸及原始停損：停損
+        assertThat(exitReason(true, Double.NaN, new double[]{99, 95})).isEqualTo(ExitReason.STOP_LOSS);
+        assertThat(exitReason(false, 0.02, new double[]{105, 101})).isEqualTo(ExitReason.STOP_LOSS);
+    }
+
+    /** 進場 100、原始停損 ±4% 的單一持倉依序經過各 tick，回傳觸發時的出場原因 */
+    private static ExitReason exitReason(boolean isLong, double activatePct, double[]... ticks) {
+        boolean trailing = !Double.isNaN(activatePct);
+        StopLevelIndex index = new StopLevelIndex();
+        index.add(1, isLong, 100, isLong ? 96 : 104, 100, activatePct, 0.01, false);
+        TradePosition position = TradePosition.builder()
+                .direction(isLong ? PositionDirection.LONG : PositionDirection.SHORT)
+                .entryPrice(BigDecimal.valueOf(100))
+                .trailingActivatePct(trailing ? activatePct : null)
+                .trailingOffsetPct(trailing ? 0.01 : null)
+                .build();
+        List<ExitReason> reasons = new ArrayList<>();
+        for (double[] tick : ticks) {
+            index.probe(tick[0], tick[1],
+                    (id, hitLong, stopPrice) -> reasons.add(TickStopEngine.exitReason(position, stopPrice)));
+        }
+        assertThat(reasons).hasSize(1);
+        return reasons.getFirst();
+    }
+
+    /**
+     * 數萬筆持倉的 tick 流：觸發者移除、重新開倉後數量不變，上調的停損都能取走寫回。
+     * 耗時比較見 {@code benchmark.StopLevelIndexBenchmark}。
+     */
+    @Test
+    void handlesTensOfThousandsOfOpenPositions() {
+        Market market = new Market(7);
+        int positions = 50_000;
+        int ticks = 200_000;
+        StopLevelIndex index = new StopLevelIndex(positions);
+        for (int i = 0; i < positions; i++) {
+            market.open(index, null);
+        }
+
+        int[] hits = {0};
+        for (int t = 0; t < ticks; t++) {
+            double[] tick = market.nextTick();
+            int hit = index.probe(tick[0], tick[1], (id, isLong, stopPrice) -> { });
+            hits[0] += hit;
+            for (int k = 0; k < hit; k++) {
+                market.open(index, null);
+            }
+        }
+        int[] moved = {0};
+        index.drainMoved((id, stopPrice) -> moved[0]++);
+
+        assertThat(index.size()).isEqualTo(positions);
+        assertThat(hits[0]).isGreaterThan(positions);
+        assertThat(moved[0]).isPositive();
+        int[] again = {0};
+        index.drainMoved((id, stopPrice) -> again[0]++);
+        assertThat(again[0]).isZero();
+    }
+}
@@ -0,0 +1,208 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.PerformanceComputeProperties;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.entity.PerformanceCheckpoint;
+import com.aiinpocket.btctrade.model.entity.StrategyPerformance;
+import com.aiinpocket.btctrade.model.entity.StrategyTemplate;
+import com.aiinpocket.btctrade.model.enums.PerformancePeriod;
+import com.aiinpocket.btctrade.repository.PerformanceCheckpointRepository;
+import com.aiinpocket.btctrade.repository.StrategyPerformanceRepository;
+import com.aiinpocket.btctrade.repository.StrategyTemplateRepository;
+import com.aiinpocket.btctrade.service.BacktestGoldenData.Bars;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+class StrategyPerformanceServiceTest {
+
+    private final List<Instant> loads = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, PerformanceCheckpoint> checkpoints = new ConcurrentHashMap<>();
+    private final Map<String, StrategyPerformance> performances = new ConcurrentHashMap<>();
+    private final List<StrategyTemplate> templates = new ArrayList<>();
+    private StrategyTemplateRepository templateRepo;
+    private PerformanceCheckpointRepository checkpointRepo;
+    private StrategyPerformanceService service;
+
+    @BeforeEach
+    void setUp() {
+        // 60 天合成 K 線，最後一根對齊到現在
+        Bars raw = BacktestGoldenData.syntheticBars(60 * 288, 17L);
+        long shift = Instant.now().toEpochMilli() / BacktestGoldenData.FIVE_MINUTES * BacktestGoldenData.FIVE_MINUTES
+                - BacktestGoldenData.FIVE_MINUTES - raw.openTime()[raw.size() - 1];
+        long[] openTime = Arrays.stream(raw.openTime()).map(t -> t + shift).toArray();
+        BacktestBars all = new BacktestBars(openTime, raw.high(), raw.low(), raw.close());
+
+        BacktestService backtestService = spy(new BacktestService(null, null, null, null, IntervalParams.of5m()));
+        doAnswer(inv -> {
+            Instant from = inv.getArgument(1);
+            loads.add(from);
+            int i = Arrays.binarySearch(openTime, from.toEpochMilli());
+            int k = i >= 0 ? i : -(i + 1);
+            return new BacktestBars(Arrays.copyOfRange(openTime, k, openTime.length),
+                    Arrays.copyOfRange(all.high(), k, openTime.length),
+                    Arrays.copyOfRange(all.low(), k, openTime.length),
+                    Arrays.copyOfRange(all.close(), k, openTime.length));
+        }).when(backtestService).loadBars(any(), any(), any());
+
+        long id = 1;
+        for (var props : BacktestGoldenData.TEMPLATES.values()) {
+            templates.add(template(id++, props));
+        }
+        // 與第一個模板參數相同的複本（例如用戶複製的預設模板）
+        templates.add(template(id, BacktestGoldenData.TEMPLATES.values().iterator().next()));
+        templateRepo = mock(StrategyTemplateRepository.class);
+        when(templateRepo.findAll()).thenReturn(templates);
+
+        StrategyPerformanceRepository perfRepo = mock(StrategyPerformanceRepository.class);
+        when(perfRepo.findByParamsFingerprintAndPeriodKeyAndSymbol(anyString(), anyString(), anyString()))
+                .thenReturn(Optional.empty());
+        when(perfRepo.save(any())).thenAnswer(inv -> {
+            StrategyPerformance p = inv.getArgument(0);
+            performances.put(p.getParamsFingerprint() + p.getPeriodKey(), p);
+            return p;
+        });
+
+        checkpointRepo = mock(PerformanceCheckpointRepository.class);
+        when(checkpointRepo.save(any())).thenAnswer(inv -> {
+            PerformanceCheckpoint c = inv.getArgument(0);
+            checkpoints.put(c.getParamsFingerprint() + c.getPeriodKey(), c);
+            return c;
+        });
+        when(checkpointRepo.findByParamsFingerprintAndSymbol(anyString(), anyString()))
+                .thenAnswer(inv -> checkpoints.values().stream()
+                        .filter(c -> c.getParamsFingerprint().equals(inv.getArgument(0)))
+                        .toList());
+        when(checkpointRepo.findHeadsBySymbol(anyString()))
+                .thenAnswer(inv -> checkpoints.values().stream().map(StrategyPerformanceServiceTest::head).toList());
+
+        service = new StrategyPerformanceService(backtestService, templateRepo, perfRepo, checkpointRepo,
+                mock(EntityManager.class), IntervalParams.of5m(), new PerformanceComputeProperties(4),
+                new SimpleMeterRegistry());
+    }
+
+    private static StrategyTemplate template(long id, TradingStrategyProperties props) {
+        StrategyTemplate template = mock(StrategyTemplate.class);
+        when(template.getName()).thenReturn("t" + id);
+        when(template.getId()).thenReturn(id);
+        when(template.toProperties()).thenReturn(props);
+        String fingerprint = props.fingerprint();
+        when(template.fingerprint()).thenReturn(fingerprint);
+        return template;
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void computesTemplatesInParallelAndResumesFromCheckpoints() {
+        int periods = PerformancePeriod.values().length;
+        int distinct = BacktestGoldenData.TEMPLATES.size();
+
+        service.computeAllPerformances();
+
+        // 整批只載入一次 K 線，相同參數的模板只計算一次，所有指紋與時段都完成並留下檢查點
+        var first = service.getScheduledProgress();
+        assertThat(loads).hasSize(1);
+        assertThat(first.getCompleted()).isEqualTo(distinct * periods);
+        assertThat(first.getParallelism()).isEqualTo(4);
+        assertThat(first.getTemplateTimings()).hasSize(distinct)
+                .allSatisfy(t -> assertThat(t.resumedPeriods()).isZero());
+        assertThat(first.getTemplateTimings()).filteredOn(t -> t.templateId() == 1L)
+                .singleElement().satisfies(t -> assertThat(t.templates()).isEqualTo(2));
+        assertThat(checkpoints).hasSize(distinct * periods);
+        assertThat(performances).hasSize(distinct * periods);
+        Map<String, Integer> trades = performances.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getTotalTrades()));
+
+        service.computeAllPerformances();
+
+        // 第二輪全部從檢查點接續：只載入上次最後一根之後的 K 線（此處沒有新 K 線）
+        var second = service.getScheduledProgress();
+        assertThat(loads).hasSize(2);
+        assertThat(loads.get(1)).isAfter(loads.get(0));
+        assertThat(second.getCompleted()).isEqualTo(distinct * periods);
+        assertThat(second.getTemplateTimings())
+                .allSatisfy(t -> {
+                    assertThat(t.resumedPeriods()).isEqualTo(periods);
+                    assertThat(t.bars()).isZero();
+                });
+        assertThat(performances.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getTotalTrades())))
+                .isEqualTo(trades);
+    }
+
+    @Test
+    void singleTemplateWaitsForTheBatchComputingTheSameFingerprint() throws Exception {
+        StrategyTemplate template = templates.getFirst();
+        String fingerprint = template.fingerprint();
+        when(templateRepo.findById(1L)).thenReturn(Optional.of(template));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        doAnswer(inv -> {
+            // 批次讀到此指紋的檢查點後暫停，模擬計算進行中
+            if (reads.incrementAndGet() == 1) {
+                entered.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return checkpoints.values().stream()
+                    .filter(c -> c.getParamsFingerprint().equals(fingerprint))
+                    .toList();
+        }).when(checkpointRepo).findByParamsFingerprintAndSymbol(eq(fingerprint), anyString());
+
+        Thread batch = Thread.ofPlatform().start(service::computeAllPerformances);
+        assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread single = Thread.ofPlatform().start(() -> service.computePerformance(1L));
+
+        // 同指紋的批次計算尚未完成：單一模板不得讀取檢查點
+        single.join(300);
+        assertThat(single.isAlive()).isTrue();
+        assertThat(reads).hasValue(1);
+
+        release.countDown();
+        batch.join(10_000);
+        single.join(10_000);
+        assertThat(reads).hasValue(2);
+        assertThat(service.getScheduledProgress().getCompleted())
+                .isEqualTo(BacktestGoldenData.TEMPLATES.size() * PerformancePeriod.values().length);
+    }
+
+    private static PerformanceCheckpointRepository.Head head(PerformanceCheckpoint c) {
+        return new PerformanceCheckpointRepository.Head() {
+            public String getFingerprint() { return c.getParamsFingerprint(); }
+            public String getPeriodKey() { return c.getPeriodKey(); }
+            public String getParamsHash() { return c.getParamsHash(); }
+            public Instant getPeriodStart() { return c.getPeriodStart(); }
+            public Instant getLastOpenTime() { return c.getLastOpenTime(); }
+        };
+    }
+}
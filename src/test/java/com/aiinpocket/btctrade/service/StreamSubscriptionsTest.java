@@ -0,0 +1,92 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.service.StreamSubscriptions.ControlMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamSubscriptionsTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void churnNeverExceedsFiveControlMessagesPerSecond() {
+        StreamSubscriptions subs = new StreamSubscriptions(5, 200);
+        Random random = new Random(42);
+        List<Long> sentAt = new ArrayList<>();
+        Set<String> socket = new HashSet<>();
+        long now = 1_000L;
+
+        // 20 秒內每 250ms 隨機新增 / 移除數百個串流，每輪的差異都需要多個分段
+        for (int tick = 0; tick < 80; tick++, now += TICK) {
+            for (int k = 0; k < 300; k++) {
+                String stream = "s" + random.nextInt(2_000) + "@kline_5m";
+                if (random.nextBoolean()) subs.add(stream);
+                else subs.remove(stream);
+            }
+            apply(subs.drain(now), now, sentAt, socket);
+        }
+        // 停止變更後繼續排空，剩餘差異最終全部送出
+        for (int tick = 0; tick < 200; tick++, now += TICK) {
+            apply(subs.drain(now), now, sentAt, socket);
+        }
+
+        assertThat(sentAt).hasSizeGreaterThan(50);
+        for (int i = 5; i < sentAt.size(); i++) {
+            assertThat(sentAt.get(i) - sentAt.get(i - 5))
+                    .as("第 %d 則與往前第 5 則的間隔", i)
+                    .isGreaterThanOrEqualTo(SECOND);
+        }
+        assertThat(socket).isEqualTo(subs.streams());
+        assertThat(subs.drain(now)).isEmpty();
+    }
+
+    @Test
+    void leavesRemainderPendingAndSendsUnsubscribeFirst() {
+        StreamSubscriptions subs = new StreamSubscriptions(5, 2);
+        subs.opened(List.of("a", "b"));
+        subs.remove("a");
+        subs.remove("b");
+        for (int i = 0; i < 20; i++) subs.add("n" + i);
+
+        List<ControlMessage> first = subs.drain(0);
+        assertThat(first).hasSize(5);
+        assertThat(first.getFirst()).isEqualTo(new ControlMessage("UNSUBSCRIBE", List.of("a", "b")));
+        assertThat(first.subList(1, 5)).allMatch(m -> m.method().equals("SUBSCRIBE") && m.params().size() == 2);
+
+        // 一秒內權杖用完：不送出任何訊息
+        assertThat(subs.drain(SECOND - 1)).isEmpty();
+        assertThat(subs.drain(SECOND)).hasSize(5);
+        assertThat(subs.drain(2 * SECOND)).hasSize(1);
+    }
+
+    @Test
+    void resubscribesEverythingAfterReconnect() {
+        StreamSubscriptions subs = new StreamSubscriptions(5, 200);
+        subs.add("a");
+        subs.add("b");
+        subs.opened(subs.streams());
+        assertThat(subs.drain(0)).isEmpty();
+
+        subs.disconnected();
+        subs.add("c");
+        subs.opened(List.of("a", "b"));
+        assertThat(subs.drain(0)).containsExactly(new ControlMessage("SUBSCRIBE", List.of("c")));
+    }
+
+    private static void apply(List<ControlMessage> messages, long now, List<Long> sentAt, Set<String> socket) {
+        for (ControlMessage m : messages) {
+            sentAt.add(now);
+            if (m.method().equals("SUBSCRIBE")) socket.addAll(m.params());
+            else m.params().forEach(socket::remove);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.EvaluationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedEvaluationExecutorTest {
+
+    @Test
+    void burstKeepsEverySymbolAndCoalescesRepeatedClosesToTheLatest() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StripedEvaluationExecutor executor = new StripedEvaluationExecutor(new EvaluationProperties(1), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        Instant close = Instant.now();
+
+        // 佔住唯一的一條，讓之後的收盤都在佇列中等待
+        executor.submit("BLOCK", "strategy", close, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 500; i++) {
+            String symbol = "SYM" + i;
+            executor.submit(symbol, "strategy", close, () -> ran.add(symbol + ":old"));
+            executor.submit(symbol, "strategy", close, () -> ran.add(symbol + ":new"));
+        }
+        executor.submit("SYM0", "alerts", close, () -> ran.add("SYM0:alerts"));
+        release.countDown();
+        executor.stop();
+
+        assertThat(ran).hasSize(501)
+                .contains("SYM0:new", "SYM499:new", "SYM0:alerts")
+                .noneMatch(task -> task.endsWith(":old"));
+        assertThat(registry.counter("evaluation.coalesced").count()).isEqualTo(500);
+    }
+}
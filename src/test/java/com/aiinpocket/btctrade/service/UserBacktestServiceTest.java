@@ -0,0 +1,173 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BacktestQueueProperties;
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.MonteCarloProperties;
+import com.aiinpocket.btctrade.config.MonteCarloProperties.Method;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.dto.BacktestReport;
+import com.aiinpocket.btctrade.model.entity.AppUser;
+import com.aiinpocket.btctrade.model.entity.BacktestRun;
+import com.aiinpocket.btctrade.model.enums.BacktestRunStatus;
+import com.aiinpocket.btctrade.repository.BacktestRunRepository;
+import com.aiinpocket.btctrade.service.BacktestGoldenData.Bars;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class UserBacktestServiceTest {
+
+    private static final String FINGERPRINT = "f".repeat(64);
+    private static final String NODE = "node-a";
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2024-03-01T00:00:00Z");
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private final BacktestRunRepository runRepo = mock(BacktestRunRepository.class);
+    private final BacktestService backtestService = mock(BacktestService.class);
+    private final GamificationService gamificationService = mock(GamificationService.class);
+    private final StaminaService staminaService = mock(StaminaService.class);
+    private final ParameterSweepService sweepService = mock(ParameterSweepService.class);
+    private final WalkForwardService walkForwardService = mock(WalkForwardService.class);
+    private UserBacktestService service;
+    private BacktestReport report;
+
+    @BeforeEach
+    void setUp() {
+        Bars bars = BacktestGoldenData.syntheticBars(BacktestGoldenData.BARS, 20240101L);
+        BacktestReport raw = new BacktestService(null, null, null, null, IntervalParams.of5m()).runOnBars(
+                "BTCUSDT", START, BacktestGoldenData.end(bars),
+                new BacktestBars(bars.openTime(), bars.high(), bars.low(), bars.close()),
+                BacktestGoldenData.TEMPLATES.values().iterator().next(), true).report();
+        report = new MonteCarloService(new MonteCarloProperties(true, 500, Method.BOOTSTRAP, 10, 7L, 2)).attach(raw);
+
+        service = new UserBacktestService(runRepo, backtestService, null, objectMapper,
+                gamificationService, null, staminaService, mock(MonteCarloService.class), sweepService, walkForwardService,
+                new BacktestQueueProperties(2, 3, 60_000, 3, 2000, 500, 60_000, 15_000, NODE), null);
+        when(runRepo.finish(any(), eq(NODE), any(), any(), anyLong(), anyLong(), any())).thenReturn(1);
+    }
+
+    private BacktestRun run(Instant start, Instant end) {
+        return BacktestRun.builder().id(2L).paramsFingerprint(FINGERPRINT).symbol("BTCUSDT")
+                .paramsJson(objectMapper.writeValueAsString(BacktestGoldenData.TEMPLATES.values().iterator().next()))
+                .startDate(start).endDate(end).status(BacktestRunStatus.RUNNING).build();
+    }
+
+    @Test
+    void reusesCompletedRunWithSameFingerprintAndDayAlignedRange() throws Exception {
+        BacktestRun cached = run(START, END);
+        cached.setId(1L);
+        cached.setStatus(BacktestRunStatus.COMPLETED);
+        cached.setResultJson(objectMapper.writeValueAsString(report));
+        BacktestRun run = run(START, END);
+        when(runRepo.findByIdWithRelations(2L)).thenReturn(Optional.of(run));
+        when(runRepo.findFirstByParamsFingerprintAndSymbolAndStartDateAndEndDateAndStatusOrderByCompletedAtDesc(
+                FINGERPRINT, "BTCUSDT", START, END, BacktestRunStatus.COMPLETED)).thenReturn(Optional.of(cached));
+
+        assertThat(service.executeBacktest(2L, NODE, BacktestProgress.NONE)).isEqualTo(BacktestRunStatus.COMPLETED);
+
+        verify(backtestService, never()).runBacktestWithParams(any(), any(), any(), any(), any());
+        assertThat(run.getStatus()).isEqualTo(BacktestRunStatus.COMPLETED);
+        assertThat(objectMapper.readValue(run.getResultJson(), BacktestReport.class))
+                .usingRecursiveComparison().isEqualTo(report);
+    }
+
+    @Test
+    void marksRunCancelledWhenProgressCallbackCancels() {
+        BacktestRun run = run(START, Instant.now());
+        when(runRepo.findByIdWithRelations(2L)).thenReturn(Optional.of(run));
+        when(backtestService.runBacktestWithParams(any(), any(), any(), any(), any())).thenAnswer(inv -> {
+            BacktestProgress progress = inv.getArgument(4);
+            progress.onBars(0, 1000);
+            progress.onBars(500, 1000);
+            throw new AssertionError("unreachable");
+        });
+
+        BacktestRunStatus status = service.executeBacktest(2L, NODE, (processed, total) -> {
+            if (processed >= 500) throw new CancellationException("回測已取消");
+        });
+
+        assertThat(status).isEqualTo(BacktestRunStatus.CANCELLED);
+        assertThat(run.getStatus()).isEqualTo(BacktestRunStatus.CANCELLED);
+        assertThat(run.getBarsProcessed()).isEqualTo(500);
+        assertThat(run.getBarsTotal()).isEqualTo(1000);
+        assertThat(run.getCompletedAt()).isNotNull();
+    }
+
+    @Test
+    void discardsResultWhenLeaseWasReclaimedByAnotherNode() {
+        BacktestRun run = run(START, Instant.now());
+        when(runRepo.findByIdWithRelations(2L)).thenReturn(Optional.of(run));
+        when(backtestService.runBacktestWithParams(any(), any(), any(), any(), any())).thenReturn(report);
+
+        // 租約已過期並被其他節點收回：條件寫回失敗，不回報狀態也不發放獎勵
+        assertThat(service.executeBacktest(2L, "node-b", BacktestProgress.NONE)).isNull();
+
+        verify(runRepo).finish(eq(2L), eq("node-b"), eq(BacktestRunStatus.COMPLETED), any(),
+                anyLong(), anyLong(), any());
+        verifyNoInteractions(gamificationService);
+    }
+
+    @Test
+    void refundsStaminaWhenSweepFails() {
+        BacktestRun run = run(START, END);
+        run.setUser(AppUser.builder().id(7L).build());
+        run.setParamsFingerprint(null);
+        run.setSweepAxesJson("{\"emaShort\":[8,12]}");
+        run.setStaminaCost(3);
+        when(runRepo.findByIdWithRelations(2L)).thenReturn(Optional.of(run));
+        when(sweepService.sweep(any(), any(), any(), any(), any(), eq(3), any()))
+                .thenThrow(new IllegalArgumentException("需要至少 36 根 K 線，目前只有 10"));
+
+        assertThat(service.executeBacktest(2L, NODE, BacktestProgress.NONE)).isEqualTo(BacktestRunStatus.FAILED);
+
+        assertThat(run.getResultJson()).contains("需要至少 36 根 K 線");
+        verify(staminaService).refundStamina(7L, 3);
+        verify(backtestService, never()).runBacktestWithParams(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void runsWalkForwardFromQueueAndRefundsStaminaWhenItFails() {
+        BacktestRun run = run(START, END);
+        run.setUser(AppUser.builder().id(7L).build());
+        run.setParamsFingerprint(null);
+        run.setSweepAxesJson("{\"emaShort\":[8,12]}");
+        run.setInSampleDays(30);
+        run.setOutOfSampleDays(10);
+        run.setStaminaCost(4);
+        when(runRepo.findByIdWithRelations(2L)).thenReturn(Optional.of(run));
+        when(walkForwardService.walkForward(any(), any(), any(), any(), eq(30), eq(10), any(), eq(4), any()))
+                .thenThrow(new IllegalArgumentException("歷史資料不足以切出任何樣本內/樣本外視窗"));
+
+        assertThat(run.kind()).isEqualTo("WALK_FORWARD");
+        assertThat(service.executeBacktest(2L, NODE, BacktestProgress.NONE)).isEqualTo(BacktestRunStatus.FAILED);
+
+        assertThat(run.getResultJson()).contains("歷史資料不足");
+        verify(staminaService).refundStamina(7L, 4);
+        verifyNoInteractions(sweepService);
+    }
+
+    @Test
+    void skipsLookupForRangesThatAreNotDayAlignedOrNotFullyPast() {
+        Instant today = Instant.now().truncatedTo(java.time.temporal.ChronoUnit.DAYS);
+
+        assertThat(service.findCachedReport(run(START.plusSeconds(60), END))).isNull();
+        assertThat(service.findCachedReport(run(START, today.plusSeconds(86_400)))).isNull();
+        verifyNoInteractions(runRepo);
+    }
+}
@@ -0,0 +1,92 @@
+package com.aiinpocket.btctrade.service;
+
+import com.aiinpocket.btctrade.config.BacktestSweepProperties;
+import com.aiinpocket.btctrade.config.IntervalConfig.IntervalParams;
+import com.aiinpocket.btctrade.config.TradingStrategyProperties;
+import com.aiinpocket.btctrade.model.dto.BacktestBars;
+import com.aiinpocket.btctrade.model.dto.BacktestReport.TradeDetail;
+import com.aiinpocket.btctrade.model.dto.WalkForwardResult;
+import com.aiinpocket.btctrade.service.BacktestGoldenData.Bars;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class WalkForwardServiceTest {
+
+    private static final Bars BARS = BacktestGoldenData.syntheticBars(60 * 288, 11L);
+    private static final TradingStrategyProperties BASE = BacktestGoldenData.TEMPLATES.get("assassin");
+
+    @Test
+    void stitchesOutOfSampleWindowsFromOneLoadedSeries() {
+        BacktestBars bars = new BacktestBars(BARS.openTime(), BARS.high(), BARS.low(), BARS.close());
+        Instant end = BacktestGoldenData.end(BARS);
+        BacktestService backtestService = spy(new BacktestService(null, null, null, BASE, IntervalParams.of5m()));
+        doReturn(bars).when(backtestService).loadBars(any(), any(), any());
+        ParameterSweepService sweepService = new ParameterSweepService(backtestService,
+                new BacktestSweepProperties(50, 2, 20), new SimpleMeterRegistry());
+        WalkForwardService service = new WalkForwardService(sweepService, backtestService, IntervalParams.of5m());
+        List<long[]> reports = new ArrayList<>();
+
+        WalkForwardResult result = service.walkForward("BTCUSDT", BacktestGoldenData.START, end, BASE, 14, 7,
+                Map.of("emaShort", List.of(5, 8), "stopLossPct", List.of(0.02, 0.03)), 4,
+                (processed, total) -> reports.add(new long[]{processed, total}));
+
+        // 60 天資料、樣本內 14 天、樣本外 7 天 → 6 個完整視窗
+        assertThat(result.windows()).hasSize(6);
+        verify(backtestService, times(1)).loadBars(any(), any(), any());
+        assertThat(result.staminaCost()).isEqualTo(4);
+
+        // 進度：6 視窗 × 4 組合的樣本內回測 + 6 個樣本外視窗，最後一次回報即全部完成
+        assertThat(reports.getLast()).containsExactly(30, 30);
+
+        // 樣本外交易只落在樣本外區間內
+        assertThat(result.outOfSample().trades()).isNotEmpty();
+        Instant oosStart = result.windows().getFirst().outOfSampleStart();
+        for (TradeDetail t : result.outOfSample().trades()) {
+            assertThat(t.entryTime()).isAfterOrEqualTo(oosStart);
+            WalkForwardResult.Window w = result.windows().stream()
+                    .filter(x -> !t.entryTime().isBefore(x.outOfSampleStart()) && !t.entryTime().isAfter(x.outOfSampleEnd()))
+                    .findFirst().orElseThrow();
+            assertThat(t.exitTime()).isBeforeOrEqualTo(w.outOfSampleEnd());
+        }
+        assertThat(result.outOfSample().totalTrades())
+                .isEqualTo(result.windows().stream().mapToInt(WalkForwardResult.Window::outOfSampleTrades).sum());
+
+        // 串接後的總報酬 = 各視窗報酬的複利
+        double compounded = result.windows().stream()
+                .mapToDouble(w -> 1 + w.outOfSampleReturn().doubleValue())
+                .reduce(1, (a, b) -> a * b);
+        assertThat(result.outOfSample().totalReturn())
+                .isCloseTo(BigDecimal.valueOf(compounded - 1), within(new BigDecimal("0.00001")));
+    }
+
+    @Test
+    void rejectsWindowsBeforeChargingStamina() {
+        BacktestService backtestService = new BacktestService(null, null, null, BASE, IntervalParams.of5m());
+        ParameterSweepService sweepService = new ParameterSweepService(backtestService,
+                new BacktestSweepProperties(50, 2, 20), new SimpleMeterRegistry());
+        WalkForwardService service = new WalkForwardService(sweepService, backtestService, IntervalParams.of5m());
+        Map<String, Object> axes = Map.of("emaShort", List.of(5, 8), "stopLossPct", List.of(0.02, 0.03));
+
+        // 樣本內 90、樣本外 30 → 每根 K 線評估 3 次；2 年 × 3 × ceil(4 組合 / 20) = 6
+        assertThat(service.staminaCost(BASE, axes, 2, 90, 30)).isEqualTo(6);
+        assertThatThrownBy(() -> service.staminaCost(BASE, axes, 2, 5, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.staminaCost(BASE, axes, 2, 30, 60))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}